@@ -0,0 +1,169 @@
+package com.github.mouse0w0.asm.extree.benchmark;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The classes used by the benchmarks, read from the runtime image (jrt:/) of a JDK. The image of the
+ * running JDK is used, unless the {@code benchmark.javaHome} system property names another JDK 9 or
+ * later home. Only the classes that the ASM version under test can read are used, so the JDK must not
+ * be more recent than this version supports.
+ */
+public final class Corpus {
+
+    /**
+     * The maximum number of classes of a profile. The classes are sampled evenly among the matching
+     * classes of the image, in the order of their paths.
+     */
+    private static final int MAX_CLASSES = 512;
+
+    private static final Map<Profile, byte[][]> CLASSES = new ConcurrentHashMap<>();
+
+    private Corpus() {
+    }
+
+    /**
+     * The kinds of classes of the corpus.
+     */
+    public enum Profile {
+        /**
+         * The classes whose class file is smaller than 2 KiB.
+         */
+        SMALL,
+        /**
+         * The classes whose class file is at least 32 KiB.
+         */
+        LARGE,
+        /**
+         * The classes with at least 4 annotations, on the class, its fields, its methods and their
+         * parameters.
+         */
+        ANNOTATED;
+
+        boolean matches(final byte[] classFile) {
+            switch (this) {
+                case SMALL:
+                    return classFile.length < 2 * 1024;
+                case LARGE:
+                    return classFile.length >= 32 * 1024;
+                default:
+                    return countAnnotations(classFile) >= 4;
+            }
+        }
+    }
+
+    /**
+     * Returns the class files of the given profile. They are read once and shared by all the
+     * benchmarks of the JVM.
+     *
+     * @param profile the profile of the classes.
+     * @return the class files, in the order of their paths. Not empty.
+     */
+    public static byte[][] get(final Profile profile) {
+        return CLASSES.computeIfAbsent(profile, Corpus::load);
+    }
+
+    private static byte[][] load(final Profile profile) {
+        List<byte[]> matches = new ArrayList<>();
+        try (FileSystem jrt = openRuntimeImage();
+             Stream<Path> paths = Files.walk(jrt.getPath("/modules"))) {
+            for (Path path : paths.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList())) {
+                byte[] classFile = Files.readAllBytes(path);
+                if (isSupported(classFile) && profile.matches(classFile)) {
+                    matches.add(classFile);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (matches.isEmpty()) {
+            throw new IllegalStateException("No " + profile + " class of the runtime image can be read by ASM, "
+                    + "set -Dbenchmark.javaHome to the home of a supported JDK");
+        }
+        byte[][] sample = new byte[Math.min(MAX_CLASSES, matches.size())][];
+        for (int i = 0; i < sample.length; ++i) {
+            sample[i] = matches.get((int) ((long) i * matches.size() / sample.length));
+        }
+        return sample;
+    }
+
+    private static FileSystem openRuntimeImage() throws IOException {
+        String javaHome = System.getProperty("benchmark.javaHome");
+        Map<String, String> env = javaHome == null
+                ? Collections.<String, String>emptyMap()
+                : Collections.singletonMap("java.home", javaHome);
+        return FileSystems.newFileSystem(URI.create("jrt:/"), env);
+    }
+
+    private static boolean isSupported(final byte[] classFile) {
+        try {
+            new ClassReader(classFile);
+            return true;
+        } catch (IllegalArgumentException e) {
+            // Unsupported class version.
+            return false;
+        }
+    }
+
+    private static int countAnnotations(final byte[] classFile) {
+        final int[] count = new int[1];
+        new ClassReader(classFile).accept(new ClassVisitor(Opcodes.ASM8) {
+            @Override
+            public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+                count[0]++;
+                return null;
+            }
+
+            @Override
+            public FieldVisitor visitField(
+                    final int access, final String name, final String descriptor, final String signature, final Object value) {
+                return new FieldVisitor(Opcodes.ASM8) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+                        count[0]++;
+                        return null;
+                    }
+                };
+            }
+
+            @Override
+            public MethodVisitor visitMethod(
+                    final int access, final String name, final String descriptor, final String signature, final String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM8) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+                        count[0]++;
+                        return null;
+                    }
+
+                    @Override
+                    public AnnotationVisitor visitParameterAnnotation(
+                            final int parameter, final String descriptor, final boolean visible) {
+                        count[0]++;
+                        return null;
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return count[0];
+    }
+}
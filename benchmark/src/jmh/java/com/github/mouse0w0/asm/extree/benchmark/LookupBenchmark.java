@@ -0,0 +1,214 @@
+package com.github.mouse0w0.asm.extree.benchmark;
+
+import com.github.mouse0w0.asm.extree.AnnotationNodeEx;
+import com.github.mouse0w0.asm.extree.ClassNodeEx;
+import com.github.mouse0w0.asm.extree.FieldNodeEx;
+import com.github.mouse0w0.asm.extree.MethodNodeEx;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups of methods, fields and annotations by name and descriptor in {@link
+ * ClassNodeEx} trees, compared with a linear search in {@link ClassNode} trees. Each operation looks
+ * up one member or annotation of the corpus, in turn. The keys are copies of the names and
+ * descriptors of the trees, so that they are not found by identity.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+
+    @Param({"LARGE", "ANNOTATED"})
+    public Corpus.Profile profile;
+
+    private ClassNode[] classNodes;
+    private ClassNodeEx[] classNodeExs;
+
+    /**
+     * The index of the class, the name and the descriptor of each method of the corpus.
+     */
+    private int[] methodClasses;
+    private String[] methodNames;
+    private String[] methodDescs;
+    private int methodIndex;
+
+    /**
+     * The index of the class and the name of each field of the corpus.
+     */
+    private int[] fieldClasses;
+    private String[] fieldNames;
+    private int fieldIndex;
+
+    /**
+     * The methods and the descriptor of each method annotation of the corpus.
+     */
+    private MethodNode[] annotatedMethods;
+    private MethodNodeEx[] annotatedMethodExs;
+    private String[] annotationDescs;
+    private int annotationIndex;
+
+    @Setup
+    public void setup() {
+        byte[][] classes = Corpus.get(profile);
+        classNodes = new ClassNode[classes.length];
+        classNodeExs = new ClassNodeEx[classes.length];
+        List<Object[]> methodKeys = new ArrayList<>();
+        List<Object[]> fieldKeys = new ArrayList<>();
+        List<Object[]> annotationKeys = new ArrayList<>();
+        for (int i = 0; i < classes.length; ++i) {
+            ClassNode classNode = new ClassNode();
+            new ClassReader(classes[i]).accept(classNode, 0);
+            ClassNodeEx classNodeEx = new ClassNodeEx();
+            classNodeEx.read(new ClassReader(classes[i]), 0);
+            classNodes[i] = classNode;
+            classNodeExs[i] = classNodeEx;
+            for (MethodNode method : classNode.methods) {
+                methodKeys.add(new Object[]{i, new String(method.name), new String(method.desc)});
+                MethodNodeEx methodEx = classNodeEx.getMethod(method.name, method.desc);
+                addAnnotationKeys(annotationKeys, method, methodEx, method.visibleAnnotations);
+                addAnnotationKeys(annotationKeys, method, methodEx, method.invisibleAnnotations);
+            }
+            for (FieldNode field : classNode.fields) {
+                fieldKeys.add(new Object[]{i, new String(field.name)});
+            }
+        }
+        if (methodKeys.isEmpty() || fieldKeys.isEmpty() || annotationKeys.isEmpty()) {
+            throw new IllegalStateException("The " + profile + " classes have no method, field or method annotation");
+        }
+        methodClasses = new int[methodKeys.size()];
+        methodNames = new String[methodKeys.size()];
+        methodDescs = new String[methodKeys.size()];
+        for (int i = 0; i < methodKeys.size(); ++i) {
+            methodClasses[i] = (Integer) methodKeys.get(i)[0];
+            methodNames[i] = (String) methodKeys.get(i)[1];
+            methodDescs[i] = (String) methodKeys.get(i)[2];
+        }
+        fieldClasses = new int[fieldKeys.size()];
+        fieldNames = new String[fieldKeys.size()];
+        for (int i = 0; i < fieldKeys.size(); ++i) {
+            fieldClasses[i] = (Integer) fieldKeys.get(i)[0];
+            fieldNames[i] = (String) fieldKeys.get(i)[1];
+        }
+        annotatedMethods = new MethodNode[annotationKeys.size()];
+        annotatedMethodExs = new MethodNodeEx[annotationKeys.size()];
+        annotationDescs = new String[annotationKeys.size()];
+        for (int i = 0; i < annotationKeys.size(); ++i) {
+            annotatedMethods[i] = (MethodNode) annotationKeys.get(i)[0];
+            annotatedMethodExs[i] = (MethodNodeEx) annotationKeys.get(i)[1];
+            annotationDescs[i] = (String) annotationKeys.get(i)[2];
+        }
+        methodIndex = 0;
+        fieldIndex = 0;
+        annotationIndex = 0;
+    }
+
+    private static void addAnnotationKeys(
+            final List<Object[]> annotationKeys,
+            final MethodNode method,
+            final MethodNodeEx methodEx,
+            final List<AnnotationNode> annotations) {
+        if (annotations != null) {
+            for (AnnotationNode annotation : annotations) {
+                annotationKeys.add(new Object[]{method, methodEx, new String(annotation.desc)});
+            }
+        }
+    }
+
+    private int nextMethod() {
+        int index = methodIndex;
+        methodIndex = index + 1 == methodNames.length ? 0 : index + 1;
+        return index;
+    }
+
+    private int nextField() {
+        int index = fieldIndex;
+        fieldIndex = index + 1 == fieldNames.length ? 0 : index + 1;
+        return index;
+    }
+
+    private int nextAnnotation() {
+        int index = annotationIndex;
+        annotationIndex = index + 1 == annotationDescs.length ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public MethodNode getMethodClassNode() {
+        int index = nextMethod();
+        String name = methodNames[index];
+        String desc = methodDescs[index];
+        for (MethodNode method : classNodes[methodClasses[index]].methods) {
+            if (method.name.equals(name) && method.desc.equals(desc)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public MethodNodeEx getMethodClassNodeEx() {
+        int index = nextMethod();
+        return classNodeExs[methodClasses[index]].getMethod(methodNames[index], methodDescs[index]);
+    }
+
+    @Benchmark
+    public FieldNode getFieldClassNode() {
+        int index = nextField();
+        String name = fieldNames[index];
+        for (FieldNode field : classNodes[fieldClasses[index]].fields) {
+            if (field.name.equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public FieldNodeEx getFieldClassNodeEx() {
+        int index = nextField();
+        return classNodeExs[fieldClasses[index]].getField(fieldNames[index]);
+    }
+
+    @Benchmark
+    public AnnotationNode getAnnotationClassNode() {
+        int index = nextAnnotation();
+        MethodNode method = annotatedMethods[index];
+        String desc = annotationDescs[index];
+        if (method.visibleAnnotations != null) {
+            for (AnnotationNode annotation : method.visibleAnnotations) {
+                if (annotation.desc.equals(desc)) {
+                    return annotation;
+                }
+            }
+        }
+        if (method.invisibleAnnotations != null) {
+            for (AnnotationNode annotation : method.invisibleAnnotations) {
+                if (annotation.desc.equals(desc)) {
+                    return annotation;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public AnnotationNodeEx getAnnotationClassNodeEx() {
+        int index = nextAnnotation();
+        return annotatedMethodExs[index].getAnnotation(annotationDescs[index]);
+    }
+}
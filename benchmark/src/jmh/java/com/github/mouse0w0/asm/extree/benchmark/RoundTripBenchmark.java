@@ -0,0 +1,123 @@
+package com.github.mouse0w0.asm.extree.benchmark;
+
+import com.github.mouse0w0.asm.extree.ClassNodeEx;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parsing and the ClassReader to tree to ClassWriter round trip of {@link ClassNodeEx},
+ * compared with {@link ClassNode}. Each operation processes one class of the corpus, in turn, so the
+ * scores and the allocation rates reported by the gc profiler are per class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RoundTripBenchmark {
+
+    @Param({"SMALL", "LARGE", "ANNOTATED"})
+    public Corpus.Profile profile;
+
+    private byte[][] classes;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        classes = Corpus.get(profile);
+        index = 0;
+    }
+
+    private byte[] nextClass() {
+        byte[] classFile = classes[index];
+        index = index + 1 == classes.length ? 0 : index + 1;
+        return classFile;
+    }
+
+    @Benchmark
+    public ClassNode parseClassNode() {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(nextClass()).accept(classNode, 0);
+        return classNode;
+    }
+
+    @Benchmark
+    public ClassNodeEx parseClassNodeEx() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(nextClass()), 0);
+        return classNode;
+    }
+
+    @Benchmark
+    public ClassNodeEx parseClassNodeExLazily() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.readLazily(new ClassReader(nextClass()), 0);
+        return classNode;
+    }
+
+    @Benchmark
+    public byte[] roundTripClassNode() {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(nextClass()).accept(classNode, 0);
+        ClassWriter classWriter = new ClassWriter(0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] roundTripClassNodeEx() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(nextClass()), 0);
+        ClassWriter classWriter = new ClassWriter(0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * The round trip of {@link ClassNode} with a class writer that copies the constant pool of the
+     * class reader, as commonly done by transformers.
+     */
+    @Benchmark
+    public byte[] roundTripClassNodeCopyPool() {
+        ClassReader classReader = new ClassReader(nextClass());
+        ClassNode classNode = new ClassNode();
+        classReader.accept(classNode, 0);
+        ClassWriter classWriter = new ClassWriter(classReader, 0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * The round trip of {@link ClassNodeEx} with a class writer that copies the constant pool, so that
+     * the unchanged methods are copied as is.
+     */
+    @Benchmark
+    public byte[] roundTripClassNodeExCopyPool() {
+        ClassReader classReader = new ClassReader(nextClass());
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(classReader, 0);
+        ClassWriter classWriter = new ClassWriter(classReader, 0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] roundTripClassNodeExLazily() {
+        ClassReader classReader = new ClassReader(nextClass());
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.readLazily(classReader, 0);
+        ClassWriter classWriter = new ClassWriter(classReader, 0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.mouse0w0.asm.extree.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.github.mouse0w0.asm.extree.ClassAccept")
+@Label("Class Accept")
+@Description("A ClassNodeEx tree visited by a class visitor")
+@Category({"ASM", "Tree"})
+final class ClassAcceptEvent extends jdk.jfr.Event {
+
+    @Label("Class")
+    String className;
+
+    @Label("Visitor")
+    @Description("The class of the visitor")
+    String visitor;
+
+    @Label("Visit Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long visitTime;
+}
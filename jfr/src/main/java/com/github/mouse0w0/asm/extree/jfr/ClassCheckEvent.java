@@ -0,0 +1,24 @@
+package com.github.mouse0w0.asm.extree.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.github.mouse0w0.asm.extree.ClassCheck")
+@Label("Class Check")
+@Description("A ClassNodeEx tree checked against an ASM API version")
+@Category({"ASM", "Tree"})
+final class ClassCheckEvent extends jdk.jfr.Event {
+
+    @Label("Class")
+    String className;
+
+    @Label("API")
+    int api;
+
+    @Label("Check Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long checkTime;
+}
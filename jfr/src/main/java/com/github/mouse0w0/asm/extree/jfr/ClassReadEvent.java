@@ -0,0 +1,54 @@
+package com.github.mouse0w0.asm.extree.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.github.mouse0w0.asm.extree.ClassRead")
+@Label("Class Read")
+@Description("A class read into a ClassNodeEx tree")
+@Category({"ASM", "Tree"})
+final class ClassReadEvent extends jdk.jfr.Event {
+
+    @Label("Class")
+    String className;
+
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long parseTime;
+
+    @Label("Fields")
+    int fieldCount;
+
+    @Label("Methods")
+    int methodCount;
+
+    @Label("Loaded Methods")
+    @Description("The number of methods whose code is loaded")
+    int loadedMethodCount;
+
+    @Label("Annotations")
+    int annotationCount;
+
+    @Label("Instructions")
+    int instructionCount;
+
+    @Label("Try Catch Blocks")
+    int tryCatchBlockCount;
+
+    @Label("Local Variables")
+    int localVariableCount;
+
+    @Label("Source Size")
+    @Description("The size of the class file retained by the tree")
+    @DataAmount
+    long sourceSize;
+
+    @Label("Estimated Size")
+    @Description("A rough estimate of the heap retained by the tree")
+    @DataAmount
+    long estimatedSize;
+}
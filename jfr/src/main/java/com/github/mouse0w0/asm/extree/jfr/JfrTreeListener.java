@@ -0,0 +1,94 @@
+package com.github.mouse0w0.asm.extree.jfr;
+
+import com.github.mouse0w0.asm.extree.ClassNodeEx;
+import com.github.mouse0w0.asm.extree.MethodNodeEx;
+import com.github.mouse0w0.asm.extree.TreeListener;
+import com.github.mouse0w0.asm.extree.TreeStatistics;
+import jdk.jfr.FlightRecorder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * A {@link TreeListener} that emits JDK Flight Recorder events, in the "ASM / Tree" category:
+ * <ul>
+ * <li>{@code com.github.mouse0w0.asm.extree.ClassRead}, with the parse time and the {@link
+ * TreeStatistics} of each class read.</li>
+ * <li>{@code com.github.mouse0w0.asm.extree.ClassAccept}, with the duration of each {@link
+ * ClassNodeEx#accept(ClassVisitor)} call.</li>
+ * <li>{@code com.github.mouse0w0.asm.extree.ClassCheck}, with the duration of each {@link
+ * ClassNodeEx#check(int)} call.</li>
+ * <li>{@code com.github.mouse0w0.asm.extree.MethodBodyLoad}, with the duration of each lazy method
+ * body load.</li>
+ * </ul>
+ * The durations are recorded in fields of the events, since the events are created after the
+ * operations. The statistics of a class are only computed if the ClassRead event is enabled.
+ * Install it with {@code ClassNodeEx.setTreeListener(new JfrTreeListener())}.
+ */
+public final class JfrTreeListener implements TreeListener {
+
+    static {
+        FlightRecorder.register(ClassReadEvent.class);
+        FlightRecorder.register(ClassAcceptEvent.class);
+        FlightRecorder.register(ClassCheckEvent.class);
+        FlightRecorder.register(MethodBodyLoadEvent.class);
+    }
+
+    @Override
+    public void classRead(final ClassNodeEx classNode, final ClassReader classReader, final long nanos) {
+        ClassReadEvent event = new ClassReadEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        TreeStatistics statistics = classNode.getStatistics();
+        event.className = classNode.name;
+        event.parseTime = nanos;
+        event.fieldCount = statistics.getFieldCount();
+        event.methodCount = statistics.getMethodCount();
+        event.loadedMethodCount = statistics.getLoadedMethodCount();
+        event.annotationCount = statistics.getAnnotationCount();
+        event.instructionCount = statistics.getInstructionCount();
+        event.tryCatchBlockCount = statistics.getTryCatchBlockCount();
+        event.localVariableCount = statistics.getLocalVariableCount();
+        event.sourceSize = statistics.getSourceSize();
+        event.estimatedSize = statistics.getEstimatedSize();
+        event.commit();
+    }
+
+    @Override
+    public void classAccepted(final ClassNodeEx classNode, final ClassVisitor classVisitor, final long nanos) {
+        ClassAcceptEvent event = new ClassAcceptEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.className = classNode.name;
+        event.visitor = classVisitor.getClass().getName();
+        event.visitTime = nanos;
+        event.commit();
+    }
+
+    @Override
+    public void classChecked(final ClassNodeEx classNode, final int api, final long nanos) {
+        ClassCheckEvent event = new ClassCheckEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.className = classNode.name;
+        event.api = api;
+        event.checkTime = nanos;
+        event.commit();
+    }
+
+    @Override
+    public void methodBodyLoaded(final String owner, final MethodNodeEx method, final long nanos) {
+        MethodBodyLoadEvent event = new MethodBodyLoadEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.owner = owner;
+        event.methodName = method.name;
+        event.methodDescriptor = method.desc;
+        event.instructionCount = method.instructions.size();
+        event.loadTime = nanos;
+        event.commit();
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.mouse0w0.asm.extree.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.github.mouse0w0.asm.extree.MethodBodyLoad")
+@Label("Method Body Load")
+@Description("The code of a lazily read method loaded from its class file")
+@Category({"ASM", "Tree"})
+final class MethodBodyLoadEvent extends jdk.jfr.Event {
+
+    @Label("Class")
+    String owner;
+
+    @Label("Method Name")
+    String methodName;
+
+    @Label("Method Descriptor")
+    String methodDescriptor;
+
+    @Label("Instructions")
+    int instructionCount;
+
+    @Label("Load Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long loadTime;
+}
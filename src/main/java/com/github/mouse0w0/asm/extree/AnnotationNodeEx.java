@@ -17,6 +17,11 @@ public class AnnotationNodeEx extends AnnotationVisitor {
 
     List<Object> array;
 
+    /**
+     * The interner of the names and descriptors of this annotation, or {@literal null}.
+     */
+    StringInterner interner;
+
     public AnnotationNodeEx(final String descriptor, final boolean visible) {
         this(/* latest api = */ Opcodes.ASM8, descriptor, visible);
     }
@@ -37,50 +42,25 @@ public class AnnotationNodeEx extends AnnotationVisitor {
         return values == null ? null : (T) values.get(name);
     }
 
+    /**
+     * Puts a value of this annotation. Primitive arrays are stored as {@link PrimitiveList}s backed
+     * by the given array, which must not be modified afterwards.
+     *
+     * @param name  the value name.
+     * @param value the actual value.
+     */
     public void putValue(String name, Object value) {
+        PrimitiveList<?> primitiveList = PrimitiveList.wrap(value);
+        if (primitiveList != null) {
+            value = primitiveList;
+        }
         if (desc != null) {
             if (values == null) {
                 values = new LinkedHashMap<>(2);
             }
-            if (value instanceof byte[]) {
-                values.put(name, Util.asArrayList((byte[]) value));
-            } else if (value instanceof boolean[]) {
-                values.put(name, Util.asArrayList((boolean[]) value));
-            } else if (value instanceof short[]) {
-                values.put(name, Util.asArrayList((short[]) value));
-            } else if (value instanceof char[]) {
-                values.put(name, Util.asArrayList((char[]) value));
-            } else if (value instanceof int[]) {
-                values.put(name, Util.asArrayList((int[]) value));
-            } else if (value instanceof long[]) {
-                values.put(name, Util.asArrayList((long[]) value));
-            } else if (value instanceof float[]) {
-                values.put(name, Util.asArrayList((float[]) value));
-            } else if (value instanceof double[]) {
-                values.put(name, Util.asArrayList((double[]) value));
-            } else {
-                values.put(name, value);
-            }
+            values.put(name, value);
         } else {
-            if (value instanceof byte[]) {
-                array.add(Util.asArrayList((byte[]) value));
-            } else if (value instanceof boolean[]) {
-                array.add(Util.asArrayList((boolean[]) value));
-            } else if (value instanceof short[]) {
-                array.add(Util.asArrayList((short[]) value));
-            } else if (value instanceof char[]) {
-                array.add(Util.asArrayList((char[]) value));
-            } else if (value instanceof int[]) {
-                array.add(Util.asArrayList((int[]) value));
-            } else if (value instanceof long[]) {
-                array.add(Util.asArrayList((long[]) value));
-            } else if (value instanceof float[]) {
-                array.add(Util.asArrayList((float[]) value));
-            } else if (value instanceof double[]) {
-                array.add(Util.asArrayList((double[]) value));
-            } else {
-                array.add(value);
-            }
+            array.add(value);
         }
     }
 
@@ -90,26 +70,30 @@ public class AnnotationNodeEx extends AnnotationVisitor {
 
     @Override
     public void visit(final String name, final Object value) {
-        putValue(name, value);
+        putValue(Util.intern(interner, name), value);
     }
 
     @Override
     public void visitEnum(final String name, final String descriptor, final String value) {
-        putValue(name, new Enum(descriptor, value));
+        putValue(Util.intern(interner, name),
+                new Enum(Util.intern(interner, descriptor), Util.intern(interner, value)));
     }
 
     @Override
     public AnnotationVisitor visitAnnotation(final String name, final String descriptor) {
-        AnnotationNodeEx annotation = new AnnotationNodeEx(descriptor, false);
-        putValue(name, annotation);
+        AnnotationNodeEx annotation = new AnnotationNodeEx(Util.intern(interner, descriptor), false);
+        annotation.interner = interner;
+        putValue(Util.intern(interner, name), annotation);
         return annotation;
     }
 
     @Override
     public AnnotationVisitor visitArray(final String name) {
         List<Object> array = new ArrayList<>();
-        putValue(name, array);
-        return new AnnotationNodeEx(array);
+        putValue(Util.intern(interner, name), array);
+        AnnotationNodeEx arrayVisitor = new AnnotationNodeEx(array);
+        arrayVisitor.interner = interner;
+        return arrayVisitor;
     }
 
     @Override
@@ -159,6 +143,8 @@ public class AnnotationNodeEx extends AnnotationVisitor {
         } else if (value instanceof AnnotationNodeEx) {
             AnnotationNodeEx annotationValue = (AnnotationNodeEx) value;
             annotationValue.accept(annotationVisitor.visitAnnotation(name, annotationValue.desc));
+        } else if (value instanceof PrimitiveList) {
+            annotationVisitor.visit(name, ((PrimitiveList<?>) value).toPrimitiveArray());
         } else if (value instanceof List) {
             AnnotationVisitor arrayAnnotationVisitor = annotationVisitor.visitArray(name);
             if (arrayAnnotationVisitor != null) {
@@ -0,0 +1,636 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the annotations of classes and of their fields and methods, without building {@link
+ * ClassNodeEx} trees. Only the constant pool, the header and the RuntimeVisibleAnnotations and
+ * RuntimeInvisibleAnnotations attributes of a class file are parsed: the other attributes, including
+ * the code of the methods, are skipped by length. The annotations are built as {@link
+ * AnnotationNodeEx}, with the same values as when a {@link ClassNodeEx} is read, and, as with {@link
+ * org.objectweb.asm.ClassReader}, the Deprecated, Synthetic and Record attributes are stored in the
+ * access flags. Unlike {@link org.objectweb.asm.ClassReader}, the class file version is not checked,
+ * since the parsed structures do not depend on it.
+ */
+public class AnnotationScanner {
+
+    /**
+     * The class descriptors of the scanned annotations, or {@literal null} to scan all annotations.
+     */
+    private final Set<String> descriptors;
+
+    /**
+     * The interner of the strings of the scanned classes, or {@literal null}.
+     */
+    private StringInterner stringInterner;
+
+    /**
+     * Constructs a new {@link AnnotationScanner} that finds all the annotations.
+     */
+    public AnnotationScanner() {
+        this.descriptors = null;
+    }
+
+    /**
+     * Constructs a new {@link AnnotationScanner} that finds the given annotations. The other
+     * annotations are skipped without being built.
+     *
+     * @param descriptors the class descriptors of the annotations to find.
+     */
+    public AnnotationScanner(final String... descriptors) {
+        this.descriptors = new HashSet<>(Arrays.asList(descriptors));
+    }
+
+    public StringInterner getStringInterner() {
+        return stringInterner;
+    }
+
+    /**
+     * Sets the interner of the names, descriptors and string values of the scanned classes.
+     *
+     * @param stringInterner the string interner, or {@literal null} to keep the parsed strings.
+     */
+    public void setStringInterner(StringInterner stringInterner) {
+        this.stringInterner = stringInterner;
+    }
+
+    /**
+     * Scans the classes of a jar file or of a class directory.
+     *
+     * @param path the path of a jar file or of a directory.
+     * @return the classes that have at least one of the scanned annotations, on the class or on one
+     * of its members, in the order of their entry names.
+     * @throws IOException if the classes cannot be read.
+     */
+    public List<AnnotatedClass> scan(final Path path) throws IOException {
+        try (ClassInput input = ClassInput.open(path)) {
+            return scan(input);
+        }
+    }
+
+    /**
+     * Scans the classes of an opened jar file or class directory.
+     *
+     * @param input the input to read the classes from.
+     * @return the classes that have at least one of the scanned annotations, on the class or on one
+     * of its members, in the order of their entry names.
+     * @throws IOException if the classes cannot be read.
+     */
+    public List<AnnotatedClass> scan(final ClassInput input) throws IOException {
+        List<ClassInput.Entry> entries = new ArrayList<>();
+        for (ClassInput.Entry entry : input.getEntries()) {
+            if (entry.isClassFile()) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparing(ClassInput.Entry::getName));
+        List<AnnotatedClass> classes = new ArrayList<>();
+        for (ClassInput.Entry entry : entries) {
+            AnnotatedClass annotatedClass = scan(entry.read());
+            if (annotatedClass != null) {
+                classes.add(annotatedClass);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Scans a class file.
+     *
+     * @param classFile the content of a class file.
+     * @return the annotations of the class and of its members, or {@literal null} if the class has
+     * none of the scanned annotations.
+     * @throws IllegalArgumentException if the class file is malformed.
+     */
+    public AnnotatedClass scan(final byte[] classFile) {
+        try {
+            return new Parser(classFile).parse();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed class file", e);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Results
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * The annotations of a class and of its fields and methods.
+     */
+    public static final class AnnotatedClass {
+        public final int access;
+        public final String name;
+        public final String superName;
+        public final List<String> interfaces;
+
+        /**
+         * The scanned annotations of the class, by descriptor. May be empty.
+         */
+        public final Map<String, AnnotationNodeEx> annotations;
+
+        /**
+         * The fields that have at least one of the scanned annotations.
+         */
+        public final List<AnnotatedMember> fields;
+
+        /**
+         * The methods that have at least one of the scanned annotations.
+         */
+        public final List<AnnotatedMember> methods;
+
+        AnnotatedClass(
+                final int access,
+                final String name,
+                final String superName,
+                final List<String> interfaces,
+                final Map<String, AnnotationNodeEx> annotations,
+                final List<AnnotatedMember> fields,
+                final List<AnnotatedMember> methods) {
+            this.access = access;
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.annotations = annotations;
+            this.fields = fields;
+            this.methods = methods;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The annotations of a field or method.
+     */
+    public static final class AnnotatedMember {
+        public final int access;
+        public final String name;
+        public final String desc;
+
+        /**
+         * The scanned annotations of the member, by descriptor.
+         */
+        public final Map<String, AnnotationNodeEx> annotations;
+
+        AnnotatedMember(final int access, final String name, final String desc, final Map<String, AnnotationNodeEx> annotations) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.annotations = annotations;
+        }
+
+        @Override
+        public String toString() {
+            return name + desc;
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Parsing
+    // -----------------------------------------------------------------------------------------------
+
+    private final class Parser {
+        private final byte[] b;
+
+        /**
+         * The offset of the content of each constant pool entry, just after its tag.
+         */
+        private int[] cpOffsets;
+
+        /**
+         * The decoded CONSTANT_Utf8 entries, by constant pool index.
+         */
+        private String[] utf8s;
+
+        private char[] charBuffer;
+
+        /**
+         * The constant pool indices of the names of the annotation attributes, or 0.
+         */
+        private int visibleAnnotationsIndex;
+        private int invisibleAnnotationsIndex;
+
+        /**
+         * The constant pool indices of the names of the attributes stored as access flags by {@link
+         * org.objectweb.asm.ClassReader}, or 0.
+         */
+        private int deprecatedIndex;
+        private int syntheticIndex;
+        private int recordIndex;
+
+        /**
+         * The access flags corresponding to the attributes of the member being parsed.
+         */
+        private int attributeAccess;
+
+        /**
+         * The annotations of the member being parsed, or {@literal null}.
+         */
+        private Map<String, AnnotationNodeEx> annotations;
+
+        Parser(final byte[] classFile) {
+            this.b = classFile;
+        }
+
+        AnnotatedClass parse() {
+            if (readInt(0) != 0xCAFEBABE) {
+                throw new IllegalArgumentException("Not a class file");
+            }
+            int offset = parseConstantPool();
+            int access = readUnsignedShort(offset);
+            int thisClass = readUnsignedShort(offset + 2);
+            int superClass = readUnsignedShort(offset + 4);
+            int interfacesOffset = offset + 6;
+            offset = interfacesOffset + 2 + 2 * readUnsignedShort(interfacesOffset);
+            List<AnnotatedMember> fields = new ArrayList<>(0);
+            offset = parseMembers(offset, fields);
+            List<AnnotatedMember> methods = new ArrayList<>(0);
+            offset = parseMembers(offset, methods);
+            annotations = null;
+            attributeAccess = 0;
+            parseAttributes(offset);
+            access |= attributeAccess;
+            Map<String, AnnotationNodeEx> classAnnotations = annotations;
+            if (classAnnotations == null && fields.isEmpty() && methods.isEmpty()) {
+                return null;
+            }
+            String[] interfaces = new String[readUnsignedShort(interfacesOffset)];
+            for (int i = 0; i < interfaces.length; ++i) {
+                interfaces[i] = readClass(readUnsignedShort(interfacesOffset + 2 + 2 * i));
+            }
+            return new AnnotatedClass(
+                    access,
+                    readClass(thisClass),
+                    readClass(superClass),
+                    Arrays.asList(interfaces),
+                    classAnnotations == null ? Collections.<String, AnnotationNodeEx>emptyMap() : classAnnotations,
+                    fields,
+                    methods);
+        }
+
+        /**
+         * @return the offset of the access flags of the class.
+         */
+        private int parseConstantPool() {
+            int constantPoolCount = readUnsignedShort(8);
+            cpOffsets = new int[constantPoolCount];
+            utf8s = new String[constantPoolCount];
+            int maxUtf8Length = 0;
+            int offset = 10;
+            for (int i = 1; i < constantPoolCount; ++i) {
+                cpOffsets[i] = offset + 1;
+                int tag = b[offset];
+                switch (tag) {
+                    case 1: // CONSTANT_Utf8
+                        int length = readUnsignedShort(offset + 1);
+                        if (length == 25 && matches(offset + 3, "RuntimeVisibleAnnotations")) {
+                            visibleAnnotationsIndex = i;
+                        } else if (length == 27 && matches(offset + 3, "RuntimeInvisibleAnnotations")) {
+                            invisibleAnnotationsIndex = i;
+                        } else if (length == 10 && matches(offset + 3, "Deprecated")) {
+                            deprecatedIndex = i;
+                        } else if (length == 9 && matches(offset + 3, "Synthetic")) {
+                            syntheticIndex = i;
+                        } else if (length == 6 && matches(offset + 3, "Record")) {
+                            recordIndex = i;
+                        }
+                        maxUtf8Length = Math.max(maxUtf8Length, length);
+                        offset += 3 + length;
+                        break;
+                    case 3: // CONSTANT_Integer
+                    case 4: // CONSTANT_Float
+                    case 9: // CONSTANT_Fieldref
+                    case 10: // CONSTANT_Methodref
+                    case 11: // CONSTANT_InterfaceMethodref
+                    case 12: // CONSTANT_NameAndType
+                    case 17: // CONSTANT_Dynamic
+                    case 18: // CONSTANT_InvokeDynamic
+                        offset += 5;
+                        break;
+                    case 5: // CONSTANT_Long
+                    case 6: // CONSTANT_Double
+                        offset += 9;
+                        ++i;
+                        break;
+                    case 7: // CONSTANT_Class
+                    case 8: // CONSTANT_String
+                    case 16: // CONSTANT_MethodType
+                    case 19: // CONSTANT_Module
+                    case 20: // CONSTANT_Package
+                        offset += 3;
+                        break;
+                    case 15: // CONSTANT_MethodHandle
+                        offset += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+                }
+            }
+            charBuffer = new char[maxUtf8Length];
+            return offset;
+        }
+
+        private boolean matches(final int offset, final String ascii) {
+            for (int i = 0, n = ascii.length(); i < n; ++i) {
+                if (b[offset + i] != ascii.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Parses the fields or the methods of the class, and adds the annotated ones to the given list.
+         *
+         * @return the offset of the end of the members.
+         */
+        private int parseMembers(int offset, final List<AnnotatedMember> members) {
+            int count = readUnsignedShort(offset);
+            offset += 2;
+            for (int i = 0; i < count; ++i) {
+                annotations = null;
+                attributeAccess = 0;
+                int memberOffset = offset;
+                offset = parseAttributes(offset + 6);
+                if (annotations != null) {
+                    members.add(new AnnotatedMember(
+                            readUnsignedShort(memberOffset) | attributeAccess,
+                            readUtf8(readUnsignedShort(memberOffset + 2)),
+                            readUtf8(readUnsignedShort(memberOffset + 4)),
+                            annotations));
+                }
+            }
+            return offset;
+        }
+
+        /**
+         * Parses the attributes starting at the given offset, puts the scanned annotations in {@link
+         * #annotations} and the access flags of the attributes in {@link #attributeAccess}.
+         *
+         * @return the offset of the end of the attributes.
+         */
+        private int parseAttributes(int offset) {
+            int count = readUnsignedShort(offset);
+            offset += 2;
+            for (int i = 0; i < count; ++i) {
+                int nameIndex = readUnsignedShort(offset);
+                int length = readInt(offset + 2);
+                offset += 6;
+                if (nameIndex == 0) {
+                    // Not a valid attribute name, and the value of the indices that were not found.
+                } else if (nameIndex == visibleAnnotationsIndex || nameIndex == invisibleAnnotationsIndex) {
+                    parseAnnotations(offset, nameIndex == visibleAnnotationsIndex);
+                } else if (nameIndex == deprecatedIndex) {
+                    attributeAccess |= Opcodes.ACC_DEPRECATED;
+                } else if (nameIndex == syntheticIndex) {
+                    attributeAccess |= Opcodes.ACC_SYNTHETIC;
+                } else if (nameIndex == recordIndex) {
+                    attributeAccess |= Opcodes.ACC_RECORD;
+                }
+                offset += length;
+            }
+            return offset;
+        }
+
+        private void parseAnnotations(int offset, final boolean visible) {
+            int count = readUnsignedShort(offset);
+            offset += 2;
+            for (int i = 0; i < count; ++i) {
+                String descriptor = readUtf8(readUnsignedShort(offset));
+                offset += 2;
+                if (descriptors == null || descriptors.contains(descriptor)) {
+                    AnnotationNodeEx annotation = new AnnotationNodeEx(descriptor, visible);
+                    if (annotations == null) {
+                        annotations = new LinkedHashMap<>(2);
+                    }
+                    annotations.put(descriptor, annotation);
+                    offset = readElementValues(annotation, offset, true);
+                } else {
+                    offset = readElementValues(null, offset, true);
+                }
+            }
+        }
+
+        /**
+         * Reads the element values of an annotation or of an array, as {@link
+         * org.objectweb.asm.ClassReader} does.
+         *
+         * @param annotationVisitor the visitor of the values, or {@literal null} to skip them.
+         * @param offset            the offset of the number of values.
+         * @param named             whether the values are named, i.e. are the values of an annotation.
+         * @return the offset of the end of the values.
+         */
+        private int readElementValues(final AnnotationVisitor annotationVisitor, int offset, final boolean named) {
+            int count = readUnsignedShort(offset);
+            offset += 2;
+            for (int i = 0; i < count; ++i) {
+                String name = null;
+                if (named) {
+                    name = readUtf8(readUnsignedShort(offset));
+                    offset += 2;
+                }
+                offset = readElementValue(annotationVisitor, offset, name);
+            }
+            if (annotationVisitor != null) {
+                annotationVisitor.visitEnd();
+            }
+            return offset;
+        }
+
+        private int readElementValue(final AnnotationVisitor annotationVisitor, int offset, final String name) {
+            int tag = b[offset++] & 0xFF;
+            if (annotationVisitor == null) {
+                switch (tag) {
+                    case 'e':
+                        return offset + 4;
+                    case '@':
+                        return readElementValues(null, offset + 2, true);
+                    case '[':
+                        return readElementValues(null, offset, false);
+                    default:
+                        return offset + 2;
+                }
+            }
+            switch (tag) {
+                case 'B':
+                    annotationVisitor.visit(name, (byte) readInt(cpOffsets[readUnsignedShort(offset)]));
+                    return offset + 2;
+                case 'C':
+                    annotationVisitor.visit(name, (char) readInt(cpOffsets[readUnsignedShort(offset)]));
+                    return offset + 2;
+                case 'S':
+                    annotationVisitor.visit(name, (short) readInt(cpOffsets[readUnsignedShort(offset)]));
+                    return offset + 2;
+                case 'Z':
+                    annotationVisitor.visit(name, readInt(cpOffsets[readUnsignedShort(offset)]) != 0);
+                    return offset + 2;
+                case 'I':
+                    annotationVisitor.visit(name, readInt(cpOffsets[readUnsignedShort(offset)]));
+                    return offset + 2;
+                case 'J':
+                    annotationVisitor.visit(name, readLong(cpOffsets[readUnsignedShort(offset)]));
+                    return offset + 2;
+                case 'F':
+                    annotationVisitor.visit(name, Float.intBitsToFloat(readInt(cpOffsets[readUnsignedShort(offset)])));
+                    return offset + 2;
+                case 'D':
+                    annotationVisitor.visit(name, Double.longBitsToDouble(readLong(cpOffsets[readUnsignedShort(offset)])));
+                    return offset + 2;
+                case 's':
+                    annotationVisitor.visit(name, readUtf8(readUnsignedShort(offset)));
+                    return offset + 2;
+                case 'c':
+                    annotationVisitor.visit(name, Type.getType(readUtf8(readUnsignedShort(offset))));
+                    return offset + 2;
+                case 'e':
+                    annotationVisitor.visitEnum(
+                            name, readUtf8(readUnsignedShort(offset)), readUtf8(readUnsignedShort(offset + 2)));
+                    return offset + 4;
+                case '@':
+                    return readElementValues(
+                            annotationVisitor.visitAnnotation(name, readUtf8(readUnsignedShort(offset))), offset + 2, true);
+                case '[':
+                    return readArrayValue(annotationVisitor, offset, name);
+                default:
+                    throw new IllegalArgumentException("Unknown element value tag " + (char) tag);
+            }
+        }
+
+        /**
+         * Reads an array element value. Like {@link org.objectweb.asm.ClassReader}, arrays of
+         * primitive values are visited as primitive arrays.
+         */
+        private int readArrayValue(final AnnotationVisitor annotationVisitor, int offset, final String name) {
+            int count = readUnsignedShort(offset);
+            if (count == 0) {
+                return readElementValues(annotationVisitor.visitArray(name), offset, false);
+            }
+            int valuesOffset = offset + 2;
+            switch (b[valuesOffset] & 0xFF) {
+                case 'B':
+                    byte[] byteValues = new byte[count];
+                    for (int i = 0; i < count; ++i) {
+                        byteValues[i] = (byte) readInt(cpOffsets[readUnsignedShort(valuesOffset + 3 * i + 1)]);
+                    }
+                    annotationVisitor.visit(name, byteValues);
+                    break;
+                case 'Z':
+                    boolean[] booleanValues = new boolean[count];
+                    for (int i = 0; i < count; ++i) {
+                        booleanValues[i] = readInt(cpOffsets[readUnsignedShort(valuesOffset + 3 * i + 1)]) != 0;
+                    }
+                    annotationVisitor.visit(name, booleanValues);
+                    break;
+                case 'S':
+                    short[] shortValues = new short[count];
+                    for (int i = 0; i < count; ++i) {
+                        shortValues[i] = (short) readInt(cpOffsets[readUnsignedShort(valuesOffset + 3 * i + 1)]);
+                    }
+                    annotationVisitor.visit(name, shortValues);
+                    break;
+                case 'C':
+                    char[] charValues = new char[count];
+                    for (int i = 0; i < count; ++i) {
+                        charValues[i] = (char) readInt(cpOffsets[readUnsignedShort(valuesOffset + 3 * i + 1)]);
+                    }
+                    annotationVisitor.visit(name, charValues);
+                    break;
+                case 'I':
+                    int[] intValues = new int[count];
+                    for (int i = 0; i < count; ++i) {
+                        intValues[i] = readInt(cpOffsets[readUnsignedShort(valuesOffset + 3 * i + 1)]);
+                    }
+                    annotationVisitor.visit(name, intValues);
+                    break;
+                case 'J':
+                    long[] longValues = new long[count];
+                    for (int i = 0; i < count; ++i) {
+                        longValues[i] = readLong(cpOffsets[readUnsignedShort(valuesOffset + 3 * i + 1)]);
+                    }
+                    annotationVisitor.visit(name, longValues);
+                    break;
+                case 'F':
+                    float[] floatValues = new float[count];
+                    for (int i = 0; i < count; ++i) {
+                        floatValues[i] =
+                                Float.intBitsToFloat(readInt(cpOffsets[readUnsignedShort(valuesOffset + 3 * i + 1)]));
+                    }
+                    annotationVisitor.visit(name, floatValues);
+                    break;
+                case 'D':
+                    double[] doubleValues = new double[count];
+                    for (int i = 0; i < count; ++i) {
+                        doubleValues[i] =
+                                Double.longBitsToDouble(readLong(cpOffsets[readUnsignedShort(valuesOffset + 3 * i + 1)]));
+                    }
+                    annotationVisitor.visit(name, doubleValues);
+                    break;
+                default:
+                    return readElementValues(annotationVisitor.visitArray(name), offset, false);
+            }
+            return valuesOffset + 3 * count;
+        }
+
+        private int readUnsignedShort(final int offset) {
+            return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+        }
+
+        private int readInt(final int offset) {
+            return ((b[offset] & 0xFF) << 24)
+                    | ((b[offset + 1] & 0xFF) << 16)
+                    | ((b[offset + 2] & 0xFF) << 8)
+                    | (b[offset + 3] & 0xFF);
+        }
+
+        private long readLong(final int offset) {
+            return ((long) readInt(offset) << 32) | (readInt(offset + 4) & 0xFFFFFFFFL);
+        }
+
+        private String readClass(final int index) {
+            return index == 0 ? null : readUtf8(readUnsignedShort(cpOffsets[index]));
+        }
+
+        /**
+         * Decodes a CONSTANT_Utf8 entry, in the modified UTF-8 format of class files.
+         */
+        private String readUtf8(final int index) {
+            String value = utf8s[index];
+            if (value != null) {
+                return value;
+            }
+            int offset = cpOffsets[index];
+            int end = offset + 2 + readUnsignedShort(offset);
+            char[] chars = charBuffer;
+            int length = 0;
+            for (int i = offset + 2; i < end; ) {
+                int c = b[i++];
+                if ((c & 0x80) == 0) {
+                    chars[length++] = (char) (c & 0x7F);
+                } else if ((c & 0xE0) == 0xC0) {
+                    chars[length++] = (char) (((c & 0x1F) << 6) | (b[i++] & 0x3F));
+                } else {
+                    chars[length++] = (char) (((c & 0xF) << 12) | ((b[i++] & 0x3F) << 6) | (b[i++] & 0x3F));
+                }
+            }
+            value = Util.intern(stringInterner, new String(chars, 0, length));
+            utf8s[index] = value;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the super class and interfaces of a set of classes, used to compute the common super
+ * class of two classes without loading them, see {@link HierarchyClassWriter}. The classes are
+ * added from {@link ClassNodeEx} trees, from the headers of the class files of a {@link ClassInput},
+ * or are read on demand from the class file resources of a {@link ClassLoader}. The common super
+ * classes are memoized. This class is thread safe.
+ */
+public class ClassHierarchy {
+
+    /**
+     * The class loader used to read the class files of the classes that were not added, or {@literal
+     * null}.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * The known classes, by internal name.
+     */
+    private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+
+    /**
+     * The memoized common super classes, by internal names of the two classes.
+     */
+    private final Map<String, Map<String, String>> commonSuperClasses = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new {@link ClassHierarchy} that reads the classes that were not added from the
+     * resources of the system class loader, which include the classes of the JDK.
+     */
+    public ClassHierarchy() {
+        this(ClassLoader.getSystemClassLoader());
+    }
+
+    /**
+     * Constructs a new {@link ClassHierarchy}.
+     *
+     * @param classLoader the class loader used to read the class files of the classes that were not
+     *                    added, or {@literal null} to only use the added classes. The classes are not loaded,
+     *                    only their class file is read.
+     */
+    public ClassHierarchy(final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Adds a class to this hierarchy. If a class with the same name was already added, it is kept.
+     *
+     * @param access     the access flags of the class.
+     * @param name       the internal name of the class.
+     * @param superName  the internal name of the super class, or {@literal null} for {@link Object}.
+     * @param interfaces the internal names of the interfaces of the class. May be {@literal null}.
+     */
+    public void addClass(final int access, final String name, final String superName, final String[] interfaces) {
+        if (classes.putIfAbsent(name, new ClassInfo(access, name, superName, interfaces)) == null) {
+            commonSuperClasses.clear();
+        }
+    }
+
+    /**
+     * Adds a class to this hierarchy.
+     *
+     * @param classNode the class to add.
+     */
+    public void addClass(final ClassNodeEx classNode) {
+        addClass(classNode.access, classNode.name, classNode.superName, classNode.interfaces.toArray(new String[0]));
+    }
+
+    /**
+     * Adds a class to this hierarchy, replacing the class with the same name if it has another
+     * header, for instance if it was read from the class loader.
+     *
+     * @param classNode the class to add.
+     */
+    void putClass(final ClassNodeEx classNode) {
+        ClassInfo classInfo = new ClassInfo(
+                classNode.access, classNode.name, classNode.superName, classNode.interfaces.toArray(new String[0]));
+        ClassInfo previous = classes.put(classNode.name, classInfo);
+        if (previous == null || !previous.hasHeader(classInfo)) {
+            commonSuperClasses.clear();
+        }
+    }
+
+    /**
+     * Adds the given classes to this hierarchy, for instance the classes of a {@link ClassRepository}.
+     *
+     * @param classNodes the classes to add.
+     */
+    public void addClasses(final Iterable<ClassNodeEx> classNodes) {
+        for (ClassNodeEx classNode : classNodes) {
+            addClass(classNode);
+        }
+    }
+
+    /**
+     * Adds the classes of a jar file or class directory to this hierarchy. Only the header of each
+     * class file is parsed.
+     *
+     * @param input the input to read the classes from.
+     * @throws IOException if the classes cannot be read.
+     */
+    public void addClasses(final ClassInput input) throws IOException {
+        for (ClassInput.Entry entry : input.getEntries()) {
+            if (entry.isClassFile()) {
+                byte[] classFile = entry.read();
+                ClassInfo classInfo = ClassInfo.read(classFile);
+                if (classes.putIfAbsent(classInfo.name, classInfo) == null) {
+                    commonSuperClasses.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the classes from this hierarchy, including the ones read from the class loader.
+     */
+    void clear() {
+        classes.clear();
+        commonSuperClasses.clear();
+    }
+
+    public boolean contains(final String type) {
+        return getClassInfo(type, false) != null;
+    }
+
+    /**
+     * Returns the internal name of the super class of the given class.
+     *
+     * @param type the internal name of a class.
+     * @return the internal name of the super class of the given class, or {@literal null} for {@link
+     * Object}.
+     * @throws TypeNotPresentException if the class is unknown.
+     */
+    public String getSuperName(final String type) {
+        return getClassInfo(type, true).superName;
+    }
+
+    /**
+     * Returns the internal names of the interfaces directly implemented by the given class.
+     *
+     * @param type the internal name of a class.
+     * @return the internal names of the interfaces of the given class.
+     * @throws TypeNotPresentException if the class is unknown.
+     */
+    public String[] getInterfaces(final String type) {
+        return getClassInfo(type, true).interfaces.clone();
+    }
+
+    /**
+     * @param type the internal name of a class.
+     * @return whether the given class is an interface.
+     * @throws TypeNotPresentException if the class is unknown.
+     */
+    public boolean isInterface(final String type) {
+        return (getClassInfo(type, true).access & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * Returns whether a class is a sub type of another class, i.e. whether it extends or implements
+     * it, directly or indirectly, or is equal to it.
+     *
+     * @param type    the internal name of a class.
+     * @param subType the internal name of the class that may be a sub type of the first one.
+     * @return whether {@code subType} is assignable to {@code type}.
+     * @throws TypeNotPresentException if a class of the hierarchy of {@code subType} is unknown.
+     */
+    public boolean isAssignableFrom(final String type, final String subType) {
+        if (type.equals(subType) || "java/lang/Object".equals(type)) {
+            return true;
+        }
+        ClassInfo classInfo = getClassInfo(subType, true);
+        for (String interfaceName : classInfo.interfaces) {
+            if (isAssignableFrom(type, interfaceName)) {
+                return true;
+            }
+        }
+        return classInfo.superName != null && isAssignableFrom(type, classInfo.superName);
+    }
+
+    /**
+     * Returns the common super class of the two given classes, with the same semantics as {@link
+     * org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}, but without loading any
+     * class. The result is memoized.
+     *
+     * @param type1 the internal name of a class.
+     * @param type2 the internal name of another class.
+     * @return the internal name of the common super class of the two given classes.
+     * @throws TypeNotPresentException if a class of the hierarchy of the given classes is unknown.
+     */
+    public String getCommonSuperClass(final String type1, final String type2) {
+        // The result does not depend on the order of the two types, see computeCommonSuperClass.
+        String key1 = type1.compareTo(type2) <= 0 ? type1 : type2;
+        String key2 = key1 == type1 ? type2 : type1;
+        Map<String, String> results = commonSuperClasses.get(key1);
+        if (results == null) {
+            results = commonSuperClasses.computeIfAbsent(key1, key -> new ConcurrentHashMap<>());
+        }
+        String result = results.get(key2);
+        if (result == null) {
+            result = computeCommonSuperClass(type1, type2);
+            results.put(key2, result);
+        }
+        return result;
+    }
+
+    private String computeCommonSuperClass(final String type1, final String type2) {
+        if (isAssignableFrom(type1, type2)) {
+            return type1;
+        }
+        if (isAssignableFrom(type2, type1)) {
+            return type2;
+        }
+        if (isInterface(type1) || isInterface(type2)) {
+            return "java/lang/Object";
+        }
+        String type = type1;
+        do {
+            type = getSuperName(type);
+            if (type == null) {
+                return "java/lang/Object";
+            }
+        } while (!isAssignableFrom(type, type2));
+        return type;
+    }
+
+    private ClassInfo getClassInfo(final String type, final boolean required) {
+        ClassInfo classInfo = classes.get(type);
+        if (classInfo == null && classLoader != null) {
+            classInfo = readClassInfo(type);
+        }
+        if (classInfo == null && required) {
+            throw new TypeNotPresentException(type, null);
+        }
+        return classInfo;
+    }
+
+    private ClassInfo readClassInfo(final String type) {
+        try (InputStream inputStream = classLoader.getResourceAsStream(type + ".class")) {
+            if (inputStream == null) {
+                return null;
+            }
+            ClassInfo classInfo = ClassInfo.read(Util.readAllBytes(inputStream, -1));
+            ClassInfo previous = classes.putIfAbsent(type, classInfo);
+            return previous != null ? previous : classInfo;
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+            throw new TypeNotPresentException(type, e);
+        }
+    }
+
+    private static final class ClassInfo {
+        final int access;
+        final String name;
+        final String superName;
+        final String[] interfaces;
+
+        ClassInfo(final int access, final String name, final String superName, final String[] interfaces) {
+            this.access = access;
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces == null ? new String[0] : interfaces;
+        }
+
+        boolean hasHeader(final ClassInfo classInfo) {
+            return access == classInfo.access
+                    && Objects.equals(superName, classInfo.superName)
+                    && Arrays.equals(interfaces, classInfo.interfaces);
+        }
+
+        /**
+         * Reads the header of a class file. Unlike {@link ClassReader}, the class file version is not
+         * checked, since the header format does not depend on it.
+         */
+        static ClassInfo read(final byte[] classFile) {
+            ByteBuffer buffer = ByteBuffer.wrap(classFile);
+            if (buffer.getInt() != 0xCAFEBABE) {
+                throw new IllegalArgumentException("Not a class file");
+            }
+            buffer.position(8);
+            int constantPoolCount = buffer.getShort() & 0xFFFF;
+            int[] offsets = new int[constantPoolCount];
+            for (int i = 1; i < constantPoolCount; ++i) {
+                offsets[i] = buffer.position() + 1;
+                int tag = buffer.get();
+                switch (tag) {
+                    case 1: // CONSTANT_Utf8
+                        buffer.position(buffer.position() + 2 + (buffer.getShort() & 0xFFFF));
+                        break;
+                    case 3: // CONSTANT_Integer
+                    case 4: // CONSTANT_Float
+                    case 9: // CONSTANT_Fieldref
+                    case 10: // CONSTANT_Methodref
+                    case 11: // CONSTANT_InterfaceMethodref
+                    case 12: // CONSTANT_NameAndType
+                    case 17: // CONSTANT_Dynamic
+                    case 18: // CONSTANT_InvokeDynamic
+                        buffer.position(buffer.position() + 4);
+                        break;
+                    case 5: // CONSTANT_Long
+                    case 6: // CONSTANT_Double
+                        buffer.position(buffer.position() + 8);
+                        ++i;
+                        break;
+                    case 7: // CONSTANT_Class
+                    case 8: // CONSTANT_String
+                    case 16: // CONSTANT_MethodType
+                    case 19: // CONSTANT_Module
+                    case 20: // CONSTANT_Package
+                        buffer.position(buffer.position() + 2);
+                        break;
+                    case 15: // CONSTANT_MethodHandle
+                        buffer.position(buffer.position() + 3);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+                }
+            }
+            int access = buffer.getShort() & 0xFFFF;
+            String name = readClass(classFile, offsets, buffer.getShort() & 0xFFFF);
+            String superName = readClass(classFile, offsets, buffer.getShort() & 0xFFFF);
+            String[] interfaces = new String[buffer.getShort() & 0xFFFF];
+            for (int i = 0; i < interfaces.length; ++i) {
+                interfaces[i] = readClass(classFile, offsets, buffer.getShort() & 0xFFFF);
+            }
+            return new ClassInfo(access, name, superName, interfaces);
+        }
+
+        private static String readClass(final byte[] classFile, final int[] offsets, final int index) {
+            if (index == 0) {
+                return null;
+            }
+            int utf8Offset = offsets[((classFile[offsets[index]] & 0xFF) << 8) | (classFile[offsets[index] + 1] & 0xFF)];
+            int length = ((classFile[utf8Offset] & 0xFF) << 8) | (classFile[utf8Offset + 1] & 0xFF);
+            try {
+                return new DataInputStream(new ByteArrayInputStream(classFile, utf8Offset, length + 2)).readUTF();
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,638 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An index of the classes of a jar file: the annotated classes, fields and methods by annotation
+ * descriptor, and the super class, interfaces and members of each class. An index is built from
+ * {@link ClassNodeEx} trees, and can be stored in a compact file next to its jar file, see {@link
+ * #load(Path)}, so that it can be queried without parsing the classes again. An index file is
+ * validated by the size and the CRC32 checksum of its jar file.
+ *
+ * <p>The index is stored as a string table and as arrays of string indices, which are queried in
+ * place. This class is immutable, and thus thread safe.
+ */
+public final class ClassIndex {
+
+    private static final int MAGIC = 0x43494458;
+    private static final int VERSION = 1;
+
+    /**
+     * The suffix added to the name of a jar file to get the name of its index file.
+     */
+    public static final String FILE_SUFFIX = ".index";
+
+    /**
+     * The kinds of the indexed elements.
+     */
+    public enum Kind {
+        CLASS, FIELD, METHOD
+    }
+
+    private final String[] strings;
+
+    // The classes, by class index. The strings are string indices, -1 standing for null.
+    private final int[] classNames;
+    private final int[] classAccesses;
+    private final int[] superNames;
+    /**
+     * The start of the interfaces of each class in {@link #interfaces}, plus the end of the last one.
+     */
+    private final int[] interfaceStarts;
+    private final int[] interfaces;
+
+    // The members, by member index, grouped by class: the fields, then the methods.
+    /**
+     * The start of the members of each class, plus the end of the last one.
+     */
+    private final int[] memberStarts;
+    private final byte[] memberKinds;
+    private final int[] memberAccesses;
+    private final int[] memberNames;
+    private final int[] memberDescs;
+    private final int[] memberClasses;
+
+    /**
+     * The annotated elements, by string index of the annotation descriptor. Each element is a member
+     * index, or the complement of a class index.
+     */
+    private final Map<Integer, int[]> annotatedElements;
+
+    private final Map<String, Integer> stringIndices;
+    private final Map<String, Integer> classIndices;
+
+    private ClassIndex(
+            final String[] strings,
+            final int[] classNames,
+            final int[] classAccesses,
+            final int[] superNames,
+            final int[] interfaceStarts,
+            final int[] interfaces,
+            final int[] memberStarts,
+            final byte[] memberKinds,
+            final int[] memberAccesses,
+            final int[] memberNames,
+            final int[] memberDescs,
+            final Map<Integer, int[]> annotatedElements) {
+        this.strings = strings;
+        this.classNames = classNames;
+        this.classAccesses = classAccesses;
+        this.superNames = superNames;
+        this.interfaceStarts = interfaceStarts;
+        this.interfaces = interfaces;
+        this.memberStarts = memberStarts;
+        this.memberKinds = memberKinds;
+        this.memberAccesses = memberAccesses;
+        this.memberNames = memberNames;
+        this.memberDescs = memberDescs;
+        this.annotatedElements = annotatedElements;
+        this.memberClasses = new int[memberNames.length];
+        for (int i = 0; i < classNames.length; ++i) {
+            Arrays.fill(memberClasses, memberStarts[i], memberStarts[i + 1], i);
+        }
+        this.stringIndices = new HashMap<>(strings.length * 2);
+        for (int i = 0; i < strings.length; ++i) {
+            stringIndices.put(strings[i], i);
+        }
+        this.classIndices = new HashMap<>(classNames.length * 2);
+        for (int i = 0; i < classNames.length; ++i) {
+            classIndices.putIfAbsent(strings[classNames[i]], i);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Building, reading and writing
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Builds the index of the given classes. Only the headers and the annotations of the classes and
+     * of their members are used, so the classes may be read with {@link ClassReader#SKIP_CODE}.
+     *
+     * @param classNodes the classes to index, for instance the classes of a {@link ClassRepository}.
+     * @return the index of the classes.
+     */
+    public static ClassIndex build(final Iterable<ClassNodeEx> classNodes) {
+        StringTable strings = new StringTable();
+        IntArray classNames = new IntArray();
+        IntArray classAccesses = new IntArray();
+        IntArray superNames = new IntArray();
+        IntArray interfaceStarts = new IntArray();
+        IntArray interfaces = new IntArray();
+        IntArray memberStarts = new IntArray();
+        ByteArrayOutputStream memberKinds = new ByteArrayOutputStream();
+        IntArray memberAccesses = new IntArray();
+        IntArray memberNames = new IntArray();
+        IntArray memberDescs = new IntArray();
+        Map<Integer, IntArray> annotatedElements = new LinkedHashMap<>();
+        for (ClassNodeEx classNode : classNodes) {
+            int classIndex = classNames.size;
+            classNames.add(strings.indexOf(classNode.name));
+            classAccesses.add(classNode.access);
+            superNames.add(strings.indexOf(classNode.superName));
+            interfaceStarts.add(interfaces.size);
+            for (String interfaceName : classNode.interfaces) {
+                interfaces.add(strings.indexOf(interfaceName));
+            }
+            addAnnotations(classNode.annotations, ~classIndex, strings, annotatedElements);
+            memberStarts.add(memberNames.size);
+            for (FieldNodeEx field : classNode.fields.values()) {
+                addAnnotations(field.annotations, memberNames.size, strings, annotatedElements);
+                memberKinds.write(Kind.FIELD.ordinal());
+                memberAccesses.add(field.access);
+                memberNames.add(strings.indexOf(field.name));
+                memberDescs.add(strings.indexOf(field.desc));
+            }
+            for (MethodNodeEx method : classNode.methods.values()) {
+                addAnnotations(method.annotations, memberNames.size, strings, annotatedElements);
+                memberKinds.write(Kind.METHOD.ordinal());
+                memberAccesses.add(method.access);
+                memberNames.add(strings.indexOf(method.name));
+                memberDescs.add(strings.indexOf(method.desc));
+            }
+        }
+        interfaceStarts.add(interfaces.size);
+        memberStarts.add(memberNames.size);
+        Map<Integer, int[]> elements = new HashMap<>(annotatedElements.size() * 2);
+        for (Map.Entry<Integer, IntArray> entry : annotatedElements.entrySet()) {
+            elements.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new ClassIndex(
+                strings.strings.toArray(new String[0]),
+                classNames.toArray(),
+                classAccesses.toArray(),
+                superNames.toArray(),
+                interfaceStarts.toArray(),
+                interfaces.toArray(),
+                memberStarts.toArray(),
+                memberKinds.toByteArray(),
+                memberAccesses.toArray(),
+                memberNames.toArray(),
+                memberDescs.toArray(),
+                elements);
+    }
+
+    private static void addAnnotations(
+            final Map<String, AnnotationNodeEx> annotations,
+            final int element,
+            final StringTable strings,
+            final Map<Integer, IntArray> annotatedElements) {
+        if (annotations == null) {
+            return;
+        }
+        for (String descriptor : annotations.keySet()) {
+            annotatedElements.computeIfAbsent(strings.indexOf(descriptor), key -> new IntArray()).add(element);
+        }
+    }
+
+    /**
+     * Returns the index of a jar file. The index is read from the index file next to the jar file,
+     * whose name is the name of the jar file followed by {@link #FILE_SUFFIX}, if it exists and if it
+     * was built from the same jar file content. Otherwise the classes of the jar file are parsed with
+     * {@link ClassReader#SKIP_CODE}, and the built index is written to the index file. Failures to
+     * write the index file are ignored. The index of a class directory is always built, and is not
+     * stored.
+     *
+     * @param path the path of a jar file or of a class directory.
+     * @return the index of the classes of the jar file or directory.
+     * @throws IOException if the classes cannot be read.
+     */
+    public static ClassIndex load(final Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return build(parse(path));
+        }
+        Path indexFile = path.resolveSibling(path.getFileName() + FILE_SUFFIX);
+        long checksum = checksum(path);
+        if (Files.isRegularFile(indexFile)) {
+            ClassIndex index = read(indexFile, checksum);
+            if (index != null) {
+                return index;
+            }
+        }
+        ClassIndex index = build(parse(path));
+        try {
+            Path tempFile = Util.createTempFile(indexFile);
+            try {
+                index.write(tempFile, checksum);
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // The index file is only a cache.
+        }
+        return index;
+    }
+
+    private static ClassRepository parse(final Path path) throws IOException {
+        ClassRepository repository =
+                new ClassRepository(ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES, false);
+        repository.load(path);
+        return repository;
+    }
+
+    /**
+     * Computes the checksum of a file, which combines its size and its CRC32 checksum.
+     *
+     * @param file the path of a file.
+     * @return the checksum of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long checksum(final Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (size << 32) ^ crc.getValue();
+    }
+
+    /**
+     * Reads an index file.
+     *
+     * @param file     the path of the index file.
+     * @param checksum the expected checksum of the indexed jar file, see {@link #checksum(Path)}.
+     * @return the index, or {@literal null} if the index file was built from another jar file
+     * content, or by another version of this class, or is corrupted.
+     * @throws IOException if the index file cannot be read.
+     */
+    public static ClassIndex read(final Path file, final long checksum) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != checksum) {
+                return null;
+            }
+            String[] strings = new String[readVarint(buffer)];
+            char[] chars = new char[64];
+            for (int i = 0; i < strings.length; ++i) {
+                int length = readVarint(buffer);
+                if (chars.length < length) {
+                    chars = new char[Math.max(length, chars.length * 2)];
+                }
+                for (int j = 0; j < length; ++j) {
+                    chars[j] = (char) readVarint(buffer);
+                }
+                strings[i] = new String(chars, 0, length);
+            }
+            int classCount = readVarint(buffer);
+            int[] classNames = readVarints(buffer, classCount, -1);
+            int[] classAccesses = readVarints(buffer, classCount, 0);
+            int[] superNames = readVarints(buffer, classCount, -1);
+            int[] interfaceStarts = readVarints(buffer, classCount + 1, 0);
+            int[] interfaces = readVarints(buffer, interfaceStarts[classCount], 0);
+            int[] memberStarts = readVarints(buffer, classCount + 1, 0);
+            int memberCount = memberStarts[classCount];
+            byte[] memberKinds = new byte[memberCount];
+            buffer.get(memberKinds);
+            int[] memberAccesses = readVarints(buffer, memberCount, 0);
+            int[] memberNames = readVarints(buffer, memberCount, 0);
+            int[] memberDescs = readVarints(buffer, memberCount, 0);
+            int annotationCount = readVarint(buffer);
+            Map<Integer, int[]> annotatedElements = new HashMap<>(annotationCount * 2);
+            for (int i = 0; i < annotationCount; ++i) {
+                int descriptor = readVarint(buffer);
+                int[] elements = new int[readVarint(buffer)];
+                for (int j = 0; j < elements.length; ++j) {
+                    int element = readVarint(buffer);
+                    elements[j] = (element & 1) == 0 ? element >>> 1 : ~(element >>> 1);
+                }
+                annotatedElements.put(descriptor, elements);
+            }
+            if (buffer.hasRemaining()) {
+                return null;
+            }
+            return new ClassIndex(
+                    strings, classNames, classAccesses, superNames, interfaceStarts, interfaces,
+                    memberStarts, memberKinds, memberAccesses, memberNames, memberDescs, annotatedElements);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+                | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes this index to a file.
+     *
+     * @param file     the path of the index file.
+     * @param checksum the checksum of the indexed jar file, see {@link #checksum(Path)}.
+     * @throws IOException if the index file cannot be written.
+     */
+    public void write(final Path file, final long checksum) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(checksum);
+        writeVarint(output, strings.length);
+        for (String string : strings) {
+            writeVarint(output, string.length());
+            for (int i = 0; i < string.length(); ++i) {
+                writeVarint(output, string.charAt(i));
+            }
+        }
+        writeVarint(output, classNames.length);
+        writeVarints(output, classNames, -1);
+        writeVarints(output, classAccesses, 0);
+        writeVarints(output, superNames, -1);
+        writeVarints(output, interfaceStarts, 0);
+        writeVarints(output, interfaces, 0);
+        writeVarints(output, memberStarts, 0);
+        output.write(memberKinds);
+        writeVarints(output, memberAccesses, 0);
+        writeVarints(output, memberNames, 0);
+        writeVarints(output, memberDescs, 0);
+        writeVarint(output, annotatedElements.size());
+        for (Map.Entry<Integer, int[]> entry : annotatedElements.entrySet()) {
+            writeVarint(output, entry.getKey());
+            writeVarint(output, entry.getValue().length);
+            for (int element : entry.getValue()) {
+                // Members are written as even numbers, and classes as odd numbers.
+                writeVarint(output, element >= 0 ? element << 1 : (~element << 1) | 1);
+            }
+        }
+        output.flush();
+        Files.write(file, bytes.toByteArray());
+    }
+
+    /**
+     * Writes unsigned varints. The values are offset by {@code -min}, so that they are positive.
+     */
+    private static void writeVarints(final DataOutputStream output, final int[] values, final int min) throws IOException {
+        for (int value : values) {
+            writeVarint(output, value - min);
+        }
+    }
+
+    private static void writeVarint(final DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int[] readVarints(final ByteBuffer buffer, final int count, final int min) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = readVarint(buffer) + min;
+        }
+        return values;
+    }
+
+    private static int readVarint(final ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Queries
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the internal names of the indexed classes.
+     */
+    public List<String> getClassNames() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(final int index) {
+                return strings[classNames[index]];
+            }
+
+            @Override
+            public int size() {
+                return classNames.length;
+            }
+        };
+    }
+
+    public boolean contains(final String className) {
+        return classIndices.containsKey(className);
+    }
+
+    /**
+     * @param className the internal name of a class.
+     * @return the access flags of the given class, or -1 if it is not indexed.
+     */
+    public int getAccess(final String className) {
+        Integer classIndex = classIndices.get(className);
+        return classIndex == null ? -1 : classAccesses[classIndex];
+    }
+
+    /**
+     * @param className the internal name of a class.
+     * @return the internal name of the super class of the given class, or {@literal null} if it is
+     * {@link Object} or if the class is not indexed.
+     */
+    public String getSuperName(final String className) {
+        Integer classIndex = classIndices.get(className);
+        return classIndex == null ? null : getString(superNames[classIndex]);
+    }
+
+    /**
+     * @param className the internal name of a class.
+     * @return the internal names of the interfaces of the given class. Empty if the class is not
+     * indexed.
+     */
+    public List<String> getInterfaces(final String className) {
+        Integer classIndex = classIndices.get(className);
+        if (classIndex == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(interfaceStarts[classIndex + 1] - interfaceStarts[classIndex]);
+        for (int i = interfaceStarts[classIndex]; i < interfaceStarts[classIndex + 1]; ++i) {
+            result.add(strings[interfaces[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the indexed classes to a class hierarchy.
+     *
+     * @param classHierarchy a class hierarchy.
+     */
+    public void addTo(final ClassHierarchy classHierarchy) {
+        for (int i = 0; i < classNames.length; ++i) {
+            String[] interfaceNames = new String[interfaceStarts[i + 1] - interfaceStarts[i]];
+            for (int j = 0; j < interfaceNames.length; ++j) {
+                interfaceNames[j] = strings[interfaces[interfaceStarts[i] + j]];
+            }
+            classHierarchy.addClass(classAccesses[i], strings[classNames[i]], getString(superNames[i]), interfaceNames);
+        }
+    }
+
+    /**
+     * @param className the internal name of a class.
+     * @return the fields and methods of the given class, fields first, in declaration order. Empty if
+     * the class is not indexed.
+     */
+    public List<Element> getMembers(final String className) {
+        Integer classIndex = classIndices.get(className);
+        if (classIndex == null) {
+            return Collections.emptyList();
+        }
+        List<Element> result = new ArrayList<>(memberStarts[classIndex + 1] - memberStarts[classIndex]);
+        for (int i = memberStarts[classIndex]; i < memberStarts[classIndex + 1]; ++i) {
+            result.add(getElement(i));
+        }
+        return result;
+    }
+
+    /**
+     * @param descriptor the class descriptor of an annotation.
+     * @return the classes, fields and methods annotated with the given annotation, in the order of
+     * the classes. Empty if there are none.
+     */
+    public List<Element> getAnnotated(final String descriptor) {
+        Integer descriptorIndex = stringIndices.get(descriptor);
+        int[] elements = descriptorIndex == null ? null : annotatedElements.get(descriptorIndex);
+        if (elements == null) {
+            return Collections.emptyList();
+        }
+        List<Element> result = new ArrayList<>(elements.length);
+        for (int element : elements) {
+            result.add(getElement(element));
+        }
+        return result;
+    }
+
+    /**
+     * @param descriptor the class descriptor of an annotation.
+     * @return the internal names of the classes annotated with the given annotation.
+     */
+    public List<String> getAnnotatedClasses(final String descriptor) {
+        Integer descriptorIndex = stringIndices.get(descriptor);
+        int[] elements = descriptorIndex == null ? null : annotatedElements.get(descriptorIndex);
+        if (elements == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (int element : elements) {
+            if (element < 0) {
+                result.add(strings[classNames[~element]]);
+            }
+        }
+        return result;
+    }
+
+    private Element getElement(final int element) {
+        if (element < 0) {
+            int classIndex = ~element;
+            return new Element(Kind.CLASS, classAccesses[classIndex], strings[classNames[classIndex]], null, null);
+        }
+        return new Element(
+                memberKinds[element] == Kind.FIELD.ordinal() ? Kind.FIELD : Kind.METHOD,
+                memberAccesses[element],
+                strings[classNames[memberClasses[element]]],
+                strings[memberNames[element]],
+                strings[memberDescs[element]]);
+    }
+
+    private String getString(final int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    /**
+     * An indexed class, field or method.
+     */
+    public static final class Element {
+        public final Kind kind;
+        public final int access;
+
+        /**
+         * The internal name of the class, or of the class of the member.
+         */
+        public final String className;
+
+        /**
+         * The name of the member, or {@literal null} for a class.
+         */
+        public final String name;
+
+        /**
+         * The descriptor of the member, or {@literal null} for a class.
+         */
+        public final String desc;
+
+        Element(final Kind kind, final int access, final String className, final String name, final String desc) {
+            this.kind = kind;
+            this.access = access;
+            this.className = className;
+            this.name = name;
+            this.desc = desc;
+        }
+
+        @Override
+        public String toString() {
+            return kind == Kind.CLASS ? className : className + '.' + name + desc;
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Building
+    // -----------------------------------------------------------------------------------------------
+
+    private static final class StringTable {
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> indices = new HashMap<>();
+
+        int indexOf(final String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.add(value);
+                indices.put(value, index);
+            }
+            return index;
+        }
+    }
+
+    private static final class IntArray {
+        int[] data = new int[16];
+        int size;
+
+        void add(final int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.github.mouse0w0.asm.extree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * The entries of a jar file or of a class directory. Jar files are memory mapped: stored entries are
+ * copied from the mapping into a byte array of their exact size, and deflated entries are inflated
+ * directly into such an array with pooled {@link Inflater}s and input buffers. ZIP64 jar files are
+ * mapped too, but jar files larger than 2GB and encrypted jar files are read with a {@link ZipFile}
+ * instead. Entries can be read concurrently from several threads.
+ */
+public abstract class ClassInput implements Closeable {
+
+    /**
+     * The path of this input.
+     */
+    private final Path path;
+
+    ClassInput(final Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens a jar file or a class directory.
+     *
+     * @param path the path of a jar file or of a directory.
+     * @return the input of the jar file or directory.
+     * @throws IOException if the jar file or directory cannot be read.
+     */
+    public static ClassInput open(final Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new DirectoryInput(path);
+        }
+        MappedJarInput jarInput = MappedJarInput.map(path);
+        return jarInput != null ? jarInput : new ZipFileInput(path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the entries of this input, in the order of the jar file or in the order of their names
+     * for a directory. Directory entries are included, see {@link Entry#isDirectory()}.
+     *
+     * @return the entries of this input.
+     */
+    public abstract List<Entry> getEntries();
+
+    /**
+     * An entry of a {@link ClassInput}.
+     */
+    public abstract static class Entry {
+
+        /**
+         * The name of this entry, with '/' separators.
+         */
+        private final String name;
+
+        Entry(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns whether this entry is a class file, excluding the versioned classes of multi-release
+         * jar files.
+         *
+         * @return whether this entry is a class file.
+         */
+        public boolean isClassFile() {
+            return name.endsWith(".class") && !name.startsWith("META-INF/");
+        }
+
+        /**
+         * Returns whether this entry is a directory, whose name ends with '/' and whose content is
+         * empty.
+         *
+         * @return whether this entry is a directory.
+         */
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * Reads the content of this entry. This method can be called concurrently.
+         *
+         * @return the uncompressed content of this entry.
+         * @throws IOException if the entry cannot be read.
+         */
+        public abstract byte[] read() throws IOException;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Memory mapped jar files
+    // -----------------------------------------------------------------------------------------------
+
+    static final class MappedJarInput extends ClassInput {
+        private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+        private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+        private static final int END_HEADER_SIGNATURE = 0x06054b50;
+        private static final int ZIP64_END_HEADER_SIGNATURE = 0x06064b50;
+        private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+        private static final int END_HEADER_SIZE = 22;
+        private static final int ZIP64_LOCATOR_SIZE = 20;
+        private static final int ZIP64_EXTRA_ID = 0x0001;
+        private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+        private final ByteBuffer buffer;
+        private final List<Entry> entries;
+        private final Queue<InflaterBuffer> inflaters = new ConcurrentLinkedQueue<>();
+
+        private MappedJarInput(final Path path, final ByteBuffer buffer, final List<Entry> entries) {
+            super(path);
+            this.buffer = buffer;
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * Maps the given jar file.
+         *
+         * @return the mapped jar file, or {@literal null} if it cannot be mapped.
+         */
+        static MappedJarInput map(final Path path) throws IOException {
+            MappedByteBuffer mappedBuffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE || size < END_HEADER_SIZE) {
+                    return null;
+                }
+                mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = mappedBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            int endHeader = findEndHeader(buffer);
+            if (endHeader == -1) {
+                throw new ZipException("End of central directory not found in " + path);
+            }
+            long entryCount = buffer.getShort(endHeader + 10) & 0xFFFF;
+            long centralDirectoryOffset = buffer.getInt(endHeader + 16) & 0xFFFFFFFFL;
+            int locator = endHeader - ZIP64_LOCATOR_SIZE;
+            if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+                // ZIP64 jar file, whose entry count and central directory offset may not fit the end
+                // header.
+                long zip64EndHeader = buffer.getLong(locator + 8);
+                if (zip64EndHeader < 0 || zip64EndHeader > locator - 56
+                        || buffer.getInt((int) zip64EndHeader) != ZIP64_END_HEADER_SIGNATURE) {
+                    throw new ZipException("Invalid ZIP64 end of central directory in " + path);
+                }
+                entryCount = buffer.getLong((int) zip64EndHeader + 32);
+                centralDirectoryOffset = buffer.getLong((int) zip64EndHeader + 48);
+            }
+            if (centralDirectoryOffset < 0 || centralDirectoryOffset > endHeader
+                    || entryCount < 0 || entryCount > (endHeader - centralDirectoryOffset) / 46) {
+                throw new ZipException("Invalid end of central directory in " + path);
+            }
+            List<Entry> entries = new ArrayList<>((int) entryCount);
+            MappedJarInput input = new MappedJarInput(path, buffer, entries);
+            int offset = (int) centralDirectoryOffset;
+            for (long i = 0; i < entryCount; ++i) {
+                if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                    throw new ZipException("Invalid central directory header in " + path);
+                }
+                int flags = buffer.getShort(offset + 8) & 0xFFFF;
+                int method = buffer.getShort(offset + 10) & 0xFFFF;
+                int crc = buffer.getInt(offset + 16);
+                long compressedSize = buffer.getInt(offset + 20) & 0xFFFFFFFFL;
+                long size = buffer.getInt(offset + 24) & 0xFFFFFFFFL;
+                int nameLength = buffer.getShort(offset + 28) & 0xFFFF;
+                int extraLength = buffer.getShort(offset + 30) & 0xFFFF;
+                int commentLength = buffer.getShort(offset + 32) & 0xFFFF;
+                long localHeaderOffset = buffer.getInt(offset + 42) & 0xFFFFFFFFL;
+                if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                    // The ZIP64 extra field holds the values that do not fit the header, in this order.
+                    int field = findExtraField(buffer, offset + 46 + nameLength, extraLength, ZIP64_EXTRA_ID);
+                    if (field == -1) {
+                        throw new ZipException("Missing ZIP64 extra field in " + path);
+                    }
+                    int fieldEnd = field + 4 + (buffer.getShort(field + 2) & 0xFFFF);
+                    field += 4;
+                    if (size == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        size = buffer.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        compressedSize = buffer.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        localHeaderOffset = buffer.getLong(field);
+                    }
+                }
+                if ((flags & 1) != 0
+                        || (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)
+                        || size < 0 || size >= Integer.MAX_VALUE
+                        || compressedSize < 0 || compressedSize >= Integer.MAX_VALUE
+                        || localHeaderOffset < 0 || localHeaderOffset >= centralDirectoryOffset) {
+                    // Encrypted entry, unsupported compression method, or entry that cannot be mapped.
+                    return null;
+                }
+                String name = readString(buffer, offset + 46, nameLength);
+                entries.add(input.new MappedEntry(
+                        name, method, crc, (int) compressedSize, (int) size, (int) localHeaderOffset));
+                offset += 46 + nameLength + extraLength + commentLength;
+            }
+            return input;
+        }
+
+        private static int findEndHeader(final ByteBuffer buffer) {
+            int limit = Math.max(0, buffer.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+            for (int offset = buffer.limit() - END_HEADER_SIZE; offset >= limit; --offset) {
+                if (buffer.getInt(offset) == END_HEADER_SIGNATURE) {
+                    return offset;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the offset of the extra field with the given id in the given extra data, or -1.
+         */
+        private static int findExtraField(final ByteBuffer buffer, final int offset, final int length, final int id) {
+            int end = offset + length;
+            int field = offset;
+            while (field + 4 <= end) {
+                if ((buffer.getShort(field) & 0xFFFF) == id) {
+                    return field;
+                }
+                field += 4 + (buffer.getShort(field + 2) & 0xFFFF);
+            }
+            return -1;
+        }
+
+        private static String readString(final ByteBuffer buffer, final int offset, final int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset);
+            slice.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        @Override
+        public void close() {
+            // The mapping itself is released when the buffer is garbage collected.
+            InflaterBuffer inflaterBuffer;
+            while ((inflaterBuffer = inflaters.poll()) != null) {
+                inflaterBuffer.inflater.end();
+            }
+        }
+
+        final class MappedEntry extends Entry {
+            final int method;
+            final int crc;
+            final int compressedSize;
+            final int size;
+            private final int localHeaderOffset;
+
+            MappedEntry(
+                    final String name,
+                    final int method,
+                    final int crc,
+                    final int compressedSize,
+                    final int size,
+                    final int localHeaderOffset) {
+                super(name);
+                this.method = method;
+                this.crc = crc;
+                this.compressedSize = compressedSize;
+                this.size = size;
+                this.localHeaderOffset = localHeaderOffset;
+            }
+
+            /**
+             * Returns a buffer positioned on the data of this entry, limited to its compressed size.
+             */
+            ByteBuffer getData() throws IOException {
+                if (buffer.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+                    throw new ZipException("Invalid local header for " + getName());
+                }
+                int nameLength = buffer.getShort(localHeaderOffset + 26) & 0xFFFF;
+                int extraLength = buffer.getShort(localHeaderOffset + 28) & 0xFFFF;
+                int dataOffset = localHeaderOffset + 30 + nameLength + extraLength;
+                ByteBuffer data = buffer.duplicate();
+                data.limit(dataOffset + compressedSize);
+                data.position(dataOffset);
+                return data;
+            }
+
+            @Override
+            public byte[] read() throws IOException {
+                ByteBuffer data = getData();
+                byte[] content = new byte[size];
+                if (method == ZipEntry.STORED) {
+                    data.get(content);
+                    return content;
+                }
+                InflaterBuffer inflaterBuffer = inflaters.poll();
+                if (inflaterBuffer == null) {
+                    inflaterBuffer = new InflaterBuffer();
+                }
+                try {
+                    inflaterBuffer.inflate(data, content);
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid deflated data for " + getName() + ": " + e.getMessage());
+                } finally {
+                    inflaterBuffer.inflater.reset();
+                    inflaters.offer(inflaterBuffer);
+                }
+                return content;
+            }
+        }
+    }
+
+    /**
+     * An {@link Inflater} with the buffer used to pass it its input.
+     */
+    private static final class InflaterBuffer {
+        final Inflater inflater = new Inflater(/* nowrap = */ true);
+        byte[] input = new byte[8192];
+
+        void inflate(final ByteBuffer data, final byte[] output) throws DataFormatException, ZipException {
+            int length = data.remaining();
+            // The inflater needs an extra dummy byte in nowrap mode.
+            if (input.length < length + 1) {
+                input = new byte[Math.max(length + 1, input.length * 2)];
+            }
+            data.get(input, 0, length);
+            input[length] = 0;
+            inflater.setInput(input, 0, length + 1);
+            int outputLength = 0;
+            while (outputLength < output.length) {
+                int inflated = inflater.inflate(output, outputLength, output.length - outputLength);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                outputLength += inflated;
+            }
+            if (outputLength != output.length) {
+                throw new ZipException("Unexpected end of deflated data");
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Jar files read with a ZipFile
+    // -----------------------------------------------------------------------------------------------
+
+    static final class ZipFileInput extends ClassInput {
+        private final ZipFile zipFile;
+        private final List<Entry> entries;
+
+        ZipFileInput(final Path path) throws IOException {
+            super(path);
+            this.zipFile = new ZipFile(path.toFile());
+            List<Entry> entries = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+                final ZipEntry zipEntry = e.nextElement();
+                entries.add(new Entry(zipEntry.getName()) {
+                    @Override
+                    public byte[] read() throws IOException {
+                        try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                            return Util.readAllBytes(inputStream, (int) zipEntry.getSize());
+                        }
+                    }
+                });
+            }
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        @Override
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        @Override
+        public void close() throws IOException {
+            zipFile.close();
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Class directories
+    // -----------------------------------------------------------------------------------------------
+
+    static final class DirectoryInput extends ClassInput {
+        private final List<Entry> entries;
+
+        DirectoryInput(final Path path) throws IOException {
+            super(path);
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(path)) {
+                files = stream.filter(file -> !file.equals(path)).collect(Collectors.toList());
+            }
+            List<Entry> entries = new ArrayList<>(files.size());
+            for (final Path file : files) {
+                String name = path.relativize(file).toString().replace('\\', '/');
+                if (Files.isDirectory(file)) {
+                    entries.add(new Entry(name + "/") {
+                        @Override
+                        public byte[] read() {
+                            return new byte[0];
+                        }
+                    });
+                } else if (Files.isRegularFile(file)) {
+                    entries.add(new Entry(name) {
+                        @Override
+                        public byte[] read() throws IOException {
+                            return readFile(file);
+                        }
+                    });
+                }
+            }
+            entries.sort(Comparator.comparing(Entry::getName));
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * Reads a file through its channel directly into an array of its size.
+         */
+        private static byte[] readFile(final Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("File too large: " + file);
+                }
+                byte[] content = new byte[(int) size];
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) == -1) {
+                        return Arrays.copyOf(content, buffer.position());
+                    }
+                }
+                return content;
+            }
+        }
+
+        @Override
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to do.
+        }
+    }
+}
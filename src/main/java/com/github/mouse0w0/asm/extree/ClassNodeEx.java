@@ -8,6 +8,7 @@ import org.objectweb.asm.tree.RecordComponentNode;
 import org.objectweb.asm.tree.UnsupportedClassVersionException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -125,10 +126,71 @@ public class ClassNodeEx extends ClassVisitor {
     public Map<String, FieldNodeEx> fields;
 
     /**
-     * The methods of this class.
+     * The methods of this class. By default a map that supports the lookups of {@link
+     * #getMethod(String, String)} and {@link #getMethods(String)} without allocation.
      */
     public Map<Method, MethodNodeEx> methods;
 
+    /**
+     * The class reader this class was read from, or {@literal null}. Used to copy the unchanged
+     * members of this class as is, see {@link #accept(ClassVisitor)}.
+     */
+    private ClassReader sourceClassReader;
+
+    /**
+     * The parsing options used with {@link #sourceClassReader}.
+     */
+    private int sourceParsingOptions;
+
+    /**
+     * The state of the current read operation, one of {@link #READ_NONE}, {@link #READ_EAGER} or {@link
+     * #READ_LAZY}.
+     */
+    private int readState;
+
+    /**
+     * The index of the next visited field in the class file read by {@link #sourceClassReader}.
+     */
+    private int sourceFieldIndex;
+
+    /**
+     * The index of the next visited method in the class file read by {@link #sourceClassReader}.
+     */
+    private int sourceMethodIndex;
+
+    /**
+     * The filter of the visited fields and methods, or {@literal null}.
+     */
+    private MemberFilter memberFilter;
+
+    /**
+     * The interner of the names, descriptors and signatures of the visited nodes, or {@literal null}.
+     */
+    private StringInterner stringInterner;
+
+    /**
+     * Whether the content hashes of the members are computed when this class is read, see {@link
+     * #setHashingOnRead(boolean)}.
+     */
+    private boolean hashingOnRead;
+
+    /**
+     * The fields and methods of the previous class visited by this node, which can be reused for the
+     * next visited class, or {@literal null}. See {@link #reset()}.
+     */
+    private List<FieldNodeEx> recycledFields;
+
+    private List<MethodNodeEx> recycledMethods;
+
+    /**
+     * The listener of the operations on the trees, or {@literal null}.
+     */
+    static volatile TreeListener treeListener;
+
+    private static final int READ_NONE = 0;
+    private static final int READ_EAGER = 1;
+    private static final int READ_LAZY = 2;
+
     /**
      * Constructs a new {@link org.objectweb.asm.tree.ClassNode}. <i>Subclasses must not use this constructor</i>. Instead,
      * they must use the {@link #ClassNodeEx(int)} version.
@@ -151,7 +213,85 @@ public class ClassNodeEx extends ClassVisitor {
         this.interfaces = new ArrayList<>();
         this.innerClasses = new ArrayList<>();
         this.fields = new LinkedHashMap<>();
-        this.methods = new LinkedHashMap<>();
+        this.methods = new MethodMap();
+    }
+
+    /**
+     * Clears this class, so that another class can be visited by this node. The interfaces, inner
+     * classes, fields and methods collections are cleared rather than reallocated, and keep their
+     * capacity. The field and method nodes of this class are reused for the fields and methods of
+     * the next visited class, with their instruction lists, try catch blocks and local variables.
+     * Hence the nodes of this class, including its fields and methods, must not be used after this
+     * method is called. The member filter, the string interner and {@link #isHashingOnRead()} are
+     * kept.
+     */
+    public void reset() {
+        version = 0;
+        access = 0;
+        name = null;
+        signature = null;
+        superName = null;
+        interfaces.clear();
+        sourceFile = null;
+        sourceDebug = null;
+        module = null;
+        outerClass = null;
+        outerMethod = null;
+        outerMethodDesc = null;
+        annotations = null;
+        typeAnnotations = null;
+        attrs = null;
+        innerClasses.clear();
+        nestHostClass = null;
+        nestMembers = null;
+        permittedSubtypesExperimental = null;
+        recordComponents = null;
+        for (FieldNodeEx field : fields.values()) {
+            if (field.getClass() == FieldNodeEx.class) {
+                field.reset(0, null, null, null, null);
+                recycledFields = Util.add(recycledFields, field);
+            }
+        }
+        fields.clear();
+        for (MethodNodeEx method : methods.values()) {
+            if (method.getClass() == MethodNodeEx.class) {
+                method.reset(0, null, null, null, null);
+                recycledMethods = Util.add(recycledMethods, method);
+            }
+        }
+        methods.clear();
+        sourceClassReader = null;
+        sourceParsingOptions = 0;
+        sourceFieldIndex = 0;
+        sourceMethodIndex = 0;
+    }
+
+    private FieldNodeEx newField(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final Object value) {
+        if (recycledFields == null || recycledFields.isEmpty()) {
+            return new FieldNodeEx(access, name, descriptor, signature, value);
+        }
+        FieldNodeEx field = recycledFields.remove(recycledFields.size() - 1);
+        field.reset(access, name, descriptor, signature, value);
+        return field;
+    }
+
+    private MethodNodeEx newMethod(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final String[] exceptions) {
+        if (recycledMethods == null || recycledMethods.isEmpty()) {
+            return new MethodNodeEx(access, name, descriptor, signature, exceptions);
+        }
+        MethodNodeEx method = recycledMethods.remove(recycledMethods.size() - 1);
+        method.reset(access, name, descriptor, signature, exceptions);
+        return method;
     }
 
     public AnnotationNodeEx getAnnotation(String descriptor) {
@@ -188,8 +328,275 @@ public class ClassNodeEx extends ClassVisitor {
         return methods.get(method);
     }
 
+    /**
+     * Returns the method with the given name and descriptor. Does not allocate, unless {@link
+     * #methods} was replaced by another map.
+     *
+     * @param name       the name of the method.
+     * @param descriptor the descriptor of the method.
+     * @return the method, or {@literal null}.
+     */
+    public MethodNodeEx getMethod(String name, String descriptor) {
+        if (methods instanceof MethodMap) {
+            return ((MethodMap) methods).get(name, descriptor);
+        }
+        return methods.get(new Method(name, descriptor));
+    }
+
+    /**
+     * Returns the methods with the given name, in declaration order.
+     *
+     * @param name the name of the methods.
+     * @return the methods with the given name. May be empty.
+     */
+    public List<MethodNodeEx> getMethods(String name) {
+        if (methods instanceof MethodMap) {
+            return ((MethodMap) methods).getAll(name);
+        }
+        List<MethodNodeEx> result = new ArrayList<>(2);
+        for (MethodNodeEx method : methods.values()) {
+            if (method.name.equals(name)) {
+                result.add(method);
+            }
+        }
+        return result;
+    }
+
     public void addMethod(MethodNodeEx method) {
-        methods.put(new Method(method.name, method.desc), method);
+        if (methods instanceof MethodMap) {
+            ((MethodMap) methods).put(method.name, method.desc, null, method);
+        } else {
+            methods.put(new Method(method.name, method.desc), method);
+        }
+    }
+
+    public boolean removeMethod(MethodNodeEx method) {
+        if (methods instanceof MethodMap) {
+            return ((MethodMap) methods).remove(method.name, method.desc, method) != null;
+        }
+        return methods.remove(new Method(method.name, method.desc), method);
+    }
+
+    public MemberFilter getMemberFilter() {
+        return memberFilter;
+    }
+
+    /**
+     * Sets the filter that decides which fields and methods are built when this class is visited.
+     *
+     * @param memberFilter the member filter, or {@literal null} to build every member.
+     */
+    public void setMemberFilter(MemberFilter memberFilter) {
+        this.memberFilter = memberFilter;
+    }
+
+    public static TreeListener getTreeListener() {
+        return treeListener;
+    }
+
+    /**
+     * Sets the listener of the operations on all the {@link ClassNodeEx} trees: reading, visiting and
+     * checking the classes, and loading the bodies of their methods.
+     *
+     * @param treeListener the listener, or {@literal null} to remove the current listener. Then the
+     *                     operations are not timed.
+     */
+    public static void setTreeListener(TreeListener treeListener) {
+        ClassNodeEx.treeListener = treeListener;
+    }
+
+    public StringInterner getStringInterner() {
+        return stringInterner;
+    }
+
+    /**
+     * Sets the interner of the names, descriptors and signatures of the nodes built when this class
+     * is visited, including the annotations and the instructions of its members.
+     *
+     * @param stringInterner the string interner, or {@literal null} to keep the visited strings.
+     */
+    public void setStringInterner(StringInterner stringInterner) {
+        this.stringInterner = stringInterner;
+    }
+
+    public boolean isHashingOnRead() {
+        return hashingOnRead;
+    }
+
+    /**
+     * Sets whether the content hashes of the fields and methods of this class are computed when it
+     * is read, rather than on the first call to {@link #getContentHash()}. They are then cached until
+     * the members are modified. With {@link #readLazily(ClassReader, int)}, the method bodies are
+     * hashed in a second pass over the class file, and are not loaded.
+     *
+     * @param hashingOnRead whether to hash the members when this class is read.
+     */
+    public void setHashingOnRead(boolean hashingOnRead) {
+        this.hashingOnRead = hashingOnRead;
+    }
+
+    /**
+     * Makes the given class reader visit this class, and remembers the class reader as the source of
+     * this class. When this class is later visited by a {@link ClassWriter}, the fields and methods
+     * that were not modified are copied from the class reader instead of being visited, see {@link
+     * #accept(ClassVisitor)}. The modifications of the instructions, try catch blocks and local
+     * variables lists of the methods are tracked, see {@link MethodNodeEx#isDirty()}.
+     *
+     * @param classReader    the class reader of the class to read.
+     * @param parsingOptions the options to use to parse the class. One or more of {@link
+     *                       ClassReader#SKIP_CODE}, {@link ClassReader#SKIP_DEBUG}, {@link ClassReader#SKIP_FRAMES}
+     *                       or {@link ClassReader#EXPAND_FRAMES}.
+     */
+    public void read(final ClassReader classReader, final int parsingOptions) {
+        read(classReader, parsingOptions, READ_EAGER);
+    }
+
+    /**
+     * Makes the given class reader visit this class, without reading the code of its methods. The
+     * body of each method is read from the class reader the first time it is accessed, see {@link
+     * MethodNodeEx#loadBody()}. The class reader is retained by the methods until their body is
+     * loaded. Like {@link #read(ClassReader, int)}, the class reader is remembered as the source of
+     * this class.
+     *
+     * @param classReader    the class reader of the class to read.
+     * @param parsingOptions the options to use to parse the class. One or more of {@link
+     *                       ClassReader#SKIP_CODE}, {@link ClassReader#SKIP_DEBUG}, {@link ClassReader#SKIP_FRAMES}
+     *                       or {@link ClassReader#EXPAND_FRAMES}.
+     */
+    public void readLazily(final ClassReader classReader, final int parsingOptions) {
+        read(classReader, parsingOptions, (parsingOptions & ClassReader.SKIP_CODE) != 0 ? READ_EAGER : READ_LAZY);
+    }
+
+    private void read(final ClassReader classReader, final int parsingOptions, final int readState) {
+        this.sourceClassReader = classReader;
+        this.sourceParsingOptions = parsingOptions;
+        this.sourceFieldIndex = 0;
+        this.sourceMethodIndex = 0;
+        this.readState = readState;
+        TreeListener listener = treeListener;
+        long start = listener != null ? System.nanoTime() : 0L;
+        try {
+            classReader.accept(this, readState == READ_LAZY ? parsingOptions | ClassReader.SKIP_CODE : parsingOptions);
+        } finally {
+            this.readState = READ_NONE;
+        }
+        if (listener != null) {
+            listener.classRead(this, classReader, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Recomputes the stack map frames, the max stack and the max locals of the dirty methods of this
+     * class, see {@link MethodNodeEx#isDirty()} and {@link MethodNodeEx#computeFrames(ClassNodeEx,
+     * ClassHierarchy)}. The other methods keep their frames. Together with {@link #accept(ClassVisitor)},
+     * this lets a class read with {@link #read(ClassReader, int)} or {@link #readLazily(ClassReader,
+     * int)} be written with a {@link ClassWriter} that computes nothing, so that only the methods
+     * modified since the class was read are analyzed. All the methods of a class that was not read
+     * from a class file are dirty.
+     *
+     * @param classHierarchy the hierarchy used to compute the common super classes. This class is
+     *                       added to it, and replaces any other version of it, such as one read from the
+     *                       class loader of the hierarchy.
+     * @return the number of methods whose frames were recomputed.
+     */
+    public int computeDirtyFrames(final ClassHierarchy classHierarchy) {
+        classHierarchy.putClass(this);
+        int count = 0;
+        for (MethodNodeEx method : methods.values()) {
+            if ((method.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0 && method.isDirty()) {
+                method.computeFrames(this, classHierarchy);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the structural hash of this class, combining the hash of its header, that is of
+     * everything but its members, with the content hashes of its fields and methods in order, see
+     * {@link FieldNodeEx#getContentHash()} and {@link MethodNodeEx#getContentHash()}. The hash of the
+     * header is recomputed on each call, but the hashes of the members are cached until they are
+     * modified, so only the modified members are hashed again. The member hashes are computed when
+     * this class is read if {@link #setHashingOnRead(boolean)} is enabled, and on the first call
+     * otherwise. The bodies of the methods that are not loaded are streamed in a single pass over
+     * the class file, and stay unloaded.
+     *
+     * @return the content hash of this class.
+     */
+    public ContentHash getContentHash() {
+        ClassSnapshotWriter writer = new ClassSnapshotWriter(true);
+        acceptTree(new HeaderVisitor(writer));
+        ContentHash hash = writer.hashRecords();
+        for (FieldNodeEx field : fields.values()) {
+            hash = hash.combine(field.getContentHash(writer));
+        }
+        for (ContentHash methodHash : MethodNodeEx.getContentHashes(new ArrayList<>(methods.values()), writer)) {
+            hash = hash.combine(methodHash);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns an immutable view of the current content of this class, which can be shared by several
+     * threads without locks nor copies. The bodies of the methods that are not loaded are visited
+     * from their class file, and stay unloaded. Later modifications of this class are not reflected
+     * in the view.
+     *
+     * @return an immutable view of this class.
+     */
+    public FrozenClassNode freeze() {
+        return new FrozenClassNode(this);
+    }
+
+    /**
+     * Returns the node counts and the estimated heap size of this class. The bodies of the methods
+     * are not loaded.
+     *
+     * @return the statistics of the current content of this class.
+     */
+    public TreeStatistics getStatistics() {
+        return new TreeStatistics(this, sourceClassReader);
+    }
+
+    /**
+     * Returns the class reader this class was read from, or {@literal null}.
+     */
+    ClassReader getSourceClassReader() {
+        return sourceClassReader;
+    }
+
+    /**
+     * Returns a copy of this class that can be modified independently of it. The header of the class
+     * and of its members, including their annotations, are copied, but the bodies of the methods
+     * that are not loaded are not: the copied methods load them from the class reader this class was
+     * read from on first access, as with {@link #readLazily(ClassReader, int)}. Hence forking a class
+     * read with {@link #readLazily(ClassReader, int)} costs about as much as copying its member
+     * tables, whatever the size of its methods. The loaded bodies are copied, since they may be
+     * modified in place. The copied members are dirty if the original ones are, see {@link
+     * MethodNodeEx#isDirty()}, and keep their content hashes. Like this class, the copy writes its
+     * unchanged members as is to a {@link ClassWriter}, see {@link #accept(ClassVisitor)}. The members of the
+     * copy are plain {@link FieldNodeEx} and {@link MethodNodeEx} nodes, even if the members of this
+     * class are instances of subclasses.
+     *
+     * @return a copy of this class.
+     */
+    public ClassNodeEx fork() {
+        ClassNodeEx copy = new ClassNodeEx(api);
+        acceptTree(new HeaderVisitor(copy));
+        copy.sourceClassReader = sourceClassReader;
+        copy.sourceParsingOptions = sourceParsingOptions;
+        copy.sourceFieldIndex = sourceFieldIndex;
+        copy.sourceMethodIndex = sourceMethodIndex;
+        for (Map.Entry<String, FieldNodeEx> entry : fields.entrySet()) {
+            copy.fields.put(entry.getKey(), entry.getValue().fork());
+        }
+        for (MethodNodeEx method : methods.values()) {
+            copy.addMethod(method.fork());
+        }
+        copy.memberFilter = memberFilter;
+        copy.stringInterner = stringInterner;
+        copy.hashingOnRead = hashingOnRead;
+        return copy;
     }
 
     // -----------------------------------------------------------------------------------------------
@@ -206,10 +613,10 @@ public class ClassNodeEx extends ClassVisitor {
             final String[] interfaces) {
         this.version = version;
         this.access = access;
-        this.name = name;
-        this.signature = signature;
-        this.superName = superName;
-        this.interfaces = Util.asArrayList(interfaces);
+        this.name = Util.intern(stringInterner, name);
+        this.signature = Util.intern(stringInterner, signature);
+        this.superName = Util.intern(stringInterner, superName);
+        this.interfaces = Util.asArrayList(Util.intern(stringInterner, interfaces));
     }
 
     @Override
@@ -231,14 +638,15 @@ public class ClassNodeEx extends ClassVisitor {
 
     @Override
     public void visitOuterClass(final String owner, final String name, final String descriptor) {
-        outerClass = owner;
-        outerMethod = name;
-        outerMethodDesc = descriptor;
+        outerClass = Util.intern(stringInterner, owner);
+        outerMethod = Util.intern(stringInterner, name);
+        outerMethodDesc = Util.intern(stringInterner, descriptor);
     }
 
     @Override
     public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
-        AnnotationNodeEx annotation = new AnnotationNodeEx(descriptor, visible);
+        AnnotationNodeEx annotation = new AnnotationNodeEx(Util.intern(stringInterner, descriptor), visible);
+        annotation.interner = stringInterner;
         addAnnotation(annotation);
         return annotation;
     }
@@ -246,7 +654,9 @@ public class ClassNodeEx extends ClassVisitor {
     @Override
     public AnnotationVisitor visitTypeAnnotation(
             final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
-        TypeAnnotationNodeEx typeAnnotation = new TypeAnnotationNodeEx(typeRef, typePath, descriptor, visible);
+        TypeAnnotationNodeEx typeAnnotation =
+                new TypeAnnotationNodeEx(typeRef, typePath, Util.intern(stringInterner, descriptor), visible);
+        typeAnnotation.interner = stringInterner;
         addTypeAnnotation(typeAnnotation);
         return typeAnnotation;
     }
@@ -276,7 +686,11 @@ public class ClassNodeEx extends ClassVisitor {
     @Override
     public void visitInnerClass(
             final String name, final String outerName, final String innerName, final int access) {
-        InnerClassNode innerClass = new InnerClassNode(name, outerName, innerName, access);
+        InnerClassNode innerClass = new InnerClassNode(
+                Util.intern(stringInterner, name),
+                Util.intern(stringInterner, outerName),
+                Util.intern(stringInterner, innerName),
+                access);
         innerClasses.add(innerClass);
     }
 
@@ -295,9 +709,31 @@ public class ClassNodeEx extends ClassVisitor {
             final String descriptor,
             final String signature,
             final Object value) {
-        FieldNodeEx field = new FieldNodeEx(access, name, descriptor, signature, value);
-        fields.put(name, field);
-        return field;
+        MemberFilter.Mode mode =
+                memberFilter == null ? MemberFilter.Mode.FULL : memberFilter.filterField(access, name, descriptor, signature);
+        int fieldIndex = readState != READ_NONE ? sourceFieldIndex++ : -1;
+        if (mode == MemberFilter.Mode.SKIP) {
+            return null;
+        }
+        FieldNodeEx field = newField(
+                access,
+                Util.intern(stringInterner, name),
+                Util.intern(stringInterner, descriptor),
+                Util.intern(stringInterner, signature),
+                value);
+        field.interner = stringInterner;
+        if (fieldIndex != -1) {
+            field.setSource(sourceClassReader, fieldIndex);
+        }
+        fields.put(field.name, field);
+        switch (mode) {
+            case HEADER:
+                return null;
+            case DEFER:
+                return new FilteringFieldVisitor(this, field, memberFilter);
+            default:
+                return field;
+        }
     }
 
     @Override
@@ -307,14 +743,51 @@ public class ClassNodeEx extends ClassVisitor {
             final String descriptor,
             final String signature,
             final String[] exceptions) {
-        MethodNodeEx method = new MethodNodeEx(access, name, descriptor, signature, exceptions);
-        methods.put(new Method(name, descriptor), method);
-        return method;
+        MemberFilter.Mode mode =
+                memberFilter == null ? MemberFilter.Mode.FULL : memberFilter.filterMethod(access, name, descriptor, signature);
+        int methodIndex = readState != READ_NONE ? sourceMethodIndex++ : -1;
+        if (mode == MemberFilter.Mode.SKIP) {
+            return null;
+        }
+        MethodNodeEx method = newMethod(
+                access,
+                Util.intern(stringInterner, name),
+                Util.intern(stringInterner, descriptor),
+                Util.intern(stringInterner, signature),
+                Util.intern(stringInterner, exceptions));
+        method.interner = stringInterner;
+        MethodBodyLoader bodyLoader = null;
+        if (methodIndex != -1) {
+            method.setSource(sourceClassReader, methodIndex);
+            if (readState == READ_LAZY && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+                bodyLoader = new MethodBodyLoader(sourceClassReader, sourceParsingOptions, methodIndex);
+            }
+        }
+        addMethod(method);
+        switch (mode) {
+            case HEADER:
+                return null;
+            case NO_CODE:
+                return bodyLoader != null ? method : new FilteringMethodVisitor(this, method, null, null);
+            case DEFER:
+                return new FilteringMethodVisitor(this, method, memberFilter, bodyLoader);
+            default:
+                if (bodyLoader != null) {
+                    method.deferBody(bodyLoader);
+                }
+                return method;
+        }
     }
 
     @Override
     public void visitEnd() {
-        // Nothing to do.
+        if (readState != READ_NONE && hashingOnRead) {
+            ClassSnapshotWriter writer = new ClassSnapshotWriter(true);
+            for (FieldNodeEx field : fields.values()) {
+                field.getContentHash(writer);
+            }
+            MethodNodeEx.getContentHashes(new ArrayList<>(methods.values()), writer);
+        }
     }
 
     // -----------------------------------------------------------------------------------------------
@@ -330,6 +803,17 @@ public class ClassNodeEx extends ClassVisitor {
      *            {@link Opcodes#ASM6}, {@link Opcodes#ASM7}. or {@link Opcodes#ASM8}.
      */
     public void check(final int api) {
+        TreeListener listener = treeListener;
+        if (listener == null) {
+            checkTree(api);
+            return;
+        }
+        long start = System.nanoTime();
+        checkTree(api);
+        listener.classChecked(this, api, System.nanoTime() - start);
+    }
+
+    private void checkTree(final int api) {
         if (api != Opcodes.ASM9_EXPERIMENTAL && permittedSubtypesExperimental != null) {
             throw new UnsupportedClassVersionException();
         }
@@ -363,20 +847,39 @@ public class ClassNodeEx extends ClassVisitor {
                 recordComponents.get(i).check(api);
             }
         }
-        for (int i = fields.size() - 1; i >= 0; --i) {
-            fields.get(i).check(api);
+        for (FieldNodeEx field : fields.values()) {
+            field.check(api);
         }
-        for (int i = methods.size() - 1; i >= 0; --i) {
-            methods.get(i).check(api);
+        MethodNodeEx.loadBodies(methods.values());
+        for (MethodNodeEx method : methods.values()) {
+            method.check(api);
         }
     }
 
     /**
-     * Makes the given class visitor visit this class.
+     * Makes the given class visitor visit this class. If this class was read with {@link
+     * #read(ClassReader, int)} or {@link #readLazily(ClassReader, int)} and the given visitor is a
+     * {@link ClassWriter}, the fields and methods that are not dirty (see {@link FieldNodeEx#isDirty()}
+     * and {@link MethodNodeEx#isDirty()}) are visited directly from the source class reader. If the
+     * class writer was constructed with this class reader, the unchanged methods are then copied as
+     * is, without being parsed nor visited. Otherwise, the code of the methods whose body is not
+     * loaded is visited from the source class reader, without being loaded. In both cases, the
+     * class reader is parsed once, and the members are visited in the order of this class.
      *
      * @param classVisitor a class visitor.
      */
     public void accept(final ClassVisitor classVisitor) {
+        TreeListener listener = treeListener;
+        if (listener == null) {
+            acceptTree(classVisitor);
+            return;
+        }
+        long start = System.nanoTime();
+        acceptTree(classVisitor);
+        listener.classAccepted(this, classVisitor, System.nanoTime() - start);
+    }
+
+    private void acceptTree(final ClassVisitor classVisitor) {
         // Visit the header.
         String[] interfacesArray = new String[this.interfaces.size()];
         this.interfaces.toArray(interfacesArray);
@@ -387,7 +890,7 @@ public class ClassNodeEx extends ClassVisitor {
         }
         // Visit the module.
         if (module != null) {
-            module.accept(classVisitor);
+            acceptModule(classVisitor);
         }
         // Visit the nest host class.
         if (nestHostClass != null) {
@@ -438,14 +941,218 @@ public class ClassNodeEx extends ClassVisitor {
                 recordComponents.get(i).accept(classVisitor);
             }
         }
+        if (sourceClassReader != null) {
+            acceptMembersFromSource(classVisitor);
+            return;
+        }
         // Visit the fields.
-        for (int i = 0, n = fields.size(); i < n; ++i) {
-            fields.get(i).accept(classVisitor);
+        for (FieldNodeEx field : fields.values()) {
+            field.accept(classVisitor);
         }
         // Visit the methods.
-        for (int i = 0, n = methods.size(); i < n; ++i) {
-            methods.get(i).accept(classVisitor);
+        MethodNodeEx.loadBodies(methods.values());
+        for (MethodNodeEx method : methods.values()) {
+            method.accept(classVisitor);
+        }
+        classVisitor.visitEnd();
+    }
+
+    private void acceptMembersFromSource(final ClassVisitor classVisitor) {
+        final ClassReader classReader = sourceClassReader;
+        final ClassWriter classWriter = classVisitor instanceof ClassWriter ? (ClassWriter) classVisitor : null;
+        final FieldNodeEx[] treeFields = fields.values().toArray(new FieldNodeEx[0]);
+        final MethodNodeEx[] treeMethods = methods.values().toArray(new MethodNodeEx[0]);
+        // Find the members that can be copied from the source class reader, if the visitor is a class
+        // writer, and the methods whose code can be visited from it without being loaded, by index in
+        // the class file. The position of each member in this class is stored in these arrays, so that
+        // the members are still visited in the order of this class. A member that comes before a
+        // preceding member in the class file is visited from this class instead.
+        final int[] fieldPositions = new int[sourceFieldIndex];
+        final int[] methodPositions = new int[sourceMethodIndex];
+        Arrays.fill(fieldPositions, -1);
+        Arrays.fill(methodPositions, -1);
+        boolean hasSourceMembers = false;
+        int lastIndex = -1;
+        for (int i = 0; i < treeFields.length && classWriter != null; ++i) {
+            FieldNodeEx field = treeFields[i];
+            int index = field.sourceIndex;
+            if (field.sourceClassReader == classReader && !field.isDirty()
+                    && index > lastIndex && index < fieldPositions.length) {
+                fieldPositions[index] = i;
+                lastIndex = index;
+                hasSourceMembers = true;
+            }
+        }
+        lastIndex = -1;
+        if (classWriter != null) {
+            MethodNodeEx.checkRemappedBodies(methods.values());
         }
+        for (int i = 0; i < treeMethods.length; ++i) {
+            MethodNodeEx method = treeMethods[i];
+            int index = -1;
+            if (classWriter != null && method.sourceClassReader == classReader && !method.isDirty()) {
+                index = method.sourceIndex;
+            } else if (isSourceBody(method.bodyLoader)) {
+                index = method.bodyLoader.methodIndex;
+            }
+            if (index > lastIndex && index < methodPositions.length) {
+                methodPositions[index] = i;
+                lastIndex = index;
+                hasSourceMembers = true;
+            }
+        }
+        if (!hasSourceMembers) {
+            MethodNodeEx.loadBodies(methods.values());
+            for (FieldNodeEx field : treeFields) {
+                field.accept(classVisitor);
+            }
+            for (MethodNodeEx method : treeMethods) {
+                method.accept(classVisitor);
+            }
+            classVisitor.visitEnd();
+            return;
+        }
+        // Visit the members from the source class reader, and the other members in between. Returning
+        // the class writer's own visitors lets the class reader copy the methods as is when possible.
+        classReader.accept(new ClassVisitor(api) {
+            private int fieldIndex;
+            private int methodIndex;
+            private int nextField;
+            private int nextMethod;
+
+            @Override
+            public FieldVisitor visitField(
+                    final int access,
+                    final String name,
+                    final String descriptor,
+                    final String signature,
+                    final Object value) {
+                int position = fieldPositions[fieldIndex++];
+                if (position == -1) {
+                    return null;
+                }
+                acceptFields(position);
+                FieldNodeEx field = treeFields[nextField++];
+                if (!field.hasHeader(access, name, descriptor, signature, value)) {
+                    field.accept(classVisitor);
+                    return null;
+                }
+                return classWriter.visitField(access, name, descriptor, signature, value);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(
+                    final int access,
+                    final String name,
+                    final String descriptor,
+                    final String signature,
+                    final String[] exceptions) {
+                acceptFields(treeFields.length);
+                int index = methodIndex++;
+                int position = methodPositions[index];
+                if (position == -1) {
+                    return null;
+                }
+                acceptMethods(position);
+                MethodNodeEx method = treeMethods[nextMethod++];
+                if (classWriter != null && !method.isDirty()
+                        && method.hasHeader(access, name, descriptor, signature, exceptions)) {
+                    return classWriter.visitMethod(access, name, descriptor, signature, exceptions);
+                }
+                if (isSourceBody(method.bodyLoader) && method.bodyLoader.methodIndex == index) {
+                    return method.acceptHeader(classVisitor);
+                }
+                method.accept(classVisitor);
+                return null;
+            }
+
+            @Override
+            public void visitEnd() {
+                acceptFields(treeFields.length);
+                acceptMethods(treeMethods.length);
+            }
+
+            private void acceptFields(final int end) {
+                while (nextField < end) {
+                    treeFields[nextField++].accept(classVisitor);
+                }
+            }
+
+            private void acceptMethods(final int end) {
+                while (nextMethod < end) {
+                    treeMethods[nextMethod++].accept(classVisitor);
+                }
+            }
+        }, sourceParsingOptions);
         classVisitor.visitEnd();
     }
+
+    /**
+     * Makes the given class visitor visit the module of this class. Unlike {@link
+     * ModuleNode#accept(ClassVisitor)} in ASM 8, this ends the module visitor, as {@link ClassReader}
+     * does.
+     */
+    private void acceptModule(final ClassVisitor classVisitor) {
+        final ModuleVisitor moduleVisitor = classVisitor.visitModule(module.name, module.access, module.version);
+        if (moduleVisitor == null) {
+            return;
+        }
+        module.accept(new ClassVisitor(api) {
+            @Override
+            public ModuleVisitor visitModule(final String name, final int access, final String version) {
+                return moduleVisitor;
+            }
+        });
+        moduleVisitor.visitEnd();
+    }
+
+    /**
+     * Returns whether the given loader reads a method body from the source class reader of this
+     * class, with the options used to visit this class reader.
+     */
+    private boolean isSourceBody(final MethodBodyLoader bodyLoader) {
+        return bodyLoader != null
+                && bodyLoader.classReader == sourceClassReader
+                && bodyLoader.parsingOptions == sourceParsingOptions;
+    }
+
+    /**
+     * A class visitor that forwards the events of the header of a class, and ignores its members.
+     */
+    private static final class HeaderVisitor extends ClassVisitor {
+
+        HeaderVisitor(final ClassVisitor classVisitor) {
+            super(/* latest api = */ Opcodes.ASM8, classVisitor);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void visitPermittedSubtypeExperimental(final String permittedSubtype) {
+            cv.visitPermittedSubtypeExperimental(permittedSubtype);
+        }
+
+        @Override
+        public FieldVisitor visitField(
+                final int access,
+                final String name,
+                final String descriptor,
+                final String signature,
+                final Object value) {
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(
+                final int access,
+                final String name,
+                final String descriptor,
+                final String signature,
+                final String[] exceptions) {
+            return null;
+        }
+
+        @Override
+        public void visitEnd() {
+        }
+    }
 }
@@ -0,0 +1,219 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A set of {@link ClassNodeEx} read from jar files and class directories. The classes of a jar file
+ * or directory are read (see {@link ClassInput}) and parsed in parallel on a {@link ForkJoinPool}.
+ * The classes are iterated in the order of the {@link #load(Path)} calls, and in the order of their
+ * entry names for each jar file or directory. If two loaded classes have the same internal name,
+ * the first one is kept.
+ */
+public class ClassRepository implements Iterable<ClassNodeEx> {
+
+    /**
+     * The number of classes below which a parse task is not split any further.
+     */
+    private static final int PARSE_THRESHOLD = 16;
+
+    /**
+     * The options used to parse the classes. One or more of {@link ClassReader#SKIP_CODE}, {@link
+     * ClassReader#SKIP_DEBUG}, {@link ClassReader#SKIP_FRAMES} or {@link ClassReader#EXPAND_FRAMES}.
+     */
+    private final int parsingOptions;
+
+    /**
+     * Whether the method bodies are loaded lazily, see {@link ClassNodeEx#readLazily(ClassReader, int)}.
+     */
+    private final boolean lazy;
+
+    /**
+     * The pool used to parse the classes.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The filter of the fields and methods of the loaded classes, or {@literal null}.
+     */
+    private MemberFilter memberFilter;
+
+    /**
+     * The interner of the strings of the loaded classes, or {@literal null}.
+     */
+    private StringInterner stringInterner;
+
+    /**
+     * The loaded classes, by internal name.
+     */
+    private final Map<String, ClassNodeEx> classes = new LinkedHashMap<>();
+
+    /**
+     * Constructs a new {@link ClassRepository} that fully parses the classes on the common pool.
+     */
+    public ClassRepository() {
+        this(0, false, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new {@link ClassRepository} that parses the classes on the common pool.
+     *
+     * @param parsingOptions the options used to parse the classes. One or more of {@link
+     *                       ClassReader#SKIP_CODE}, {@link ClassReader#SKIP_DEBUG}, {@link ClassReader#SKIP_FRAMES}
+     *                       or {@link ClassReader#EXPAND_FRAMES}.
+     * @param lazy           whether the method bodies are loaded lazily.
+     */
+    public ClassRepository(final int parsingOptions, final boolean lazy) {
+        this(parsingOptions, lazy, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new {@link ClassRepository}.
+     *
+     * @param parsingOptions the options used to parse the classes. One or more of {@link
+     *                       ClassReader#SKIP_CODE}, {@link ClassReader#SKIP_DEBUG}, {@link ClassReader#SKIP_FRAMES}
+     *                       or {@link ClassReader#EXPAND_FRAMES}.
+     * @param lazy           whether the method bodies are loaded lazily.
+     * @param pool           the pool used to parse the classes.
+     */
+    public ClassRepository(final int parsingOptions, final boolean lazy, final ForkJoinPool pool) {
+        this.parsingOptions = parsingOptions;
+        this.lazy = lazy;
+        this.pool = pool;
+    }
+
+    public MemberFilter getMemberFilter() {
+        return memberFilter;
+    }
+
+    /**
+     * Sets the filter that decides which fields and methods of the classes loaded from now on are
+     * built. The filter is called concurrently.
+     *
+     * @param memberFilter the member filter, or {@literal null} to build every member.
+     */
+    public void setMemberFilter(MemberFilter memberFilter) {
+        this.memberFilter = memberFilter;
+    }
+
+    public StringInterner getStringInterner() {
+        return stringInterner;
+    }
+
+    /**
+     * Sets the interner of the names, descriptors and signatures of the classes loaded from now on,
+     * for instance a {@link StringPool} shared by all the classes of this repository. The interner
+     * is called concurrently.
+     *
+     * @param stringInterner the string interner, or {@literal null} to keep the parsed strings.
+     */
+    public void setStringInterner(StringInterner stringInterner) {
+        this.stringInterner = stringInterner;
+    }
+
+    public ClassNodeEx getClassNode(String internalName) {
+        return classes.get(internalName);
+    }
+
+    public Collection<ClassNodeEx> getClassNodes() {
+        return Collections.unmodifiableCollection(classes.values());
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    @Override
+    public Iterator<ClassNodeEx> iterator() {
+        return getClassNodes().iterator();
+    }
+
+    /**
+     * Loads the classes of a jar file or of a class directory.
+     *
+     * @param path the path of a jar file or of a directory.
+     * @throws IOException if the classes cannot be read.
+     */
+    public void load(final Path path) throws IOException {
+        try (ClassInput input = ClassInput.open(path)) {
+            load(input);
+        }
+    }
+
+    /**
+     * Loads the classes of an opened jar file or class directory.
+     *
+     * @param input the input to read the classes from.
+     * @throws IOException if the classes cannot be read.
+     */
+    public void load(final ClassInput input) throws IOException {
+        List<ClassInput.Entry> entries = new ArrayList<>();
+        for (ClassInput.Entry entry : input.getEntries()) {
+            if (entry.isClassFile()) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparing(ClassInput.Entry::getName));
+        ClassNodeEx[] classNodes = new ClassNodeEx[entries.size()];
+        try {
+            pool.invoke(new ParseTask(entries, classNodes, 0, classNodes.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (ClassNodeEx classNode : classNodes) {
+            classes.putIfAbsent(classNode.name, classNode);
+        }
+    }
+
+    ClassNodeEx parse(final byte[] classFile) {
+        ClassReader classReader = new ClassReader(classFile);
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.setMemberFilter(memberFilter);
+        classNode.setStringInterner(stringInterner);
+        if (lazy) {
+            classNode.readLazily(classReader, parsingOptions);
+        } else {
+            classNode.read(classReader, parsingOptions);
+        }
+        return classNode;
+    }
+
+    private final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ClassInput.Entry> entries;
+        private final ClassNodeEx[] classNodes;
+        private final int from;
+        private final int to;
+
+        ParseTask(final List<ClassInput.Entry> entries, final ClassNodeEx[] classNodes, final int from, final int to) {
+            this.entries = entries;
+            this.classNodes = classNodes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARSE_THRESHOLD) {
+                for (int i = from; i < to; ++i) {
+                    try {
+                        classNodes[i] = parse(entries.get(i).read());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(entries, classNodes, from, middle),
+                        new ParseTask(entries, classNodes, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,901 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.mouse0w0.asm.extree.SnapshotFormat.*;
+
+/**
+ * A reader of the snapshots written by {@link ClassSnapshotWriter}. The string table of the
+ * snapshot is decoded once, when the reader is constructed, and its strings are shared by all the
+ * classes read from the snapshot. Each class can then be visited or read independently, in any
+ * order and concurrently from several threads, directly from a memory mapped file.
+ */
+public class ClassSnapshotReader {
+
+    /**
+     * The content of the snapshot.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The strings of the string table, by index.
+     */
+    private final String[] strings;
+
+    /**
+     * The internal names of the classes, by class index.
+     */
+    private final String[] classNames;
+
+    /**
+     * The offsets of the class records, by class index.
+     */
+    private final int[] classOffsets;
+
+    /**
+     * The class indices, by internal name. Built on first use.
+     */
+    private volatile Map<String, Integer> classIndices;
+
+    /**
+     * Constructs a new {@link ClassSnapshotReader}.
+     *
+     * @param snapshot the content of a snapshot.
+     */
+    public ClassSnapshotReader(final byte[] snapshot) {
+        this(ByteBuffer.wrap(snapshot));
+    }
+
+    /**
+     * Constructs a new {@link ClassSnapshotReader}. The buffer is not copied, and its position is not
+     * modified.
+     *
+     * @param buffer the content of a snapshot, from index 0 to its limit.
+     * @throws IllegalArgumentException if the buffer does not contain a snapshot of a supported
+     *                                  version.
+     */
+    public ClassSnapshotReader(final ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        Input input = new Input(this.buffer, 0);
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IllegalArgumentException("Not a class snapshot, or unsupported snapshot version");
+        }
+        int stringCount = input.readVarint();
+        strings = new String[stringCount];
+        char[] charBuffer = new char[256];
+        for (int i = 0; i < stringCount; ++i) {
+            int length = input.readVarint();
+            if (length > charBuffer.length) {
+                charBuffer = new char[Math.max(length, charBuffer.length * 2)];
+            }
+            for (int j = 0; j < length; ++j) {
+                charBuffer[j] = (char) input.readVarint();
+            }
+            strings[i] = new String(charBuffer, 0, length);
+        }
+        int classCount = input.readVarint();
+        classNames = new String[classCount];
+        classOffsets = new int[classCount];
+        int[] classLengths = new int[classCount];
+        for (int i = 0; i < classCount; ++i) {
+            classNames[i] = strings[input.readVarint()];
+            classLengths[i] = input.readVarint();
+        }
+        int offset = input.position;
+        for (int i = 0; i < classCount; ++i) {
+            classOffsets[i] = offset;
+            offset += classLengths[i];
+        }
+    }
+
+    /**
+     * Memory maps a snapshot file. The file must not be modified while it is mapped.
+     *
+     * @param path the path of the snapshot file.
+     * @return the reader of the snapshot.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public static ClassSnapshotReader map(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ClassSnapshotReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getClassCount() {
+        return classNames.length;
+    }
+
+    /**
+     * @param index the index of a class of this snapshot.
+     * @return the internal name of the class.
+     */
+    public String getClassName(final int index) {
+        return classNames[index];
+    }
+
+    /**
+     * Returns the index of the class with the given name.
+     *
+     * @param internalName the internal name of a class.
+     * @return the index of the first class of this snapshot with this name, or -1.
+     */
+    public int indexOf(final String internalName) {
+        Map<String, Integer> indices = classIndices;
+        if (indices == null) {
+            indices = new HashMap<>(classNames.length * 2);
+            for (int i = classNames.length - 1; i >= 0; --i) {
+                indices.put(classNames[i], i);
+            }
+            classIndices = indices;
+        }
+        Integer index = indices.get(internalName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Reads a class of this snapshot.
+     *
+     * @param index the index of the class.
+     * @return the class.
+     */
+    public ClassNodeEx read(final int index) {
+        ClassNodeEx classNode = new ClassNodeEx();
+        accept(index, classNode);
+        return classNode;
+    }
+
+    /**
+     * Reads all the classes of this snapshot.
+     *
+     * @return the classes, in the order they were written.
+     */
+    public List<ClassNodeEx> readAll() {
+        List<ClassNodeEx> classNodes = new ArrayList<>(classNames.length);
+        for (int i = 0; i < classNames.length; ++i) {
+            classNodes.add(read(i));
+        }
+        return classNodes;
+    }
+
+    /**
+     * Makes the given visitor visit a class of this snapshot.
+     *
+     * @param index        the index of the class.
+     * @param classVisitor the visitor that must visit the class.
+     */
+    public void accept(final int index, final ClassVisitor classVisitor) {
+        new ClassDecoder(new Input(buffer, classOffsets[index])).accept(classVisitor);
+    }
+
+    /**
+     * @param index the index of a class of this snapshot.
+     * @return the offset of the record of the class in the snapshot.
+     */
+    int getClassOffset(final int index) {
+        return classOffsets[index];
+    }
+
+    /**
+     * Makes the given visitor visit a field or method of a class of this snapshot. Only the {@code
+     * visitField} or {@code visitMethod} method of the visitor is called.
+     *
+     * @param offset       the offset of the record of the field or method in the snapshot, see {@link
+     *                     ClassSnapshotWriter#getMemberOffsets()}.
+     * @param classVisitor the visitor that must visit the field or method.
+     */
+    void acceptMember(final int offset, final ClassVisitor classVisitor) {
+        ClassDecoder decoder = new ClassDecoder(new Input(buffer, offset));
+        decoder.acceptMember(decoder.input.readByte(), classVisitor);
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Decoding
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * A cursor in the snapshot.
+     */
+    private static final class Input {
+        final ByteBuffer buffer;
+        int position;
+
+        Input(final ByteBuffer buffer, final int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int readByte() {
+            return buffer.get(position++);
+        }
+
+        int readUnsignedByte() {
+            return buffer.get(position++) & 0xFF;
+        }
+
+        boolean readBoolean() {
+            return buffer.get(position++) != 0;
+        }
+
+        int readInt() {
+            int value = buffer.getInt(position);
+            position += 4;
+            return value;
+        }
+
+        long readLong() {
+            long value = buffer.getLong(position);
+            position += 8;
+            return value;
+        }
+
+        int readVarint() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = buffer.get(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        int readSignedVarint() {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readSignedVarlong() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = buffer.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Replays the events of a class record.
+     */
+    private final class ClassDecoder {
+        private final Input input;
+
+        /**
+         * The labels of the current method, by index.
+         */
+        private Label[] labels = new Label[16];
+
+        ClassDecoder(final Input input) {
+            this.input = input;
+        }
+
+        private String readString() {
+            int index = input.readVarint();
+            return index == 0 ? null : strings[index - 1];
+        }
+
+        private String[] readStrings() {
+            int count = input.readVarint();
+            if (count == 0) {
+                return null;
+            }
+            String[] values = new String[count - 1];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = readString();
+            }
+            return values;
+        }
+
+        private Label readLabel() {
+            int index = input.readVarint();
+            if (index >= labels.length) {
+                labels = Arrays.copyOf(labels, Math.max(index + 1, labels.length * 2));
+            }
+            Label label = labels[index];
+            if (label == null) {
+                label = new Label();
+                labels[index] = label;
+            }
+            return label;
+        }
+
+        private Label[] readLabels() {
+            Label[] values = new Label[input.readVarint()];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = readLabel();
+            }
+            return values;
+        }
+
+        private TypePath readTypePath() {
+            String typePath = readString();
+            return typePath == null ? null : TypePath.fromString(typePath);
+        }
+
+        private Handle readHandle() {
+            int tag = input.readByte();
+            return new Handle(tag, readString(), readString(), readString(), input.readBoolean());
+        }
+
+        private Object readConstant() {
+            int tag = input.readByte();
+            switch (tag) {
+                case CONSTANT_NULL:
+                    return null;
+                case CONSTANT_INTEGER:
+                    return input.readSignedVarint();
+                case CONSTANT_FLOAT:
+                    return Float.intBitsToFloat(input.readInt());
+                case CONSTANT_LONG:
+                    return input.readSignedVarlong();
+                case CONSTANT_DOUBLE:
+                    return Double.longBitsToDouble(input.readLong());
+                case CONSTANT_STRING:
+                    return readString();
+                case CONSTANT_TYPE:
+                    return Type.getType(readString());
+                case CONSTANT_HANDLE:
+                    return readHandle();
+                case CONSTANT_DYNAMIC: {
+                    String name = readString();
+                    String descriptor = readString();
+                    Handle bootstrapMethod = readHandle();
+                    Object[] arguments = new Object[input.readVarint()];
+                    for (int i = 0; i < arguments.length; ++i) {
+                        arguments[i] = readConstant();
+                    }
+                    return new ConstantDynamic(name, descriptor, bootstrapMethod, arguments);
+                }
+                case CONSTANT_BYTE:
+                    return (byte) input.readByte();
+                case CONSTANT_BOOLEAN:
+                    return input.readBoolean();
+                case CONSTANT_CHAR:
+                    return (char) input.readVarint();
+                case CONSTANT_SHORT:
+                    return (short) input.readSignedVarint();
+                case CONSTANT_BYTE_ARRAY: {
+                    byte[] array = new byte[input.readVarint()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = (byte) input.readByte();
+                    }
+                    return array;
+                }
+                case CONSTANT_BOOLEAN_ARRAY: {
+                    boolean[] array = new boolean[input.readVarint()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = input.readBoolean();
+                    }
+                    return array;
+                }
+                case CONSTANT_CHAR_ARRAY: {
+                    char[] array = new char[input.readVarint()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = (char) input.readVarint();
+                    }
+                    return array;
+                }
+                case CONSTANT_SHORT_ARRAY: {
+                    short[] array = new short[input.readVarint()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = (short) input.readSignedVarint();
+                    }
+                    return array;
+                }
+                case CONSTANT_INT_ARRAY: {
+                    int[] array = new int[input.readVarint()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = input.readSignedVarint();
+                    }
+                    return array;
+                }
+                case CONSTANT_LONG_ARRAY: {
+                    long[] array = new long[input.readVarint()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = input.readSignedVarlong();
+                    }
+                    return array;
+                }
+                case CONSTANT_FLOAT_ARRAY: {
+                    float[] array = new float[input.readVarint()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = Float.intBitsToFloat(input.readInt());
+                    }
+                    return array;
+                }
+                case CONSTANT_DOUBLE_ARRAY: {
+                    double[] array = new double[input.readVarint()];
+                    for (int i = 0; i < array.length; ++i) {
+                        array[i] = Double.longBitsToDouble(input.readLong());
+                    }
+                    return array;
+                }
+                default:
+                    throw new IllegalArgumentException("Invalid constant tag " + tag);
+            }
+        }
+
+        private Object[] readFrameElements(final int count) {
+            if (!input.readBoolean()) {
+                return null;
+            }
+            Object[] elements = new Object[count];
+            for (int i = 0; i < elements.length; ++i) {
+                int tag = input.readByte();
+                if (tag == FRAME_PRIMITIVE) {
+                    elements[i] = input.readByte();
+                } else if (tag == FRAME_TYPE) {
+                    elements[i] = readString();
+                } else {
+                    elements[i] = readLabel();
+                }
+            }
+            return elements;
+        }
+
+        private Attribute readAttribute() {
+            String type = readString();
+            byte[] content = new byte[input.readVarint()];
+            for (int i = 0; i < content.length; ++i) {
+                content[i] = (byte) input.readByte();
+            }
+            return new RawAttribute(type, content);
+        }
+
+        private void readAnnotation(final AnnotationVisitor annotationVisitor) {
+            int tag;
+            while ((tag = input.readByte()) != END) {
+                switch (tag) {
+                    case ANNOTATION_VALUE: {
+                        String name = readString();
+                        Object value = readConstant();
+                        if (annotationVisitor != null) {
+                            annotationVisitor.visit(name, value);
+                        }
+                        break;
+                    }
+                    case ANNOTATION_ENUM: {
+                        String name = readString();
+                        String descriptor = readString();
+                        String value = readString();
+                        if (annotationVisitor != null) {
+                            annotationVisitor.visitEnum(name, descriptor, value);
+                        }
+                        break;
+                    }
+                    case ANNOTATION_ANNOTATION: {
+                        String name = readString();
+                        String descriptor = readString();
+                        readAnnotation(annotationVisitor == null ? null : annotationVisitor.visitAnnotation(name, descriptor));
+                        break;
+                    }
+                    case ANNOTATION_ARRAY: {
+                        String name = readString();
+                        readAnnotation(annotationVisitor == null ? null : annotationVisitor.visitArray(name));
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Invalid annotation tag " + tag);
+                }
+            }
+            if (annotationVisitor != null) {
+                annotationVisitor.visitEnd();
+            }
+        }
+
+        void accept(final ClassVisitor classVisitor) {
+            String name = readString();
+            int version = input.readVarint();
+            int access = input.readVarint();
+            String signature = readString();
+            String superName = readString();
+            classVisitor.visit(version, access, name, signature, superName, readStrings());
+            int tag;
+            while ((tag = input.readByte()) != END) {
+                switch (tag) {
+                    case SOURCE:
+                        classVisitor.visitSource(readString(), readString());
+                        break;
+                    case MODULE: {
+                        String moduleName = readString();
+                        int moduleAccess = input.readVarint();
+                        readModule(classVisitor.visitModule(moduleName, moduleAccess, readString()));
+                        break;
+                    }
+                    case NEST_HOST:
+                        classVisitor.visitNestHost(readString());
+                        break;
+                    case OUTER_CLASS:
+                        classVisitor.visitOuterClass(readString(), readString(), readString());
+                        break;
+                    case ANNOTATION: {
+                        String descriptor = readString();
+                        readAnnotation(classVisitor.visitAnnotation(descriptor, input.readBoolean()));
+                        break;
+                    }
+                    case TYPE_ANNOTATION: {
+                        int typeRef = input.readInt();
+                        TypePath typePath = readTypePath();
+                        String descriptor = readString();
+                        readAnnotation(classVisitor.visitTypeAnnotation(typeRef, typePath, descriptor, input.readBoolean()));
+                        break;
+                    }
+                    case ATTRIBUTE:
+                        classVisitor.visitAttribute(readAttribute());
+                        break;
+                    case NEST_MEMBER:
+                        classVisitor.visitNestMember(readString());
+                        break;
+                    case PERMITTED_SUBTYPE:
+                        visitPermittedSubtype(classVisitor, readString());
+                        break;
+                    case INNER_CLASS:
+                        classVisitor.visitInnerClass(readString(), readString(), readString(), input.readVarint());
+                        break;
+                    case RECORD_COMPONENT:
+                        readRecordComponent(classVisitor.visitRecordComponent(readString(), readString(), readString()));
+                        break;
+                    case FIELD:
+                    case METHOD:
+                        acceptMember(tag, classVisitor);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid class tag " + tag);
+                }
+            }
+            classVisitor.visitEnd();
+        }
+
+        void acceptMember(final int tag, final ClassVisitor classVisitor) {
+            if (tag == FIELD) {
+                int fieldAccess = input.readVarint();
+                String fieldName = readString();
+                String descriptor = readString();
+                String fieldSignature = readString();
+                readField(classVisitor.visitField(fieldAccess, fieldName, descriptor, fieldSignature, readConstant()));
+            } else if (tag == METHOD) {
+                int methodAccess = input.readVarint();
+                String methodName = readString();
+                String descriptor = readString();
+                String methodSignature = readString();
+                String[] exceptions = readStrings();
+                readMethod(classVisitor.visitMethod(methodAccess, methodName, descriptor, methodSignature, exceptions));
+            } else {
+                throw new IllegalArgumentException("Invalid member tag " + tag);
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        private void visitPermittedSubtype(final ClassVisitor classVisitor, final String permittedSubtype) {
+            classVisitor.visitPermittedSubtypeExperimental(permittedSubtype);
+        }
+
+        private void readModule(final ModuleVisitor moduleVisitor) {
+            int tag;
+            while ((tag = input.readByte()) != END) {
+                switch (tag) {
+                    case MODULE_MAIN_CLASS: {
+                        String mainClass = readString();
+                        if (moduleVisitor != null) moduleVisitor.visitMainClass(mainClass);
+                        break;
+                    }
+                    case MODULE_PACKAGE: {
+                        String packaze = readString();
+                        if (moduleVisitor != null) moduleVisitor.visitPackage(packaze);
+                        break;
+                    }
+                    case MODULE_REQUIRE: {
+                        String module = readString();
+                        int access = input.readVarint();
+                        String version = readString();
+                        if (moduleVisitor != null) moduleVisitor.visitRequire(module, access, version);
+                        break;
+                    }
+                    case MODULE_EXPORT: {
+                        String packaze = readString();
+                        int access = input.readVarint();
+                        String[] modules = readStrings();
+                        if (moduleVisitor != null) moduleVisitor.visitExport(packaze, access, modules);
+                        break;
+                    }
+                    case MODULE_OPEN: {
+                        String packaze = readString();
+                        int access = input.readVarint();
+                        String[] modules = readStrings();
+                        if (moduleVisitor != null) moduleVisitor.visitOpen(packaze, access, modules);
+                        break;
+                    }
+                    case MODULE_USE: {
+                        String service = readString();
+                        if (moduleVisitor != null) moduleVisitor.visitUse(service);
+                        break;
+                    }
+                    case MODULE_PROVIDE: {
+                        String service = readString();
+                        String[] providers = readStrings();
+                        if (moduleVisitor != null) moduleVisitor.visitProvide(service, providers);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Invalid module tag " + tag);
+                }
+            }
+            if (moduleVisitor != null) {
+                moduleVisitor.visitEnd();
+            }
+        }
+
+        private void readRecordComponent(final RecordComponentVisitor recordComponentVisitor) {
+            int tag;
+            while ((tag = input.readByte()) != END) {
+                switch (tag) {
+                    case ANNOTATION: {
+                        String descriptor = readString();
+                        boolean visible = input.readBoolean();
+                        readAnnotation(recordComponentVisitor == null ? null
+                                : recordComponentVisitor.visitAnnotation(descriptor, visible));
+                        break;
+                    }
+                    case TYPE_ANNOTATION: {
+                        int typeRef = input.readInt();
+                        TypePath typePath = readTypePath();
+                        String descriptor = readString();
+                        boolean visible = input.readBoolean();
+                        readAnnotation(recordComponentVisitor == null ? null
+                                : recordComponentVisitor.visitTypeAnnotation(typeRef, typePath, descriptor, visible));
+                        break;
+                    }
+                    case ATTRIBUTE: {
+                        Attribute attribute = readAttribute();
+                        if (recordComponentVisitor != null) recordComponentVisitor.visitAttribute(attribute);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Invalid record component tag " + tag);
+                }
+            }
+            if (recordComponentVisitor != null) {
+                recordComponentVisitor.visitEnd();
+            }
+        }
+
+        private void readField(final FieldVisitor fieldVisitor) {
+            int tag;
+            while ((tag = input.readByte()) != END) {
+                switch (tag) {
+                    case ANNOTATION: {
+                        String descriptor = readString();
+                        boolean visible = input.readBoolean();
+                        readAnnotation(fieldVisitor == null ? null : fieldVisitor.visitAnnotation(descriptor, visible));
+                        break;
+                    }
+                    case TYPE_ANNOTATION: {
+                        int typeRef = input.readInt();
+                        TypePath typePath = readTypePath();
+                        String descriptor = readString();
+                        boolean visible = input.readBoolean();
+                        readAnnotation(fieldVisitor == null ? null
+                                : fieldVisitor.visitTypeAnnotation(typeRef, typePath, descriptor, visible));
+                        break;
+                    }
+                    case ATTRIBUTE: {
+                        Attribute attribute = readAttribute();
+                        if (fieldVisitor != null) fieldVisitor.visitAttribute(attribute);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Invalid field tag " + tag);
+                }
+            }
+            if (fieldVisitor != null) {
+                fieldVisitor.visitEnd();
+            }
+        }
+
+        private void readMethod(final MethodVisitor methodVisitor) {
+            // A null method visitor still consumes the events of the method, through a visitor that
+            // ignores them.
+            MethodVisitor mv = methodVisitor != null ? methodVisitor : new MethodVisitor(/* latest api = */ Opcodes.ASM8) {
+            };
+            Arrays.fill(labels, null);
+            int tag;
+            while ((tag = input.readByte()) != END) {
+                switch (tag) {
+                    case PARAMETER:
+                        mv.visitParameter(readString(), input.readVarint());
+                        break;
+                    case ANNOTATION_DEFAULT:
+                        readAnnotation(mv.visitAnnotationDefault());
+                        break;
+                    case ANNOTATION: {
+                        String descriptor = readString();
+                        readAnnotation(mv.visitAnnotation(descriptor, input.readBoolean()));
+                        break;
+                    }
+                    case TYPE_ANNOTATION: {
+                        int typeRef = input.readInt();
+                        TypePath typePath = readTypePath();
+                        String descriptor = readString();
+                        readAnnotation(mv.visitTypeAnnotation(typeRef, typePath, descriptor, input.readBoolean()));
+                        break;
+                    }
+                    case ANNOTABLE_PARAMETER_COUNT:
+                        mv.visitAnnotableParameterCount(input.readVarint(), input.readBoolean());
+                        break;
+                    case PARAMETER_ANNOTATION: {
+                        int parameter = input.readVarint();
+                        String descriptor = readString();
+                        readAnnotation(mv.visitParameterAnnotation(parameter, descriptor, input.readBoolean()));
+                        break;
+                    }
+                    case ATTRIBUTE:
+                        mv.visitAttribute(readAttribute());
+                        break;
+                    case CODE:
+                        mv.visitCode();
+                        break;
+                    case FRAME: {
+                        int type = input.readSignedVarint();
+                        int numLocal = input.readVarint();
+                        Object[] local = readFrameElements(numLocal);
+                        int numStack = input.readVarint();
+                        Object[] stack = readFrameElements(numStack);
+                        mv.visitFrame(type, numLocal, local, numStack, stack);
+                        break;
+                    }
+                    case INSN:
+                        mv.visitInsn(input.readUnsignedByte());
+                        break;
+                    case INT_INSN: {
+                        int opcode = input.readUnsignedByte();
+                        mv.visitIntInsn(opcode, input.readSignedVarint());
+                        break;
+                    }
+                    case VAR_INSN: {
+                        int opcode = input.readUnsignedByte();
+                        mv.visitVarInsn(opcode, input.readVarint());
+                        break;
+                    }
+                    case TYPE_INSN: {
+                        int opcode = input.readUnsignedByte();
+                        mv.visitTypeInsn(opcode, readString());
+                        break;
+                    }
+                    case FIELD_INSN: {
+                        int opcode = input.readUnsignedByte();
+                        mv.visitFieldInsn(opcode, readString(), readString(), readString());
+                        break;
+                    }
+                    case METHOD_INSN: {
+                        int opcode = input.readUnsignedByte();
+                        String owner = readString();
+                        String name = readString();
+                        String descriptor = readString();
+                        mv.visitMethodInsn(opcode, owner, name, descriptor, input.readBoolean());
+                        break;
+                    }
+                    case INVOKE_DYNAMIC_INSN: {
+                        String name = readString();
+                        String descriptor = readString();
+                        Handle bootstrapMethodHandle = readHandle();
+                        Object[] bootstrapMethodArguments = new Object[input.readVarint()];
+                        for (int i = 0; i < bootstrapMethodArguments.length; ++i) {
+                            bootstrapMethodArguments[i] = readConstant();
+                        }
+                        mv.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+                        break;
+                    }
+                    case JUMP_INSN: {
+                        int opcode = input.readUnsignedByte();
+                        mv.visitJumpInsn(opcode, readLabel());
+                        break;
+                    }
+                    case LABEL:
+                        mv.visitLabel(readLabel());
+                        break;
+                    case LDC_INSN:
+                        mv.visitLdcInsn(readConstant());
+                        break;
+                    case IINC_INSN: {
+                        int var = input.readVarint();
+                        mv.visitIincInsn(var, input.readSignedVarint());
+                        break;
+                    }
+                    case TABLE_SWITCH_INSN: {
+                        int min = input.readSignedVarint();
+                        int max = input.readSignedVarint();
+                        Label dflt = readLabel();
+                        mv.visitTableSwitchInsn(min, max, dflt, readLabels());
+                        break;
+                    }
+                    case LOOKUP_SWITCH_INSN: {
+                        Label dflt = readLabel();
+                        int[] keys = new int[input.readVarint()];
+                        for (int i = 0; i < keys.length; ++i) {
+                            keys[i] = input.readSignedVarint();
+                        }
+                        mv.visitLookupSwitchInsn(dflt, keys, readLabels());
+                        break;
+                    }
+                    case MULTI_ANEW_ARRAY_INSN: {
+                        String descriptor = readString();
+                        mv.visitMultiANewArrayInsn(descriptor, input.readVarint());
+                        break;
+                    }
+                    case INSN_ANNOTATION: {
+                        int typeRef = input.readInt();
+                        TypePath typePath = readTypePath();
+                        String descriptor = readString();
+                        readAnnotation(mv.visitInsnAnnotation(typeRef, typePath, descriptor, input.readBoolean()));
+                        break;
+                    }
+                    case TRY_CATCH_BLOCK: {
+                        Label start = readLabel();
+                        Label end = readLabel();
+                        Label handler = readLabel();
+                        mv.visitTryCatchBlock(start, end, handler, readString());
+                        break;
+                    }
+                    case TRY_CATCH_ANNOTATION: {
+                        int typeRef = input.readInt();
+                        TypePath typePath = readTypePath();
+                        String descriptor = readString();
+                        readAnnotation(mv.visitTryCatchAnnotation(typeRef, typePath, descriptor, input.readBoolean()));
+                        break;
+                    }
+                    case LOCAL_VARIABLE: {
+                        String name = readString();
+                        String descriptor = readString();
+                        String signature = readString();
+                        Label start = readLabel();
+                        Label end = readLabel();
+                        mv.visitLocalVariable(name, descriptor, signature, start, end, input.readVarint());
+                        break;
+                    }
+                    case LOCAL_VARIABLE_ANNOTATION: {
+                        int typeRef = input.readInt();
+                        TypePath typePath = readTypePath();
+                        Label[] start = readLabels();
+                        Label[] end = readLabels();
+                        int[] index = new int[start.length];
+                        for (int i = 0; i < index.length; ++i) {
+                            index[i] = input.readVarint();
+                        }
+                        String descriptor = readString();
+                        readAnnotation(mv.visitLocalVariableAnnotation(
+                                typeRef, typePath, start, end, index, descriptor, input.readBoolean()));
+                        break;
+                    }
+                    case LINE_NUMBER: {
+                        int line = input.readVarint();
+                        mv.visitLineNumber(line, readLabel());
+                        break;
+                    }
+                    case MAXS: {
+                        int maxStack = input.readVarint();
+                        mv.visitMaxs(maxStack, input.readVarint());
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Invalid method tag " + tag);
+                }
+            }
+            mv.visitEnd();
+        }
+    }
+}
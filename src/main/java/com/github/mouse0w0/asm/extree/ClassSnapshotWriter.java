@@ -0,0 +1,1040 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.github.mouse0w0.asm.extree.SnapshotFormat.*;
+
+/**
+ * A {@link ClassVisitor} that writes the visited classes in a compact binary snapshot, which can be
+ * read back with a {@link ClassSnapshotReader} much faster than the class files can be parsed. The
+ * strings of all the classes are stored once, in a shared string table, and numbers are stored as
+ * varints, see {@link SnapshotFormat}. Classes are added with {@link #add(ClassNodeEx)}, or by
+ * making a {@link ClassReader} visit this writer.
+ *
+ * <p>A snapshot stores what a {@link ClassVisitor} sees: the state that is not visited, such as the
+ * source class reader or the dirty flags of the members, is not stored.
+ */
+public class ClassSnapshotWriter extends ClassVisitor {
+
+    /**
+     * The strings of the string table, by index.
+     */
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * The indices of the strings of the string table.
+     */
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+
+    /**
+     * The class records.
+     */
+    private final Output records = new Output(4096);
+
+    /**
+     * The string index of the name and the record length of each class.
+     */
+    private final Output classTable = new Output(256);
+
+    private int classCount;
+
+    private int classNameIndex;
+
+    private int classStart;
+
+    /**
+     * The offsets of the records of the fields and methods of the last class, relative to the start
+     * of its record, or {@literal null} if they are not recorded.
+     */
+    private int[] memberOffsets;
+
+    private int memberCount;
+
+    /**
+     * The indices of the labels of the current method.
+     */
+    private final Map<Label, Integer> labels = new IdentityHashMap<>();
+
+    private final EventAnnotationVisitor annotationVisitor = new EventAnnotationVisitor();
+    private final EventFieldVisitor fieldVisitor = new EventFieldVisitor();
+    private final EventMethodVisitor methodVisitor = new EventMethodVisitor();
+    private final EventRecordComponentVisitor recordComponentVisitor = new EventRecordComponentVisitor();
+    private final EventModuleVisitor moduleVisitor = new EventModuleVisitor();
+
+    /**
+     * Whether the strings are written inline, as a varint length plus one followed by their chars,
+     * rather than as indices in the string table. The records then only depend on the visited events,
+     * which is used to compute {@link ContentHash}es.
+     */
+    private final boolean inlineStrings;
+
+    public ClassSnapshotWriter() {
+        this(false);
+    }
+
+    ClassSnapshotWriter(final boolean inlineStrings) {
+        super(/* latest api = */ Opcodes.ASM8);
+        this.inlineStrings = inlineStrings;
+    }
+
+    /**
+     * Adds a class to this snapshot. The bodies of the methods of the class that are not loaded are
+     * visited from their class file, and stay unloaded.
+     *
+     * @param classNode the class to add.
+     */
+    public void add(final ClassNodeEx classNode) {
+        classNode.accept(this);
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Returns the content of the snapshot of the classes added so far.
+     *
+     * @return the content of the snapshot.
+     */
+    public byte[] toByteArray() {
+        Output header = new Output(4096 + classTable.length);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putVarint(strings.size());
+        for (int i = 0, n = strings.size(); i < n; ++i) {
+            String string = strings.get(i);
+            int length = string.length();
+            header.putVarint(length);
+            for (int j = 0; j < length; ++j) {
+                header.putVarint(string.charAt(j));
+            }
+        }
+        header.putVarint(classCount);
+        header.putBytes(classTable.data, 0, classTable.length);
+        byte[] snapshot = Arrays.copyOf(header.data, header.length + records.length);
+        System.arraycopy(records.data, 0, snapshot, header.length, records.length);
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshot of the classes added so far.
+     *
+     * @param outputStream the stream to write the snapshot to.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        outputStream.write(toByteArray());
+    }
+
+    /**
+     * Writes the snapshot of the classes added so far in a file, which can then be memory mapped with
+     * {@link ClassSnapshotReader#map(Path)}.
+     *
+     * @param path the path of the file.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void writeTo(final Path path) throws IOException {
+        Files.write(path, toByteArray());
+    }
+
+    /**
+     * Records the offsets of the fields and methods of the classes added from now on.
+     */
+    void recordMemberOffsets() {
+        memberOffsets = new int[16];
+    }
+
+    /**
+     * Returns the offsets of the records of the fields and methods of the last added class, in
+     * visit order, relative to the start of the class record. Used with {@link
+     * #recordMemberOffsets()} only.
+     */
+    int[] getMemberOffsets() {
+        return Arrays.copyOf(memberOffsets, memberCount);
+    }
+
+    private void addMemberOffset() {
+        if (memberOffsets != null) {
+            if (memberCount == memberOffsets.length) {
+                memberOffsets = Arrays.copyOf(memberOffsets, memberCount * 2);
+            }
+            memberOffsets[memberCount++] = records.length - classStart;
+        }
+    }
+
+    /**
+     * Returns the hash of the records written since the last call to this method, and clears them.
+     * Used with inline strings only.
+     */
+    ContentHash hashRecords() {
+        ContentHash hash = ContentHash.of(records.data, 0, records.length);
+        records.length = 0;
+        return hash;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Encoding
+    // -----------------------------------------------------------------------------------------------
+
+    private void putString(final String value) {
+        if (value == null) {
+            records.putVarint(0);
+            return;
+        }
+        if (inlineStrings) {
+            int length = value.length();
+            records.putVarint(length + 1);
+            for (int i = 0; i < length; ++i) {
+                records.putVarint(value.charAt(i));
+            }
+            return;
+        }
+        Integer index = stringIndices.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndices.put(value, index);
+        }
+        records.putVarint(index + 1);
+    }
+
+    private void putStrings(final String[] values) {
+        if (values == null) {
+            records.putVarint(0);
+            return;
+        }
+        records.putVarint(values.length + 1);
+        for (String value : values) {
+            putString(value);
+        }
+    }
+
+    private void putLabel(final Label label) {
+        Integer index = labels.get(label);
+        if (index == null) {
+            index = labels.size();
+            labels.put(label, index);
+        }
+        records.putVarint(index);
+    }
+
+    private void putLabels(final Label[] values) {
+        records.putVarint(values.length);
+        for (Label value : values) {
+            putLabel(value);
+        }
+    }
+
+    private void putTypePath(final TypePath typePath) {
+        putString(typePath == null ? null : typePath.toString());
+    }
+
+    private void putHandle(final Handle handle) {
+        records.putByte(handle.getTag());
+        putString(handle.getOwner());
+        putString(handle.getName());
+        putString(handle.getDesc());
+        records.putByte(handle.isInterface() ? 1 : 0);
+    }
+
+    private void putConstant(final Object value) {
+        Output output = records;
+        if (value == null) {
+            output.putByte(CONSTANT_NULL);
+        } else if (value instanceof Integer) {
+            output.putByte(CONSTANT_INTEGER);
+            output.putSignedVarint((Integer) value);
+        } else if (value instanceof String) {
+            output.putByte(CONSTANT_STRING);
+            putString((String) value);
+        } else if (value instanceof Type) {
+            output.putByte(CONSTANT_TYPE);
+            putString(((Type) value).getDescriptor());
+        } else if (value instanceof Long) {
+            output.putByte(CONSTANT_LONG);
+            output.putSignedVarlong((Long) value);
+        } else if (value instanceof Float) {
+            output.putByte(CONSTANT_FLOAT);
+            output.putInt(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Double) {
+            output.putByte(CONSTANT_DOUBLE);
+            output.putLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Handle) {
+            output.putByte(CONSTANT_HANDLE);
+            putHandle((Handle) value);
+        } else if (value instanceof ConstantDynamic) {
+            ConstantDynamic constantDynamic = (ConstantDynamic) value;
+            output.putByte(CONSTANT_DYNAMIC);
+            putString(constantDynamic.getName());
+            putString(constantDynamic.getDescriptor());
+            putHandle(constantDynamic.getBootstrapMethod());
+            int argumentCount = constantDynamic.getBootstrapMethodArgumentCount();
+            output.putVarint(argumentCount);
+            for (int i = 0; i < argumentCount; ++i) {
+                putConstant(constantDynamic.getBootstrapMethodArgument(i));
+            }
+        } else if (value instanceof Byte) {
+            output.putByte(CONSTANT_BYTE);
+            output.putByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            output.putByte(CONSTANT_BOOLEAN);
+            output.putByte((Boolean) value ? 1 : 0);
+        } else if (value instanceof Character) {
+            output.putByte(CONSTANT_CHAR);
+            output.putVarint((Character) value);
+        } else if (value instanceof Short) {
+            output.putByte(CONSTANT_SHORT);
+            output.putSignedVarint((Short) value);
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            output.putByte(CONSTANT_BYTE_ARRAY);
+            output.putVarint(array.length);
+            output.putBytes(array, 0, array.length);
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            output.putByte(CONSTANT_BOOLEAN_ARRAY);
+            output.putVarint(array.length);
+            for (boolean element : array) {
+                output.putByte(element ? 1 : 0);
+            }
+        } else if (value instanceof char[]) {
+            char[] array = (char[]) value;
+            output.putByte(CONSTANT_CHAR_ARRAY);
+            output.putVarint(array.length);
+            for (char element : array) {
+                output.putVarint(element);
+            }
+        } else if (value instanceof short[]) {
+            short[] array = (short[]) value;
+            output.putByte(CONSTANT_SHORT_ARRAY);
+            output.putVarint(array.length);
+            for (short element : array) {
+                output.putSignedVarint(element);
+            }
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            output.putByte(CONSTANT_INT_ARRAY);
+            output.putVarint(array.length);
+            for (int element : array) {
+                output.putSignedVarint(element);
+            }
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            output.putByte(CONSTANT_LONG_ARRAY);
+            output.putVarint(array.length);
+            for (long element : array) {
+                output.putSignedVarlong(element);
+            }
+        } else if (value instanceof float[]) {
+            float[] array = (float[]) value;
+            output.putByte(CONSTANT_FLOAT_ARRAY);
+            output.putVarint(array.length);
+            for (float element : array) {
+                output.putInt(Float.floatToRawIntBits(element));
+            }
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            output.putByte(CONSTANT_DOUBLE_ARRAY);
+            output.putVarint(array.length);
+            for (double element : array) {
+                output.putLong(Double.doubleToRawLongBits(element));
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported constant " + value);
+        }
+    }
+
+    private void putFrameElements(final int count, final Object[] elements) {
+        records.putVarint(count);
+        // The elements of chopped frames are not given, only their count.
+        records.putByte(elements == null ? 0 : 1);
+        if (elements == null) {
+            return;
+        }
+        for (int i = 0; i < count; ++i) {
+            Object element = elements[i];
+            if (element instanceof Integer) {
+                records.putByte(FRAME_PRIMITIVE);
+                records.putByte((Integer) element);
+            } else if (element instanceof String) {
+                records.putByte(FRAME_TYPE);
+                putString((String) element);
+            } else {
+                records.putByte(FRAME_LABEL);
+                putLabel((Label) element);
+            }
+        }
+    }
+
+    private void putAttribute(final Attribute attribute) {
+        byte[] content = RawAttribute.getContent(attribute);
+        records.putByte(ATTRIBUTE);
+        putString(attribute.type);
+        records.putVarint(content.length);
+        records.putBytes(content, 0, content.length);
+    }
+
+    private AnnotationVisitor putAnnotation(final int tag, final String descriptor, final boolean visible) {
+        records.putByte(tag);
+        putString(descriptor);
+        records.putByte(visible ? 1 : 0);
+        return annotationVisitor;
+    }
+
+    private AnnotationVisitor putTypeAnnotation(
+            final int tag, final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+        records.putByte(tag);
+        records.putInt(typeRef);
+        putTypePath(typePath);
+        putString(descriptor);
+        records.putByte(visible ? 1 : 0);
+        return annotationVisitor;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Implementation of the ClassVisitor abstract class
+    // -----------------------------------------------------------------------------------------------
+
+    @Override
+    public void visit(
+            final int version,
+            final int access,
+            final String name,
+            final String signature,
+            final String superName,
+            final String[] interfaces) {
+        classStart = records.length;
+        memberCount = 0;
+        putString(name);
+        if (!inlineStrings) {
+            classNameIndex = stringIndices.get(name);
+        }
+        records.putVarint(version);
+        records.putVarint(access);
+        putString(signature);
+        putString(superName);
+        putStrings(interfaces);
+    }
+
+    @Override
+    public void visitSource(final String source, final String debug) {
+        records.putByte(SOURCE);
+        putString(source);
+        putString(debug);
+    }
+
+    @Override
+    public ModuleVisitor visitModule(final String name, final int access, final String version) {
+        records.putByte(MODULE);
+        putString(name);
+        records.putVarint(access);
+        putString(version);
+        return moduleVisitor;
+    }
+
+    @Override
+    public void visitNestHost(final String nestHost) {
+        records.putByte(NEST_HOST);
+        putString(nestHost);
+    }
+
+    @Override
+    public void visitOuterClass(final String owner, final String name, final String descriptor) {
+        records.putByte(OUTER_CLASS);
+        putString(owner);
+        putString(name);
+        putString(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+        return putAnnotation(ANNOTATION, descriptor, visible);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(
+            final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+        return putTypeAnnotation(TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+    }
+
+    @Override
+    public void visitAttribute(final Attribute attribute) {
+        putAttribute(attribute);
+    }
+
+    @Override
+    public void visitNestMember(final String nestMember) {
+        records.putByte(NEST_MEMBER);
+        putString(nestMember);
+    }
+
+    @Override
+    @Deprecated
+    public void visitPermittedSubtypeExperimental(final String permittedSubtype) {
+        records.putByte(PERMITTED_SUBTYPE);
+        putString(permittedSubtype);
+    }
+
+    @Override
+    public void visitInnerClass(final String name, final String outerName, final String innerName, final int access) {
+        records.putByte(INNER_CLASS);
+        putString(name);
+        putString(outerName);
+        putString(innerName);
+        records.putVarint(access);
+    }
+
+    @Override
+    public RecordComponentVisitor visitRecordComponent(final String name, final String descriptor, final String signature) {
+        records.putByte(RECORD_COMPONENT);
+        putString(name);
+        putString(descriptor);
+        putString(signature);
+        return recordComponentVisitor;
+    }
+
+    @Override
+    public FieldVisitor visitField(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final Object value) {
+        addMemberOffset();
+        records.putByte(FIELD);
+        records.putVarint(access);
+        putString(name);
+        putString(descriptor);
+        putString(signature);
+        putConstant(value);
+        return fieldVisitor;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final String[] exceptions) {
+        addMemberOffset();
+        records.putByte(METHOD);
+        records.putVarint(access);
+        putString(name);
+        putString(descriptor);
+        putString(signature);
+        putStrings(exceptions);
+        labels.clear();
+        return methodVisitor;
+    }
+
+    @Override
+    public void visitEnd() {
+        records.putByte(END);
+        classTable.putVarint(classNameIndex);
+        classTable.putVarint(records.length - classStart);
+        classCount++;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Visitors of the nested events
+    // -----------------------------------------------------------------------------------------------
+
+    private final class EventAnnotationVisitor extends AnnotationVisitor {
+        EventAnnotationVisitor() {
+            super(/* latest api = */ Opcodes.ASM8);
+        }
+
+        @Override
+        public void visit(final String name, final Object value) {
+            records.putByte(ANNOTATION_VALUE);
+            putString(name);
+            putConstant(value);
+        }
+
+        @Override
+        public void visitEnum(final String name, final String descriptor, final String value) {
+            records.putByte(ANNOTATION_ENUM);
+            putString(name);
+            putString(descriptor);
+            putString(value);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String name, final String descriptor) {
+            records.putByte(ANNOTATION_ANNOTATION);
+            putString(name);
+            putString(descriptor);
+            return this;
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(final String name) {
+            records.putByte(ANNOTATION_ARRAY);
+            putString(name);
+            return this;
+        }
+
+        @Override
+        public void visitEnd() {
+            records.putByte(END);
+        }
+    }
+
+    private final class EventFieldVisitor extends FieldVisitor {
+        EventFieldVisitor() {
+            super(/* latest api = */ Opcodes.ASM8);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+            return putAnnotation(ANNOTATION, descriptor, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(
+                final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+            return putTypeAnnotation(TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+        }
+
+        @Override
+        public void visitAttribute(final Attribute attribute) {
+            putAttribute(attribute);
+        }
+
+        @Override
+        public void visitEnd() {
+            records.putByte(END);
+        }
+    }
+
+    private final class EventRecordComponentVisitor extends RecordComponentVisitor {
+        EventRecordComponentVisitor() {
+            super(/* latest api = */ Opcodes.ASM8);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+            return putAnnotation(ANNOTATION, descriptor, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(
+                final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+            return putTypeAnnotation(TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+        }
+
+        @Override
+        public void visitAttribute(final Attribute attribute) {
+            putAttribute(attribute);
+        }
+
+        @Override
+        public void visitEnd() {
+            records.putByte(END);
+        }
+    }
+
+    private final class EventModuleVisitor extends ModuleVisitor {
+        EventModuleVisitor() {
+            super(/* latest api = */ Opcodes.ASM8);
+        }
+
+        @Override
+        public void visitMainClass(final String mainClass) {
+            records.putByte(MODULE_MAIN_CLASS);
+            putString(mainClass);
+        }
+
+        @Override
+        public void visitPackage(final String packaze) {
+            records.putByte(MODULE_PACKAGE);
+            putString(packaze);
+        }
+
+        @Override
+        public void visitRequire(final String module, final int access, final String version) {
+            records.putByte(MODULE_REQUIRE);
+            putString(module);
+            records.putVarint(access);
+            putString(version);
+        }
+
+        @Override
+        public void visitExport(final String packaze, final int access, final String... modules) {
+            records.putByte(MODULE_EXPORT);
+            putString(packaze);
+            records.putVarint(access);
+            putStrings(modules);
+        }
+
+        @Override
+        public void visitOpen(final String packaze, final int access, final String... modules) {
+            records.putByte(MODULE_OPEN);
+            putString(packaze);
+            records.putVarint(access);
+            putStrings(modules);
+        }
+
+        @Override
+        public void visitUse(final String service) {
+            records.putByte(MODULE_USE);
+            putString(service);
+        }
+
+        @Override
+        public void visitProvide(final String service, final String... providers) {
+            records.putByte(MODULE_PROVIDE);
+            putString(service);
+            putStrings(providers);
+        }
+
+        @Override
+        public void visitEnd() {
+            records.putByte(END);
+        }
+    }
+
+    private final class EventMethodVisitor extends MethodVisitor {
+        EventMethodVisitor() {
+            super(/* latest api = */ Opcodes.ASM8);
+        }
+
+        @Override
+        public void visitParameter(final String name, final int access) {
+            records.putByte(PARAMETER);
+            putString(name);
+            records.putVarint(access);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            records.putByte(ANNOTATION_DEFAULT);
+            return annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+            return putAnnotation(ANNOTATION, descriptor, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(
+                final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+            return putTypeAnnotation(TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+        }
+
+        @Override
+        public void visitAnnotableParameterCount(final int parameterCount, final boolean visible) {
+            records.putByte(ANNOTABLE_PARAMETER_COUNT);
+            records.putVarint(parameterCount);
+            records.putByte(visible ? 1 : 0);
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(
+                final int parameter, final String descriptor, final boolean visible) {
+            records.putByte(PARAMETER_ANNOTATION);
+            records.putVarint(parameter);
+            putString(descriptor);
+            records.putByte(visible ? 1 : 0);
+            return annotationVisitor;
+        }
+
+        @Override
+        public void visitAttribute(final Attribute attribute) {
+            putAttribute(attribute);
+        }
+
+        @Override
+        public void visitCode() {
+            records.putByte(CODE);
+        }
+
+        @Override
+        public void visitFrame(
+                final int type,
+                final int numLocal,
+                final Object[] local,
+                final int numStack,
+                final Object[] stack) {
+            records.putByte(FRAME);
+            records.putSignedVarint(type);
+            // Drop the arrays that are not used by the frame type, which are given by a class reader but
+            // not by a tree, so that both give the same records.
+            boolean full = type == Opcodes.F_NEW || type == Opcodes.F_FULL;
+            putFrameElements(numLocal, full || type == Opcodes.F_APPEND ? local : null);
+            putFrameElements(numStack, full || type == Opcodes.F_SAME1 ? stack : null);
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+            records.putByte(INSN);
+            records.putByte(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+            records.putByte(INT_INSN);
+            records.putByte(opcode);
+            records.putSignedVarint(operand);
+        }
+
+        @Override
+        public void visitVarInsn(final int opcode, final int var) {
+            records.putByte(VAR_INSN);
+            records.putByte(opcode);
+            records.putVarint(var);
+        }
+
+        @Override
+        public void visitTypeInsn(final int opcode, final String type) {
+            records.putByte(TYPE_INSN);
+            records.putByte(opcode);
+            putString(type);
+        }
+
+        @Override
+        public void visitFieldInsn(final int opcode, final String owner, final String name, final String descriptor) {
+            records.putByte(FIELD_INSN);
+            records.putByte(opcode);
+            putString(owner);
+            putString(name);
+            putString(descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(
+                final int opcode,
+                final String owner,
+                final String name,
+                final String descriptor,
+                final boolean isInterface) {
+            records.putByte(METHOD_INSN);
+            records.putByte(opcode);
+            putString(owner);
+            putString(name);
+            putString(descriptor);
+            records.putByte(isInterface ? 1 : 0);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(
+                final String name,
+                final String descriptor,
+                final Handle bootstrapMethodHandle,
+                final Object... bootstrapMethodArguments) {
+            records.putByte(INVOKE_DYNAMIC_INSN);
+            putString(name);
+            putString(descriptor);
+            putHandle(bootstrapMethodHandle);
+            records.putVarint(bootstrapMethodArguments.length);
+            for (Object argument : bootstrapMethodArguments) {
+                putConstant(argument);
+            }
+        }
+
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+            records.putByte(JUMP_INSN);
+            records.putByte(opcode);
+            putLabel(label);
+        }
+
+        @Override
+        public void visitLabel(final Label label) {
+            records.putByte(LABEL);
+            putLabel(label);
+        }
+
+        @Override
+        public void visitLdcInsn(final Object value) {
+            records.putByte(LDC_INSN);
+            putConstant(value);
+        }
+
+        @Override
+        public void visitIincInsn(final int var, final int increment) {
+            records.putByte(IINC_INSN);
+            records.putVarint(var);
+            records.putSignedVarint(increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+            records.putByte(TABLE_SWITCH_INSN);
+            records.putSignedVarint(min);
+            records.putSignedVarint(max);
+            putLabel(dflt);
+            putLabels(labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+            records.putByte(LOOKUP_SWITCH_INSN);
+            putLabel(dflt);
+            records.putVarint(keys.length);
+            for (int key : keys) {
+                records.putSignedVarint(key);
+            }
+            putLabels(labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(final String descriptor, final int numDimensions) {
+            records.putByte(MULTI_ANEW_ARRAY_INSN);
+            putString(descriptor);
+            records.putVarint(numDimensions);
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(
+                final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+            return putTypeAnnotation(INSN_ANNOTATION, typeRef, typePath, descriptor, visible);
+        }
+
+        @Override
+        public void visitTryCatchBlock(final Label start, final Label end, final Label handler, final String type) {
+            records.putByte(TRY_CATCH_BLOCK);
+            putLabel(start);
+            putLabel(end);
+            putLabel(handler);
+            putString(type);
+        }
+
+        @Override
+        public AnnotationVisitor visitTryCatchAnnotation(
+                final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+            return putTypeAnnotation(TRY_CATCH_ANNOTATION, typeRef, typePath, descriptor, visible);
+        }
+
+        @Override
+        public void visitLocalVariable(
+                final String name,
+                final String descriptor,
+                final String signature,
+                final Label start,
+                final Label end,
+                final int index) {
+            records.putByte(LOCAL_VARIABLE);
+            putString(name);
+            putString(descriptor);
+            putString(signature);
+            putLabel(start);
+            putLabel(end);
+            records.putVarint(index);
+        }
+
+        @Override
+        public AnnotationVisitor visitLocalVariableAnnotation(
+                final int typeRef,
+                final TypePath typePath,
+                final Label[] start,
+                final Label[] end,
+                final int[] index,
+                final String descriptor,
+                final boolean visible) {
+            records.putByte(LOCAL_VARIABLE_ANNOTATION);
+            records.putInt(typeRef);
+            putTypePath(typePath);
+            putLabels(start);
+            putLabels(end);
+            for (int i : index) {
+                records.putVarint(i);
+            }
+            putString(descriptor);
+            records.putByte(visible ? 1 : 0);
+            return annotationVisitor;
+        }
+
+        @Override
+        public void visitLineNumber(final int line, final Label start) {
+            records.putByte(LINE_NUMBER);
+            records.putVarint(line);
+            putLabel(start);
+        }
+
+        @Override
+        public void visitMaxs(final int maxStack, final int maxLocals) {
+            records.putByte(MAXS);
+            records.putVarint(maxStack);
+            records.putVarint(maxLocals);
+        }
+
+        @Override
+        public void visitEnd() {
+            records.putByte(END);
+        }
+    }
+
+    /**
+     * A growable byte array.
+     */
+    private static final class Output {
+        byte[] data;
+        int length;
+
+        Output(final int initialCapacity) {
+            data = new byte[initialCapacity];
+        }
+
+        private void ensureCapacity(final int size) {
+            if (length + size > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + size));
+            }
+        }
+
+        void putByte(final int value) {
+            ensureCapacity(1);
+            data[length++] = (byte) value;
+        }
+
+        void putInt(final int value) {
+            ensureCapacity(4);
+            data[length++] = (byte) (value >>> 24);
+            data[length++] = (byte) (value >>> 16);
+            data[length++] = (byte) (value >>> 8);
+            data[length++] = (byte) value;
+        }
+
+        void putLong(final long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+
+        void putVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        void putSignedVarint(final int value) {
+            putVarint((value << 1) ^ (value >> 31));
+        }
+
+        void putSignedVarlong(final long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensureCapacity(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                data[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            data[length++] = (byte) zigzag;
+        }
+
+        void putBytes(final byte[] bytes, final int offset, final int count) {
+            ensureCapacity(count);
+            System.arraycopy(bytes, offset, data, length, count);
+            length += count;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.mouse0w0.asm.extree;
+
+/**
+ * A 128 bit structural hash of the content of a class, field or method, see {@link
+ * ClassNodeEx#getContentHash()}, {@link FieldNodeEx#getContentHash()} and {@link
+ * MethodNodeEx#getContentHash()}. Two nodes that make a visitor visit the same events have the same
+ * hash. The hash is a MurmurHash3 (x64, 128 bit variant) of the events, encoded as in a {@link
+ * ClassSnapshotWriter} snapshot but with inline strings. It is not a cryptographic hash.
+ */
+public final class ContentHash {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long high;
+    private final long low;
+
+    public ContentHash(final long high, final long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Hashes a byte array.
+     *
+     * @param data   the bytes to hash.
+     * @param offset the offset of the first byte to hash.
+     * @param length the number of bytes to hash.
+     * @return the hash of the bytes.
+     */
+    static ContentHash of(final byte[] data, final int offset, final int length) {
+        long h1 = 0;
+        long h2 = 0;
+        int end = offset + (length & ~15);
+        for (int i = offset; i < end; i += 16) {
+            long k1 = getLong(data, i);
+            long k2 = getLong(data, i + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int tail = length & 15;
+        for (int i = tail - 1; i >= 8; --i) {
+            k2 = (k2 << 8) | (data[end + i] & 0xFF);
+        }
+        for (int i = Math.min(tail, 8) - 1; i >= 0; --i) {
+            k1 = (k1 << 8) | (data[end + i] & 0xFF);
+        }
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new ContentHash(h1, h2);
+    }
+
+    /**
+     * Combines this hash with another one. The result depends on the order of the combined hashes.
+     */
+    ContentHash combine(final ContentHash other) {
+        long h1 = Long.rotateLeft(high, 27) + other.high;
+        long h2 = Long.rotateLeft(low, 31) + other.low;
+        return new ContentHash(fmix(h1 * 5 + 0x52dce729 + h2), fmix(h2 * 5 + 0x38495ab5 + h1));
+    }
+
+    private static long getLong(final byte[] data, final int offset) {
+        return (data[offset] & 0xFFL)
+                | (data[offset + 1] & 0xFFL) << 8
+                | (data[offset + 2] & 0xFFL) << 16
+                | (data[offset + 3] & 0xFFL) << 24
+                | (data[offset + 4] & 0xFFL) << 32
+                | (data[offset + 5] & 0xFFL) << 40
+                | (data[offset + 6] & 0xFFL) << 48
+                | (data[offset + 7] & 0xFFL) << 56;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ContentHash)) return false;
+        ContentHash that = (ContentHash) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high ^ (high >>> 32));
+    }
+
+    /**
+     * @return the 32 hexadecimal digits of this hash.
+     */
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
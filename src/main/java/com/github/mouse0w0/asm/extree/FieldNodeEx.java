@@ -4,9 +4,11 @@ import org.objectweb.asm.*;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.UnsupportedClassVersionException;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 public class FieldNodeEx extends FieldVisitor {
 
@@ -47,6 +49,31 @@ public class FieldNodeEx extends FieldVisitor {
      */
     public List<Attribute> attrs;
 
+    /**
+     * The class reader this field was read from, or {@literal null}.
+     */
+    ClassReader sourceClassReader;
+
+    /**
+     * The index of this field in the fields array of the class read by {@link #sourceClassReader}.
+     */
+    int sourceIndex;
+
+    /**
+     * Whether this field was modified since it was read.
+     */
+    private boolean dirty;
+
+    /**
+     * The content hash of this field, computed on first use, or {@literal null}.
+     */
+    private ContentHash contentHash;
+
+    /**
+     * The interner of the descriptors of the annotations of this field, or {@literal null}.
+     */
+    StringInterner interner;
+
     /**
      * Constructs a new {@link FieldNode}. <i>Subclasses must not use this constructor</i>. Instead,
      * they must use the {@link #FieldNodeEx(int, int, String, String, String, Object)} version.
@@ -109,6 +136,8 @@ public class FieldNodeEx extends FieldVisitor {
             annotations = new LinkedHashMap<>(2);
         }
         annotations.put(annotationNode.desc, annotationNode);
+        dirty = true;
+        contentHash = null;
     }
 
     public TypeAnnotationNodeEx getTypeAnnotation(String descriptor) {
@@ -116,31 +145,151 @@ public class FieldNodeEx extends FieldVisitor {
     }
 
     public void addTypeAnnotation(TypeAnnotationNodeEx typeAnnotation) {
+        putTypeAnnotation(typeAnnotation);
+        dirty = true;
+        contentHash = null;
+    }
+
+    private void putTypeAnnotation(TypeAnnotationNodeEx typeAnnotation) {
         if (typeAnnotations == null) {
             typeAnnotations = new LinkedHashMap<>(2);
         }
         typeAnnotations.put(typeAnnotation.desc, typeAnnotation);
     }
 
+    /**
+     * Returns whether this field was modified since it was read. The methods of this class that
+     * modify it mark it as dirty, but modifications made directly on its fields must be followed by a
+     * call to {@link #markDirty()}.
+     *
+     * @return whether this field was modified since it was read.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks this field as modified, so that it is not copied from the class it was read from.
+     */
+    public void markDirty() {
+        dirty = true;
+        contentHash = null;
+    }
+
+    /**
+     * Returns the structural hash of this field: the hash of its header, value, annotations and
+     * attributes, as visited by {@link #accept(ClassVisitor)}. The hash is computed on first use and
+     * cached until this field is modified by the methods of this class or {@link #markDirty()} is
+     * called.
+     *
+     * @return the content hash of this field.
+     */
+    public ContentHash getContentHash() {
+        return getContentHash(null);
+    }
+
+    ContentHash getContentHash(final ClassSnapshotWriter hashWriter) {
+        ContentHash hash = contentHash;
+        if (hash == null) {
+            ClassSnapshotWriter writer = hashWriter != null ? hashWriter : new ClassSnapshotWriter(true);
+            accept(writer);
+            hash = writer.hashRecords();
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns a copy of this field for {@link ClassNodeEx#fork()}, with copies of its annotations.
+     */
+    FieldNodeEx fork() {
+        FieldNodeEx copy = new FieldNodeEx(api, access, name, desc, signature, value);
+        if (annotations != null) {
+            for (AnnotationNodeEx annotation : annotations.values()) {
+                annotation.accept(copy.visitAnnotation(annotation.desc, annotation.visible));
+            }
+        }
+        if (typeAnnotations != null) {
+            for (TypeAnnotationNodeEx typeAnnotation : typeAnnotations.values()) {
+                typeAnnotation.accept(
+                        copy.visitTypeAnnotation(
+                                typeAnnotation.typeRef, typeAnnotation.typePath, typeAnnotation.desc, typeAnnotation.visible));
+            }
+        }
+        if (attrs != null) {
+            copy.attrs = new ArrayList<>(attrs);
+        }
+        copy.setSource(sourceClassReader, sourceIndex);
+        copy.dirty = dirty;
+        copy.contentHash = contentHash;
+        copy.interner = interner;
+        return copy;
+    }
+
+    void setSource(final ClassReader classReader, final int index) {
+        this.sourceClassReader = classReader;
+        this.sourceIndex = index;
+    }
+
+    /**
+     * Reinitializes this field, so that it can be reused for another field of another class.
+     */
+    void reset(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final Object value) {
+        this.access = access;
+        this.name = name;
+        this.desc = descriptor;
+        this.signature = signature;
+        this.value = value;
+        this.annotations = null;
+        this.typeAnnotations = null;
+        this.attrs = null;
+        this.sourceClassReader = null;
+        this.sourceIndex = 0;
+        this.dirty = false;
+        this.contentHash = null;
+        this.interner = null;
+    }
+
+    boolean hasHeader(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final Object value) {
+        return this.access == access
+                && name.equals(this.name)
+                && descriptor.equals(this.desc)
+                && Objects.equals(signature, this.signature)
+                && Objects.equals(value, this.value);
+    }
+
     // -----------------------------------------------------------------------------------------------
     // Implementation of the FieldVisitor abstract class
     // -----------------------------------------------------------------------------------------------
 
     @Override
     public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
-        AnnotationNodeEx annotation = new AnnotationNodeEx(descriptor, visible);
+        AnnotationNodeEx annotation = new AnnotationNodeEx(Util.intern(interner, descriptor), visible);
+        annotation.interner = interner;
         if (annotations == null) {
             annotations = new LinkedHashMap<>(2);
         }
-        annotations.put(descriptor, annotation);
+        annotations.put(annotation.desc, annotation);
         return annotation;
     }
 
     @Override
     public AnnotationVisitor visitTypeAnnotation(
             final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
-        TypeAnnotationNodeEx typeAnnotation = new TypeAnnotationNodeEx(typeRef, typePath, descriptor, visible);
-        addTypeAnnotation(typeAnnotation);
+        TypeAnnotationNodeEx typeAnnotation =
+                new TypeAnnotationNodeEx(typeRef, typePath, Util.intern(interner, descriptor), visible);
+        typeAnnotation.interner = interner;
+        putTypeAnnotation(typeAnnotation);
         return typeAnnotation;
     }
 
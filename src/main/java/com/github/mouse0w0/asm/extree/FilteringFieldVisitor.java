@@ -0,0 +1,41 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A field visitor that decides whether to keep a {@link FieldNodeEx} once its annotations are known
+ * (see {@link MemberFilter.Mode#DEFER}).
+ */
+final class FilteringFieldVisitor extends FieldVisitor {
+
+    /**
+     * The class that contains the field.
+     */
+    private final ClassNodeEx classNode;
+
+    /**
+     * The field being built.
+     */
+    private final FieldNodeEx field;
+
+    /**
+     * The filter to call once the annotations of the field are known.
+     */
+    private final MemberFilter filter;
+
+    FilteringFieldVisitor(final ClassNodeEx classNode, final FieldNodeEx field, final MemberFilter filter) {
+        super(/* latest api = */ Opcodes.ASM8, field);
+        this.classNode = classNode;
+        this.field = field;
+        this.filter = filter;
+    }
+
+    @Override
+    public void visitEnd() {
+        if (filter.filterField(field) == MemberFilter.Mode.SKIP) {
+            classNode.fields.remove(field.name, field);
+        }
+        super.visitEnd();
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A method visitor that builds a {@link MethodNodeEx} without code, or that decides whether to
+ * build its code once its annotations are known (see {@link MemberFilter.Mode#DEFER}).
+ */
+final class FilteringMethodVisitor extends MethodVisitor {
+
+    /**
+     * The class that contains the method.
+     */
+    private final ClassNodeEx classNode;
+
+    /**
+     * The method being built.
+     */
+    private final MethodNodeEx method;
+
+    /**
+     * The filter to call once the annotations of the method are known, or {@literal null} to always
+     * drop the code.
+     */
+    private final MemberFilter filter;
+
+    /**
+     * The loader of the method body if the class is read lazily, or {@literal null}.
+     */
+    private final MethodBodyLoader bodyLoader;
+
+    /**
+     * The mode of the method, or {@literal null} if not decided yet.
+     */
+    private MemberFilter.Mode mode;
+
+    FilteringMethodVisitor(
+            final ClassNodeEx classNode,
+            final MethodNodeEx method,
+            final MemberFilter filter,
+            final MethodBodyLoader bodyLoader) {
+        super(/* latest api = */ Opcodes.ASM8, method);
+        this.classNode = classNode;
+        this.method = method;
+        this.filter = filter;
+        this.bodyLoader = bodyLoader;
+    }
+
+    @Override
+    public void visitCode() {
+        if (filter() == MemberFilter.Mode.FULL) {
+            super.visitCode();
+        } else {
+            // Drop the code events.
+            mv = null;
+        }
+    }
+
+    @Override
+    public void visitEnd() {
+        MemberFilter.Mode mode = filter();
+        if (mode == MemberFilter.Mode.SKIP) {
+            classNode.removeMethod(method);
+        } else if (mode == MemberFilter.Mode.FULL && bodyLoader != null) {
+            method.deferBody(bodyLoader);
+        }
+        method.visitEnd();
+    }
+
+    private MemberFilter.Mode filter() {
+        if (mode == null) {
+            mode = filter == null ? MemberFilter.Mode.NO_CODE : filter.filterMethod(method);
+        }
+        return mode;
+    }
+}
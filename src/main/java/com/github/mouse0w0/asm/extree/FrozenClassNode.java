@@ -0,0 +1,267 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable view of a {@link ClassNodeEx}, see {@link ClassNodeEx#freeze()}. The class is stored
+ * as a {@link ClassSnapshotWriter snapshot}: a string table and a compact byte array of its visit
+ * events, about half the size of its class file. The headers of the class and of its members, and
+ * the descriptors of their annotations, are copied when the view is built. The rest of the
+ * class, such as the code of the methods and the values of the annotations, is decoded on demand
+ * by {@link #accept(ClassVisitor)} and {@link FrozenMember#accept(ClassVisitor)}, or by {@link
+ * #thaw()} into a new mutable tree.
+ *
+ * <p>All the fields of this class are final and all its collections are unmodifiable, so a frozen
+ * class can be shared by several threads without locks nor copies, and is safely published even
+ * through a data race.
+ */
+public final class FrozenClassNode {
+
+    /**
+     * The snapshot of this class.
+     */
+    private final ClassSnapshotReader snapshot;
+
+    public final int version;
+    public final int access;
+    public final String name;
+    public final String signature;
+    public final String superName;
+    public final List<String> interfaces;
+
+    /**
+     * The descriptors of the annotations of this class, visible and invisible.
+     */
+    public final List<String> annotationDescriptors;
+
+    public final List<FrozenMember> fields;
+    public final List<FrozenMember> methods;
+
+    /**
+     * The fields and methods of this class, by name.
+     */
+    private final Map<String, FrozenMember[]> fieldsByName;
+    private final Map<String, FrozenMember[]> methodsByName;
+
+    FrozenClassNode(final ClassNodeEx classNode) {
+        ClassSnapshotWriter writer = new ClassSnapshotWriter();
+        writer.recordMemberOffsets();
+        writer.add(classNode);
+        this.snapshot = new ClassSnapshotReader(writer.toByteArray());
+        int classOffset = snapshot.getClassOffset(0);
+        int[] memberOffsets = writer.getMemberOffsets();
+        this.version = classNode.version;
+        this.access = classNode.access;
+        this.name = classNode.name;
+        this.signature = classNode.signature;
+        this.superName = classNode.superName;
+        this.interfaces = copyOf(classNode.interfaces);
+        this.annotationDescriptors = descriptorsOf(classNode.annotations);
+        // The fields are visited before the methods, in the order of their maps.
+        int memberIndex = 0;
+        List<FrozenMember> fieldList = new ArrayList<>(classNode.fields.size());
+        for (FieldNodeEx field : classNode.fields.values()) {
+            fieldList.add(new FrozenMember(
+                    snapshot,
+                    classOffset + memberOffsets[memberIndex++],
+                    false,
+                    field.access,
+                    field.name,
+                    field.desc,
+                    field.signature,
+                    field.value,
+                    Collections.<String>emptyList(),
+                    descriptorsOf(field.annotations)));
+        }
+        List<FrozenMember> methodList = new ArrayList<>(classNode.methods.size());
+        for (MethodNodeEx method : classNode.methods.values()) {
+            methodList.add(new FrozenMember(
+                    snapshot,
+                    classOffset + memberOffsets[memberIndex++],
+                    true,
+                    method.access,
+                    method.name,
+                    method.desc,
+                    method.signature,
+                    null,
+                    copyOf(method.exceptions),
+                    descriptorsOf(method.annotations)));
+        }
+        this.fields = unmodifiable(fieldList);
+        this.methods = unmodifiable(methodList);
+        this.fieldsByName = indexByName(fieldList);
+        this.methodsByName = indexByName(methodList);
+    }
+
+    private static List<String> copyOf(final List<String> list) {
+        return list == null || list.isEmpty()
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(Arrays.asList(list.toArray(new String[0])));
+    }
+
+    private static List<String> descriptorsOf(final Map<String, AnnotationNodeEx> annotations) {
+        return annotations == null || annotations.isEmpty()
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(Arrays.asList(annotations.keySet().toArray(new String[0])));
+    }
+
+    private static <T> List<T> unmodifiable(final List<T> list) {
+        return list.isEmpty() ? Collections.<T>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    private static Map<String, FrozenMember[]> indexByName(final List<FrozenMember> members) {
+        Map<String, FrozenMember[]> index = new HashMap<>(members.size() * 2);
+        for (FrozenMember member : members) {
+            FrozenMember[] namesakes = index.get(member.name);
+            if (namesakes == null) {
+                namesakes = new FrozenMember[]{member};
+            } else {
+                namesakes = Arrays.copyOf(namesakes, namesakes.length + 1);
+                namesakes[namesakes.length - 1] = member;
+            }
+            index.put(member.name, namesakes);
+        }
+        return index;
+    }
+
+    /**
+     * @param name the name of a field.
+     * @return the first field of this class with the given name, or {@literal null}.
+     */
+    public FrozenMember getField(final String name) {
+        FrozenMember[] namesakes = fieldsByName.get(name);
+        return namesakes == null ? null : namesakes[0];
+    }
+
+    /**
+     * @param name       the name of a method.
+     * @param descriptor the descriptor of the method.
+     * @return the method of this class with the given name and descriptor, or {@literal null}.
+     */
+    public FrozenMember getMethod(final String name, final String descriptor) {
+        FrozenMember[] namesakes = methodsByName.get(name);
+        if (namesakes != null) {
+            for (FrozenMember method : namesakes) {
+                if (method.desc.equals(descriptor)) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name the name of the methods.
+     * @return the methods of this class with the given name, in declaration order. May be empty.
+     */
+    public List<FrozenMember> getMethods(final String name) {
+        FrozenMember[] namesakes = methodsByName.get(name);
+        return namesakes == null ? Collections.<FrozenMember>emptyList() : Collections.unmodifiableList(Arrays.asList(namesakes));
+    }
+
+    /**
+     * Makes the given class visitor visit this class. This method can be called concurrently.
+     *
+     * @param classVisitor a class visitor.
+     */
+    public void accept(final ClassVisitor classVisitor) {
+        snapshot.accept(0, classVisitor);
+    }
+
+    /**
+     * Returns a new mutable copy of this class.
+     *
+     * @return a new {@link ClassNodeEx} with the content of this class.
+     */
+    public ClassNodeEx thaw() {
+        return snapshot.read(0);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * An immutable view of a field or method of a {@link FrozenClassNode}.
+     */
+    public static final class FrozenMember {
+
+        private final ClassSnapshotReader snapshot;
+
+        /**
+         * The offset of the record of this member in {@link #snapshot}.
+         */
+        private final int offset;
+
+        /**
+         * Whether this member is a method.
+         */
+        public final boolean method;
+
+        public final int access;
+        public final String name;
+        public final String desc;
+        public final String signature;
+
+        /**
+         * The constant value of a field, or {@literal null}. Always {@literal null} for a method.
+         */
+        public final Object value;
+
+        /**
+         * The internal names of the exceptions of a method. Always empty for a field.
+         */
+        public final List<String> exceptions;
+
+        /**
+         * The descriptors of the annotations of this member, visible and invisible.
+         */
+        public final List<String> annotationDescriptors;
+
+        FrozenMember(
+                final ClassSnapshotReader snapshot,
+                final int offset,
+                final boolean method,
+                final int access,
+                final String name,
+                final String desc,
+                final String signature,
+                final Object value,
+                final List<String> exceptions,
+                final List<String> annotationDescriptors) {
+            this.snapshot = snapshot;
+            this.offset = offset;
+            this.method = method;
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.signature = signature;
+            this.value = value;
+            this.exceptions = exceptions;
+            this.annotationDescriptors = annotationDescriptors;
+        }
+
+        /**
+         * Makes the given class visitor visit this member, with its visitField or visitMethod
+         * method. This method can be called concurrently.
+         *
+         * @param classVisitor a class visitor.
+         */
+        public void accept(final ClassVisitor classVisitor) {
+            snapshot.acceptMember(offset, classVisitor);
+        }
+
+        @Override
+        public String toString() {
+            return name + desc;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A {@link ClassWriter} that computes the common super class of two classes with a {@link
+ * ClassHierarchy}, instead of loading them with {@link Class#forName(String)}. Used with {@link
+ * ClassWriter#COMPUTE_FRAMES}.
+ */
+public class HierarchyClassWriter extends ClassWriter {
+
+    /**
+     * The hierarchy used to compute the common super classes.
+     */
+    private final ClassHierarchy classHierarchy;
+
+    /**
+     * Constructs a new {@link HierarchyClassWriter}.
+     *
+     * @param classHierarchy the hierarchy used to compute the common super classes.
+     * @param flags          option flags that can be used to modify the default behavior of this class.
+     *                       Must be zero or more of {@link #COMPUTE_MAXS} and {@link #COMPUTE_FRAMES}.
+     */
+    public HierarchyClassWriter(final ClassHierarchy classHierarchy, final int flags) {
+        super(flags);
+        this.classHierarchy = classHierarchy;
+    }
+
+    /**
+     * Constructs a new {@link HierarchyClassWriter} that copies the constant pool of the given class
+     * reader, see {@link ClassWriter#ClassWriter(ClassReader, int)}.
+     *
+     * @param classReader    the class reader of the class to be transformed.
+     * @param classHierarchy the hierarchy used to compute the common super classes.
+     * @param flags          option flags that can be used to modify the default behavior of this class.
+     *                       Must be zero or more of {@link #COMPUTE_MAXS} and {@link #COMPUTE_FRAMES}.
+     */
+    public HierarchyClassWriter(final ClassReader classReader, final ClassHierarchy classHierarchy, final int flags) {
+        super(classReader, flags);
+        this.classHierarchy = classHierarchy;
+    }
+
+    public ClassHierarchy getClassHierarchy() {
+        return classHierarchy;
+    }
+
+    @Override
+    protected String getCommonSuperClass(final String type1, final String type2) {
+        return classHierarchy.getCommonSuperClass(type1, type2);
+    }
+}
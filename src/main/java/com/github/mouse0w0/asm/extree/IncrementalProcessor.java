@@ -0,0 +1,620 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.ZipException;
+
+/**
+ * Transforms the classes of jar files incrementally. The content hash of each class file of a
+ * processed jar file is stored in a cache file, with the class file produced by the transformation,
+ * compressed as it is stored in the output jar file. When the jar file is processed again, the
+ * classes whose class file and dependencies did not change are neither parsed nor transformed:
+ * their cached data is written as is, without being compressed again. The other
+ * classes are read lazily, transformed with a {@link TransformerPipeline}, and written with a
+ * {@link HierarchyClassWriter}. The resources of the jar file are copied, see {@link
+ * JarOutput#addResources(ClassInput)}.
+ *
+ * <p>The dependencies of a class are its super classes and interfaces, and all the classes queried
+ * through {@link #getClassHierarchy()} while the class was transformed and written, for instance to
+ * compute its frames. A class is transformed again if the class file of one of these classes, or of
+ * one of their super classes and interfaces, changed, or if one of them was added to or removed
+ * from the jar file. The classes that are not in the jar file, and the transformers, are expected not
+ * to change between two runs with the same configuration string: all the classes are transformed
+ * again when the configuration string or the writer flags change. The class names must be unique
+ * in the jar file.
+ *
+ * <p>A processor processes one jar file at a time.
+ */
+public class IncrementalProcessor {
+
+    private static final int MAGIC = 0x43494e43;
+    private static final int VERSION = 1;
+
+    /**
+     * The suffix of the cache files.
+     */
+    public static final String FILE_SUFFIX = ".cache";
+
+    /**
+     * The number of classes below which a read or transform task is not split any further.
+     */
+    private static final int TASK_THRESHOLD = 16;
+
+    /**
+     * The directory of the cache files.
+     */
+    private final Path cacheDirectory;
+
+    /**
+     * The string that identifies the transformers and the classes that are not in the processed jar
+     * files.
+     */
+    private final String configuration;
+
+    /**
+     * The options passed to the class writers, zero or more of {@link
+     * org.objectweb.asm.ClassWriter#COMPUTE_MAXS} and {@link org.objectweb.asm.ClassWriter#COMPUTE_FRAMES}.
+     */
+    private final int writerFlags;
+
+    /**
+     * The pool used to read, transform and write the classes.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The hierarchy of the classes of the jar file being processed, which records the dependencies of
+     * the transformed classes.
+     */
+    private final RecordingHierarchy classHierarchy;
+
+    /**
+     * Constructs a new {@link IncrementalProcessor} that writes the classes without computing their
+     * maximum stack sizes nor their frames, reads the classes that are not in the processed jar files
+     * from the system class loader, and processes the classes on the common pool.
+     *
+     * @param cacheDirectory the directory of the cache files, created if needed.
+     * @param configuration  a string that identifies the transformers and the classes that are not in
+     *                       the processed jar files, for instance a version number.
+     */
+    public IncrementalProcessor(final Path cacheDirectory, final String configuration) {
+        this(cacheDirectory, configuration, 0, ClassLoader.getSystemClassLoader(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new {@link IncrementalProcessor}.
+     *
+     * @param cacheDirectory the directory of the cache files, created if needed.
+     * @param configuration  a string that identifies the transformers and the classes that are not in
+     *                       the processed jar files, for instance a version number.
+     * @param writerFlags    the options passed to the class writers. Zero or more of {@link
+     *                       org.objectweb.asm.ClassWriter#COMPUTE_MAXS} and {@link
+     *                       org.objectweb.asm.ClassWriter#COMPUTE_FRAMES}.
+     * @param classLoader    the class loader used to read the class files of the classes that are not
+     *                       in the processed jar files, or {@literal null}.
+     * @param pool           the pool used to read, transform and write the classes.
+     */
+    public IncrementalProcessor(
+            final Path cacheDirectory,
+            final String configuration,
+            final int writerFlags,
+            final ClassLoader classLoader,
+            final ForkJoinPool pool) {
+        this.cacheDirectory = cacheDirectory;
+        this.configuration = configuration;
+        this.writerFlags = writerFlags;
+        this.pool = pool;
+        this.classHierarchy = new RecordingHierarchy(classLoader);
+    }
+
+    /**
+     * Returns the hierarchy of the classes of the jar file being processed, which must be used by the
+     * transformers that depend on other classes, so that the classes they transform are transformed
+     * again when these classes change. The hierarchy only contains the classes of the jar file while
+     * it is processed.
+     *
+     * @return the hierarchy of the classes being processed.
+     */
+    public ClassHierarchy getClassHierarchy() {
+        return classHierarchy;
+    }
+
+    /**
+     * Returns the cache file of a jar file, whose name is derived from the name and the absolute path
+     * of the jar file.
+     *
+     * @param input the path of a jar file.
+     * @return the path of its cache file.
+     */
+    public Path getCacheFile(final Path input) {
+        byte[] path = input.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8);
+        return cacheDirectory.resolve(
+                input.getFileName() + "-" + ContentHash.of(path, 0, path.length) + FILE_SUFFIX);
+    }
+
+    /**
+     * Transforms the classes of a jar file or class directory that changed since it was last
+     * processed, and writes all the classes and resources to a jar file. The cache file of the input
+     * is updated. Failures to read or write the cache file are ignored: the classes are then all
+     * transformed.
+     *
+     * @param input    the path of a jar file or of a class directory.
+     * @param output   the path of the jar file to write.
+     * @param pipeline the transformers to run on the classes that changed.
+     * @return the number of classes matched by at least one transformer, including the cached classes
+     * that were matched when they were transformed.
+     * @throws IOException if the input cannot be read or the output cannot be written, or if two
+     *                     class files of the input have the same class name.
+     */
+    public int process(final Path input, final Path output, final TransformerPipeline pipeline) throws IOException {
+        Path cacheFile = getCacheFile(input);
+        Map<String, CacheEntry> cache = readCache(cacheFile);
+        try (ClassInput classInput = ClassInput.open(input)) {
+            List<Unit> units = new ArrayList<>();
+            for (ClassInput.Entry entry : classInput.getEntries()) {
+                if (entry.isClassFile()) {
+                    units.add(new Unit(entry));
+                }
+            }
+            units.sort(Comparator.comparing(unit -> unit.entry.getName()));
+            // Read and hash the class files, and find the cached classes with the same content.
+            try {
+                pool.invoke(new UnitTask(units, 0, units.size(), unit -> unit.read(cache)));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            // Build the hierarchy of the jar file, and find the cached classes whose dependencies changed.
+            Map<String, Unit> classes = new HashMap<>(units.size() * 2);
+            classHierarchy.clear();
+            for (Unit unit : units) {
+                Unit previous = classes.putIfAbsent(unit.className, unit);
+                if (previous != null) {
+                    throw new ZipException("Duplicate class " + unit.className + ": "
+                            + previous.entry.getName() + " and " + unit.entry.getName());
+                }
+                classHierarchy.addClass(unit.access, unit.className, unit.superName, unit.interfaces);
+            }
+            List<Unit> changedUnits = new ArrayList<>();
+            for (Unit unit : units) {
+                if (unit.cacheEntry == null
+                        || !unit.cacheEntry.dependencyHash.equals(hashDependencies(unit.cacheEntry.dependencies, classes))) {
+                    unit.cacheEntry = null;
+                    changedUnits.add(unit);
+                }
+            }
+            // Transform the changed classes.
+            try {
+                pool.invoke(new UnitTask(changedUnits, 0, changedUnits.size(), unit -> unit.transform(pipeline)));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (Unit unit : changedUnits) {
+                unit.cacheEntry.dependencyHash = hashDependencies(unit.cacheEntry.dependencies, classes);
+            }
+            int transformed = 0;
+            try (JarOutput jarOutput = new JarOutput(output, 0, null, pool)) {
+                for (Unit unit : units) {
+                    final CacheEntry cacheEntry = unit.cacheEntry;
+                    if (cacheEntry.transformed) {
+                        ++transformed;
+                    }
+                    if (cacheEntry.output != null) {
+                        jarOutput.addEntry(cacheEntry.outputName, cacheEntry.output);
+                    } else {
+                        // Cache the transformed class file as it is compressed.
+                        jarOutput.addEntry(cacheEntry.outputName, unit.output, data -> cacheEntry.output = data);
+                        unit.output = null;
+                    }
+                }
+                jarOutput.addResources(classInput);
+            }
+            writeCache(cacheFile, units);
+            return transformed;
+        } finally {
+            classHierarchy.clear();
+        }
+    }
+
+    /**
+     * Hashes the content of the given classes and of their super classes and interfaces that are in
+     * the jar file, and the names of the other ones.
+     */
+    private static ContentHash hashDependencies(final String[] dependencies, final Map<String, Unit> classes) {
+        ContentHash hash = new ContentHash(0, 0);
+        Set<String> visited = new HashSet<>();
+        Deque<String> types = new ArrayDeque<>(Arrays.asList(dependencies));
+        while (!types.isEmpty()) {
+            String type = types.poll();
+            if (!visited.add(type)) {
+                continue;
+            }
+            byte[] name = type.getBytes(StandardCharsets.UTF_8);
+            hash = hash.combine(ContentHash.of(name, 0, name.length));
+            Unit unit = classes.get(type);
+            if (unit != null) {
+                hash = hash.combine(unit.inputHash);
+                if (unit.superName != null) {
+                    types.add(unit.superName);
+                }
+                types.addAll(Arrays.asList(unit.interfaces));
+            }
+        }
+        return hash;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Processing
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * A class file of the processed jar file.
+     */
+    private final class Unit {
+        final ClassInput.Entry entry;
+        byte[] classFile;
+        ContentHash inputHash;
+        int access;
+        String className;
+        String superName;
+        String[] interfaces;
+
+        /**
+         * The cached or new result of the transformation of this class, or {@literal null} if this
+         * class must be transformed.
+         */
+        CacheEntry cacheEntry;
+
+        /**
+         * The transformed class file, until it is added to the output jar file.
+         */
+        byte[] output;
+
+        Unit(final ClassInput.Entry entry) {
+            this.entry = entry;
+        }
+
+        void read(final Map<String, CacheEntry> cache) throws IOException {
+            classFile = entry.read();
+            inputHash = ContentHash.of(classFile, 0, classFile.length);
+            CacheEntry cached = cache.get(entry.getName());
+            if (cached != null && cached.inputHash.equals(inputHash)) {
+                cacheEntry = cached;
+                access = cached.access;
+                className = cached.className;
+                superName = cached.superName;
+                interfaces = cached.interfaces;
+                // The class file is not needed anymore.
+                classFile = null;
+            } else {
+                ClassReader classReader = new ClassReader(classFile);
+                access = classReader.getAccess();
+                className = classReader.getClassName();
+                superName = classReader.getSuperName();
+                interfaces = classReader.getInterfaces();
+            }
+        }
+
+        void transform(final TransformerPipeline pipeline) throws IOException {
+            if (classFile == null) {
+                // A cached class whose dependencies changed.
+                classFile = entry.read();
+            }
+            Set<String> dependencies = new TreeSet<>();
+            dependencies.add(className);
+            ClassNodeEx classNode = new ClassNodeEx();
+            classNode.readLazily(new ClassReader(classFile), 0);
+            boolean transformed;
+            classHierarchy.startRecording(dependencies);
+            try {
+                transformed = pipeline.transform(classNode);
+                output = JarOutput.toByteArray(classNode, writerFlags, classHierarchy);
+            } finally {
+                classHierarchy.stopRecording();
+            }
+            cacheEntry = new CacheEntry(
+                    entry.getName(), inputHash, access, className, superName, interfaces,
+                    dependencies.toArray(new String[0]), classNode.name + ".class", transformed);
+            classFile = null;
+        }
+    }
+
+    /**
+     * An action run on a unit, which may throw an {@link IOException}.
+     */
+    private interface UnitAction {
+        void run(Unit unit) throws IOException;
+    }
+
+    private static final class UnitTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Unit> units;
+        private final int from;
+        private final int to;
+        private final UnitAction action;
+
+        UnitTask(final List<Unit> units, final int from, final int to, final UnitAction action) {
+            this.units = units;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_THRESHOLD) {
+                for (int i = from; i < to; ++i) {
+                    try {
+                        action.run(units.get(i));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new UnitTask(units, from, middle, action), new UnitTask(units, middle, to, action));
+            }
+        }
+    }
+
+    /**
+     * A class hierarchy that records the classes queried by the current thread, while it transforms
+     * and writes a class.
+     */
+    private static final class RecordingHierarchy extends ClassHierarchy {
+        private final ThreadLocal<Set<String>> dependencies = new ThreadLocal<>();
+
+        RecordingHierarchy(final ClassLoader classLoader) {
+            super(classLoader);
+        }
+
+        void startRecording(final Set<String> classNames) {
+            dependencies.set(classNames);
+        }
+
+        void stopRecording() {
+            dependencies.remove();
+        }
+
+        private void record(final String type) {
+            Set<String> classNames = dependencies.get();
+            if (classNames != null) {
+                classNames.add(type);
+            }
+        }
+
+        @Override
+        public boolean contains(final String type) {
+            record(type);
+            return super.contains(type);
+        }
+
+        @Override
+        public String getSuperName(final String type) {
+            record(type);
+            return super.getSuperName(type);
+        }
+
+        @Override
+        public String[] getInterfaces(final String type) {
+            record(type);
+            return super.getInterfaces(type);
+        }
+
+        @Override
+        public boolean isInterface(final String type) {
+            record(type);
+            return super.isInterface(type);
+        }
+
+        @Override
+        public boolean isAssignableFrom(final String type, final String subType) {
+            record(type);
+            record(subType);
+            return super.isAssignableFrom(type, subType);
+        }
+
+        @Override
+        public String getCommonSuperClass(final String type1, final String type2) {
+            // The memoized results depend on the hierarchies of the two classes.
+            record(type1);
+            record(type2);
+            return super.getCommonSuperClass(type1, type2);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Cache files
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * The result of the transformation of a class file.
+     */
+    private static final class CacheEntry {
+        final String name;
+        final ContentHash inputHash;
+        final int access;
+        final String className;
+        final String superName;
+        final String[] interfaces;
+
+        /**
+         * The classes queried while the class was transformed, including the class itself.
+         */
+        final String[] dependencies;
+
+        /**
+         * The hash of the dependencies, see {@link #hashDependencies(String[], Map)}.
+         */
+        ContentHash dependencyHash;
+
+        final String outputName;
+
+        /**
+         * Whether the class was matched by at least one transformer.
+         */
+        final boolean transformed;
+
+        /**
+         * The transformed class file as it is stored in the output jar file, or {@literal null} until
+         * it is compressed.
+         */
+        JarOutput.EntryData output;
+
+        CacheEntry(
+                final String name,
+                final ContentHash inputHash,
+                final int access,
+                final String className,
+                final String superName,
+                final String[] interfaces,
+                final String[] dependencies,
+                final String outputName,
+                final boolean transformed) {
+            this.name = name;
+            this.inputHash = inputHash;
+            this.access = access;
+            this.className = className;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.dependencies = dependencies;
+            this.outputName = outputName;
+            this.transformed = transformed;
+        }
+    }
+
+    /**
+     * Reads a cache file.
+     *
+     * @return the cached classes by entry name, or an empty map if the cache file does not exist, was
+     * written with another configuration, other writer flags or by another version of this class, or
+     * is corrupted.
+     */
+    private Map<String, CacheEntry> readCache(final Path file) {
+        Map<String, CacheEntry> cache = new HashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return cache;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC
+                    || input.readInt() != VERSION
+                    || !input.readUTF().equals(configuration)
+                    || input.readInt() != writerFlags) {
+                return cache;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; ++i) {
+                String name = input.readUTF();
+                ContentHash inputHash = new ContentHash(input.readLong(), input.readLong());
+                int access = input.readInt();
+                String className = input.readUTF();
+                String superName = input.readBoolean() ? input.readUTF() : null;
+                String[] interfaces = readStrings(input);
+                String[] dependencies = readStrings(input);
+                ContentHash dependencyHash = new ContentHash(input.readLong(), input.readLong());
+                String outputName = input.readUTF();
+                boolean transformed = input.readBoolean();
+                int method = input.readUnsignedShort();
+                int crc = input.readInt();
+                int size = input.readInt();
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+                CacheEntry entry = new CacheEntry(
+                        name, inputHash, access, className, superName, interfaces, dependencies, outputName,
+                        transformed);
+                entry.dependencyHash = dependencyHash;
+                entry.output = new JarOutput.EntryData(method, crc, size, ByteBuffer.wrap(data));
+                cache.put(name, entry);
+            }
+            if (input.read() != -1) {
+                cache.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The cache file is only a cache.
+            cache.clear();
+        }
+        return cache;
+    }
+
+    private static String[] readStrings(final DataInputStream input) throws IOException {
+        String[] strings = new String[input.readInt()];
+        for (int i = 0; i < strings.length; ++i) {
+            strings[i] = input.readUTF();
+        }
+        return strings;
+    }
+
+    /**
+     * Writes the cache file of the processed classes. Failures to write the cache file are ignored.
+     */
+    private void writeCache(final Path file, final List<Unit> units) {
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path tempFile = Util.createTempFile(file);
+            try {
+                try (DataOutputStream output =
+                             new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(VERSION);
+                    output.writeUTF(configuration);
+                    output.writeInt(writerFlags);
+                    output.writeInt(units.size());
+                    for (Unit unit : units) {
+                        CacheEntry entry = unit.cacheEntry;
+                        output.writeUTF(entry.name);
+                        output.writeLong(entry.inputHash.getHigh());
+                        output.writeLong(entry.inputHash.getLow());
+                        output.writeInt(entry.access);
+                        output.writeUTF(entry.className);
+                        output.writeBoolean(entry.superName != null);
+                        if (entry.superName != null) {
+                            output.writeUTF(entry.superName);
+                        }
+                        writeStrings(output, entry.interfaces);
+                        writeStrings(output, entry.dependencies);
+                        output.writeLong(entry.dependencyHash.getHigh());
+                        output.writeLong(entry.dependencyHash.getLow());
+                        output.writeUTF(entry.outputName);
+                        output.writeBoolean(entry.transformed);
+                        output.writeShort(entry.output.method);
+                        output.writeInt(entry.output.crc);
+                        output.writeInt(entry.output.size);
+                        output.writeInt(entry.output.compressedSize);
+                        writeData(output, entry.output.data.duplicate());
+                    }
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // The cache file is only a cache.
+        }
+    }
+
+    private static void writeData(final DataOutputStream output, final ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            output.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            output.write(bytes);
+        }
+    }
+
+    private static void writeStrings(final DataOutputStream output, final String[] strings) throws IOException {
+        output.writeInt(strings.length);
+        for (String string : strings) {
+            output.writeUTF(string);
+        }
+    }
+}
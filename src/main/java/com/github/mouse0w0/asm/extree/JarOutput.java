@@ -0,0 +1,768 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes classes and resources to a jar file. The entries are added to the output, and written when
+ * the output is closed: the classes are serialized with a {@link ClassWriter} and the entries are
+ * compressed in parallel on a {@link ForkJoinPool}, a bounded number of entries ahead of the thread
+ * that writes them to the file, in order. The entries read from a memory mapped jar file (see {@link
+ * ClassInput}) are copied as they are stored in this file, without being inflated and compressed
+ * again.
+ *
+ * <p>The jar file is deterministic: the entries are written in the order of their names, except the
+ * manifest which is written first, and all the entries have the same modification time, see {@link
+ * #setTime(long)}. The ZIP64 records are written only if the jar file needs them, that is if it has
+ * more than 65535 entries or is larger than 4GB. The entries are written to a temporary file next to
+ * the jar file, which then replaces it, so that a failure does not leave a truncated jar file. A jar
+ * output is not thread safe.
+ */
+public class JarOutput implements Closeable {
+
+    /**
+     * The name of the manifest entry, which is written before the other entries.
+     */
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_HEADER_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int ZIP64_END_HEADER_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int ZIP64_LOCAL_EXTRA_SIZE = 20;
+    private static final int ZIP64_CENTRAL_EXTRA_SIZE = 12;
+
+    /**
+     * The largest entry count, and the largest offset or size, that fit the headers without ZIP64.
+     * The values that do not fit are replaced with these ones, and stored in ZIP64 records.
+     */
+    private static final int MAX_ENTRY_COUNT = 0xFFFF;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+    /**
+     * The general purpose flag indicating that the entry names are encoded in UTF-8.
+     */
+    private static final int UTF8_FLAG = 0x800;
+
+    /**
+     * The version needed to extract the stored entries, and the deflated ones.
+     */
+    private static final int STORED_VERSION = 10;
+    private static final int DEFLATED_VERSION = 20;
+
+    /**
+     * The version needed to extract the entries whose headers have ZIP64 extra fields, and ZIP64
+     * jar files.
+     */
+    private static final int ZIP64_VERSION = 45;
+
+    /**
+     * The default modification time of the entries, 1980-02-01 00:00:00. The MS-DOS times have no
+     * time zone, so the tools that convert them to instants shift them by the offset of their time
+     * zone, and a time too close to the start of the MS-DOS epoch, 1980-01-01, could fall before it.
+     */
+    private static final long DEFAULT_TIME =
+            LocalDateTime.of(1980, 2, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    /**
+     * The path of the jar file.
+     */
+    private final Path path;
+
+    /**
+     * The options passed to the class writers, zero or more of {@link ClassWriter#COMPUTE_MAXS} and
+     * {@link ClassWriter#COMPUTE_FRAMES}.
+     */
+    private final int writerFlags;
+
+    /**
+     * The hierarchy used to compute the frames, or {@literal null}.
+     */
+    private final ClassHierarchy classHierarchy;
+
+    /**
+     * The pool used to serialize and compress the entries.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The compression level of the deflated entries.
+     */
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * The modification time of the entries, in the MS-DOS format, as a date and time in UTC.
+     */
+    private int dosTime = toDosTime(DEFAULT_TIME);
+
+    /**
+     * The maximum number of entries serialized and compressed ahead of the entry being written, or 0
+     * to use four times the parallelism of the pool.
+     */
+    private int window;
+
+    /**
+     * The entries to write, by name.
+     */
+    private final Map<String, PendingEntry> entries = new HashMap<>();
+
+    /**
+     * The deflaters that are not used by a compress task.
+     */
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    private boolean closed;
+
+    /**
+     * Constructs a new {@link JarOutput} that compresses the entries on the common pool, and writes
+     * the classes without computing their maximum stack sizes nor their frames.
+     *
+     * @param path the path of the jar file.
+     */
+    public JarOutput(final Path path) {
+        this(path, 0, null, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new {@link JarOutput} that compresses the entries on the common pool.
+     *
+     * @param path           the path of the jar file.
+     * @param writerFlags    the options passed to the class writers. Zero or more of {@link
+     *                       ClassWriter#COMPUTE_MAXS} and {@link ClassWriter#COMPUTE_FRAMES}.
+     * @param classHierarchy the hierarchy used to compute the frames, or {@literal null} to use the
+     *                       default implementation of {@link ClassWriter#getCommonSuperClass(String, String)}.
+     */
+    public JarOutput(final Path path, final int writerFlags, final ClassHierarchy classHierarchy) {
+        this(path, writerFlags, classHierarchy, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new {@link JarOutput}.
+     *
+     * @param path           the path of the jar file.
+     * @param writerFlags    the options passed to the class writers. Zero or more of {@link
+     *                       ClassWriter#COMPUTE_MAXS} and {@link ClassWriter#COMPUTE_FRAMES}.
+     * @param classHierarchy the hierarchy used to compute the frames, or {@literal null} to use the
+     *                       default implementation of {@link ClassWriter#getCommonSuperClass(String, String)}.
+     * @param pool           the pool used to serialize and compress the entries.
+     */
+    public JarOutput(
+            final Path path, final int writerFlags, final ClassHierarchy classHierarchy, final ForkJoinPool pool) {
+        this.path = path;
+        this.writerFlags = writerFlags;
+        this.classHierarchy = classHierarchy;
+        this.pool = pool;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the compression level of the entries that are compressed by this output. The entries
+     * copied from a jar file are not compressed again.
+     *
+     * @param level the compression level, from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public void setLevel(final int level) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        this.level = level;
+    }
+
+    public int getWindow() {
+        return window > 0 ? window : Math.max(2, pool.getParallelism() * 4);
+    }
+
+    /**
+     * Sets the maximum number of entries serialized and compressed ahead of the entry being written
+     * to the file. Their serialized and compressed content is held in memory until they are written.
+     *
+     * @param window the maximum number of entries in flight, or 0 to use four times the parallelism
+     *               of the pool.
+     */
+    public void setWindow(final int window) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        this.window = window;
+    }
+
+    /**
+     * Sets the modification time of all the entries. The MS-DOS times of the jar file have no time
+     * zone, and are read as local times: the given time is stored as a date and time in UTC, so that
+     * the jar file does not depend on the time zone it is written in, but is read shifted by the
+     * offset of the time zone of the reader. The precision is two seconds. The times before 1980 are
+     * stored as 1980-01-01 00:00:00. The default time is 1980-02-01 00:00:00.
+     *
+     * @param time the modification time, in milliseconds since the epoch.
+     */
+    public void setTime(final long time) {
+        this.dosTime = toDosTime(time);
+    }
+
+    /**
+     * Adds a class to this output. The class is serialized when the output is closed, so it must not
+     * be modified until then. The class is written with a {@link ClassWriter} that copies the
+     * constant pool of the class reader it was read from, if any, so that its unchanged methods are
+     * copied as is, see {@link ClassNodeEx#accept(org.objectweb.asm.ClassVisitor)}.
+     *
+     * @param classNode the class to add.
+     * @throws ZipException if an entry with the same name was already added.
+     */
+    public void addClass(final ClassNodeEx classNode) throws ZipException {
+        add(new ClassEntry(classNode.name + ".class", classNode));
+    }
+
+    /**
+     * Adds the given classes to this output, see {@link #addClass(ClassNodeEx)}.
+     *
+     * @param classNodes the classes to add, for instance the classes of a {@link ClassRepository}.
+     * @throws ZipException if an entry with the same name was already added.
+     */
+    public void addClasses(final Iterable<ClassNodeEx> classNodes) throws ZipException {
+        for (ClassNodeEx classNode : classNodes) {
+            addClass(classNode);
+        }
+    }
+
+    /**
+     * Adds an entry to this output.
+     *
+     * @param name    the name of the entry, with '/' separators.
+     * @param content the uncompressed content of the entry, which must not be modified until the
+     *                output is closed.
+     * @throws ZipException if an entry with the same name was already added.
+     */
+    public void addEntry(final String name, final byte[] content) throws ZipException {
+        add(new ContentEntry(name, content, null));
+    }
+
+    /**
+     * Adds an entry of a jar file or of a class directory to this output, with the same name. The
+     * entries of a memory mapped jar file are copied as they are stored, the others are read and
+     * compressed. The input must not be closed until the output is closed.
+     *
+     * @param entry the entry to copy, for instance a resource or an unchanged class.
+     * @throws ZipException if an entry with the same name was already added.
+     */
+    public void addEntry(final ClassInput.Entry entry) throws ZipException {
+        add(new InputEntry(entry));
+    }
+
+    /**
+     * Adds the entries of a jar file or of a class directory that are not class files to this
+     * output, including its directory entries, see {@link #addEntry(ClassInput.Entry)}.
+     *
+     * @param input the input to copy the resources from.
+     * @throws ZipException if an entry with the same name was already added.
+     */
+    public void addResources(final ClassInput input) throws ZipException {
+        for (ClassInput.Entry entry : input.getEntries()) {
+            if (!entry.isClassFile()) {
+                addEntry(entry);
+            }
+        }
+    }
+
+    /**
+     * Adds a class that is supplied when the output is closed, in parallel with the other entries, so
+     * that it is held in memory only while it is serialized. The class is ordered by the given name,
+     * but written under the name it has when it is supplied, which may differ.
+     *
+     * @param name     the name used to order the class, usually the name of the entry it is read from.
+     * @param supplier the supplier of the class, called concurrently.
+     * @throws ZipException if an entry with the same name was already added.
+     */
+    void addClass(final String name, final ClassSupplier supplier) throws ZipException {
+        add(new SuppliedClassEntry(name, supplier));
+    }
+
+    /**
+     * Adds an entry whose data is already stored as in a jar file, for instance compressed by a
+     * previous output.
+     *
+     * @param name the name of the entry, with '/' separators.
+     * @param data the data of the entry, which is not consumed.
+     * @throws ZipException if an entry with the same name was already added.
+     */
+    void addEntry(final String name, final EntryData data) throws ZipException {
+        add(new StoredEntry(name, data));
+    }
+
+    /**
+     * Adds an entry to this output, see {@link #addEntry(String, byte[])}, and passes its data to the
+     * given consumer, concurrently, once it is compressed.
+     *
+     * @param name     the name of the entry, with '/' separators.
+     * @param content  the uncompressed content of the entry.
+     * @param consumer the consumer of the data of the entry, which it must not consume.
+     * @throws ZipException if an entry with the same name was already added.
+     */
+    void addEntry(final String name, final byte[] content, final Consumer<EntryData> consumer) throws ZipException {
+        add(new ContentEntry(name, content, consumer));
+    }
+
+    /**
+     * A supplier of a class added with {@link #addClass(String, ClassSupplier)}.
+     */
+    interface ClassSupplier {
+        ClassNodeEx get() throws IOException;
+    }
+
+    private void add(final PendingEntry entry) throws ZipException {
+        if (closed) {
+            throw new IllegalStateException("Closed output");
+        }
+        if (entries.putIfAbsent(entry.name, entry) != null) {
+            throw new ZipException("Duplicate entry: " + entry.name);
+        }
+    }
+
+    /**
+     * Writes the added entries to a temporary file, replaces the jar file with it, and closes this
+     * output.
+     *
+     * @throws IOException if the jar file cannot be written, or if an entry cannot be read.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        List<PendingEntry> sortedEntries = new ArrayList<>(entries.values());
+        entries.clear();
+        sortedEntries.sort(Comparator.comparing(JarOutput::sortKey));
+        Path tempFile = Util.createTempFile(path);
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                write(channel, sortedEntries);
+            }
+            try {
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            Deflater deflater;
+            while ((deflater = deflaters.poll()) != null) {
+                deflater.end();
+            }
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Returns the key that sorts the manifest before the other entries, and the other entries by name.
+     */
+    private static String sortKey(final PendingEntry entry) {
+        return entry.name.equals(MANIFEST_NAME) ? "" : entry.name;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Writing
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Writes the given entries, compressed in parallel a bounded number of entries ahead, followed
+     * by the central directory. The entries written after the first 4GB have ZIP64 extra fields:
+     * in their local headers, with their sizes, and in the central directory, with their offsets.
+     * Their sizes always fit the central directory, since they are held in arrays.
+     */
+    private void write(final FileChannel channel, final List<PendingEntry> sortedEntries) throws IOException {
+        int window = getWindow();
+        Deque<ForkJoinTask<EntryData>> tasks = new ArrayDeque<>(window);
+        try {
+            writeEntries(channel, sortedEntries, window, tasks);
+        } finally {
+            // Cancel the remaining tasks if an entry cannot be written.
+            for (ForkJoinTask<EntryData> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private void writeEntries(
+            final FileChannel channel,
+            final List<PendingEntry> sortedEntries,
+            final int window,
+            final Deque<ForkJoinTask<EntryData>> tasks) throws IOException {
+        ByteBuffer centralDirectory = newBuffer(1024);
+        // The names of the written entries, which may differ from the added ones for supplied classes.
+        Set<String> names = new HashSet<>();
+        long offset = 0;
+        int next = 0;
+        for (int i = 0, n = sortedEntries.size(); i < n; ++i) {
+            while (next < n && tasks.size() < window) {
+                tasks.add(pool.submit(new CompressTask(sortedEntries.get(next++))));
+            }
+            EntryData data = tasks.poll().join();
+            boolean zip64 = offset >= MAX_OFFSET;
+            String entryName = data.name != null ? data.name : sortedEntries.get(i).name;
+            if (!names.add(entryName)) {
+                throw new ZipException("Duplicate entry: " + entryName);
+            }
+            byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+            int localExtraLength = zip64 ? ZIP64_LOCAL_EXTRA_SIZE : 0;
+            ByteBuffer header = newBuffer(LOCAL_HEADER_SIZE + name.length + localExtraLength);
+            header.putInt(LOCAL_HEADER_SIGNATURE);
+            putCommonHeader(header, data, zip64);
+            header.putInt(zip64 ? (int) MAX_OFFSET : data.compressedSize);
+            header.putInt(zip64 ? (int) MAX_OFFSET : data.size);
+            header.putShort((short) name.length);
+            header.putShort((short) localExtraLength);
+            header.put(name);
+            if (zip64) {
+                header.putShort((short) ZIP64_EXTRA_ID);
+                header.putShort((short) (ZIP64_LOCAL_EXTRA_SIZE - 4));
+                header.putLong(data.size);
+                header.putLong(data.compressedSize);
+            }
+            header.flip();
+            writeFully(channel, header);
+            writeFully(channel, data.data.duplicate());
+            int centralExtraLength = zip64 ? ZIP64_CENTRAL_EXTRA_SIZE : 0;
+            centralDirectory = ensureCapacity(centralDirectory, CENTRAL_HEADER_SIZE + name.length + centralExtraLength);
+            centralDirectory.putInt(CENTRAL_HEADER_SIGNATURE);
+            centralDirectory.putShort((short) (zip64 ? ZIP64_VERSION : DEFLATED_VERSION));
+            putCommonHeader(centralDirectory, data, zip64);
+            centralDirectory.putInt(data.compressedSize);
+            centralDirectory.putInt(data.size);
+            centralDirectory.putShort((short) name.length);
+            centralDirectory.putShort((short) centralExtraLength);
+            centralDirectory.putShort((short) 0);
+            centralDirectory.putShort((short) 0);
+            centralDirectory.putShort((short) 0);
+            centralDirectory.putInt(0);
+            centralDirectory.putInt((int) Math.min(offset, MAX_OFFSET));
+            centralDirectory.put(name);
+            if (zip64) {
+                centralDirectory.putShort((short) ZIP64_EXTRA_ID);
+                centralDirectory.putShort((short) (ZIP64_CENTRAL_EXTRA_SIZE - 4));
+                centralDirectory.putLong(offset);
+            }
+            offset += LOCAL_HEADER_SIZE + name.length + localExtraLength + data.compressedSize;
+        }
+        long centralDirectorySize = centralDirectory.position();
+        long entryCount = sortedEntries.size();
+        centralDirectory = ensureCapacity(centralDirectory, ZIP64_END_HEADER_SIZE + ZIP64_LOCATOR_SIZE + END_HEADER_SIZE);
+        if (entryCount > MAX_ENTRY_COUNT || offset >= MAX_OFFSET || centralDirectorySize >= MAX_OFFSET) {
+            long zip64EndHeaderOffset = offset + centralDirectorySize;
+            centralDirectory.putInt(ZIP64_END_HEADER_SIGNATURE);
+            centralDirectory.putLong(ZIP64_END_HEADER_SIZE - 12);
+            centralDirectory.putShort((short) ZIP64_VERSION);
+            centralDirectory.putShort((short) ZIP64_VERSION);
+            centralDirectory.putInt(0);
+            centralDirectory.putInt(0);
+            centralDirectory.putLong(entryCount);
+            centralDirectory.putLong(entryCount);
+            centralDirectory.putLong(centralDirectorySize);
+            centralDirectory.putLong(offset);
+            centralDirectory.putInt(ZIP64_LOCATOR_SIGNATURE);
+            centralDirectory.putInt(0);
+            centralDirectory.putLong(zip64EndHeaderOffset);
+            centralDirectory.putInt(1);
+        }
+        centralDirectory.putInt(END_HEADER_SIGNATURE);
+        centralDirectory.putShort((short) 0);
+        centralDirectory.putShort((short) 0);
+        centralDirectory.putShort((short) Math.min(entryCount, MAX_ENTRY_COUNT));
+        centralDirectory.putShort((short) Math.min(entryCount, MAX_ENTRY_COUNT));
+        centralDirectory.putInt((int) Math.min(centralDirectorySize, MAX_OFFSET));
+        centralDirectory.putInt((int) Math.min(offset, MAX_OFFSET));
+        centralDirectory.putShort((short) 0);
+        centralDirectory.flip();
+        writeFully(channel, centralDirectory);
+    }
+
+    /**
+     * Puts the fields shared by the local and central headers, from the version needed to extract to
+     * the CRC.
+     */
+    private void putCommonHeader(final ByteBuffer header, final EntryData data, final boolean zip64) {
+        int version = data.method == ZipEntry.STORED ? STORED_VERSION : DEFLATED_VERSION;
+        header.putShort((short) (zip64 ? ZIP64_VERSION : version));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) data.method);
+        header.putInt(dosTime);
+        header.putInt(data.crc);
+    }
+
+    private static ByteBuffer newBuffer(final int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer ensureCapacity(final ByteBuffer buffer, final int length) {
+        if (buffer.remaining() >= length) {
+            return buffer;
+        }
+        ByteBuffer newBuffer = newBuffer(Math.max(buffer.capacity() * 2, buffer.position() + length));
+        buffer.flip();
+        newBuffer.put(buffer);
+        return newBuffer;
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int toDosTime(final long time) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC);
+        if (dateTime.getYear() < 1980) {
+            dateTime = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        return (dateTime.getYear() - 1980) << 25
+                | dateTime.getMonthValue() << 21
+                | dateTime.getDayOfMonth() << 16
+                | dateTime.getHour() << 11
+                | dateTime.getMinute() << 5
+                | dateTime.getSecond() >> 1;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Compression
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * The data of an entry as it is stored in the jar file.
+     */
+    static final class EntryData {
+        final int method;
+        final int crc;
+        final int compressedSize;
+        final int size;
+        final ByteBuffer data;
+
+        /**
+         * The name of the entry if it differs from the added one, or {@literal null}.
+         */
+        String name;
+
+        EntryData(final int method, final int crc, final int size, final ByteBuffer data) {
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = data.remaining();
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    /**
+     * An entry added to the output, which is serialized and compressed when the output is closed.
+     */
+    private abstract class PendingEntry {
+        final String name;
+
+        PendingEntry(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the data of this entry as it is stored in the jar file. Called concurrently.
+         */
+        abstract EntryData compute() throws IOException;
+    }
+
+    private final class ClassEntry extends PendingEntry {
+        private final ClassNodeEx classNode;
+
+        ClassEntry(final String name, final ClassNodeEx classNode) {
+            super(name);
+            this.classNode = classNode;
+        }
+
+        @Override
+        EntryData compute() {
+            return compress(toByteArray(classNode, writerFlags, classHierarchy));
+        }
+    }
+
+    private final class SuppliedClassEntry extends PendingEntry {
+        private final ClassSupplier supplier;
+
+        SuppliedClassEntry(final String name, final ClassSupplier supplier) {
+            super(name);
+            this.supplier = supplier;
+        }
+
+        @Override
+        EntryData compute() throws IOException {
+            ClassNodeEx classNode = supplier.get();
+            EntryData data = compress(toByteArray(classNode, writerFlags, classHierarchy));
+            String className = classNode.name + ".class";
+            if (!className.equals(name)) {
+                data.name = className;
+            }
+            return data;
+        }
+    }
+
+    private final class ContentEntry extends PendingEntry {
+        private final byte[] content;
+        private final Consumer<EntryData> consumer;
+
+        ContentEntry(final String name, final byte[] content, final Consumer<EntryData> consumer) {
+            super(name);
+            this.content = content;
+            this.consumer = consumer;
+        }
+
+        @Override
+        EntryData compute() {
+            EntryData data = compress(content);
+            if (consumer != null) {
+                consumer.accept(data);
+            }
+            return data;
+        }
+    }
+
+    private final class StoredEntry extends PendingEntry {
+        private final EntryData data;
+
+        StoredEntry(final String name, final EntryData data) {
+            super(name);
+            this.data = data;
+        }
+
+        @Override
+        EntryData compute() {
+            return data;
+        }
+    }
+
+    private final class InputEntry extends PendingEntry {
+        private final ClassInput.Entry entry;
+
+        InputEntry(final ClassInput.Entry entry) {
+            super(entry.getName());
+            this.entry = entry;
+        }
+
+        @Override
+        EntryData compute() throws IOException {
+            if (entry instanceof ClassInput.MappedJarInput.MappedEntry) {
+                ClassInput.MappedJarInput.MappedEntry mappedEntry = (ClassInput.MappedJarInput.MappedEntry) entry;
+                return new EntryData(mappedEntry.method, mappedEntry.crc, mappedEntry.size, mappedEntry.getData());
+            }
+            return compress(entry.read());
+        }
+    }
+
+    /**
+     * Serializes a class with a {@link ClassWriter} that copies the constant pool of the class reader
+     * it was read from, if any, so that its unchanged methods are copied as is.
+     */
+    static byte[] toByteArray(
+            final ClassNodeEx classNode, final int writerFlags, final ClassHierarchy classHierarchy) {
+        ClassReader classReader = classNode.getSourceClassReader();
+        ClassWriter classWriter;
+        if (classHierarchy != null) {
+            classWriter = classReader != null
+                    ? new HierarchyClassWriter(classReader, classHierarchy, writerFlags)
+                    : new HierarchyClassWriter(classHierarchy, writerFlags);
+        } else {
+            classWriter = classReader != null
+                    ? new ClassWriter(classReader, writerFlags)
+                    : new ClassWriter(writerFlags);
+        }
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Compresses the given content with a pooled deflater, or stores it if it cannot be compressed.
+     */
+    private EntryData compress(final byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, /* nowrap = */ true);
+        }
+        byte[] output;
+        int length = 0;
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            output = new byte[content.length + (content.length >> 3) + 64];
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+        if (length >= content.length) {
+            return new EntryData(ZipEntry.STORED, (int) crc.getValue(), content.length, ByteBuffer.wrap(content));
+        }
+        return new EntryData(
+                ZipEntry.DEFLATED, (int) crc.getValue(), content.length, ByteBuffer.wrap(output, 0, length));
+    }
+
+    private static final class CompressTask extends RecursiveTask<EntryData> {
+        private static final long serialVersionUID = 1L;
+
+        private final PendingEntry entry;
+
+        CompressTask(final PendingEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        protected EntryData compute() {
+            try {
+                return entry.compute();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.mouse0w0.asm.extree;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which fields and methods of a class are built by a {@link ClassNodeEx}, and how much of
+ * them. The header of each member is passed to {@link #filterField(int, String, String, String)} or
+ * {@link #filterMethod(int, String, String, String)}. A member whose mode is {@link Mode#DEFER} is
+ * built without its code, and the decision is taken again with {@link #filterField(FieldNodeEx)} or
+ * {@link #filterMethod(MethodNodeEx)} once its annotations are known. Filters may be shared by
+ * several threads and must be stateless.
+ *
+ * <p>A {@link ClassNodeEx} built with a filter is a partial view of its class: members that are
+ * skipped are not visited by {@link ClassNodeEx#accept(org.objectweb.asm.ClassVisitor)}.
+ */
+public interface MemberFilter {
+
+    /**
+     * A filter that builds every member.
+     */
+    MemberFilter ALL = new MemberFilter() {
+    };
+
+    /**
+     * How a member is built.
+     */
+    enum Mode {
+        /**
+         * The member is fully built.
+         */
+        FULL,
+        /**
+         * The member is built without code.
+         */
+        NO_CODE,
+        /**
+         * Only the header of the member is built: no annotations, parameters, attributes nor code.
+         * The class reader skips the rest of the member.
+         */
+        HEADER,
+        /**
+         * The member is not built.
+         */
+        SKIP,
+        /**
+         * The member is built without code, and the mode is decided again once its annotations are
+         * known. The mode is then one of {@link #FULL}, {@link #NO_CODE} or {@link #SKIP}.
+         */
+        DEFER
+    }
+
+    default Mode filterField(int access, String name, String descriptor, String signature) {
+        return Mode.FULL;
+    }
+
+    default Mode filterMethod(int access, String name, String descriptor, String signature) {
+        return Mode.FULL;
+    }
+
+    /**
+     * Decides how a field whose mode is {@link Mode#DEFER} is built. For fields, {@link Mode#FULL}
+     * and {@link Mode#NO_CODE} are equivalent.
+     *
+     * @param field the field, with its annotations.
+     * @return {@link Mode#FULL}, {@link Mode#NO_CODE} or {@link Mode#SKIP}.
+     */
+    default Mode filterField(FieldNodeEx field) {
+        return Mode.FULL;
+    }
+
+    /**
+     * Decides how a method whose mode is {@link Mode#DEFER} is built.
+     *
+     * @param method the method, with its parameters and annotations.
+     * @return {@link Mode#FULL}, {@link Mode#NO_CODE} or {@link Mode#SKIP}.
+     */
+    default Mode filterMethod(MethodNodeEx method) {
+        return Mode.FULL;
+    }
+
+    /**
+     * Returns a filter that fully builds the methods with one of the given names, and only the
+     * header of the other methods. Fields are fully built.
+     *
+     * @param names the method names.
+     * @return the filter.
+     */
+    static MemberFilter methodsNamed(final String... names) {
+        final Set<String> nameSet = new HashSet<>(Arrays.asList(names));
+        return new MemberFilter() {
+            @Override
+            public Mode filterMethod(int access, String name, String descriptor, String signature) {
+                return nameSet.contains(name) ? Mode.FULL : Mode.HEADER;
+            }
+        };
+    }
+
+    /**
+     * Returns a filter that fully builds the fields and methods annotated with one of the given
+     * annotations, and skips the other fields and methods.
+     *
+     * @param descriptors the class descriptors of the annotations.
+     * @return the filter.
+     */
+    static MemberFilter annotatedWith(final String... descriptors) {
+        final Set<String> descriptorSet = new HashSet<>(Arrays.asList(descriptors));
+        return new MemberFilter() {
+            @Override
+            public Mode filterField(int access, String name, String descriptor, String signature) {
+                return Mode.DEFER;
+            }
+
+            @Override
+            public Mode filterMethod(int access, String name, String descriptor, String signature) {
+                return Mode.DEFER;
+            }
+
+            @Override
+            public Mode filterField(FieldNodeEx field) {
+                return isAnnotated(field.annotations) ? Mode.FULL : Mode.SKIP;
+            }
+
+            @Override
+            public Mode filterMethod(MethodNodeEx method) {
+                return isAnnotated(method.annotations) ? Mode.FULL : Mode.SKIP;
+            }
+
+            private boolean isAnnotated(Map<String, AnnotationNodeEx> annotations) {
+                if (annotations != null) {
+                    for (String descriptor : annotations.keySet()) {
+                        if (descriptorSet.contains(descriptor)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+        };
+    }
+}
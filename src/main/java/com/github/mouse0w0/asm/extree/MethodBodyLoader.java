@@ -0,0 +1,304 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.MethodRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the code of a single method from the class file it was read from. The method is identified
+ * by its position in the class file, so that no other method body is parsed.
+ */
+final class MethodBodyLoader {
+
+    /**
+     * The class reader of the class file that contains the method.
+     */
+    final ClassReader classReader;
+
+    /**
+     * The parsing options that were used to read the method header.
+     */
+    final int parsingOptions;
+
+    /**
+     * The index of the method in the methods array of the class file.
+     */
+    final int methodIndex;
+
+    /**
+     * The remappers applied to the code of the method when it is loaded, in order, or {@literal null}.
+     */
+    private final Remapper[] remappers;
+
+    /**
+     * Whether the remappers change the code of the method, or {@literal null} if this is not known
+     * yet, see {@link #remapsCode()}.
+     */
+    private Boolean remapsCode;
+
+    MethodBodyLoader(final ClassReader classReader, final int parsingOptions, final int methodIndex) {
+        this(classReader, parsingOptions, methodIndex, null);
+    }
+
+    private MethodBodyLoader(
+            final ClassReader classReader, final int parsingOptions, final int methodIndex, final Remapper[] remappers) {
+        this.classReader = classReader;
+        this.parsingOptions = parsingOptions & ~ClassReader.SKIP_CODE;
+        this.methodIndex = methodIndex;
+        this.remappers = remappers;
+    }
+
+    /**
+     * Returns a loader of the same method that remaps its code with the given remapper, after the
+     * remappers of this loader.
+     *
+     * @param remapper a remapper.
+     * @return a new loader.
+     */
+    MethodBodyLoader withRemapper(final Remapper remapper) {
+        Remapper[] newRemappers;
+        if (remappers == null) {
+            newRemappers = new Remapper[]{remapper};
+        } else {
+            newRemappers = Arrays.copyOf(remappers, remappers.length + 1);
+            newRemappers[remappers.length] = remapper;
+        }
+        return new MethodBodyLoader(classReader, parsingOptions, methodIndex, newRemappers);
+    }
+
+    /**
+     * Returns whether the remappers of this loader change the code of the method. The first call
+     * visits the code of the method with and without the remappers, and compares the results. The
+     * code is visited with its debug information and frames, even if the parsing options skip them,
+     * since they are copied as is with the code of an unchanged method.
+     *
+     * @return whether the code of the method, with its debug information and frames, differs from
+     * the code in the class file once remapped.
+     */
+    boolean remapsCode() {
+        if (remapsCode == null) {
+            checkRemappings(Collections.singletonList(this));
+        }
+        return remapsCode;
+    }
+
+    /**
+     * Computes {@link #remapsCode()} for the given loaders, in two passes per class file.
+     *
+     * @param loaders some loaders.
+     */
+    static void checkRemappings(final List<MethodBodyLoader> loaders) {
+        List<MethodBodyLoader> pending = new ArrayList<>();
+        for (MethodBodyLoader loader : loaders) {
+            if (loader.remapsCode != null) {
+                continue;
+            }
+            if (loader.remappers == null) {
+                loader.remapsCode = Boolean.FALSE;
+            } else {
+                pending.add(loader);
+            }
+        }
+        int count = pending.size();
+        if (count == 0) {
+            return;
+        }
+        MethodBodyLoader[] originalLoaders = new MethodBodyLoader[count];
+        MethodBodyLoader[] remappedLoaders = new MethodBodyLoader[count];
+        ClassSnapshotWriter[] originalWriters = new ClassSnapshotWriter[count];
+        ClassSnapshotWriter[] remappedWriters = new ClassSnapshotWriter[count];
+        MethodVisitor[] originalVisitors = new MethodVisitor[count];
+        MethodVisitor[] remappedVisitors = new MethodVisitor[count];
+        for (int i = 0; i < count; ++i) {
+            MethodBodyLoader loader = pending.get(i);
+            int parsingOptions = loader.parsingOptions & ~(ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            originalLoaders[i] = new MethodBodyLoader(loader.classReader, parsingOptions, loader.methodIndex);
+            remappedLoaders[i] =
+                    new MethodBodyLoader(loader.classReader, parsingOptions, loader.methodIndex, loader.remappers);
+            originalWriters[i] = new ClassSnapshotWriter(true);
+            remappedWriters[i] = new ClassSnapshotWriter(true);
+            originalVisitors[i] = originalWriters[i].visitMethod(0, "code", "()V", null, null);
+            remappedVisitors[i] = remappedWriters[i].visitMethod(0, "code", "()V", null, null);
+        }
+        load(originalLoaders, originalVisitors);
+        load(remappedLoaders, remappedVisitors);
+        for (int i = 0; i < count; ++i) {
+            pending.get(i).remapsCode =
+                    !originalWriters[i].hashRecords().equals(remappedWriters[i].hashRecords());
+        }
+    }
+
+    /**
+     * Makes the given method visit the code and end of the method targeted by this loader. Only the
+     * events starting with {@link MethodVisitor#visitCode()} are forwarded, the header of the method
+     * is expected to be already visited by the given visitor. The class file is not parsed beyond
+     * this method.
+     *
+     * @param methodVisitor the visitor of the method code.
+     */
+    void load(final MethodVisitor methodVisitor) {
+        load(new MethodBodyLoader[]{this}, new MethodVisitor[]{methodVisitor});
+    }
+
+    /**
+     * Makes the given method visitors visit the code and end of the methods targeted by the given
+     * loaders. The methods of a same class file are visited in a single pass over it. Each class file
+     * parse visits the headers of all the methods that precede the ones it looks for, so loading the
+     * methods of a class one by one costs a time quadratic in its number of methods, while this
+     * method costs a single parse per class file, or more only if several loaders target the same
+     * method.
+     *
+     * @param loaders        some loaders.
+     * @param methodVisitors the visitors of the code and end of each method, in the same order as the
+     *                       loaders.
+     */
+    static void load(final MethodBodyLoader[] loaders, final MethodVisitor[] methodVisitors) {
+        boolean[] visited = new boolean[loaders.length];
+        for (int first = 0; first < loaders.length; ++first) {
+            if (visited[first]) {
+                continue;
+            }
+            // Group the loaders that can be served by the same pass over a class file.
+            MethodBodyLoader firstLoader = loaders[first];
+            BitSet group = new BitSet();
+            BitSet methodIndices = new BitSet();
+            for (int i = first; i < loaders.length; ++i) {
+                MethodBodyLoader loader = loaders[i];
+                if (!visited[i]
+                        && loader.classReader == firstLoader.classReader
+                        && loader.parsingOptions == firstLoader.parsingOptions
+                        && !methodIndices.get(loader.methodIndex)) {
+                    methodIndices.set(loader.methodIndex);
+                    group.set(i);
+                    visited[i] = true;
+                }
+            }
+            MethodVisitor[] codeVisitors = new MethodVisitor[methodIndices.length()];
+            for (int i = group.nextSetBit(0); i >= 0; i = group.nextSetBit(i + 1)) {
+                codeVisitors[loaders[i].methodIndex] = loaders[i].wrap(methodVisitors[i]);
+            }
+            load(firstLoader.classReader, firstLoader.parsingOptions, codeVisitors);
+        }
+    }
+
+    private static void load(
+            final ClassReader classReader, final int parsingOptions, final MethodVisitor[] codeVisitors) {
+        try {
+            classReader.accept(new ClassVisitor(/* latest api = */ Opcodes.ASM8) {
+                private int currentIndex;
+
+                @Override
+                public MethodVisitor visitMethod(
+                        final int access,
+                        final String name,
+                        final String descriptor,
+                        final String signature,
+                        final String[] exceptions) {
+                    int index = currentIndex++;
+                    if (index == codeVisitors.length) {
+                        throw LoadCompleteException.INSTANCE;
+                    }
+                    return codeVisitors[index];
+                }
+            }, parsingOptions);
+        } catch (LoadCompleteException e) {
+            // All the methods were visited.
+        }
+    }
+
+
+    /**
+     * Returns a visitor that drops the header events of the method targeted by this loader, and
+     * forwards its code and end events to the given visitor, remapped with the remappers of this
+     * loader.
+     *
+     * @param methodVisitor the visitor of the method code.
+     * @return the visitor to which the class reader of this loader must send the events of the
+     * method.
+     */
+    MethodVisitor wrap(final MethodVisitor methodVisitor) {
+        MethodVisitor visitor = methodVisitor;
+        if (remappers != null) {
+            for (int i = remappers.length - 1; i >= 0; --i) {
+                visitor = new MethodRemapper(visitor, remappers[i]);
+            }
+        }
+        return new CodeVisitor(visitor);
+    }
+
+    /**
+     * Thrown to stop parsing a class file once the last loaded method was visited.
+     */
+    private static final class LoadCompleteException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final LoadCompleteException INSTANCE = new LoadCompleteException();
+
+        private LoadCompleteException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A method visitor that drops the header events of a method and forwards its code and end events.
+     */
+    private static final class CodeVisitor extends MethodVisitor {
+        private boolean code;
+
+        CodeVisitor(final MethodVisitor methodVisitor) {
+            super(/* latest api = */ Opcodes.ASM8, methodVisitor);
+        }
+
+        @Override
+        public void visitParameter(final String name, final int access) {
+            // Header event, ignored.
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            return null;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+            return null;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(
+                final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+            return null;
+        }
+
+        @Override
+        public void visitAnnotableParameterCount(final int parameterCount, final boolean visible) {
+            // Header event, ignored.
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(
+                final int parameter, final String descriptor, final boolean visible) {
+            return null;
+        }
+
+        @Override
+        public void visitAttribute(final Attribute attribute) {
+            // Non standard method attributes are visited before the code, code attributes after.
+            if (code) {
+                super.visitAttribute(attribute);
+            }
+        }
+
+        @Override
+        public void visitCode() {
+            code = true;
+            super.visitCode();
+        }
+    }
+}
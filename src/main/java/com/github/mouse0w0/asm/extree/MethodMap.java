@@ -0,0 +1,444 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.commons.Method;
+
+import java.util.*;
+
+/**
+ * The default {@link ClassNodeEx#methods} map. The methods are stored in insertion order, and
+ * indexed by name and descriptor in an open addressing table, so that they can be looked up without
+ * allocating a {@link Method} key, see {@link #get(String, String)}. A second table chains the
+ * methods with the same name, see {@link #getAll(String)}. The {@link Method} keys are only
+ * created when the entries of this map are iterated.
+ */
+final class MethodMap extends AbstractMap<Method, MethodNodeEx> {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * The names of the methods, by entry index.
+     */
+    private String[] names;
+
+    /**
+     * The descriptors of the methods, by entry index.
+     */
+    private String[] descriptors;
+
+    /**
+     * The methods, by entry index. The entries of removed methods are {@literal null}.
+     */
+    private MethodNodeEx[] values;
+
+    /**
+     * The keys of the methods, by entry index. Created on demand.
+     */
+    private Method[] keys;
+
+    /**
+     * The index of the next entry with the same name, by entry index, or -1.
+     */
+    private int[] nextByName;
+
+    /**
+     * The open addressing table of the entries, by name and descriptor. Each slot holds an entry
+     * index plus one, or 0 if the slot is empty.
+     */
+    private int[] table;
+
+    /**
+     * The open addressing table of the first entry of each name. Each slot holds an entry index
+     * plus one, or 0 if the slot is empty.
+     */
+    private int[] nameTable;
+
+    /**
+     * The number of used entries, including the removed ones.
+     */
+    private int end;
+
+    /**
+     * The number of methods in this map.
+     */
+    private int size;
+
+    private int modCount;
+
+    private EntrySet entrySet;
+
+    MethodMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    MethodMap(final int capacity) {
+        allocate(Math.max(capacity, 2));
+    }
+
+    private void allocate(final int capacity) {
+        names = new String[capacity];
+        descriptors = new String[capacity];
+        values = new MethodNodeEx[capacity];
+        keys = new Method[capacity];
+        nextByName = new int[capacity];
+        int tableLength = Integer.highestOneBit(capacity - 1) << 2;
+        table = new int[tableLength];
+        nameTable = new int[tableLength];
+    }
+
+    private static int hash(final String name, final String descriptor) {
+        int hash = name.hashCode() * 31 + descriptor.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(final String name) {
+        int hash = name.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(final String a, final String b) {
+        return a == b || a.equals(b);
+    }
+
+    /**
+     * Returns the index of the entry with the given name and descriptor, or -1.
+     */
+    private int indexOf(final String name, final String descriptor) {
+        int mask = table.length - 1;
+        for (int slot = hash(name, descriptor) & mask; ; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (index == -1) {
+                return -1;
+            }
+            if (equals(names[index], name) && equals(descriptors[index], descriptor)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first entry with the given name, or -1.
+     */
+    private int firstIndexOf(final String name) {
+        int mask = nameTable.length - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int index = nameTable[slot] - 1;
+            if (index == -1 || equals(names[index], name)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Returns the method with the given name and descriptor.
+     *
+     * @param name       the name of the method.
+     * @param descriptor the descriptor of the method.
+     * @return the method, or {@literal null}.
+     */
+    MethodNodeEx get(final String name, final String descriptor) {
+        int index = indexOf(name, descriptor);
+        return index == -1 ? null : values[index];
+    }
+
+    /**
+     * Returns the methods with the given name, in insertion order.
+     *
+     * @param name the name of the methods.
+     * @return the methods with the given name. May be empty.
+     */
+    List<MethodNodeEx> getAll(final String name) {
+        int index = firstIndexOf(name);
+        if (index == -1) {
+            return Collections.emptyList();
+        }
+        List<MethodNodeEx> methods = new ArrayList<>(2);
+        for (; index != -1; index = nextByName[index]) {
+            if (values[index] != null) {
+                methods.add(values[index]);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Puts a method in this map.
+     *
+     * @param name       the name of the method.
+     * @param descriptor the descriptor of the method.
+     * @param key        the key of the method, or {@literal null} to create it on demand.
+     * @param value      the method.
+     * @return the previous method with this name and descriptor, or {@literal null}.
+     */
+    MethodNodeEx put(final String name, final String descriptor, final Method key, final MethodNodeEx value) {
+        int index = indexOf(name, descriptor);
+        if (index != -1) {
+            MethodNodeEx oldValue = values[index];
+            values[index] = value;
+            if (oldValue == null) {
+                ++size;
+                ++modCount;
+            }
+            return oldValue;
+        }
+        if (end == values.length) {
+            grow();
+        }
+        index = end++;
+        names[index] = name;
+        descriptors[index] = descriptor;
+        values[index] = value;
+        keys[index] = key;
+        link(index);
+        ++size;
+        ++modCount;
+        return null;
+    }
+
+    /**
+     * Removes the method with the given name and descriptor. The entry of the method is kept until
+     * the entries are compacted, so a method that is removed and put again keeps its position.
+     *
+     * @param name       the name of the method.
+     * @param descriptor the descriptor of the method.
+     * @param value      the expected method, or {@literal null} to remove any method.
+     * @return the removed method, or {@literal null}.
+     */
+    MethodNodeEx remove(final String name, final String descriptor, final MethodNodeEx value) {
+        int index = indexOf(name, descriptor);
+        if (index == -1) {
+            return null;
+        }
+        MethodNodeEx oldValue = values[index];
+        if (oldValue == null || (value != null && oldValue != value)) {
+            return null;
+        }
+        removeAt(index);
+        return oldValue;
+    }
+
+    private void removeAt(final int index) {
+        values[index] = null;
+        --size;
+        ++modCount;
+    }
+
+    /**
+     * Links the given entry in the tables.
+     */
+    private void link(final int index) {
+        String name = names[index];
+        int mask = table.length - 1;
+        int slot = hash(name, descriptors[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+        nextByName[index] = -1;
+        for (slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int first = nameTable[slot] - 1;
+            if (first == -1) {
+                nameTable[slot] = index + 1;
+                return;
+            }
+            if (equals(names[first], name)) {
+                int last = first;
+                while (nextByName[last] != -1) {
+                    last = nextByName[last];
+                }
+                nextByName[last] = index;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compacts the entries by dropping the removed ones, and doubles the capacity if needed.
+     */
+    private void grow() {
+        String[] oldNames = names;
+        String[] oldDescriptors = descriptors;
+        MethodNodeEx[] oldValues = values;
+        Method[] oldKeys = keys;
+        int oldEnd = end;
+        allocate(size * 2 > oldValues.length ? oldValues.length * 2 : oldValues.length);
+        end = 0;
+        for (int i = 0; i < oldEnd; ++i) {
+            if (oldValues[i] != null) {
+                names[end] = oldNames[i];
+                descriptors[end] = oldDescriptors[i];
+                values[end] = oldValues[i];
+                keys[end] = oldKeys[i];
+                link(end++);
+            }
+        }
+    }
+
+    private Method keyAt(final int index) {
+        Method key = keys[index];
+        if (key == null) {
+            key = new Method(names[index], descriptors[index]);
+            keys[index] = key;
+        }
+        return key;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Implementation of the Map interface
+    // -----------------------------------------------------------------------------------------------
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public MethodNodeEx get(final Object key) {
+        if (!(key instanceof Method)) {
+            return null;
+        }
+        Method method = (Method) key;
+        return get(method.getName(), method.getDescriptor());
+    }
+
+    @Override
+    public MethodNodeEx put(final Method key, final MethodNodeEx value) {
+        return put(key.getName(), key.getDescriptor(), key, Objects.requireNonNull(value));
+    }
+
+    @Override
+    public MethodNodeEx remove(final Object key) {
+        if (!(key instanceof Method)) {
+            return null;
+        }
+        Method method = (Method) key;
+        return remove(method.getName(), method.getDescriptor(), null);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(names, 0, end, null);
+        Arrays.fill(descriptors, 0, end, null);
+        Arrays.fill(values, 0, end, null);
+        Arrays.fill(keys, 0, end, null);
+        Arrays.fill(table, 0);
+        Arrays.fill(nameTable, 0);
+        end = 0;
+        size = 0;
+        ++modCount;
+    }
+
+    @Override
+    public Set<Entry<Method, MethodNodeEx>> entrySet() {
+        EntrySet set = entrySet;
+        if (set == null) {
+            set = new EntrySet();
+            entrySet = set;
+        }
+        return set;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<Method, MethodNodeEx>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MethodMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Entry<Method, MethodNodeEx>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<Method, MethodNodeEx>> {
+        private int next = advance(0);
+        private int current = -1;
+        private int expectedModCount = modCount;
+
+        private int advance(int index) {
+            while (index < end && values[index] == null) {
+                ++index;
+            }
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public Entry<Method, MethodNodeEx> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= end) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = advance(next + 1);
+            return new MethodEntry(current);
+        }
+
+        @Override
+        public void remove() {
+            if (current == -1) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(current);
+            current = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class MethodEntry implements Entry<Method, MethodNodeEx> {
+        private final int index;
+
+        MethodEntry(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Method getKey() {
+            return keyAt(index);
+        }
+
+        @Override
+        public MethodNodeEx getValue() {
+            return values[index];
+        }
+
+        @Override
+        public MethodNodeEx setValue(final MethodNodeEx value) {
+            MethodNodeEx oldValue = values[index];
+            values[index] = Objects.requireNonNull(value);
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            return getKey().equals(entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+    }
+}
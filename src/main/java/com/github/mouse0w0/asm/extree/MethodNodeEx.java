@@ -1,12 +1,21 @@
 package com.github.mouse0w0.asm.extree;
 
 import org.objectweb.asm.*;
+import org.objectweb.asm.commons.Remapper;
 import org.objectweb.asm.tree.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 public class MethodNodeEx extends MethodVisitor {
 
@@ -36,6 +45,12 @@ public class MethodNodeEx extends MethodVisitor {
      */
     public List<String> exceptions;
 
+    /**
+     * The parameters of this method. The first {@link #getDeclaredParameterCount()} parameters are
+     * stored in the MethodParameters attribute of this method, the other ones are unnamed placeholders
+     * derived from the descriptor of this method, to hold parameter annotations (see {@link
+     * #getParameter(int)}). May be {@literal null}.
+     */
     public List<ParameterNodeEx> parameters;
 
     public Map<String, AnnotationNodeEx> annotations;
@@ -57,12 +72,14 @@ public class MethodNodeEx extends MethodVisitor {
     public Object annotationDefault;
 
     /**
-     * The instructions of this method.
+     * The instructions of this method. May be {@literal null} if the body of this method has not been
+     * loaded yet (see {@link #getInstructions()}).
      */
     public InsnList instructions;
 
     /**
-     * The try catch blocks of this method.
+     * The try catch blocks of this method. May be {@literal null} if the body of this method has not
+     * been loaded yet (see {@link #getTryCatchBlocks()}).
      */
     public List<TryCatchBlockNode> tryCatchBlocks;
 
@@ -96,13 +113,66 @@ public class MethodNodeEx extends MethodVisitor {
      */
     private boolean visited;
 
+    /**
+     * The loader of the body of this method, or {@literal null} if the body is already loaded.
+     */
+    MethodBodyLoader bodyLoader;
+
+    /**
+     * The class reader this method was read from, or {@literal null}.
+     */
+    ClassReader sourceClassReader;
+
+    /**
+     * The index of this method in the methods array of the class read by {@link #sourceClassReader}.
+     */
+    int sourceIndex;
+
+    /**
+     * Whether this method was modified since it was read, see {@link #isDirty()}.
+     */
+    private boolean dirty;
+
+    /**
+     * Whether the code of this method is being visited, from {@link #visitCode()} to {@link
+     * #visitEnd()}. The instructions, try catch blocks and local variables added meanwhile do not
+     * make this method dirty.
+     */
+    private boolean visitingCode;
+
+    /**
+     * The content hash of this method, computed on first use, or {@literal null}.
+     */
+    private ContentHash contentHash;
+
+    /**
+     * The interner of the names, descriptors and signatures used by this method, or {@literal null}.
+     */
+    StringInterner interner;
+
+    /**
+     * The parameters of this method by name, built on first use, or {@literal null}.
+     */
+    private Map<String, ParameterNodeEx> parameterIndex;
+
+    /**
+     * The descriptor from which {@link #parameterSlots} was computed, or {@literal null}.
+     */
+    private String parameterSlotsDescriptor;
+
+    /**
+     * The local variable slot of each parameter of {@link #parameterSlotsDescriptor}, ignoring {@code
+     * this}.
+     */
+    private int[] parameterSlots;
+
     public MethodNodeEx() {
         this(/* latest api = */ Opcodes.ASM8);
     }
 
     public MethodNodeEx(final int api) {
         super(api);
-        this.instructions = new InsnList();
+        this.instructions = new TrackedInsnList(this);
     }
 
     public MethodNodeEx(
@@ -128,10 +198,10 @@ public class MethodNodeEx extends MethodVisitor {
         this.signature = signature;
         this.exceptions = Util.asArrayList(exceptions);
         if ((access & Opcodes.ACC_ABSTRACT) == 0) {
-            this.localVariables = new ArrayList<>(5);
+            this.localVariables = new TrackedList<>(this, 5);
         }
-        this.tryCatchBlocks = new ArrayList<>();
-        this.instructions = new InsnList();
+        this.tryCatchBlocks = new TrackedList<>(this, 10);
+        this.instructions = new TrackedInsnList(this);
     }
 
     public AnnotationNodeEx getAnnotation(String descriptor) {
@@ -139,6 +209,12 @@ public class MethodNodeEx extends MethodVisitor {
     }
 
     public void addAnnotation(AnnotationNodeEx annotationNode) {
+        putAnnotation(annotationNode);
+        dirty = true;
+        contentHash = null;
+    }
+
+    private void putAnnotation(AnnotationNodeEx annotationNode) {
         if (annotations == null) {
             annotations = new LinkedHashMap<>(2);
         }
@@ -150,31 +226,601 @@ public class MethodNodeEx extends MethodVisitor {
     }
 
     public void addTypeAnnotation(TypeAnnotationNodeEx typeAnnotation) {
+        putTypeAnnotation(typeAnnotation);
+        dirty = true;
+        contentHash = null;
+    }
+
+    private void putTypeAnnotation(TypeAnnotationNodeEx typeAnnotation) {
         if (typeAnnotations == null) {
             typeAnnotations = new LinkedHashMap<>(2);
         }
         typeAnnotations.put(typeAnnotation.desc, typeAnnotation);
     }
 
+    /**
+     * Returns the instructions of this method, loading the body of this method if necessary.
+     *
+     * @return the instructions of this method.
+     */
+    public InsnList getInstructions() {
+        loadBody();
+        return instructions;
+    }
+
+    /**
+     * Returns the try catch blocks of this method, loading the body of this method if necessary.
+     *
+     * @return the try catch blocks of this method.
+     */
+    public List<TryCatchBlockNode> getTryCatchBlocks() {
+        loadBody();
+        return tryCatchBlocks;
+    }
+
+    /**
+     * Returns the local variables of this method, loading the body of this method if necessary.
+     *
+     * @return the local variables of this method. May be {@literal null}.
+     */
+    public List<LocalVariableNode> getLocalVariables() {
+        loadBody();
+        return localVariables;
+    }
+
+    /**
+     * Returns whether the body of this method is loaded. The body of a method read with {@link
+     * ClassNodeEx#readLazily(ClassReader, int)} is loaded on first access to {@link #getInstructions()},
+     * {@link #getTryCatchBlocks()} or {@link #getLocalVariables()}. Until then, {@link #instructions},
+     * {@link #tryCatchBlocks}, {@link #localVariables}, {@link #maxStack}, {@link #maxLocals} and the
+     * local variable annotations are not set.
+     *
+     * @return whether the body of this method is loaded.
+     */
+    public boolean isBodyLoaded() {
+        return bodyLoader == null;
+    }
+
+    /**
+     * Loads the body of this method from its class file, if it is not loaded yet. This method is not
+     * thread safe.
+     */
+    public void loadBody() {
+        MethodBodyLoader loader = bodyLoader;
+        if (loader == null) return;
+
+        TreeListener listener = ClassNodeEx.treeListener;
+        long start = listener != null ? System.nanoTime() : 0L;
+        ContentHash hash = contentHash;
+        clearBody();
+        loader.load(this);
+        bodyLoaded(loader, hash);
+        if (listener != null) {
+            listener.methodBodyLoaded(loader.classReader.getClassName(), this, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Loads the bodies of the given methods that are not loaded yet. The methods read from the same
+     * class file are loaded in a single pass over it, which is much faster than loading them one by
+     * one for classes with many methods.
+     *
+     * @param methods some methods.
+     */
+    static void loadBodies(final Collection<? extends MethodNodeEx> methods) {
+        List<MethodNodeEx> pending = new ArrayList<>();
+        for (MethodNodeEx method : methods) {
+            if (method.bodyLoader != null) {
+                pending.add(method);
+            }
+        }
+        int count = pending.size();
+        if (count == 0) {
+            return;
+        }
+        TreeListener listener = ClassNodeEx.treeListener;
+        long start = listener != null ? System.nanoTime() : 0L;
+        MethodBodyLoader[] loaders = new MethodBodyLoader[count];
+        MethodVisitor[] methodVisitors = new MethodVisitor[count];
+        ContentHash[] hashes = new ContentHash[count];
+        for (int i = 0; i < count; ++i) {
+            MethodNodeEx method = pending.get(i);
+            loaders[i] = method.bodyLoader;
+            hashes[i] = method.contentHash;
+            method.clearBody();
+            methodVisitors[i] = method;
+        }
+        MethodBodyLoader.checkRemappings(Arrays.asList(loaders));
+        MethodBodyLoader.load(loaders, methodVisitors);
+        for (int i = 0; i < count; ++i) {
+            pending.get(i).bodyLoaded(loaders[i], hashes[i]);
+        }
+        if (listener != null) {
+            long nanos = (System.nanoTime() - start) / count;
+            for (int i = 0; i < count; ++i) {
+                listener.methodBodyLoaded(loaders[i].classReader.getClassName(), pending.get(i), nanos);
+            }
+        }
+    }
+
+    private void clearBody() {
+        bodyLoader = null;
+        instructions = new TrackedInsnList(this);
+        tryCatchBlocks = new TrackedList<>(this, 10);
+        localVariables = new TrackedList<>(this, 5);
+    }
+
+    /**
+     * Updates the state of this method after its body was loaded with the given loader. The loaded
+     * body is the one that was hashed, if any, but it differs from the body in the class file if the
+     * loader remaps it.
+     */
+    private void bodyLoaded(final MethodBodyLoader loader, final ContentHash hash) {
+        contentHash = hash;
+        if (loader.remapsCode()) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Recomputes the stack map frames, the max stack and the max locals of this method. This method
+     * is written alone in a class with a {@link HierarchyClassWriter} using {@link
+     * ClassWriter#COMPUTE_FRAMES} (or {@link ClassWriter#COMPUTE_MAXS} for classes older than Java 6),
+     * and its body is read back. Hence the instructions, try catch blocks and local variables of this
+     * method are replaced by new nodes, which must be used instead of the previous ones. This method
+     * is then marked as dirty.
+     *
+     * @param owner          the class that contains this method.
+     * @param classHierarchy the hierarchy used to compute the common super classes, which must know
+     *                       the owner class.
+     */
+    public void computeFrames(final ClassNodeEx owner, final ClassHierarchy classHierarchy) {
+        loadBody();
+        if (instructions.size() == 0) return;
+
+        boolean computeFrames = (owner.version & 0xFFFF) >= Opcodes.V1_6;
+        ClassWriter classWriter =
+                new HierarchyClassWriter(classHierarchy, computeFrames ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(
+                owner.version, owner.access, owner.name, null, owner.superName, owner.interfaces.toArray(new String[0]));
+        accept(classWriter);
+        classWriter.visitEnd();
+        MethodBodyLoader loader = new MethodBodyLoader(new ClassReader(classWriter.toByteArray()), 0, 0);
+        instructions = new TrackedInsnList(this);
+        tryCatchBlocks = new TrackedList<>(this, 10);
+        localVariables = new TrackedList<>(this, 5);
+        visibleLocalVariableAnnotations = null;
+        invisibleLocalVariableAnnotations = null;
+        loader.load(this);
+        dirty = true;
+        contentHash = null;
+    }
+
+    /**
+     * Makes the body of this method, which must not be loaded, be remapped with the given remapper
+     * when it is loaded or visited, see {@link MethodBodyLoader#withRemapper(Remapper)}.
+     */
+    void remapBody(final Remapper remapper) {
+        bodyLoader = bodyLoader.withRemapper(remapper);
+        contentHash = null;
+    }
+
+    void deferBody(final MethodBodyLoader loader) {
+        bodyLoader = loader;
+        instructions = null;
+        tryCatchBlocks = null;
+        localVariables = null;
+    }
+
+    /**
+     * Returns whether this method may have been modified since it was read. A method that was not
+     * read from a class file is always dirty. Otherwise, the methods of this class that modify it
+     * mark it as dirty, and so do the modifications of the lists of {@link #instructions}, {@link
+     * #tryCatchBlocks} and {@link #localVariables} made after the body was read or loaded, as well as
+     * the replacement of these lists by other ones. A method whose body is not loaded yet, but
+     * remapped by a {@link TreeRemapper}, is dirty if the remapping changes its code, which is checked
+     * on the first call. Other modifications made directly on the fields of a method or of its nodes,
+     * such as its header, its annotations or the operands of an instruction, must be followed by a
+     * call to {@link #markDirty()}.
+     *
+     * @return whether this method may have been modified since it was read.
+     */
+    public boolean isDirty() {
+        if (dirty || sourceClassReader == null) {
+            return true;
+        }
+        return bodyLoader != null ? bodyLoader.remapsCode() : !isBodyTracked();
+    }
+
+    /**
+     * Returns whether the modifications of the body lists of this method are tracked, that is whether
+     * they are still the lists created by this method.
+     */
+    private boolean isBodyTracked() {
+        return isTracked(instructions) && isTracked(tryCatchBlocks) && isTracked(localVariables);
+    }
+
+    private boolean isTracked(final Object list) {
+        return list == null
+                || list instanceof TrackedInsnList && ((TrackedInsnList) list).method == this
+                || list instanceof TrackedList && ((TrackedList<?>) list).method == this;
+    }
+
+    /**
+     * Called when a body list of this method is modified.
+     */
+    void bodyModified() {
+        if (!visitingCode) {
+            dirty = true;
+            contentHash = null;
+        }
+    }
+
+    /**
+     * Checks whether the remappings of the bodies of the given methods that are not loaded change
+     * their code, see {@link #isDirty()}, in two passes per class file rather than two per method.
+     *
+     * @param methods some methods.
+     */
+    static void checkRemappedBodies(final Collection<? extends MethodNodeEx> methods) {
+        List<MethodBodyLoader> loaders = new ArrayList<>();
+        for (MethodNodeEx method : methods) {
+            if (!method.dirty && method.bodyLoader != null) {
+                loaders.add(method.bodyLoader);
+            }
+        }
+        MethodBodyLoader.checkRemappings(loaders);
+    }
+
+    /**
+     * Marks this method as modified, so that it is not copied from the class it was read from.
+     */
+    public void markDirty() {
+        dirty = true;
+        parameterIndex = null;
+        contentHash = null;
+    }
+
+    /**
+     * Returns the structural hash of this method: the hash of its header, parameters, annotations,
+     * attributes, instructions, try catch blocks, local variables and maxs, as visited by {@link
+     * #accept(ClassVisitor)}. A body that is not loaded is streamed from the class file it was read
+     * from, and stays unloaded. The hash is cached until this method is modified, as tracked by
+     * {@link #isDirty()}.
+     *
+     * @return the content hash of this method.
+     */
+    public ContentHash getContentHash() {
+        return getContentHash(null);
+    }
+
+    ContentHash getContentHash(final ClassSnapshotWriter hashWriter) {
+        if (hasContentHash()) {
+            return contentHash;
+        }
+        ClassSnapshotWriter writer = hashWriter != null ? hashWriter : new ClassSnapshotWriter(true);
+        accept(writer);
+        return contentHash = writer.hashRecords();
+    }
+
+    /**
+     * Returns whether the cached content hash of this method is up to date. It is not if the body
+     * lists of this method were replaced, since their modifications are no longer tracked.
+     */
+    private boolean hasContentHash() {
+        return contentHash != null && (bodyLoader != null || isBodyTracked());
+    }
+
+    /**
+     * Returns the content hashes of the given methods, see {@link #getContentHash()}. The bodies that
+     * are not loaded are streamed in a single pass per class file, and stay unloaded.
+     *
+     * @param methods    some methods.
+     * @param hashWriter the writer used to hash the loaded methods.
+     * @return the content hashes of the given methods, in the same order.
+     */
+    static ContentHash[] getContentHashes(
+            final List<MethodNodeEx> methods, final ClassSnapshotWriter hashWriter) {
+        int count = methods.size();
+        ContentHash[] hashes = new ContentHash[count];
+        ClassSnapshotWriter[] writers = new ClassSnapshotWriter[count];
+        List<MethodBodyLoader> loaders = new ArrayList<>();
+        List<MethodVisitor> methodVisitors = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            MethodNodeEx method = methods.get(i);
+            if (method.bodyLoader == null || method.hasContentHash()) {
+                hashes[i] = method.getContentHash(hashWriter);
+                continue;
+            }
+            // Visit the header now, and the code with the other bodies of the same class file.
+            ClassSnapshotWriter writer = new ClassSnapshotWriter(true);
+            String[] exceptions = method.exceptions == null ? null : method.exceptions.toArray(new String[0]);
+            MethodVisitor methodVisitor =
+                    writer.visitMethod(method.access, method.name, method.desc, method.signature, exceptions);
+            method.acceptHeader(methodVisitor);
+            writers[i] = writer;
+            loaders.add(method.bodyLoader);
+            methodVisitors.add(methodVisitor);
+        }
+        if (!loaders.isEmpty()) {
+            MethodBodyLoader.load(
+                    loaders.toArray(new MethodBodyLoader[0]), methodVisitors.toArray(new MethodVisitor[0]));
+            for (int i = 0; i < count; ++i) {
+                if (writers[i] != null) {
+                    hashes[i] = methods.get(i).contentHash = writers[i].hashRecords();
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns a copy of this method for {@link ClassNodeEx#fork()}. The header of this method, its
+     * parameters and its annotations are copied. If the body of this method is not loaded, the copy
+     * shares its loader, and loads it on first access. Otherwise the body is copied, since it may be
+     * modified in place. The copy is dirty if this method is, and has the same content hash.
+     */
+    MethodNodeEx fork() {
+        MethodNodeEx copy = new MethodNodeEx(
+                api, access, name, desc, signature, exceptions == null ? null : exceptions.toArray(new String[0]));
+        if (bodyLoader != null) {
+            acceptHeader(copy);
+            copy.deferBody(bodyLoader);
+        } else {
+            accept(copy);
+        }
+        copy.setSource(sourceClassReader, sourceIndex);
+        copy.dirty = dirty || bodyLoader == null && !isBodyTracked();
+        if (hasContentHash()) {
+            copy.contentHash = contentHash;
+        }
+        copy.interner = interner;
+        return copy;
+    }
+
+    void setSource(final ClassReader classReader, final int index) {
+        this.sourceClassReader = classReader;
+        this.sourceIndex = index;
+    }
+
+    /**
+     * Reinitializes this method, so that it can be reused for another method of another class. The
+     * lists of the instructions, try catch blocks, local variables, exceptions and parameters are
+     * cleared rather than reallocated, and keep their capacity.
+     */
+    void reset(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final String[] exceptions) {
+        this.access = access;
+        this.name = name;
+        this.desc = descriptor;
+        this.signature = signature;
+        if (this.exceptions == null) {
+            this.exceptions = Util.asArrayList(exceptions);
+        } else {
+            this.exceptions.clear();
+            if (exceptions != null) {
+                Collections.addAll(this.exceptions, exceptions);
+            }
+        }
+        if (parameters != null) {
+            parameters.clear();
+        }
+        parameterIndex = null;
+        annotations = null;
+        typeAnnotations = null;
+        attrs = null;
+        annotationDefault = null;
+        if (instructions == null || !isTracked(instructions)) {
+            instructions = new TrackedInsnList(this);
+        } else {
+            instructions.clear();
+        }
+        if (tryCatchBlocks == null || !isTracked(tryCatchBlocks)) {
+            tryCatchBlocks = new TrackedList<>(this, 10);
+        } else {
+            tryCatchBlocks.clear();
+        }
+        if ((access & Opcodes.ACC_ABSTRACT) != 0) {
+            localVariables = null;
+        } else if (localVariables == null || !isTracked(localVariables)) {
+            localVariables = new TrackedList<>(this, 5);
+        } else {
+            localVariables.clear();
+        }
+        maxStack = 0;
+        maxLocals = 0;
+        visibleLocalVariableAnnotations = null;
+        invisibleLocalVariableAnnotations = null;
+        visited = false;
+        bodyLoader = null;
+        sourceClassReader = null;
+        sourceIndex = 0;
+        dirty = false;
+        visitingCode = false;
+        contentHash = null;
+        interner = null;
+    }
+
+    boolean hasHeader(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final String[] exceptions) {
+        return this.access == access
+                && name.equals(this.name)
+                && descriptor.equals(this.desc)
+                && Objects.equals(signature, this.signature)
+                && Util.equals(this.exceptions, exceptions);
+    }
+
+    /**
+     * Returns a read-only view of the parameters of this method. The list contains at least one
+     * parameter per argument type of the descriptor of this method: the parameters that are not in
+     * {@link #parameters} are new unnamed placeholders, which are not stored in this method. Use
+     * {@link #getParameter(int)} to get a parameter that can be modified.
+     *
+     * @return the parameters of this method.
+     */
+    public List<ParameterNodeEx> getParameters() {
+        int count = getParameterSlots().length;
+        int size = parameters == null ? 0 : parameters.size();
+        if (size >= count) {
+            return size == 0 ? Collections.<ParameterNodeEx>emptyList() : Collections.unmodifiableList(parameters);
+        }
+        List<ParameterNodeEx> result = new ArrayList<>(count);
+        if (parameters != null) {
+            result.addAll(parameters);
+        }
+        for (int i = size; i < count; ++i) {
+            result.add(ParameterNodeEx.placeholder());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns the parameter of this method at the given index. If {@link #parameters} has no
+     * parameter at this index, it is filled with unnamed placeholders up to this index, so that the
+     * returned parameter can be modified. The placeholders that are left unnamed and without access
+     * flags are not stored in the MethodParameters attribute, see {@link #getDeclaredParameterCount()}.
+     *
+     * @param index the index of the parameter, as in the descriptor of this method.
+     * @return the parameter.
+     * @throws IndexOutOfBoundsException if the method has no parameter at this index.
+     */
     public ParameterNodeEx getParameter(int index) {
+        int size = parameters == null ? 0 : parameters.size();
+        if (index < 0 || index >= Math.max(size, getParameterSlots().length)) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        ensureParameters(index + 1);
         return parameters.get(index);
     }
 
+    /**
+     * Returns the parameter of this method with the given name. The parameters are indexed by name on
+     * first use, the index is rebuilt when a parameter is added, or when {@link #markDirty()} is
+     * called after a parameter was renamed.
+     *
+     * @param name the name of the parameter.
+     * @return the parameter, or {@literal null}.
+     */
     public ParameterNodeEx getParameter(String name) {
         if (parameters == null) return null;
-        for (ParameterNodeEx parameter : parameters) {
-            if (parameter.name.equals(name)) {
-                return parameter;
+        Map<String, ParameterNodeEx> index = parameterIndex;
+        if (index == null) {
+            index = new HashMap<>(Math.max(4, parameters.size() * 2));
+            for (int i = parameters.size() - 1; i >= 0; --i) {
+                ParameterNodeEx parameter = parameters.get(i);
+                if (parameter.name != null) {
+                    index.put(parameter.name, parameter);
+                }
             }
+            parameterIndex = index;
         }
-        return null;
+        return index.get(name);
     }
 
+    /**
+     * Returns the number of parameters stored in the MethodParameters attribute of this method, that
+     * is the number of parameters up to the last one that is not an unnamed placeholder derived from
+     * the descriptor. This includes the parameters visited with {@link #visitParameter(String, int)},
+     * added with {@link #addParameter(ParameterNodeEx)} or directly to {@link #parameters}, and the
+     * placeholders that were given a name or access flags.
+     *
+     * @return the number of parameters of the MethodParameters attribute of this method.
+     */
+    public int getDeclaredParameterCount() {
+        if (parameters == null) {
+            return 0;
+        }
+        for (int i = parameters.size() - 1; i >= 0; --i) {
+            if (!parameters.get(i).isPlaceholder()) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the local variable slot of a parameter of this method, taking {@code this} into account
+     * for instance methods.
+     *
+     * @param index the index of the parameter, as in the descriptor of this method.
+     * @return the index of the local variable holding the parameter.
+     * @throws IndexOutOfBoundsException if the descriptor has no parameter at this index.
+     */
+    public int getParameterSlot(int index) {
+        int[] slots = getParameterSlots();
+        if (index < 0 || index >= slots.length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return (access & Opcodes.ACC_STATIC) == 0 ? slots[index] + 1 : slots[index];
+    }
+
+    private int[] getParameterSlots() {
+        if (parameterSlotsDescriptor != desc) {
+            int[] slots = new int[8];
+            int count = 0;
+            int slot = 0;
+            int offset = 1;
+            char c;
+            while ((c = desc.charAt(offset)) != ')') {
+                if (count == slots.length) {
+                    slots = Arrays.copyOf(slots, count * 2);
+                }
+                slots[count++] = slot;
+                slot += c == 'J' || c == 'D' ? 2 : 1;
+                while (c == '[') {
+                    c = desc.charAt(++offset);
+                }
+                offset = c == 'L' ? desc.indexOf(';', offset) + 1 : offset + 1;
+            }
+            parameterSlots = Arrays.copyOf(slots, count);
+            parameterSlotsDescriptor = desc;
+        }
+        return parameterSlots;
+    }
+
+    /**
+     * Adds a parameter to the MethodParameters attribute of this method. If this method has a
+     * parameter derived from its descriptor at the next index, that parameter is replaced.
+     *
+     * @param parameter the parameter to add.
+     */
     public void addParameter(ParameterNodeEx parameter) {
+        putParameter(parameter);
+        dirty = true;
+    }
+
+    private void putParameter(ParameterNodeEx parameter) {
         if (parameters == null) {
             parameters = new ArrayList<>(5);
         }
-        parameters.add(parameter);
+        int index = getDeclaredParameterCount();
+        if (index < parameters.size()) {
+            ParameterNodeEx derivedParameter = parameters.set(index, parameter);
+            if (derivedParameter.annotations != null && parameter.annotations == null) {
+                parameter.annotations = derivedParameter.annotations;
+            }
+        } else {
+            parameters.add(parameter);
+        }
+        parameterIndex = null;
+        contentHash = null;
+    }
+
+    private void ensureParameters(final int count) {
+        if (parameters == null) {
+            parameters = new ArrayList<>(Math.max(count, 5));
+        }
+        for (int i = parameters.size(); i < count; ++i) {
+            parameters.add(ParameterNodeEx.placeholder());
+        }
     }
 
     // -----------------------------------------------------------------------------------------------
@@ -183,13 +829,13 @@ public class MethodNodeEx extends MethodVisitor {
 
     @Override
     public void visitParameter(final String name, final int access) {
-        addParameter(new ParameterNodeEx(name, access));
+        putParameter(new ParameterNodeEx(Util.intern(interner, name), access));
     }
 
     @Override
     @SuppressWarnings("serial")
     public AnnotationVisitor visitAnnotationDefault() {
-        return new AnnotationNodeEx(
+        AnnotationNodeEx annotationDefaultVisitor = new AnnotationNodeEx(
                 new ArrayList<Object>(0) {
                     @Override
                     public boolean add(final Object o) {
@@ -197,20 +843,25 @@ public class MethodNodeEx extends MethodVisitor {
                         return super.add(o);
                     }
                 });
+        annotationDefaultVisitor.interner = interner;
+        return annotationDefaultVisitor;
     }
 
     @Override
     public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
-        AnnotationNodeEx annotation = new AnnotationNodeEx(descriptor, visible);
-        addAnnotation(annotation);
+        AnnotationNodeEx annotation = new AnnotationNodeEx(Util.intern(interner, descriptor), visible);
+        annotation.interner = interner;
+        putAnnotation(annotation);
         return annotation;
     }
 
     @Override
     public AnnotationVisitor visitTypeAnnotation(
             final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
-        TypeAnnotationNodeEx typeAnnotation = new TypeAnnotationNodeEx(typeRef, typePath, descriptor, visible);
-        addTypeAnnotation(typeAnnotation);
+        TypeAnnotationNodeEx typeAnnotation =
+                new TypeAnnotationNodeEx(typeRef, typePath, Util.intern(interner, descriptor), visible);
+        typeAnnotation.interner = interner;
+        putTypeAnnotation(typeAnnotation);
         return typeAnnotation;
     }
 
@@ -223,8 +874,10 @@ public class MethodNodeEx extends MethodVisitor {
     @SuppressWarnings("unchecked")
     public AnnotationVisitor visitParameterAnnotation(
             final int parameter, final String descriptor, final boolean visible) {
-        AnnotationNodeEx annotation = new AnnotationNodeEx(descriptor, visible);
-        getParameter(parameter).addAnnotation(annotation);
+        AnnotationNodeEx annotation = new AnnotationNodeEx(Util.intern(interner, descriptor), visible);
+        annotation.interner = interner;
+        ensureParameters(parameter + 1);
+        parameters.get(parameter).addAnnotation(annotation);
         return annotation;
     }
 
@@ -235,7 +888,8 @@ public class MethodNodeEx extends MethodVisitor {
 
     @Override
     public void visitCode() {
-        // Nothing to do.
+        visitingCode = true;
+        contentHash = null;
     }
 
     @Override
@@ -271,13 +925,14 @@ public class MethodNodeEx extends MethodVisitor {
 
     @Override
     public void visitTypeInsn(final int opcode, final String type) {
-        instructions.add(new TypeInsnNode(opcode, type));
+        instructions.add(new TypeInsnNode(opcode, Util.intern(interner, type)));
     }
 
     @Override
     public void visitFieldInsn(
             final int opcode, final String owner, final String name, final String descriptor) {
-        instructions.add(new FieldInsnNode(opcode, owner, name, descriptor));
+        instructions.add(new FieldInsnNode(
+                opcode, Util.intern(interner, owner), Util.intern(interner, name), Util.intern(interner, descriptor)));
     }
 
     @Override
@@ -294,7 +949,12 @@ public class MethodNodeEx extends MethodVisitor {
         }
         int opcode = opcodeAndSource & ~Opcodes.SOURCE_MASK;
 
-        instructions.add(new MethodInsnNode(opcode, owner, name, descriptor, isInterface));
+        instructions.add(new MethodInsnNode(
+                opcode,
+                Util.intern(interner, owner),
+                Util.intern(interner, name),
+                Util.intern(interner, descriptor),
+                isInterface));
     }
 
     @Override
@@ -305,7 +965,10 @@ public class MethodNodeEx extends MethodVisitor {
             final Object... bootstrapMethodArguments) {
         instructions.add(
                 new InvokeDynamicInsnNode(
-                        name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments));
+                        Util.intern(interner, name),
+                        Util.intern(interner, descriptor),
+                        bootstrapMethodHandle,
+                        bootstrapMethodArguments));
     }
 
     @Override
@@ -341,7 +1004,7 @@ public class MethodNodeEx extends MethodVisitor {
 
     @Override
     public void visitMultiANewArrayInsn(final String descriptor, final int numDimensions) {
-        instructions.add(new MultiANewArrayInsnNode(descriptor, numDimensions));
+        instructions.add(new MultiANewArrayInsnNode(Util.intern(interner, descriptor), numDimensions));
     }
 
     @Override
@@ -368,8 +1031,12 @@ public class MethodNodeEx extends MethodVisitor {
     public void visitTryCatchBlock(
             final Label start, final Label end, final Label handler, final String type) {
         TryCatchBlockNode tryCatchBlock =
-                new TryCatchBlockNode(getLabelNode(start), getLabelNode(end), getLabelNode(handler), type);
-        tryCatchBlocks = Util.add(tryCatchBlocks, tryCatchBlock);
+                new TryCatchBlockNode(
+                        getLabelNode(start), getLabelNode(end), getLabelNode(handler), Util.intern(interner, type));
+        if (tryCatchBlocks == null) {
+            tryCatchBlocks = new TrackedList<>(this, 10);
+        }
+        tryCatchBlocks.add(tryCatchBlock);
     }
 
     @Override
@@ -397,8 +1064,16 @@ public class MethodNodeEx extends MethodVisitor {
             final int index) {
         LocalVariableNode localVariable =
                 new LocalVariableNode(
-                        name, descriptor, signature, getLabelNode(start), getLabelNode(end), index);
-        localVariables = Util.add(localVariables, localVariable);
+                        Util.intern(interner, name),
+                        Util.intern(interner, descriptor),
+                        Util.intern(interner, signature),
+                        getLabelNode(start),
+                        getLabelNode(end),
+                        index);
+        if (localVariables == null) {
+            localVariables = new TrackedList<>(this, 5);
+        }
+        localVariables.add(localVariable);
     }
 
     @Override
@@ -436,7 +1111,7 @@ public class MethodNodeEx extends MethodVisitor {
 
     @Override
     public void visitEnd() {
-        // Nothing to do.
+        visitingCode = false;
     }
 
     /**
@@ -468,6 +1143,8 @@ public class MethodNodeEx extends MethodVisitor {
             Object o = objects[i];
             if (o instanceof Label) {
                 o = getLabelNode((Label) o);
+            } else if (o instanceof String) {
+                o = Util.intern(interner, (String) o);
             }
             labelNodes[i] = o;
         }
@@ -487,8 +1164,9 @@ public class MethodNodeEx extends MethodVisitor {
      *            {@link Opcodes#ASM6}, {@link Opcodes#ASM7} or {@link Opcodes#ASM8}.
      */
     public void check(final int api) {
+        loadBody();
         if (api == Opcodes.ASM4) {
-            if (parameters != null && !parameters.isEmpty()) {
+            if (getDeclaredParameterCount() > 0) {
                 throw new UnsupportedClassVersionException();
             }
             if (typeAnnotations != null && !typeAnnotations.isEmpty()) {
@@ -564,16 +1242,82 @@ public class MethodNodeEx extends MethodVisitor {
     }
 
     /**
-     * Makes the given method visitor visit this method.
+     * Makes the given method visitor visit this method. If the body of this method is not loaded, its
+     * code is visited from its class file, without being loaded.
      *
      * @param methodVisitor a method visitor.
      */
     public void accept(final MethodVisitor methodVisitor) {
-        // Visit the parameters.
-        if (parameters != null) {
-            for (int i = 0, n = parameters.size(); i < n; i++) {
-                parameters.get(i).accept(methodVisitor);
+        acceptHeader(methodVisitor);
+        MethodBodyLoader loader = bodyLoader;
+        if (loader != null) {
+            loader.load(methodVisitor);
+            return;
+        }
+        // Visit the code.
+        if (visited) {
+            instructions.resetLabels();
+        }
+        if (instructions.size() > 0) {
+            methodVisitor.visitCode();
+            // Visits the try catch blocks.
+            if (tryCatchBlocks != null) {
+                for (int i = 0, n = tryCatchBlocks.size(); i < n; ++i) {
+                    tryCatchBlocks.get(i).updateIndex(i);
+                    tryCatchBlocks.get(i).accept(methodVisitor);
+                }
             }
+            // Visit the instructions.
+            instructions.accept(methodVisitor);
+            // Visits the local variables.
+            if (localVariables != null) {
+                for (int i = 0, n = localVariables.size(); i < n; ++i) {
+                    localVariables.get(i).accept(methodVisitor);
+                }
+            }
+            // Visits the local variable annotations.
+            if (visibleLocalVariableAnnotations != null) {
+                for (int i = 0, n = visibleLocalVariableAnnotations.size(); i < n; ++i) {
+                    visibleLocalVariableAnnotations.get(i).accept(methodVisitor, true);
+                }
+            }
+            if (invisibleLocalVariableAnnotations != null) {
+                for (int i = 0, n = invisibleLocalVariableAnnotations.size(); i < n; ++i) {
+                    invisibleLocalVariableAnnotations.get(i).accept(methodVisitor, false);
+                }
+            }
+            methodVisitor.visitMaxs(maxStack, maxLocals);
+            visited = true;
+        }
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Makes the given class visitor visit the header of this method, whose body must not be loaded.
+     *
+     * @param classVisitor a class visitor.
+     * @return the visitor to which the class reader of {@link #bodyLoader} must send the events of the
+     * code and end of this method, or {@literal null}.
+     */
+    MethodVisitor acceptHeader(final ClassVisitor classVisitor) {
+        String[] exceptionsArray = exceptions == null ? null : exceptions.toArray(new String[0]);
+        MethodVisitor methodVisitor =
+                classVisitor.visitMethod(access, name, desc, signature, exceptionsArray);
+        if (methodVisitor == null) {
+            return null;
+        }
+        acceptHeader(methodVisitor);
+        return bodyLoader.wrap(methodVisitor);
+    }
+
+    /**
+     * Makes the given method visitor visit the parameters, annotations and non standard attributes of
+     * this method, but not its code nor its end.
+     */
+    private void acceptHeader(final MethodVisitor methodVisitor) {
+        // Visit the parameters.
+        for (int i = 0, n = getDeclaredParameterCount(); i < n; i++) {
+            parameters.get(i).accept(methodVisitor);
         }
         // Visit the annotations.
         if (annotationDefault != null) {
@@ -621,51 +1365,197 @@ public class MethodNodeEx extends MethodVisitor {
         }
         if (invisibleAnnotableParameterCount > 0) {
             methodVisitor.visitAnnotableParameterCount(invisibleAnnotableParameterCount, false);
-            for (int i = 0; i < visibleAnnotableParameterCount; i++) {
+            for (int i = 0; i < invisibleAnnotableParameterCount; i++) {
                 parameters.get(i).acceptParameterAnnotation(methodVisitor, i, false);
             }
         }
         // Visit the non standard attributes.
-        if (visited) {
-            instructions.resetLabels();
-        }
         if (attrs != null) {
             for (int i = 0, n = attrs.size(); i < n; ++i) {
                 methodVisitor.visitAttribute(attrs.get(i));
             }
         }
-        // Visit the code.
-        if (instructions.size() > 0) {
-            methodVisitor.visitCode();
-            // Visits the try catch blocks.
-            if (tryCatchBlocks != null) {
-                for (int i = 0, n = tryCatchBlocks.size(); i < n; ++i) {
-                    tryCatchBlocks.get(i).updateIndex(i);
-                    tryCatchBlocks.get(i).accept(methodVisitor);
-                }
-            }
-            // Visit the instructions.
-            instructions.accept(methodVisitor);
-            // Visits the local variables.
-            if (localVariables != null) {
-                for (int i = 0, n = localVariables.size(); i < n; ++i) {
-                    localVariables.get(i).accept(methodVisitor);
-                }
-            }
-            // Visits the local variable annotations.
-            if (visibleLocalVariableAnnotations != null) {
-                for (int i = 0, n = visibleLocalVariableAnnotations.size(); i < n; ++i) {
-                    visibleLocalVariableAnnotations.get(i).accept(methodVisitor, true);
-                }
-            }
-            if (invisibleLocalVariableAnnotations != null) {
-                for (int i = 0, n = invisibleLocalVariableAnnotations.size(); i < n; ++i) {
-                    invisibleLocalVariableAnnotations.get(i).accept(methodVisitor, false);
-                }
-            }
-            methodVisitor.visitMaxs(maxStack, maxLocals);
-            visited = true;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Body lists
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * An instruction list that marks its method as dirty when it is modified, see {@link
+     * #isDirty()}.
+     */
+    private static final class TrackedInsnList extends InsnList {
+        final MethodNodeEx method;
+
+        TrackedInsnList(final MethodNodeEx method) {
+            this.method = method;
+        }
+
+        @Override
+        public void set(final AbstractInsnNode oldInsnNode, final AbstractInsnNode newInsnNode) {
+            method.bodyModified();
+            super.set(oldInsnNode, newInsnNode);
+        }
+
+        @Override
+        public void add(final AbstractInsnNode insnNode) {
+            method.bodyModified();
+            super.add(insnNode);
+        }
+
+        @Override
+        public void add(final InsnList insnList) {
+            method.bodyModified();
+            super.add(insnList);
+        }
+
+        @Override
+        public void insert(final AbstractInsnNode insnNode) {
+            method.bodyModified();
+            super.insert(insnNode);
+        }
+
+        @Override
+        public void insert(final InsnList insnList) {
+            method.bodyModified();
+            super.insert(insnList);
+        }
+
+        @Override
+        public void insert(final AbstractInsnNode previousInsn, final AbstractInsnNode insnNode) {
+            method.bodyModified();
+            super.insert(previousInsn, insnNode);
+        }
+
+        @Override
+        public void insert(final AbstractInsnNode previousInsn, final InsnList insnList) {
+            method.bodyModified();
+            super.insert(previousInsn, insnList);
+        }
+
+        @Override
+        public void insertBefore(final AbstractInsnNode nextInsn, final AbstractInsnNode insnNode) {
+            method.bodyModified();
+            super.insertBefore(nextInsn, insnNode);
+        }
+
+        @Override
+        public void insertBefore(final AbstractInsnNode nextInsn, final InsnList insnList) {
+            method.bodyModified();
+            super.insertBefore(nextInsn, insnList);
+        }
+
+        @Override
+        public void remove(final AbstractInsnNode insnNode) {
+            method.bodyModified();
+            super.remove(insnNode);
+        }
+
+        @Override
+        public void clear() {
+            method.bodyModified();
+            super.clear();
+        }
+    }
+
+    /**
+     * A list of try catch blocks or local variables that marks its method as dirty when it is
+     * modified, see {@link #isDirty()}. The elements set through a {@link #subList(int, int)} are not
+     * tracked.
+     */
+    private static final class TrackedList<E> extends ArrayList<E> {
+        private static final long serialVersionUID = 1L;
+
+        final transient MethodNodeEx method;
+
+        TrackedList(final MethodNodeEx method, final int initialCapacity) {
+            super(initialCapacity);
+            this.method = method;
+        }
+
+        @Override
+        public E set(final int index, final E element) {
+            method.bodyModified();
+            return super.set(index, element);
+        }
+
+        @Override
+        public boolean add(final E element) {
+            method.bodyModified();
+            return super.add(element);
+        }
+
+        @Override
+        public void add(final int index, final E element) {
+            method.bodyModified();
+            super.add(index, element);
+        }
+
+        @Override
+        public E remove(final int index) {
+            method.bodyModified();
+            return super.remove(index);
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            method.bodyModified();
+            return super.remove(o);
+        }
+
+        @Override
+        public void clear() {
+            method.bodyModified();
+            super.clear();
+        }
+
+        @Override
+        public boolean addAll(final Collection<? extends E> c) {
+            method.bodyModified();
+            return super.addAll(c);
+        }
+
+        @Override
+        public boolean addAll(final int index, final Collection<? extends E> c) {
+            method.bodyModified();
+            return super.addAll(index, c);
+        }
+
+        @Override
+        protected void removeRange(final int fromIndex, final int toIndex) {
+            method.bodyModified();
+            super.removeRange(fromIndex, toIndex);
+        }
+
+        @Override
+        public boolean removeAll(final Collection<?> c) {
+            method.bodyModified();
+            return super.removeAll(c);
+        }
+
+        @Override
+        public boolean retainAll(final Collection<?> c) {
+            method.bodyModified();
+            return super.retainAll(c);
+        }
+
+        @Override
+        public boolean removeIf(final Predicate<? super E> filter) {
+            method.bodyModified();
+            return super.removeIf(filter);
+        }
+
+        @Override
+        public void replaceAll(final UnaryOperator<E> operator) {
+            method.bodyModified();
+            super.replaceAll(operator);
+        }
+
+        @Override
+        public void sort(final Comparator<? super E> c) {
+            method.bodyModified();
+            super.sort(c);
         }
-        methodVisitor.visitEnd();
     }
 }
@@ -20,6 +20,12 @@ public class ParameterNodeEx {
 
     public Map<String, AnnotationNodeEx> annotations;
 
+    /**
+     * Whether this parameter was derived from the descriptor of its method, rather than read from or
+     * added to its MethodParameters attribute.
+     */
+    private boolean derived;
+
     /**
      * Constructs a new {@link ParameterNodeEx}.
      *
@@ -32,6 +38,25 @@ public class ParameterNodeEx {
         this.access = access;
     }
 
+    /**
+     * Returns a new unnamed parameter derived from the descriptor of a method, see {@link
+     * MethodNodeEx#getParameter(int)}.
+     */
+    static ParameterNodeEx placeholder() {
+        ParameterNodeEx parameter = new ParameterNodeEx(null, 0);
+        parameter.derived = true;
+        return parameter;
+    }
+
+    /**
+     * Returns whether this parameter is a placeholder derived from the descriptor of its method, and
+     * was not given a name nor access flags since. Such parameters are not stored in the
+     * MethodParameters attribute of the method.
+     */
+    boolean isPlaceholder() {
+        return derived && name == null && access == 0;
+    }
+
     public AnnotationNodeEx getAnnotation(String descriptor) {
         return annotations == null ? null : annotations.get(descriptor);
     }
@@ -0,0 +1,576 @@
+package com.github.mouse0w0.asm.extree;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A {@link java.util.List} of primitive values backed by a primitive array, used for the primitive
+ * array values of annotations. The elements are boxed only when accessed through the {@link
+ * java.util.List} methods, and {@link AnnotationNodeEx#accept(org.objectweb.asm.AnnotationVisitor)}
+ * visits the whole array at once.
+ *
+ * @param <E> the boxed type of the elements.
+ */
+public abstract class PrimitiveList<E> extends AbstractList<E> implements RandomAccess {
+
+    /**
+     * The number of elements of this list.
+     */
+    int size;
+
+    PrimitiveList(final int size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns a list backed by the given array, without copying it.
+     *
+     * @param array a primitive array.
+     * @return a list backed by the given array, or {@literal null} if it is not a primitive array.
+     */
+    public static PrimitiveList<?> wrap(final Object array) {
+        if (array instanceof byte[]) {
+            return new OfByte((byte[]) array);
+        } else if (array instanceof boolean[]) {
+            return new OfBoolean((boolean[]) array);
+        } else if (array instanceof short[]) {
+            return new OfShort((short[]) array);
+        } else if (array instanceof char[]) {
+            return new OfChar((char[]) array);
+        } else if (array instanceof int[]) {
+            return new OfInt((int[]) array);
+        } else if (array instanceof long[]) {
+            return new OfLong((long[]) array);
+        } else if (array instanceof float[]) {
+            return new OfFloat((float[]) array);
+        } else if (array instanceof double[]) {
+            return new OfDouble((double[]) array);
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a new primitive array with the elements of this list.
+     *
+     * @return a new primitive array, for instance an {@code int[]} for an {@link OfInt}.
+     */
+    public abstract Object toPrimitiveArray();
+
+    final void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    final void checkPositionIndex(final int index) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    final int newCapacity(final int length) {
+        return Math.max(length + (length >> 1), 4);
+    }
+
+    public static final class OfByte extends PrimitiveList<Byte> {
+        private byte[] elements;
+
+        public OfByte() {
+            this(new byte[0]);
+        }
+
+        public OfByte(final byte[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        public byte getByte(final int index) {
+            checkIndex(index);
+            return elements[index];
+        }
+
+        @Override
+        public Byte get(final int index) {
+            return getByte(index);
+        }
+
+        @Override
+        public Byte set(final int index, final Byte element) {
+            checkIndex(index);
+            byte previous = elements[index];
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final Byte element) {
+            checkPositionIndex(index);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity(size));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Byte remove(final int index) {
+            checkIndex(index);
+            byte previous = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        @Override
+        public Object toPrimitiveArray() {
+            return toByteArray();
+        }
+    }
+
+    public static final class OfBoolean extends PrimitiveList<Boolean> {
+        private boolean[] elements;
+
+        public OfBoolean() {
+            this(new boolean[0]);
+        }
+
+        public OfBoolean(final boolean[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        public boolean getBoolean(final int index) {
+            checkIndex(index);
+            return elements[index];
+        }
+
+        @Override
+        public Boolean get(final int index) {
+            return getBoolean(index);
+        }
+
+        @Override
+        public Boolean set(final int index, final Boolean element) {
+            checkIndex(index);
+            boolean previous = elements[index];
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final Boolean element) {
+            checkPositionIndex(index);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity(size));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Boolean remove(final int index) {
+            checkIndex(index);
+            boolean previous = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        public boolean[] toBooleanArray() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        @Override
+        public Object toPrimitiveArray() {
+            return toBooleanArray();
+        }
+    }
+
+    public static final class OfShort extends PrimitiveList<Short> {
+        private short[] elements;
+
+        public OfShort() {
+            this(new short[0]);
+        }
+
+        public OfShort(final short[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        public short getShort(final int index) {
+            checkIndex(index);
+            return elements[index];
+        }
+
+        @Override
+        public Short get(final int index) {
+            return getShort(index);
+        }
+
+        @Override
+        public Short set(final int index, final Short element) {
+            checkIndex(index);
+            short previous = elements[index];
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final Short element) {
+            checkPositionIndex(index);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity(size));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Short remove(final int index) {
+            checkIndex(index);
+            short previous = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        public short[] toShortArray() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        @Override
+        public Object toPrimitiveArray() {
+            return toShortArray();
+        }
+    }
+
+    public static final class OfChar extends PrimitiveList<Character> {
+        private char[] elements;
+
+        public OfChar() {
+            this(new char[0]);
+        }
+
+        public OfChar(final char[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        public char getChar(final int index) {
+            checkIndex(index);
+            return elements[index];
+        }
+
+        @Override
+        public Character get(final int index) {
+            return getChar(index);
+        }
+
+        @Override
+        public Character set(final int index, final Character element) {
+            checkIndex(index);
+            char previous = elements[index];
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final Character element) {
+            checkPositionIndex(index);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity(size));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Character remove(final int index) {
+            checkIndex(index);
+            char previous = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        public char[] toCharArray() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        @Override
+        public Object toPrimitiveArray() {
+            return toCharArray();
+        }
+    }
+
+    public static final class OfInt extends PrimitiveList<Integer> {
+        private int[] elements;
+
+        public OfInt() {
+            this(new int[0]);
+        }
+
+        public OfInt(final int[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        public int getInt(final int index) {
+            checkIndex(index);
+            return elements[index];
+        }
+
+        @Override
+        public Integer get(final int index) {
+            return getInt(index);
+        }
+
+        @Override
+        public Integer set(final int index, final Integer element) {
+            checkIndex(index);
+            int previous = elements[index];
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final Integer element) {
+            checkPositionIndex(index);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity(size));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Integer remove(final int index) {
+            checkIndex(index);
+            int previous = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        public int[] toIntArray() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        @Override
+        public Object toPrimitiveArray() {
+            return toIntArray();
+        }
+    }
+
+    public static final class OfLong extends PrimitiveList<Long> {
+        private long[] elements;
+
+        public OfLong() {
+            this(new long[0]);
+        }
+
+        public OfLong(final long[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        public long getLong(final int index) {
+            checkIndex(index);
+            return elements[index];
+        }
+
+        @Override
+        public Long get(final int index) {
+            return getLong(index);
+        }
+
+        @Override
+        public Long set(final int index, final Long element) {
+            checkIndex(index);
+            long previous = elements[index];
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final Long element) {
+            checkPositionIndex(index);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity(size));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Long remove(final int index) {
+            checkIndex(index);
+            long previous = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        public long[] toLongArray() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        @Override
+        public Object toPrimitiveArray() {
+            return toLongArray();
+        }
+    }
+
+    public static final class OfFloat extends PrimitiveList<Float> {
+        private float[] elements;
+
+        public OfFloat() {
+            this(new float[0]);
+        }
+
+        public OfFloat(final float[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        public float getFloat(final int index) {
+            checkIndex(index);
+            return elements[index];
+        }
+
+        @Override
+        public Float get(final int index) {
+            return getFloat(index);
+        }
+
+        @Override
+        public Float set(final int index, final Float element) {
+            checkIndex(index);
+            float previous = elements[index];
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final Float element) {
+            checkPositionIndex(index);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity(size));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Float remove(final int index) {
+            checkIndex(index);
+            float previous = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        public float[] toFloatArray() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        @Override
+        public Object toPrimitiveArray() {
+            return toFloatArray();
+        }
+    }
+
+    public static final class OfDouble extends PrimitiveList<Double> {
+        private double[] elements;
+
+        public OfDouble() {
+            this(new double[0]);
+        }
+
+        public OfDouble(final double[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        public double getDouble(final int index) {
+            checkIndex(index);
+            return elements[index];
+        }
+
+        @Override
+        public Double get(final int index) {
+            return getDouble(index);
+        }
+
+        @Override
+        public Double set(final int index, final Double element) {
+            checkIndex(index);
+            double previous = elements[index];
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(final int index, final Double element) {
+            checkPositionIndex(index);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity(size));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Double remove(final int index) {
+            checkIndex(index);
+            double previous = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            size--;
+            modCount++;
+            return previous;
+        }
+
+        public double[] toDoubleArray() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        @Override
+        public Object toPrimitiveArray() {
+            return toDoubleArray();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.*;
+
+/**
+ * A non standard attribute stored as its raw content. Used to store the attributes of a class in a
+ * snapshot, see {@link ClassSnapshotWriter}. Like the unknown attributes of a {@link ClassReader},
+ * the content is copied as is, so constant pool indices in it are not remapped.
+ */
+final class RawAttribute extends Attribute {
+
+    /**
+     * The content of this attribute, or {@literal null} for a prototype.
+     */
+    final byte[] content;
+
+    RawAttribute(final String type, final byte[] content) {
+        super(type);
+        this.content = content;
+    }
+
+    /**
+     * Returns the content of an attribute, as it would be written in a class file.
+     */
+    static byte[] getContent(final Attribute attribute) {
+        if (attribute instanceof RawAttribute) {
+            return ((RawAttribute) attribute).content;
+        }
+        // Write the attribute in a class, and read it back with a RawAttribute prototype.
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, 0, "A", null, "java/lang/Object", null);
+        classWriter.visitAttribute(attribute);
+        classWriter.visitEnd();
+        RawAttribute[] result = new RawAttribute[1];
+        new ClassReader(classWriter.toByteArray()).accept(new ClassVisitor(/* latest api = */ Opcodes.ASM8) {
+            @Override
+            public void visitAttribute(final Attribute attribute) {
+                result[0] = (RawAttribute) attribute;
+            }
+        }, new Attribute[]{new RawAttribute(attribute.type, null)}, 0);
+        return result[0].content;
+    }
+
+    @Override
+    protected Attribute read(
+            final ClassReader classReader,
+            final int offset,
+            final int length,
+            final char[] charBuffer,
+            final int codeAttributeOffset,
+            final Label[] labels) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            content[i] = (byte) classReader.readByte(offset + i);
+        }
+        return new RawAttribute(type, content);
+    }
+
+    @Override
+    protected ByteVector write(
+            final ClassWriter classWriter,
+            final byte[] code,
+            final int codeLength,
+            final int maxStack,
+            final int maxLocals) {
+        return new ByteVector(content.length).putByteArray(content, 0, content.length);
+    }
+}
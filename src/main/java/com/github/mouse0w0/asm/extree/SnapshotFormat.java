@@ -0,0 +1,111 @@
+package com.github.mouse0w0.asm.extree;
+
+/**
+ * The constants of the format written by {@link ClassSnapshotWriter} and read by {@link
+ * ClassSnapshotReader}.
+ *
+ * <p>A snapshot starts with a header: the {@link #MAGIC} and {@link #VERSION} ints, the string
+ * table (a varint count, then each string as a varint length followed by one varint per char), and
+ * the class table (a varint count, then the varint string index of the name and the varint length
+ * of each class). The class records follow, in the order of the class table.
+ *
+ * <p>A class record is the sequence of the visit events of the class. Each event is a tag byte
+ * followed by its arguments. Strings are varint indices in the string table plus one, 0 standing for
+ * {@literal null}. Labels are varint indices local to each method, assigned in order of first use.
+ * Signed ints and longs are zigzag varints, floats and doubles are their raw bits. The events
+ * nested in a field, method, record component, module or annotation end with an {@link #END} tag.
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x434E5853;
+    static final int VERSION = 1;
+
+    // Event tags.
+    static final int END = 0;
+    static final int SOURCE = 1;
+    static final int MODULE = 2;
+    static final int NEST_HOST = 3;
+    static final int OUTER_CLASS = 4;
+    static final int ANNOTATION = 5;
+    static final int TYPE_ANNOTATION = 6;
+    static final int ATTRIBUTE = 7;
+    static final int NEST_MEMBER = 8;
+    static final int PERMITTED_SUBTYPE = 9;
+    static final int INNER_CLASS = 10;
+    static final int RECORD_COMPONENT = 11;
+    static final int FIELD = 12;
+    static final int METHOD = 13;
+
+    static final int MODULE_MAIN_CLASS = 20;
+    static final int MODULE_PACKAGE = 21;
+    static final int MODULE_REQUIRE = 22;
+    static final int MODULE_EXPORT = 23;
+    static final int MODULE_OPEN = 24;
+    static final int MODULE_USE = 25;
+    static final int MODULE_PROVIDE = 26;
+
+    static final int ANNOTATION_VALUE = 30;
+    static final int ANNOTATION_ENUM = 31;
+    static final int ANNOTATION_ANNOTATION = 32;
+    static final int ANNOTATION_ARRAY = 33;
+
+    static final int PARAMETER = 40;
+    static final int ANNOTATION_DEFAULT = 41;
+    static final int ANNOTABLE_PARAMETER_COUNT = 42;
+    static final int PARAMETER_ANNOTATION = 43;
+    static final int CODE = 44;
+    static final int FRAME = 45;
+    static final int INSN = 46;
+    static final int INT_INSN = 47;
+    static final int VAR_INSN = 48;
+    static final int TYPE_INSN = 49;
+    static final int FIELD_INSN = 50;
+    static final int METHOD_INSN = 51;
+    static final int INVOKE_DYNAMIC_INSN = 52;
+    static final int JUMP_INSN = 53;
+    static final int LABEL = 54;
+    static final int LDC_INSN = 55;
+    static final int IINC_INSN = 56;
+    static final int TABLE_SWITCH_INSN = 57;
+    static final int LOOKUP_SWITCH_INSN = 58;
+    static final int MULTI_ANEW_ARRAY_INSN = 59;
+    static final int INSN_ANNOTATION = 60;
+    static final int TRY_CATCH_BLOCK = 61;
+    static final int TRY_CATCH_ANNOTATION = 62;
+    static final int LOCAL_VARIABLE = 63;
+    static final int LOCAL_VARIABLE_ANNOTATION = 64;
+    static final int LINE_NUMBER = 65;
+    static final int MAXS = 66;
+
+    // Constant tags.
+    static final int CONSTANT_NULL = 0;
+    static final int CONSTANT_INTEGER = 1;
+    static final int CONSTANT_FLOAT = 2;
+    static final int CONSTANT_LONG = 3;
+    static final int CONSTANT_DOUBLE = 4;
+    static final int CONSTANT_STRING = 5;
+    static final int CONSTANT_TYPE = 6;
+    static final int CONSTANT_HANDLE = 7;
+    static final int CONSTANT_DYNAMIC = 8;
+    static final int CONSTANT_BYTE = 9;
+    static final int CONSTANT_BOOLEAN = 10;
+    static final int CONSTANT_CHAR = 11;
+    static final int CONSTANT_SHORT = 12;
+    static final int CONSTANT_BYTE_ARRAY = 13;
+    static final int CONSTANT_BOOLEAN_ARRAY = 14;
+    static final int CONSTANT_CHAR_ARRAY = 15;
+    static final int CONSTANT_SHORT_ARRAY = 16;
+    static final int CONSTANT_INT_ARRAY = 17;
+    static final int CONSTANT_LONG_ARRAY = 18;
+    static final int CONSTANT_FLOAT_ARRAY = 19;
+    static final int CONSTANT_DOUBLE_ARRAY = 20;
+
+    // Frame element tags. The elements of a frame are preceded by their count and by a byte telling
+    // whether they are given.
+    static final int FRAME_PRIMITIVE = 0;
+    static final int FRAME_TYPE = 1;
+    static final int FRAME_LABEL = 2;
+
+    private SnapshotFormat() {
+    }
+}
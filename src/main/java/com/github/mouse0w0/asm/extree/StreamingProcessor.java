@@ -0,0 +1,254 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transforms the classes of a jar file one window at a time, so that the memory used does not depend
+ * on the size of the jar file. Unlike with a {@link ClassRepository}, the classes are not all loaded
+ * before being transformed: each class is read lazily, transformed with a {@link
+ * TransformerPipeline}, serialized and compressed by a {@link JarOutput}, on a {@link ForkJoinPool},
+ * and only a bounded number of classes are in flight ahead of the one being written to the output
+ * jar file. The pool does not read further entries until the writer catches up.
+ *
+ * <p>The transformers that need information about other classes can use a {@link ClassIndex} built
+ * beforehand with {@link #buildIndex(ClassInput)}, which is read in the same way, and only retains
+ * the names, headers and annotations of the classes.
+ */
+public class StreamingProcessor {
+
+    /**
+     * The number of classes below which a parse task is not split any further.
+     */
+    private static final int PARSE_THRESHOLD = 16;
+
+    /**
+     * The maximum number of classes read, transformed or written at the same time.
+     */
+    private final int window;
+
+    /**
+     * The options passed to the class writers, zero or more of {@link
+     * org.objectweb.asm.ClassWriter#COMPUTE_MAXS} and {@link org.objectweb.asm.ClassWriter#COMPUTE_FRAMES}.
+     */
+    private final int writerFlags;
+
+    /**
+     * The hierarchy used to compute the frames, or {@literal null}.
+     */
+    private final ClassHierarchy classHierarchy;
+
+    /**
+     * The pool used to read, transform and write the classes.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new {@link StreamingProcessor} that writes the classes without computing their
+     * maximum stack sizes nor their frames, and processes the classes on the common pool.
+     *
+     * @param window the maximum number of classes read, transformed or written at the same time.
+     */
+    public StreamingProcessor(final int window) {
+        this(window, 0, null, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new {@link StreamingProcessor}.
+     *
+     * @param window         the maximum number of classes read, transformed or written at the same
+     *                       time. The peak memory usage is proportional to this number times the size of
+     *                       the largest classes.
+     * @param writerFlags    the options passed to the class writers. Zero or more of {@link
+     *                       org.objectweb.asm.ClassWriter#COMPUTE_MAXS} and {@link
+     *                       org.objectweb.asm.ClassWriter#COMPUTE_FRAMES}.
+     * @param classHierarchy the hierarchy used to compute the frames, for instance filled with {@link
+     *                       ClassIndex#addTo(ClassHierarchy)}, or {@literal null}.
+     * @param pool           the pool used to read, transform and write the classes.
+     */
+    public StreamingProcessor(
+            final int window, final int writerFlags, final ClassHierarchy classHierarchy, final ForkJoinPool pool) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        this.window = window;
+        this.writerFlags = writerFlags;
+        this.classHierarchy = classHierarchy;
+        this.pool = pool;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Builds the index of the classes of a jar file or class directory, without loading them all at
+     * once. The classes are read with {@link ClassReader#SKIP_CODE} in parallel, one window at a
+     * time, in the order of their entry names.
+     *
+     * @param input the input to read the classes from.
+     * @return the index of the classes.
+     * @throws IOException if the classes cannot be read.
+     */
+    public ClassIndex buildIndex(final ClassInput input) throws IOException {
+        final List<ClassInput.Entry> entries = getClassEntries(input);
+        try {
+            return ClassIndex.build(() -> new ClassIterator(entries));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Transforms the classes of a jar file or class directory, and writes them with its resources to
+     * a jar file, see {@link JarOutput}.
+     *
+     * @param input    the path of a jar file or of a class directory.
+     * @param output   the path of the jar file to write.
+     * @param pipeline the transformers to run on the classes.
+     * @return the number of classes matched by at least one transformer.
+     * @throws IOException if the input cannot be read or the output cannot be written.
+     */
+    public int process(final Path input, final Path output, final TransformerPipeline pipeline) throws IOException {
+        try (ClassInput classInput = ClassInput.open(input)) {
+            return process(classInput, output, pipeline);
+        }
+    }
+
+    /**
+     * Transforms the classes of an opened jar file or class directory, and writes them with its
+     * resources to a jar file, see {@link JarOutput}.
+     *
+     * @param input    the input to read the classes and resources from.
+     * @param output   the path of the jar file to write.
+     * @param pipeline the transformers to run on the classes.
+     * @return the number of classes matched by at least one transformer.
+     * @throws IOException if the input cannot be read or the output cannot be written.
+     */
+    public int process(final ClassInput input, final Path output, final TransformerPipeline pipeline)
+            throws IOException {
+        final AtomicInteger transformed = new AtomicInteger();
+        try (JarOutput jarOutput = new JarOutput(output, writerFlags, classHierarchy, pool)) {
+            jarOutput.setWindow(window);
+            for (final ClassInput.Entry entry : getClassEntries(input)) {
+                jarOutput.addClass(entry.getName(), () -> {
+                    ClassNodeEx classNode = new ClassNodeEx();
+                    classNode.readLazily(new ClassReader(entry.read()), 0);
+                    if (pipeline.transform(classNode)) {
+                        transformed.incrementAndGet();
+                    }
+                    return classNode;
+                });
+            }
+            jarOutput.addResources(input);
+        }
+        return transformed.get();
+    }
+
+    private static List<ClassInput.Entry> getClassEntries(final ClassInput input) {
+        List<ClassInput.Entry> entries = new ArrayList<>();
+        for (ClassInput.Entry entry : input.getEntries()) {
+            if (entry.isClassFile()) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparing(ClassInput.Entry::getName));
+        return entries;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Index
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * An iterator over the headers of the classes of a list of entries, which are parsed in parallel
+     * one window at a time.
+     */
+    private final class ClassIterator implements Iterator<ClassNodeEx> {
+        private final List<ClassInput.Entry> entries;
+        private final ClassNodeEx[] classNodes;
+        private int start;
+        private int end;
+        private int next;
+
+        ClassIterator(final List<ClassInput.Entry> entries) {
+            this.entries = entries;
+            this.classNodes = new ClassNodeEx[Math.min(window, entries.size())];
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < entries.size();
+        }
+
+        @Override
+        public ClassNodeEx next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (next == end) {
+                Arrays.fill(classNodes, null);
+                start = end;
+                end = Math.min(entries.size(), start + classNodes.length);
+                pool.invoke(new ParseTask(entries, classNodes, start, start, end));
+            }
+            return classNodes[next++ - start];
+        }
+    }
+
+    private static final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ClassInput.Entry> entries;
+        private final ClassNodeEx[] classNodes;
+        private final int offset;
+        private final int from;
+        private final int to;
+
+        ParseTask(
+                final List<ClassInput.Entry> entries,
+                final ClassNodeEx[] classNodes,
+                final int offset,
+                final int from,
+                final int to) {
+            this.entries = entries;
+            this.classNodes = classNodes;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARSE_THRESHOLD) {
+                for (int i = from; i < to; ++i) {
+                    try {
+                        ClassNodeEx classNode = new ClassNodeEx();
+                        classNode.read(
+                                new ClassReader(entries.get(i).read()),
+                                ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                        classNodes[i - offset] = classNode;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(entries, classNodes, offset, from, middle),
+                        new ParseTask(entries, classNodes, offset, middle, to));
+            }
+        }
+    }
+}
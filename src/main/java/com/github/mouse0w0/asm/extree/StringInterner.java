@@ -0,0 +1,19 @@
+package com.github.mouse0w0.asm.extree;
+
+/**
+ * Deduplicates the names, descriptors and signatures of the nodes built by a {@link ClassNodeEx}.
+ * An interner is usually shared by all the classes of a loading session, and may then be called
+ * concurrently.
+ *
+ * @see StringPool
+ */
+public interface StringInterner {
+
+    /**
+     * Returns a canonical instance of the given string.
+     *
+     * @param value a string, never {@literal null}.
+     * @return a string equal to the given one.
+     */
+    String intern(String value);
+}
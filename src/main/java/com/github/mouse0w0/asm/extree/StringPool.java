@@ -0,0 +1,102 @@
+package com.github.mouse0w0.asm.extree;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe {@link StringInterner} that keeps the first instance of each string, and estimates
+ * the memory it saves.
+ */
+public class StringPool implements StringInterner {
+
+    /**
+     * The number of bytes used by each char of a string: compact strings store Latin-1 strings with
+     * one byte per char since Java 9.
+     */
+    private static final int BYTES_PER_CHAR = System.getProperty("java.specification.version").startsWith("1.") ? 2 : 1;
+
+    private final ConcurrentHashMap<String, String> strings;
+
+    private final LongAdder internCount = new LongAdder();
+
+    private final LongAdder duplicateCount = new LongAdder();
+
+    private final LongAdder savedBytes = new LongAdder();
+
+    public StringPool() {
+        this(1024);
+    }
+
+    public StringPool(final int initialCapacity) {
+        this.strings = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    @Override
+    public String intern(final String value) {
+        internCount.increment();
+        String pooled = strings.get(value);
+        if (pooled == null) {
+            pooled = strings.putIfAbsent(value, value);
+            if (pooled == null) {
+                return value;
+            }
+        }
+        if (pooled != value) {
+            duplicateCount.increment();
+            savedBytes.add(sizeOf(value));
+        }
+        return pooled;
+    }
+
+    /**
+     * Returns the number of distinct strings in this pool.
+     *
+     * @return the number of distinct strings in this pool.
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Returns the number of calls to {@link #intern(String)}.
+     *
+     * @return the number of interned strings.
+     */
+    public long getInternCount() {
+        return internCount.sum();
+    }
+
+    /**
+     * Returns the number of calls to {@link #intern(String)} that returned a pooled instance instead
+     * of the given one.
+     *
+     * @return the number of replaced duplicates.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.sum();
+    }
+
+    /**
+     * Returns an estimate of the heap saved by this pool, that is the size of the replaced duplicate
+     * strings and of their backing arrays, assuming compressed references. This is an over-count: a
+     * {@link org.objectweb.asm.ClassReader} returns the same instance for each use of a constant in a
+     * class, so a single duplicate string is counted once for each of its uses.
+     *
+     * @return the estimated number of bytes saved.
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    public void clear() {
+        strings.clear();
+        internCount.reset();
+        duplicateCount.reset();
+        savedBytes.reset();
+    }
+
+    private static long sizeOf(final String value) {
+        // String header and fields, plus the array header and content, each aligned on 8 bytes.
+        return 24 + ((16 + (long) value.length() * BYTES_PER_CHAR + 7) & ~7L);
+    }
+}
@@ -0,0 +1,493 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a sequence of {@link TreeTransformer}s over a set of classes. Each class is traversed once to
+ * find the nodes matched by the interests of all the transformers: the annotations of the class and
+ * of its members are looked up in an index of the interesting annotations, and, if a transformer is
+ * interested in instructions, the instructions of each method are looked up in an index of the
+ * interesting opcodes and owners. The bodies that are not loaded are scanned from their class file
+ * first, and only the methods that contain a matched instruction are loaded. Then each transformer
+ * that matched the class is called back, in order, for the class and for its matched members and
+ * instructions, which are marked as dirty beforehand. The classes that no transformer matched are
+ * not transformed at all. The classes are transformed in parallel on a {@link ForkJoinPool}.
+ *
+ * <p>The matches of a class are found before any transformer runs on it, so a transformer is called
+ * back for the nodes of the class as they were before the class was transformed, even if they were
+ * modified or removed by a previous transformer.
+ */
+public class TransformerPipeline {
+
+    /**
+     * The number of classes below which a transform task is not split any further.
+     */
+    private static final int TRANSFORM_THRESHOLD = 16;
+
+    private static final int[] NO_TRANSFORMERS = new int[0];
+
+    private final TreeTransformer[] transformers;
+
+    /**
+     * The pool used to transform the classes.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The indices of the transformers interested in every class.
+     */
+    private final int[] allTransformers;
+
+    /**
+     * The indices of the transformers interested in each annotation, by class descriptor.
+     */
+    private final Map<String, int[]> annotationTransformers = new HashMap<>();
+
+    /**
+     * The indices of the transformers interested in the instructions of each owner, by internal name.
+     */
+    private final Map<String, int[]> ownerTransformers = new HashMap<>();
+
+    /**
+     * The indices of the transformers interested in each opcode, or {@literal null}.
+     */
+    private final int[][] opcodeTransformers = new int[256][];
+
+    /**
+     * Whether a transformer is interested in instructions.
+     */
+    private final boolean matchesInsns;
+
+    /**
+     * Constructs a new {@link TransformerPipeline} that transforms the classes on the common pool.
+     *
+     * @param transformers the transformers, in the order they are run on each class.
+     */
+    public TransformerPipeline(final List<? extends TreeTransformer> transformers) {
+        this(transformers, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new {@link TransformerPipeline}.
+     *
+     * @param transformers the transformers, in the order they are run on each class.
+     * @param pool         the pool used to transform the classes.
+     */
+    public TransformerPipeline(final List<? extends TreeTransformer> transformers, final ForkJoinPool pool) {
+        this.transformers = transformers.toArray(new TreeTransformer[0]);
+        this.pool = pool;
+        int[] all = NO_TRANSFORMERS;
+        boolean insns = false;
+        for (int i = 0; i < this.transformers.length; ++i) {
+            TreeTransformer.Interest interest = this.transformers[i].getInterest();
+            if (interest.all) {
+                all = append(all, i);
+            }
+            for (String descriptor : interest.annotations) {
+                annotationTransformers.put(descriptor, append(annotationTransformers.get(descriptor), i));
+            }
+            for (String owner : interest.owners) {
+                ownerTransformers.put(owner, append(ownerTransformers.get(owner), i));
+            }
+            for (int opcode = interest.opcodes.nextSetBit(0); opcode >= 0; opcode = interest.opcodes.nextSetBit(opcode + 1)) {
+                opcodeTransformers[opcode] = append(opcodeTransformers[opcode], i);
+            }
+            insns |= interest.matchesInsns();
+        }
+        this.allTransformers = all;
+        this.matchesInsns = insns;
+    }
+
+    private static int[] append(final int[] indices, final int index) {
+        if (indices == null) {
+            return new int[]{index};
+        }
+        int[] result = Arrays.copyOf(indices, indices.length + 1);
+        result[indices.length] = index;
+        return result;
+    }
+
+    public List<TreeTransformer> getTransformers() {
+        return Arrays.asList(transformers.clone());
+    }
+
+    /**
+     * Transforms the given classes, for instance the classes of a {@link ClassRepository}, in
+     * parallel. If a transformer is interested in instructions, the bodies of the methods that contain
+     * a matched instruction are loaded.
+     *
+     * @param classNodes the classes to transform.
+     * @return the number of classes matched by at least one transformer.
+     */
+    public int transform(final Iterable<ClassNodeEx> classNodes) {
+        List<ClassNodeEx> classNodeList = new ArrayList<>();
+        for (ClassNodeEx classNode : classNodes) {
+            classNodeList.add(classNode);
+        }
+        boolean[] transformed = new boolean[classNodeList.size()];
+        pool.invoke(new TransformTask(classNodeList, transformed, 0, transformed.length));
+        int count = 0;
+        for (boolean classTransformed : transformed) {
+            if (classTransformed) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Transforms a class in the current thread.
+     *
+     * @param classNode the class to transform.
+     * @return whether the class was matched by at least one transformer.
+     */
+    public boolean transform(final ClassNodeEx classNode) {
+        Match[] matches = new Match[transformers.length];
+        boolean matched = match(classNode, matches);
+        if (matched) {
+            for (int i = 0; i < matches.length; ++i) {
+                if (matches[i] != null) {
+                    matches[i].dispatch(transformers[i], classNode);
+                }
+            }
+        }
+        return matched;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Matching
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Traverses a class and records the nodes matched by each transformer.
+     *
+     * @return whether a transformer matched the class.
+     */
+    private boolean match(final ClassNodeEx classNode, final Match[] matches) {
+        boolean matched = false;
+        for (int index : allTransformers) {
+            getMatch(matches, index);
+            matched = true;
+        }
+        if (classNode.annotations != null && !annotationTransformers.isEmpty()) {
+            for (String descriptor : classNode.annotations.keySet()) {
+                int[] indices = annotationTransformers.get(descriptor);
+                if (indices != null) {
+                    for (int index : indices) {
+                        getMatch(matches, index);
+                    }
+                    matched = true;
+                }
+            }
+        }
+        for (FieldNodeEx field : classNode.fields.values()) {
+            for (int index : allTransformers) {
+                getMatch(matches, index).add(field);
+            }
+            matched |= matchAnnotations(field.annotations, field, matches);
+        }
+        if (matchesInsns) {
+            loadMatchingBodies(classNode.methods.values());
+        }
+        for (MethodNodeEx method : classNode.methods.values()) {
+            for (int index : allTransformers) {
+                getMatch(matches, index).add(method);
+            }
+            matched |= matchAnnotations(method.annotations, method, matches);
+            // The methods whose body is still not loaded contain no matched instruction.
+            if (matchesInsns && method.bodyLoader == null) {
+                matched |= matchInsns(method, matches);
+            }
+        }
+        return matched;
+    }
+
+    private boolean matchAnnotations(
+            final Map<String, AnnotationNodeEx> annotations, final Object member, final Match[] matches) {
+        if (annotations == null || annotationTransformers.isEmpty()) {
+            return false;
+        }
+        boolean matched = false;
+        for (String descriptor : annotations.keySet()) {
+            int[] indices = annotationTransformers.get(descriptor);
+            if (indices != null) {
+                for (int index : indices) {
+                    getMatch(matches, index).add(member);
+                }
+                matched = true;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Loads the bodies of the given methods that are not loaded yet and contain an instruction
+     * matched by a transformer. The bodies are first scanned from their class file, without being
+     * loaded, in a single pass per class file.
+     */
+    private void loadMatchingBodies(final Collection<MethodNodeEx> methods) {
+        List<MethodNodeEx> unloaded = new ArrayList<>();
+        for (MethodNodeEx method : methods) {
+            if (method.bodyLoader != null) {
+                unloaded.add(method);
+            }
+        }
+        if (unloaded.isEmpty()) {
+            return;
+        }
+        int count = unloaded.size();
+        MethodBodyLoader[] loaders = new MethodBodyLoader[count];
+        InsnScanner[] scanners = new InsnScanner[count];
+        for (int i = 0; i < count; ++i) {
+            loaders[i] = unloaded.get(i).bodyLoader;
+            scanners[i] = new InsnScanner();
+        }
+        MethodBodyLoader.load(loaders, scanners);
+        List<MethodNodeEx> matching = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            if (scanners[i].matched) {
+                matching.add(unloaded.get(i));
+            }
+        }
+        MethodNodeEx.loadBodies(matching);
+    }
+
+    private boolean matchInsns(final MethodNodeEx method, final Match[] matches) {
+        boolean matched = false;
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            int opcode = insn.getOpcode();
+            if (opcode < 0) {
+                continue;
+            }
+            int[] indices = opcodeTransformers[opcode];
+            if (indices != null) {
+                for (int index : indices) {
+                    getMatch(matches, index).add(method, insn);
+                }
+                matched = true;
+            }
+            if (ownerTransformers.isEmpty()) {
+                continue;
+            }
+            String owner;
+            if (insn instanceof MethodInsnNode) {
+                owner = ((MethodInsnNode) insn).owner;
+            } else if (insn instanceof FieldInsnNode) {
+                owner = ((FieldInsnNode) insn).owner;
+            } else {
+                continue;
+            }
+            indices = ownerTransformers.get(owner);
+            if (indices != null) {
+                for (int index : indices) {
+                    Match match = getMatch(matches, index);
+                    // Do not add the instruction twice if its opcode matched too.
+                    if (match.lastNode() != insn) {
+                        match.add(method, insn);
+                    }
+                }
+                matched = true;
+            }
+        }
+        return matched;
+    }
+
+    private boolean matchesOpcode(final int opcode) {
+        return opcodeTransformers[opcode] != null;
+    }
+
+    private boolean matchesOwner(final String owner) {
+        return ownerTransformers.containsKey(owner);
+    }
+
+    private static Match getMatch(final Match[] matches, final int index) {
+        Match match = matches[index];
+        if (match == null) {
+            match = new Match();
+            matches[index] = match;
+        }
+        return match;
+    }
+
+    /**
+     * The nodes of a class matched by a transformer: the fields, methods and instructions, in
+     * traversal order. Each instruction follows its method.
+     */
+    private static final class Match {
+        private final List<Object> nodes = new ArrayList<>();
+
+        /**
+         * The last field or method added, or {@literal null}.
+         */
+        private Object lastMember;
+
+        void add(final Object member) {
+            if (lastMember != member) {
+                nodes.add(member);
+                lastMember = member;
+            }
+        }
+
+        void add(final MethodNodeEx method, final AbstractInsnNode insn) {
+            add(method);
+            nodes.add(insn);
+        }
+
+        Object lastNode() {
+            return nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+        }
+
+        void dispatch(final TreeTransformer transformer, final ClassNodeEx classNode) {
+            transformer.transformClass(classNode);
+            MethodNodeEx method = null;
+            for (int i = 0, n = nodes.size(); i < n; ++i) {
+                Object node = nodes.get(i);
+                if (node instanceof AbstractInsnNode) {
+                    transformer.transformInsn(classNode, method, (AbstractInsnNode) node);
+                } else if (node instanceof MethodNodeEx) {
+                    method = (MethodNodeEx) node;
+                    method.markDirty();
+                    transformer.transformMethod(classNode, method);
+                } else {
+                    FieldNodeEx field = (FieldNodeEx) node;
+                    field.markDirty();
+                    transformer.transformField(classNode, field);
+                }
+            }
+        }
+    }
+
+    /**
+     * A method visitor that checks whether the code of a method contains an instruction matched by a
+     * transformer.
+     */
+    private final class InsnScanner extends MethodVisitor {
+        boolean matched;
+
+        InsnScanner() {
+            super(/* latest api = */ Opcodes.ASM8);
+        }
+
+        private void visitOpcode(final int opcode) {
+            matched |= matchesOpcode(opcode);
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+            visitOpcode(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+            visitOpcode(opcode);
+        }
+
+        @Override
+        public void visitVarInsn(final int opcode, final int var) {
+            visitOpcode(opcode);
+        }
+
+        @Override
+        public void visitTypeInsn(final int opcode, final String type) {
+            visitOpcode(opcode);
+        }
+
+        @Override
+        public void visitFieldInsn(final int opcode, final String owner, final String name, final String descriptor) {
+            matched |= matchesOpcode(opcode) || matchesOwner(owner);
+        }
+
+        @Override
+        public void visitMethodInsn(
+                final int opcode,
+                final String owner,
+                final String name,
+                final String descriptor,
+                final boolean isInterface) {
+            matched |= matchesOpcode(opcode) || matchesOwner(owner);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(
+                final String name,
+                final String descriptor,
+                final Handle bootstrapMethodHandle,
+                final Object... bootstrapMethodArguments) {
+            visitOpcode(Opcodes.INVOKEDYNAMIC);
+        }
+
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+            visitOpcode(opcode);
+        }
+
+        @Override
+        public void visitLdcInsn(final Object value) {
+            visitOpcode(Opcodes.LDC);
+        }
+
+        @Override
+        public void visitIincInsn(final int var, final int increment) {
+            visitOpcode(Opcodes.IINC);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+            visitOpcode(Opcodes.TABLESWITCH);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+            visitOpcode(Opcodes.LOOKUPSWITCH);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(final String descriptor, final int numDimensions) {
+            visitOpcode(Opcodes.MULTIANEWARRAY);
+        }
+    }
+
+    private final class TransformTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ClassNodeEx> classNodes;
+        private final boolean[] transformed;
+        private final int from;
+        private final int to;
+
+        TransformTask(final List<ClassNodeEx> classNodes, final boolean[] transformed, final int from, final int to) {
+            this.classNodes = classNodes;
+            this.transformed = transformed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TRANSFORM_THRESHOLD) {
+                for (int i = from; i < to; ++i) {
+                    transformed[i] = transform(classNodes.get(i));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TransformTask(classNodes, transformed, from, middle),
+                        new TransformTask(classNodes, transformed, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * A listener of the operations on {@link ClassNodeEx} trees, installed with {@link
+ * ClassNodeEx#setTreeListener(TreeListener)}, to measure where the time goes. The listener is called
+ * after each operation, with its duration. When no listener is installed, the operations are not
+ * timed at all.
+ *
+ * <p>The listener is called concurrently by the threads that read and write the classes, and must be
+ * thread safe. It should be fast, and should not modify the given nodes. {@link
+ * ClassNodeEx#getStatistics()} returns the node counts and the estimated size of a class.
+ */
+public interface TreeListener {
+
+    /**
+     * Called after a class was read with {@link ClassNodeEx#read(ClassReader, int)} or {@link
+     * ClassNodeEx#readLazily(ClassReader, int)}.
+     *
+     * @param classNode   the class.
+     * @param classReader the class reader it was read from.
+     * @param nanos       the duration of the read operation, in nanoseconds.
+     */
+    default void classRead(ClassNodeEx classNode, ClassReader classReader, long nanos) {
+    }
+
+    /**
+     * Called after a class was visited by {@link ClassNodeEx#accept(ClassVisitor)}.
+     *
+     * @param classNode    the class.
+     * @param classVisitor the visitor of the class.
+     * @param nanos        the duration of the visit, in nanoseconds.
+     */
+    default void classAccepted(ClassNodeEx classNode, ClassVisitor classVisitor, long nanos) {
+    }
+
+    /**
+     * Called after a class was successfully checked by {@link ClassNodeEx#check(int)}.
+     *
+     * @param classNode the class.
+     * @param api       the checked ASM API version.
+     * @param nanos     the duration of the check, in nanoseconds.
+     */
+    default void classChecked(ClassNodeEx classNode, int api, long nanos) {
+    }
+
+    /**
+     * Called after the body of a method read lazily was loaded, see {@link MethodNodeEx#loadBody()}.
+     * When the bodies of several methods are loaded in a single pass over their class file, the
+     * duration of the pass is split evenly between them.
+     *
+     * @param owner  the internal name of the class of the method.
+     * @param method the method.
+     * @param nanos  the duration of the load, in nanoseconds.
+     */
+    default void methodBodyLoaded(String owner, MethodNodeEx method, long nanos) {
+    }
+}
@@ -0,0 +1,706 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Remaps the names of the classes, fields and methods of {@link ClassNodeEx} trees in place, with
+ * the same result as visiting them with a {@link ClassRemapper}, but without rebuilding them. The
+ * owners, names, descriptors and signatures of the class, its members, their instructions and their
+ * annotations are rewritten, and the {@link ClassNodeEx#fields} and {@link ClassNodeEx#methods} maps
+ * are rebuilt if a member was renamed. The members that are modified are marked as dirty, so the
+ * other members can still be copied as is from the class they were read from, see {@link
+ * ClassNodeEx#accept(org.objectweb.asm.ClassVisitor)}.
+ *
+ * <p>The bodies of the methods read lazily that are not loaded yet are not loaded: their code is
+ * remapped when it is loaded. These methods are dirty only if the remapping changes their code,
+ * which is checked when needed, see {@link MethodNodeEx#isDirty()}.
+ *
+ * <p>The remapped descriptors, internal names and signatures are cached, and shared by all the
+ * classes remapped by this remapper. A tree remapper can remap several classes concurrently if its
+ * {@link Remapper} is thread safe.
+ */
+public class TreeRemapper {
+
+    /**
+     * The number of classes below which a remap task is not split any further.
+     */
+    private static final int REMAP_THRESHOLD = 16;
+
+    /**
+     * The remapper used to remap the trees, which caches the results of the given remapper.
+     */
+    private final Remapper remapper;
+
+    /**
+     * The pool used to remap the classes.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new {@link TreeRemapper} that remaps the classes on the common pool.
+     *
+     * @param remapper the remapper of the names, for instance a {@link
+     *                 org.objectweb.asm.commons.SimpleRemapper}.
+     */
+    public TreeRemapper(final Remapper remapper) {
+        this(remapper, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new {@link TreeRemapper}.
+     *
+     * @param remapper the remapper of the names, for instance a {@link
+     *                 org.objectweb.asm.commons.SimpleRemapper}.
+     * @param pool     the pool used to remap the classes.
+     */
+    public TreeRemapper(final Remapper remapper, final ForkJoinPool pool) {
+        this.remapper = new CachingRemapper(remapper);
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the remapper used by this tree remapper, which caches the descriptors, internal names
+     * and signatures remapped by the given remapper.
+     *
+     * @return the caching remapper.
+     */
+    public Remapper getRemapper() {
+        return remapper;
+    }
+
+    /**
+     * Remaps the given classes, for instance the classes of a {@link ClassRepository}, in parallel.
+     * Since the classes are renamed, the collection that contains them must not be indexed by name.
+     *
+     * @param classNodes the classes to remap.
+     * @return the number of classes that were modified.
+     */
+    public int remap(final Iterable<ClassNodeEx> classNodes) {
+        List<ClassNodeEx> classNodeList = new ArrayList<>();
+        for (ClassNodeEx classNode : classNodes) {
+            classNodeList.add(classNode);
+        }
+        boolean[] remapped = new boolean[classNodeList.size()];
+        pool.invoke(new RemapTask(classNodeList, remapped, 0, remapped.length));
+        int count = 0;
+        for (boolean classRemapped : remapped) {
+            if (classRemapped) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remaps a class in the current thread.
+     *
+     * @param classNode the class to remap.
+     * @return whether the class was modified. The code of the methods that are not loaded is not
+     * checked, see {@link MethodNodeEx#isDirty()}.
+     */
+    public boolean remap(final ClassNodeEx classNode) {
+        return new ClassRemapping(classNode.name).remapClass(classNode);
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Remapping
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * The remapping of a class, which records whether the current node was modified.
+     */
+    private final class ClassRemapping {
+
+        /**
+         * The internal name of the class before it was remapped.
+         */
+        private final String owner;
+
+        /**
+         * Whether the current node was modified.
+         */
+        private boolean changed;
+
+        ClassRemapping(final String owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Returns the new value of a remapped string, which is the old one if they are equal, and
+         * records whether the string was changed.
+         */
+        private String update(final String oldValue, final String newValue) {
+            if (oldValue == newValue || (oldValue != null && oldValue.equals(newValue))) {
+                return oldValue;
+            }
+            changed = true;
+            return newValue;
+        }
+
+        private String mapType(final String internalName) {
+            return internalName == null ? null : update(internalName, remapper.mapType(internalName));
+        }
+
+        private String mapDesc(final String descriptor) {
+            return descriptor == null ? null : update(descriptor, remapper.mapDesc(descriptor));
+        }
+
+        private String mapMethodDesc(final String descriptor) {
+            return descriptor == null ? null : update(descriptor, remapper.mapMethodDesc(descriptor));
+        }
+
+        private String mapSignature(final String signature, final boolean typeSignature) {
+            return signature == null ? null : update(signature, remapper.mapSignature(signature, typeSignature));
+        }
+
+        private Object mapValue(final Object value) {
+            if (value instanceof Type || value instanceof Handle || value instanceof ConstantDynamic) {
+                Object newValue = remapper.mapValue(value);
+                if (!newValue.equals(value)) {
+                    changed = true;
+                    return newValue;
+                }
+            }
+            return value;
+        }
+
+        private void mapTypes(final List<String> internalNames) {
+            if (internalNames != null) {
+                for (int i = 0, n = internalNames.size(); i < n; ++i) {
+                    String internalName = internalNames.get(i);
+                    String newInternalName = mapType(internalName);
+                    if (newInternalName != internalName) {
+                        internalNames.set(i, newInternalName);
+                    }
+                }
+            }
+        }
+
+        boolean remapClass(final ClassNodeEx classNode) {
+            changed = false;
+            classNode.name = mapType(classNode.name);
+            classNode.signature = mapSignature(classNode.signature, false);
+            classNode.superName = mapType(classNode.superName);
+            mapTypes(classNode.interfaces);
+            if (classNode.module != null) {
+                remapModule(classNode.module);
+            }
+            classNode.nestHostClass = mapType(classNode.nestHostClass);
+            if (classNode.outerMethod != null) {
+                classNode.outerMethod = update(
+                        classNode.outerMethod,
+                        remapper.mapMethodName(classNode.outerClass, classNode.outerMethod, classNode.outerMethodDesc));
+            }
+            classNode.outerClass = mapType(classNode.outerClass);
+            classNode.outerMethodDesc = mapMethodDesc(classNode.outerMethodDesc);
+            classNode.annotations = remapAnnotations(classNode.annotations);
+            classNode.typeAnnotations = remapAnnotations(classNode.typeAnnotations);
+            mapTypes(classNode.nestMembers);
+            mapPermittedSubtypes(classNode);
+            for (InnerClassNode innerClass : classNode.innerClasses) {
+                if (innerClass.innerName != null) {
+                    innerClass.innerName = update(
+                            innerClass.innerName,
+                            remapper.mapInnerClassName(innerClass.name, innerClass.outerName, innerClass.innerName));
+                }
+                innerClass.name = mapType(innerClass.name);
+                innerClass.outerName = mapType(innerClass.outerName);
+            }
+            if (classNode.recordComponents != null) {
+                for (RecordComponentNode recordComponent : classNode.recordComponents) {
+                    recordComponent.name = update(
+                            recordComponent.name,
+                            remapper.mapRecordComponentName(owner, recordComponent.name, recordComponent.descriptor));
+                    recordComponent.descriptor = mapDesc(recordComponent.descriptor);
+                    recordComponent.signature = mapSignature(recordComponent.signature, true);
+                    remapAsmAnnotations(recordComponent.visibleAnnotations);
+                    remapAsmAnnotations(recordComponent.invisibleAnnotations);
+                    remapAsmAnnotations(recordComponent.visibleTypeAnnotations);
+                    remapAsmAnnotations(recordComponent.invisibleTypeAnnotations);
+                }
+            }
+            boolean classChanged = changed;
+            boolean renamed = false;
+            for (FieldNodeEx field : classNode.fields.values()) {
+                changed = false;
+                String name = field.name;
+                remapField(field);
+                if (changed) {
+                    field.markDirty();
+                    classChanged = true;
+                    renamed |= field.name != name;
+                }
+            }
+            if (renamed) {
+                List<FieldNodeEx> fields = new ArrayList<>(classNode.fields.values());
+                classNode.fields.clear();
+                for (FieldNodeEx field : fields) {
+                    classNode.fields.put(field.name, field);
+                }
+            }
+            renamed = false;
+            for (MethodNodeEx method : classNode.methods.values()) {
+                changed = false;
+                String name = method.name;
+                String desc = method.desc;
+                remapMethod(method);
+                if (changed) {
+                    method.markDirty();
+                    classChanged = true;
+                    renamed |= method.name != name || method.desc != desc;
+                }
+            }
+            if (renamed) {
+                List<MethodNodeEx> methods = new ArrayList<>(classNode.methods.values());
+                classNode.methods.clear();
+                for (MethodNodeEx method : methods) {
+                    classNode.addMethod(method);
+                }
+            }
+            return classChanged;
+        }
+
+        @SuppressWarnings("deprecation")
+        private void mapPermittedSubtypes(final ClassNodeEx classNode) {
+            mapTypes(classNode.permittedSubtypesExperimental);
+        }
+
+        private void remapModule(final ModuleNode module) {
+            module.name = update(module.name, remapper.mapModuleName(module.name));
+            module.mainClass = mapType(module.mainClass);
+            if (module.packages != null) {
+                for (int i = 0, n = module.packages.size(); i < n; ++i) {
+                    module.packages.set(i, update(module.packages.get(i), remapper.mapPackageName(module.packages.get(i))));
+                }
+            }
+            if (module.requires != null) {
+                for (ModuleRequireNode require : module.requires) {
+                    require.module = update(require.module, remapper.mapModuleName(require.module));
+                }
+            }
+            if (module.exports != null) {
+                for (ModuleExportNode export : module.exports) {
+                    export.packaze = update(export.packaze, remapper.mapPackageName(export.packaze));
+                    remapModuleNames(export.modules);
+                }
+            }
+            if (module.opens != null) {
+                for (ModuleOpenNode open : module.opens) {
+                    open.packaze = update(open.packaze, remapper.mapPackageName(open.packaze));
+                    remapModuleNames(open.modules);
+                }
+            }
+            mapTypes(module.uses);
+            if (module.provides != null) {
+                for (ModuleProvideNode provide : module.provides) {
+                    provide.service = mapType(provide.service);
+                    mapTypes(provide.providers);
+                }
+            }
+        }
+
+        private void remapModuleNames(final List<String> modules) {
+            if (modules != null) {
+                for (int i = 0, n = modules.size(); i < n; ++i) {
+                    modules.set(i, update(modules.get(i), remapper.mapModuleName(modules.get(i))));
+                }
+            }
+        }
+
+        private void remapField(final FieldNodeEx field) {
+            field.name = update(field.name, remapper.mapFieldName(owner, field.name, field.desc));
+            field.desc = mapDesc(field.desc);
+            field.signature = mapSignature(field.signature, true);
+            field.value = mapValue(field.value);
+            field.annotations = remapAnnotations(field.annotations);
+            field.typeAnnotations = remapAnnotations(field.typeAnnotations);
+        }
+
+        private void remapMethod(final MethodNodeEx method) {
+            method.name = update(method.name, remapper.mapMethodName(owner, method.name, method.desc));
+            method.desc = mapMethodDesc(method.desc);
+            method.signature = mapSignature(method.signature, false);
+            mapTypes(method.exceptions);
+            method.annotations = remapAnnotations(method.annotations);
+            method.typeAnnotations = remapAnnotations(method.typeAnnotations);
+            if (method.parameters != null) {
+                for (ParameterNodeEx parameter : method.parameters) {
+                    parameter.annotations = remapAnnotations(parameter.annotations);
+                }
+            }
+            if (method.annotationDefault != null) {
+                method.annotationDefault = remapAnnotationValue(method.annotationDefault);
+            }
+            if (!method.isBodyLoaded()) {
+                // Remap the code when it is loaded. Whether this changes the code is only checked if
+                // needed, see MethodNodeEx.isDirty().
+                method.remapBody(remapper);
+                return;
+            }
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                remapInsn(insn);
+                remapAsmAnnotations(insn.visibleTypeAnnotations);
+                remapAsmAnnotations(insn.invisibleTypeAnnotations);
+            }
+            if (method.tryCatchBlocks != null) {
+                for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+                    tryCatchBlock.type = mapType(tryCatchBlock.type);
+                    remapAsmAnnotations(tryCatchBlock.visibleTypeAnnotations);
+                    remapAsmAnnotations(tryCatchBlock.invisibleTypeAnnotations);
+                }
+            }
+            if (method.localVariables != null) {
+                for (LocalVariableNode localVariable : method.localVariables) {
+                    localVariable.desc = mapDesc(localVariable.desc);
+                    localVariable.signature = mapSignature(localVariable.signature, true);
+                }
+            }
+            remapAsmAnnotations(method.visibleLocalVariableAnnotations);
+            remapAsmAnnotations(method.invisibleLocalVariableAnnotations);
+        }
+
+        private void remapInsn(final AbstractInsnNode insn) {
+            switch (insn.getType()) {
+                case AbstractInsnNode.FIELD_INSN: {
+                    FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                    fieldInsn.name = update(fieldInsn.name, remapper.mapFieldName(fieldInsn.owner, fieldInsn.name, fieldInsn.desc));
+                    fieldInsn.owner = mapType(fieldInsn.owner);
+                    fieldInsn.desc = mapDesc(fieldInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.METHOD_INSN: {
+                    MethodInsnNode methodInsn = (MethodInsnNode) insn;
+                    methodInsn.name = update(
+                            methodInsn.name, remapper.mapMethodName(methodInsn.owner, methodInsn.name, methodInsn.desc));
+                    methodInsn.owner = mapType(methodInsn.owner);
+                    methodInsn.desc = mapMethodDesc(methodInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+                    InvokeDynamicInsnNode invokeDynamicInsn = (InvokeDynamicInsnNode) insn;
+                    invokeDynamicInsn.name = update(
+                            invokeDynamicInsn.name,
+                            remapper.mapInvokeDynamicMethodName(invokeDynamicInsn.name, invokeDynamicInsn.desc));
+                    invokeDynamicInsn.desc = mapMethodDesc(invokeDynamicInsn.desc);
+                    invokeDynamicInsn.bsm = (Handle) mapValue(invokeDynamicInsn.bsm);
+                    Object[] bsmArgs = invokeDynamicInsn.bsmArgs;
+                    for (int i = 0; i < bsmArgs.length; ++i) {
+                        Object newBsmArg = mapValue(bsmArgs[i]);
+                        if (newBsmArg != bsmArgs[i]) {
+                            if (bsmArgs == invokeDynamicInsn.bsmArgs) {
+                                bsmArgs = bsmArgs.clone();
+                            }
+                            bsmArgs[i] = newBsmArg;
+                        }
+                    }
+                    invokeDynamicInsn.bsmArgs = bsmArgs;
+                    break;
+                }
+                case AbstractInsnNode.TYPE_INSN: {
+                    TypeInsnNode typeInsn = (TypeInsnNode) insn;
+                    typeInsn.desc = mapType(typeInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.LDC_INSN: {
+                    LdcInsnNode ldcInsn = (LdcInsnNode) insn;
+                    ldcInsn.cst = mapValue(ldcInsn.cst);
+                    break;
+                }
+                case AbstractInsnNode.MULTIANEWARRAY_INSN: {
+                    MultiANewArrayInsnNode multiANewArrayInsn = (MultiANewArrayInsnNode) insn;
+                    multiANewArrayInsn.desc = mapDesc(multiANewArrayInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.FRAME: {
+                    FrameNode frame = (FrameNode) insn;
+                    remapFrameTypes(frame.local);
+                    remapFrameTypes(frame.stack);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        private void remapFrameTypes(final List<Object> types) {
+            if (types != null) {
+                for (int i = 0, n = types.size(); i < n; ++i) {
+                    Object type = types.get(i);
+                    if (type instanceof String) {
+                        String newType = mapType((String) type);
+                        if (newType != type) {
+                            types.set(i, newType);
+                        }
+                    }
+                }
+            }
+        }
+
+        // ---------------------------------------------------------------------------------------------
+        // Annotations
+        // ---------------------------------------------------------------------------------------------
+
+        /**
+         * Remaps annotations in place, and returns the given map, or a new map with the same order if
+         * the descriptor of an annotation was changed.
+         */
+        private <T extends AnnotationNodeEx> Map<String, T> remapAnnotations(final Map<String, T> annotations) {
+            if (annotations == null) {
+                return null;
+            }
+            boolean renamed = false;
+            for (T annotation : annotations.values()) {
+                String desc = annotation.desc;
+                remapAnnotation(annotation);
+                renamed |= annotation.desc != desc;
+            }
+            if (!renamed) {
+                return annotations;
+            }
+            Map<String, T> newAnnotations = new LinkedHashMap<>(Math.max(2, annotations.size() * 2));
+            for (T annotation : annotations.values()) {
+                newAnnotations.put(annotation.desc, annotation);
+            }
+            return newAnnotations;
+        }
+
+        private void remapAnnotation(final AnnotationNodeEx annotation) {
+            annotation.desc = mapDesc(annotation.desc);
+            if (annotation.values != null) {
+                for (Map.Entry<String, Object> entry : annotation.values.entrySet()) {
+                    Object value = entry.getValue();
+                    Object newValue = remapAnnotationValue(value);
+                    if (newValue != value) {
+                        entry.setValue(newValue);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Remaps a value of an {@link AnnotationNodeEx}: the nested annotations and the arrays are
+         * remapped in place, the other values are replaced.
+         */
+        @SuppressWarnings("unchecked")
+        private Object remapAnnotationValue(final Object value) {
+            if (value instanceof Enum) {
+                Enum anEnum = (Enum) value;
+                String descriptor = mapDesc(anEnum.getDescriptor());
+                return descriptor == anEnum.getDescriptor() ? anEnum : new Enum(descriptor, anEnum.getValue());
+            } else if (value instanceof AnnotationNodeEx) {
+                remapAnnotation((AnnotationNodeEx) value);
+            } else if (value instanceof List && !(value instanceof PrimitiveList)) {
+                List<Object> array = (List<Object>) value;
+                for (int i = 0, n = array.size(); i < n; ++i) {
+                    Object element = array.get(i);
+                    Object newElement = remapAnnotationValue(element);
+                    if (newElement != element) {
+                        array.set(i, newElement);
+                    }
+                }
+            } else if (value instanceof Type) {
+                return mapValue(value);
+            }
+            return value;
+        }
+
+        /**
+         * Remaps the ASM annotations of record components, instructions, try catch blocks and local
+         * variables, in place.
+         */
+        private void remapAsmAnnotations(final List<? extends AnnotationNode> annotations) {
+            if (annotations != null) {
+                for (int i = 0, n = annotations.size(); i < n; ++i) {
+                    remapAsmAnnotation(annotations.get(i));
+                }
+            }
+        }
+
+        private void remapAsmAnnotation(final AnnotationNode annotation) {
+            annotation.desc = mapDesc(annotation.desc);
+            if (annotation.values != null) {
+                // The values are stored as name, value pairs.
+                for (int i = 1, n = annotation.values.size(); i < n; i += 2) {
+                    Object value = annotation.values.get(i);
+                    Object newValue = remapAsmAnnotationValue(value);
+                    if (newValue != value) {
+                        annotation.values.set(i, newValue);
+                    }
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object remapAsmAnnotationValue(final Object value) {
+            if (value instanceof String[]) {
+                // An enum value, stored as its descriptor and name.
+                String[] anEnum = (String[]) value;
+                String descriptor = mapDesc(anEnum[0]);
+                return descriptor == anEnum[0] ? anEnum : new String[]{descriptor, anEnum[1]};
+            } else if (value instanceof AnnotationNode) {
+                remapAsmAnnotation((AnnotationNode) value);
+            } else if (value instanceof List) {
+                List<Object> array = (List<Object>) value;
+                for (int i = 0, n = array.size(); i < n; ++i) {
+                    Object element = array.get(i);
+                    Object newElement = remapAsmAnnotationValue(element);
+                    if (newElement != element) {
+                        array.set(i, newElement);
+                    }
+                }
+            } else if (value instanceof Type) {
+                return mapValue(value);
+            }
+            return value;
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Caching remapper
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * A remapper that caches the descriptors, internal names and signatures remapped by another
+     * remapper, and forwards the other calls to it. The cached values are the keys themselves when
+     * they are not changed.
+     */
+    private static final class CachingRemapper extends Remapper {
+        private final Remapper remapper;
+
+        private final Map<String, String> types = new ConcurrentHashMap<>();
+        private final Map<String, String> descriptors = new ConcurrentHashMap<>();
+        private final Map<String, String> methodDescriptors = new ConcurrentHashMap<>();
+        private final Map<String, String> typeSignatures = new ConcurrentHashMap<>();
+        private final Map<String, String> signatures = new ConcurrentHashMap<>();
+
+        CachingRemapper(final Remapper remapper) {
+            this.remapper = remapper;
+        }
+
+        private static String cache(final Map<String, String> cache, final String key, final String value) {
+            String cachedValue = value == null || value.equals(key) ? key : value;
+            cache.put(key, cachedValue);
+            return cachedValue;
+        }
+
+        @Override
+        public String mapDesc(final String descriptor) {
+            String value = descriptors.get(descriptor);
+            return value != null ? value : cache(descriptors, descriptor, remapper.mapDesc(descriptor));
+        }
+
+        @Override
+        public String mapType(final String internalName) {
+            if (internalName == null) {
+                return null;
+            }
+            String value = types.get(internalName);
+            return value != null ? value : cache(types, internalName, remapper.mapType(internalName));
+        }
+
+        @Override
+        public String mapMethodDesc(final String methodDescriptor) {
+            String value = methodDescriptors.get(methodDescriptor);
+            return value != null
+                    ? value
+                    : cache(methodDescriptors, methodDescriptor, remapper.mapMethodDesc(methodDescriptor));
+        }
+
+        @Override
+        public String mapSignature(final String signature, final boolean typeSignature) {
+            if (signature == null) {
+                return null;
+            }
+            Map<String, String> cache = typeSignature ? typeSignatures : signatures;
+            String value = cache.get(signature);
+            return value != null ? value : cache(cache, signature, remapper.mapSignature(signature, typeSignature));
+        }
+
+        @Override
+        public Object mapValue(final Object value) {
+            return remapper.mapValue(value);
+        }
+
+        @Override
+        public String mapInnerClassName(final String name, final String ownerName, final String innerName) {
+            return remapper.mapInnerClassName(name, ownerName, innerName);
+        }
+
+        @Override
+        public String mapMethodName(final String owner, final String name, final String descriptor) {
+            return remapper.mapMethodName(owner, name, descriptor);
+        }
+
+        @Override
+        public String mapInvokeDynamicMethodName(final String name, final String descriptor) {
+            return remapper.mapInvokeDynamicMethodName(name, descriptor);
+        }
+
+        @Override
+        public String mapRecordComponentName(final String owner, final String name, final String descriptor) {
+            return remapper.mapRecordComponentName(owner, name, descriptor);
+        }
+
+        @Override
+        public String mapFieldName(final String owner, final String name, final String descriptor) {
+            return remapper.mapFieldName(owner, name, descriptor);
+        }
+
+        @Override
+        public String mapPackageName(final String name) {
+            return remapper.mapPackageName(name);
+        }
+
+        @Override
+        public String mapModuleName(final String name) {
+            return remapper.mapModuleName(name);
+        }
+
+        @Override
+        public String map(final String internalName) {
+            return remapper.map(internalName);
+        }
+    }
+
+    private final class RemapTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ClassNodeEx> classNodes;
+        private final boolean[] remapped;
+        private final int from;
+        private final int to;
+
+        RemapTask(final List<ClassNodeEx> classNodes, final boolean[] remapped, final int from, final int to) {
+            this.classNodes = classNodes;
+            this.remapped = remapped;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= REMAP_THRESHOLD) {
+                for (int i = from; i < to; ++i) {
+                    remapped[i] = remap(classNodes.get(i));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RemapTask(classNodes, remapped, from, middle),
+                        new RemapTask(classNodes, remapped, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.ClassReader;
+
+import java.util.Map;
+
+/**
+ * The node counts and the estimated heap size of a {@link ClassNodeEx}, see {@link
+ * ClassNodeEx#getStatistics()}. The bodies of the methods that are not loaded yet are not counted.
+ */
+public final class TreeStatistics {
+
+    // The estimated shallow sizes of the nodes, with compressed references, including their entries
+    // and the backing arrays of their collections.
+    private static final int CLASS_SIZE = 192;
+    private static final int FIELD_SIZE = 96;
+    private static final int METHOD_SIZE = 176;
+    private static final int INSN_SIZE = 40;
+    private static final int TRY_CATCH_BLOCK_SIZE = 40;
+    private static final int LOCAL_VARIABLE_SIZE = 48;
+    private static final int ANNOTATION_SIZE = 80;
+    private static final int ANNOTATION_VALUE_SIZE = 32;
+    private static final int ARRAY_HEADER_SIZE = 16;
+
+    private final int fieldCount;
+    private final int methodCount;
+    private final int loadedMethodCount;
+    private final int annotationCount;
+    private final int instructionCount;
+    private final int tryCatchBlockCount;
+    private final int localVariableCount;
+    private final long sourceSize;
+    private final long estimatedSize;
+
+    TreeStatistics(final ClassNodeEx classNode, final ClassReader sourceClassReader) {
+        int annotations = 0;
+        int annotationValues = 0;
+        annotations += count(classNode.annotations);
+        annotationValues += countValues(classNode.annotations);
+        annotations += count(classNode.typeAnnotations);
+        annotationValues += countValues(classNode.typeAnnotations);
+        for (FieldNodeEx field : classNode.fields.values()) {
+            annotations += count(field.annotations) + count(field.typeAnnotations);
+            annotationValues += countValues(field.annotations) + countValues(field.typeAnnotations);
+        }
+        int loadedMethods = 0;
+        int insns = 0;
+        int tryCatchBlocks = 0;
+        int localVariables = 0;
+        for (MethodNodeEx method : classNode.methods.values()) {
+            annotations += count(method.annotations) + count(method.typeAnnotations);
+            annotationValues += countValues(method.annotations) + countValues(method.typeAnnotations);
+            if (method.parameters != null) {
+                for (int i = 0, n = method.parameters.size(); i < n; ++i) {
+                    Map<String, AnnotationNodeEx> parameterAnnotations = method.parameters.get(i).annotations;
+                    annotations += count(parameterAnnotations);
+                    annotationValues += countValues(parameterAnnotations);
+                }
+            }
+            if (method.isBodyLoaded() && method.instructions.size() > 0) {
+                loadedMethods++;
+                insns += method.instructions.size();
+                tryCatchBlocks += method.tryCatchBlocks == null ? 0 : method.tryCatchBlocks.size();
+                localVariables += method.localVariables == null ? 0 : method.localVariables.size();
+            }
+        }
+        this.fieldCount = classNode.fields.size();
+        this.methodCount = classNode.methods.size();
+        this.loadedMethodCount = loadedMethods;
+        this.annotationCount = annotations;
+        this.instructionCount = insns;
+        this.tryCatchBlockCount = tryCatchBlocks;
+        this.localVariableCount = localVariables;
+        this.sourceSize = sourceClassReader == null ? 0 : getClassFileLength(sourceClassReader);
+        this.estimatedSize = CLASS_SIZE
+                + (long) fieldCount * FIELD_SIZE
+                + (long) methodCount * METHOD_SIZE
+                + (long) insns * INSN_SIZE
+                + (long) tryCatchBlocks * TRY_CATCH_BLOCK_SIZE
+                + (long) localVariables * LOCAL_VARIABLE_SIZE
+                + (long) annotations * ANNOTATION_SIZE
+                + (long) annotationValues * ANNOTATION_VALUE_SIZE
+                + (sourceClassReader == null ? 0 : ARRAY_HEADER_SIZE + sourceSize);
+    }
+
+    /**
+     * Returns the length of the class file parsed by the given class reader, by skipping its
+     * members and attributes.
+     */
+    private static int getClassFileLength(final ClassReader classReader) {
+        // The first constant pool entry follows the magic, the versions, the constant pool count and
+        // the tag of the entry.
+        int start = classReader.getItem(1) - 11;
+        // Skip the access flags, this class, super class and interfaces.
+        int offset = classReader.header + 6;
+        offset += 2 + 2 * classReader.readUnsignedShort(offset);
+        // Skip the fields and the methods.
+        for (int members = 0; members < 2; ++members) {
+            int count = classReader.readUnsignedShort(offset);
+            offset += 2;
+            while (count-- > 0) {
+                offset = skipAttributes(classReader, offset + 6);
+            }
+        }
+        // Skip the class attributes.
+        return skipAttributes(classReader, offset) - start;
+    }
+
+    private static int skipAttributes(final ClassReader classReader, final int offset) {
+        int currentOffset = offset;
+        int count = classReader.readUnsignedShort(currentOffset);
+        currentOffset += 2;
+        while (count-- > 0) {
+            currentOffset += 6 + classReader.readInt(currentOffset + 2);
+        }
+        return currentOffset;
+    }
+
+    private static int count(final Map<String, ?> annotations) {
+        return annotations == null ? 0 : annotations.size();
+    }
+
+    private static int countValues(final Map<String, ? extends AnnotationNodeEx> annotations) {
+        if (annotations == null) {
+            return 0;
+        }
+        int count = 0;
+        for (AnnotationNodeEx annotation : annotations.values()) {
+            count += annotation.values == null ? 0 : annotation.values.size();
+        }
+        return count;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public int getMethodCount() {
+        return methodCount;
+    }
+
+    /**
+     * @return the number of methods whose code is loaded in the tree.
+     */
+    public int getLoadedMethodCount() {
+        return loadedMethodCount;
+    }
+
+    /**
+     * @return the number of annotations and type annotations of the class, its fields, its methods
+     * and their parameters.
+     */
+    public int getAnnotationCount() {
+        return annotationCount;
+    }
+
+    /**
+     * @return the number of instruction nodes of the loaded methods, including the labels, line
+     * numbers and frames.
+     */
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+
+    public int getTryCatchBlockCount() {
+        return tryCatchBlockCount;
+    }
+
+    public int getLocalVariableCount() {
+        return localVariableCount;
+    }
+
+    /**
+     * @return the size of the class file retained by the tree to copy its unchanged members, or 0.
+     */
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    /**
+     * Returns a rough estimate of the heap retained by the tree, in bytes, including the class file
+     * it was read from. The strings are not counted, since they are usually shared with the constant
+     * pool of the class reader or with a {@link StringInterner}.
+     *
+     * @return the estimated size of the tree.
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeStatistics{"
+                + "fields=" + fieldCount
+                + ", methods=" + methodCount
+                + ", loadedMethods=" + loadedMethodCount
+                + ", annotations=" + annotationCount
+                + ", instructions=" + instructionCount
+                + ", tryCatchBlocks=" + tryCatchBlockCount
+                + ", localVariables=" + localVariableCount
+                + ", sourceSize=" + sourceSize
+                + ", estimatedSize=" + estimatedSize
+                + '}';
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A transformation of {@link ClassNodeEx} trees, run by a {@link TransformerPipeline}. A transformer
+ * declares the nodes it is interested in with an {@link Interest}, and is only called back for the
+ * classes, fields, methods and instructions that match it. Transformers are called concurrently on
+ * different classes, and must be thread safe.
+ *
+ * <p>The fields and methods passed to a transformer are marked as dirty before it is called back.
+ * Modifications made to the other members must follow the rules of {@link FieldNodeEx#isDirty()}
+ * and {@link MethodNodeEx#isDirty()}.
+ */
+public interface TreeTransformer {
+
+    /**
+     * Returns the nodes this transformer is interested in. The interest must not change.
+     *
+     * @return the interest of this transformer.
+     */
+    Interest getInterest();
+
+    /**
+     * Transforms a class matched by the interest of this transformer. Called before the matched
+     * members of the class.
+     *
+     * @param classNode the class.
+     */
+    default void transformClass(ClassNodeEx classNode) {
+    }
+
+    /**
+     * Transforms a field matched by the interest of this transformer.
+     *
+     * @param classNode the class of the field.
+     * @param field     the field.
+     */
+    default void transformField(ClassNodeEx classNode, FieldNodeEx field) {
+    }
+
+    /**
+     * Transforms a method matched by the interest of this transformer, either because of its
+     * annotations or because it contains matched instructions. Called before the matched
+     * instructions of the method.
+     *
+     * @param classNode the class of the method.
+     * @param method    the method.
+     */
+    default void transformMethod(ClassNodeEx classNode, MethodNodeEx method) {
+    }
+
+    /**
+     * Transforms an instruction matched by the interest of this transformer.
+     *
+     * @param classNode the class of the method.
+     * @param method    the method that contains the instruction.
+     * @param insn      the instruction.
+     */
+    default void transformInsn(ClassNodeEx classNode, MethodNodeEx method, AbstractInsnNode insn) {
+    }
+
+    /**
+     * The nodes a {@link TreeTransformer} is interested in:
+     * <ul>
+     * <li>with {@link #ALL}, every class, field and method, but no instruction.</li>
+     * <li>with {@link #annotations(String...)}, the classes, fields and methods annotated with one
+     * of the given annotations.</li>
+     * <li>with {@link #owners(String...)}, the field and method instructions whose owner is one of
+     * the given classes.</li>
+     * <li>with {@link #opcodes(int...)}, the instructions with one of the given opcodes.</li>
+     * </ul>
+     * A class is matched if it or one of its members is matched, and a method is matched if it
+     * contains a matched instruction. Interests are combined with {@link #or(Interest)}.
+     */
+    final class Interest {
+
+        /**
+         * The interest in every class, field and method.
+         */
+        public static final Interest ALL =
+                new Interest(true, Collections.<String>emptySet(), Collections.<String>emptySet(), new BitSet());
+
+        final boolean all;
+
+        /**
+         * The class descriptors of the annotations.
+         */
+        final Set<String> annotations;
+
+        /**
+         * The internal names of the owners of the field and method instructions.
+         */
+        final Set<String> owners;
+
+        final BitSet opcodes;
+
+        private Interest(final boolean all, final Set<String> annotations, final Set<String> owners, final BitSet opcodes) {
+            this.all = all;
+            this.annotations = annotations;
+            this.owners = owners;
+            this.opcodes = opcodes;
+        }
+
+        /**
+         * @param descriptors the class descriptors of the annotations.
+         * @return the interest in the classes, fields and methods annotated with one of the given
+         * annotations.
+         */
+        public static Interest annotations(final String... descriptors) {
+            return new Interest(
+                    false, new HashSet<>(Arrays.asList(descriptors)), Collections.<String>emptySet(), new BitSet());
+        }
+
+        /**
+         * @param owners the internal names of the owner classes.
+         * @return the interest in the field and method instructions whose owner is one of the given
+         * classes.
+         */
+        public static Interest owners(final String... owners) {
+            return new Interest(false, Collections.<String>emptySet(), new HashSet<>(Arrays.asList(owners)), new BitSet());
+        }
+
+        /**
+         * @param opcodes the opcodes of the instructions.
+         * @return the interest in the instructions with one of the given opcodes.
+         */
+        public static Interest opcodes(final int... opcodes) {
+            BitSet opcodeSet = new BitSet(256);
+            for (int opcode : opcodes) {
+                opcodeSet.set(opcode);
+            }
+            return new Interest(false, Collections.<String>emptySet(), Collections.<String>emptySet(), opcodeSet);
+        }
+
+        /**
+         * @param other another interest.
+         * @return the interest in the nodes matched by this interest or by the given one.
+         */
+        public Interest or(final Interest other) {
+            Set<String> annotationSet = new HashSet<>(annotations);
+            annotationSet.addAll(other.annotations);
+            Set<String> ownerSet = new HashSet<>(owners);
+            ownerSet.addAll(other.owners);
+            BitSet opcodeSet = (BitSet) opcodes.clone();
+            opcodeSet.or(other.opcodes);
+            return new Interest(all || other.all, annotationSet, ownerSet, opcodeSet);
+        }
+
+        boolean matchesInsns() {
+            return !owners.isEmpty() || !opcodes.isEmpty();
+        }
+    }
+}
@@ -1,15 +1,82 @@
 package com.github.mouse0w0.asm.extree;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 final class Util {
+    static byte[] readAllBytes(final InputStream inputStream, final int expectedLength) throws IOException {
+        byte[] data = new byte[expectedLength > 0 ? expectedLength : 4096];
+        int length = 0;
+        int bytesRead;
+        while ((bytesRead = inputStream.read(data, length, data.length - length)) != -1) {
+            length += bytesRead;
+            if (length == data.length) {
+                int nextByte = inputStream.read();
+                if (nextByte == -1) {
+                    return data;
+                }
+                data = Arrays.copyOf(data, data.length * 2);
+                data[length++] = (byte) nextByte;
+            }
+        }
+        return length == data.length ? data : Arrays.copyOf(data, length);
+    }
+
+    /**
+     * Creates a new empty file in the directory of the given file, with a unique name, so that it can
+     * replace the given file once it is written. The new file is readable by everyone, like a file
+     * created with the usual umask, rather than only by its owner like other temporary files.
+     */
+    static Path createTempFile(final Path file) throws IOException {
+        Path tempFile = Files.createTempFile(
+                file.toAbsolutePath().getParent(), file.getFileName().toString() + ".", ".tmp");
+        try {
+            Files.setPosixFilePermissions(tempFile, PosixFilePermissions.fromString("rw-r--r--"));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system.
+        }
+        return tempFile;
+    }
+
     static <T> List<T> add(final List<T> list, final T element) {
         List<T> newList = list == null ? new ArrayList<>(1) : list;
         newList.add(element);
         return newList;
     }
 
+    static String intern(final StringInterner interner, final String value) {
+        return interner == null || value == null ? value : interner.intern(value);
+    }
+
+    static String[] intern(final StringInterner interner, final String[] values) {
+        if (interner != null && values != null) {
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = intern(interner, values[i]);
+            }
+        }
+        return values;
+    }
+
+    static boolean equals(final List<String> list, final String[] array) {
+        int size = list == null ? 0 : list.size();
+        int length = array == null ? 0 : array.length;
+        if (size != length) {
+            return false;
+        }
+        for (int i = 0; i < size; ++i) {
+            if (!list.get(i).equals(array[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     static <T> List<T> asArrayList(final int length) {
         List<T> list = new ArrayList<>(length);
         for (int i = 0; i < length; ++i) {
@@ -29,94 +96,6 @@ final class Util {
         return list;
     }
 
-    static List<Byte> asArrayList(final byte[] byteArray) {
-        if (byteArray == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<Byte> byteList = new ArrayList<>(byteArray.length);
-        for (byte b : byteArray) {
-            byteList.add(b);
-        }
-        return byteList;
-    }
-
-    static List<Boolean> asArrayList(final boolean[] booleanArray) {
-        if (booleanArray == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<Boolean> booleanList = new ArrayList<>(booleanArray.length);
-        for (boolean b : booleanArray) {
-            booleanList.add(b);
-        }
-        return booleanList;
-    }
-
-    static List<Short> asArrayList(final short[] shortArray) {
-        if (shortArray == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<Short> shortList = new ArrayList<>(shortArray.length);
-        for (short s : shortArray) {
-            shortList.add(s);
-        }
-        return shortList;
-    }
-
-    static List<Character> asArrayList(final char[] charArray) {
-        if (charArray == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<Character> charList = new ArrayList<>(charArray.length);
-        for (char c : charArray) {
-            charList.add(c);
-        }
-        return charList;
-    }
-
-    static List<Integer> asArrayList(final int[] intArray) {
-        if (intArray == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<Integer> intList = new ArrayList<>(intArray.length);
-        for (int i : intArray) {
-            intList.add(i);
-        }
-        return intList;
-    }
-
-    static List<Float> asArrayList(final float[] floatArray) {
-        if (floatArray == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<Float> floatList = new ArrayList<>(floatArray.length);
-        for (float f : floatArray) {
-            floatList.add(f);
-        }
-        return floatList;
-    }
-
-    static List<Long> asArrayList(final long[] longArray) {
-        if (longArray == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<Long> longList = new ArrayList<>(longArray.length);
-        for (long l : longArray) {
-            longList.add(l);
-        }
-        return longList;
-    }
-
-    static List<Double> asArrayList(final double[] doubleArray) {
-        if (doubleArray == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<Double> doubleList = new ArrayList<>(doubleArray.length);
-        for (double d : doubleArray) {
-            doubleList.add(d);
-        }
-        return doubleList;
-    }
-
     static <T> List<T> asArrayList(final int length, final T[] array) {
         List<T> list = new ArrayList<>(length);
         for (int i = 0; i < length; ++i) {
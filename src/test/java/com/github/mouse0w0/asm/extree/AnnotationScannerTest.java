@@ -0,0 +1,233 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link AnnotationScanner}, against the annotations of the same classes read with {@link
+ * ClassReader#SKIP_CODE}.
+ */
+public class AnnotationScannerTest {
+
+    /**
+     * Classes of the running JDK with class, field and method annotations, and with the Deprecated
+     * and Synthetic attributes.
+     */
+    private static final String[] JDK_CLASSES = {
+            "java/lang/Object",
+            "java/lang/String",
+            "java/lang/Thread",
+            "java/lang/Runtime",
+            "java/lang/FunctionalInterface",
+            "java/lang/annotation/Retention",
+            "java/lang/invoke/MethodHandle",
+            "java/util/Date",
+            "java/util/concurrent/ConcurrentHashMap",
+    };
+
+    @Test
+    public void testJdkClasses() throws IOException {
+        int annotationCount = 0;
+        for (String className : JDK_CLASSES) {
+            byte[] classFile = readSystemClass(className);
+            ClassNodeEx classNode = new ClassNodeEx();
+            classNode.read(new ClassReader(classFile), ClassReader.SKIP_CODE);
+
+            AnnotationScanner.AnnotatedClass annotatedClass = new AnnotationScanner().scan(classFile);
+
+            annotationCount += assertSameAnnotations(classNode, annotatedClass);
+        }
+        assertTrue(annotationCount > 0);
+    }
+
+    @Test
+    public void testAnnotationValues() {
+        byte[] classFile = generateAnnotatedClass();
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(classFile), ClassReader.SKIP_CODE);
+
+        AnnotationScanner.AnnotatedClass annotatedClass = new AnnotationScanner().scan(classFile);
+
+        assertEquals(4, assertSameAnnotations(classNode, annotatedClass));
+        assertTrue((annotatedClass.access & Opcodes.ACC_DEPRECATED) != 0);
+    }
+
+    @Test
+    public void testScannedDescriptors() {
+        byte[] classFile = generateAnnotatedClass();
+
+        AnnotationScanner.AnnotatedClass annotatedClass = new AnnotationScanner("Lpkg/Inject;").scan(classFile);
+
+        assertTrue(annotatedClass.annotations.isEmpty());
+        assertEquals(1, annotatedClass.fields.size());
+        assertEquals("service", annotatedClass.fields.get(0).name);
+        assertEquals(Arrays.asList("Lpkg/Inject;"), new ArrayList<>(annotatedClass.fields.get(0).annotations.keySet()));
+        assertTrue(annotatedClass.methods.isEmpty());
+        assertNull(new AnnotationScanner("Lpkg/Missing;").scan(classFile));
+    }
+
+    @Test
+    public void testMalformedClassFile() {
+        byte[] classFile = Arrays.copyOf(generateAnnotatedClass(), 40);
+
+        assertThrows(IllegalArgumentException.class, () -> new AnnotationScanner().scan(classFile));
+    }
+
+    /**
+     * Asserts that a scanned class has the same header and annotations as the class read with a
+     * class reader, and returns the number of annotations.
+     */
+    private static int assertSameAnnotations(
+            final ClassNodeEx classNode, final AnnotationScanner.AnnotatedClass annotatedClass) {
+        List<String> members = new ArrayList<>();
+        Map<String, Object> expected = new LinkedHashMap<>();
+        putAnnotations(expected, "", classNode.annotations);
+        for (FieldNodeEx field : classNode.fields.values()) {
+            if (putAnnotations(expected, field.name, field.annotations)) {
+                members.add(field.access + " " + field.name + " " + field.desc);
+            }
+        }
+        for (MethodNodeEx method : classNode.methods.values()) {
+            if (putAnnotations(expected, method.name + method.desc, method.annotations)) {
+                members.add(method.access + " " + method.name + " " + method.desc);
+            }
+        }
+        if (expected.isEmpty()) {
+            assertNull(annotatedClass, classNode.name);
+            return 0;
+        }
+
+        assertNotNull(annotatedClass, classNode.name);
+        assertEquals(classNode.access, annotatedClass.access, classNode.name);
+        assertEquals(classNode.name, annotatedClass.name);
+        assertEquals(classNode.superName, annotatedClass.superName, classNode.name);
+        assertEquals(classNode.interfaces, annotatedClass.interfaces, classNode.name);
+        List<String> scannedMembers = new ArrayList<>();
+        Map<String, Object> actual = new LinkedHashMap<>();
+        putAnnotations(actual, "", annotatedClass.annotations);
+        for (AnnotationScanner.AnnotatedMember field : annotatedClass.fields) {
+            putAnnotations(actual, field.name, field.annotations);
+            scannedMembers.add(field.access + " " + field.name + " " + field.desc);
+        }
+        for (AnnotationScanner.AnnotatedMember method : annotatedClass.methods) {
+            putAnnotations(actual, method.name + method.desc, method.annotations);
+            scannedMembers.add(method.access + " " + method.name + " " + method.desc);
+        }
+        assertEquals(members, scannedMembers, classNode.name);
+        assertEquals(expected, actual, classNode.name);
+        return expected.size();
+    }
+
+    private static boolean putAnnotations(
+            final Map<String, Object> result, final String member, final Map<String, AnnotationNodeEx> annotations) {
+        if (annotations == null || annotations.isEmpty()) {
+            return false;
+        }
+        for (AnnotationNodeEx annotation : annotations.values()) {
+            result.put(member + "@" + annotation.desc, normalize(annotation));
+        }
+        return true;
+    }
+
+    /**
+     * Returns a value that is equal to the normalized form of another annotation value if and only
+     * if both values are equal, since annotation nodes do not implement equals.
+     */
+    private static Object normalize(final Object value) {
+        if (value instanceof AnnotationNodeEx) {
+            AnnotationNodeEx annotation = (AnnotationNodeEx) value;
+            Map<String, Object> values = new LinkedHashMap<>();
+            if (annotation.values != null) {
+                for (Map.Entry<String, Object> entry : annotation.values.entrySet()) {
+                    values.put(entry.getKey(), normalize(entry.getValue()));
+                }
+            }
+            return Arrays.asList(annotation.desc, values);
+        }
+        if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (Collection<?>) value) {
+                list.add(normalize(element));
+            }
+            return Arrays.asList(value.getClass(), list);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a class of the running JDK, with its major version lowered to Java 8, so that the class
+     * readers of this ASM version accept the classes of newer JDKs. The tested classes do not use
+     * the structures of these newer versions.
+     */
+    private static byte[] readSystemClass(final String className) throws IOException {
+        try (InputStream inputStream = ClassLoader.getSystemResourceAsStream(className + ".class")) {
+            assertNotNull(inputStream, className);
+            byte[] classFile = Util.readAllBytes(inputStream, -1);
+            classFile[6] = 0;
+            classFile[7] = Opcodes.V1_8;
+            return classFile;
+        }
+    }
+
+    /**
+     * Generates a deprecated class with annotations of every value kind on the class, a field and a
+     * method, and an invisible annotation on another field.
+     */
+    private static byte[] generateAnnotatedClass() {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER | Opcodes.ACC_DEPRECATED,
+                "pkg/Annotated", null, "java/lang/Object", new String[]{"java/io/Serializable"});
+        AnnotationVisitor annotation = classWriter.visitAnnotation("Lpkg/Config;", true);
+        annotation.visit("name", "annotated");
+        annotation.visit("bytes", new byte[]{1, 2, 3});
+        annotation.visit("flags", new boolean[]{true, false});
+        annotation.visit("longs", new long[]{Long.MIN_VALUE, Long.MAX_VALUE});
+        annotation.visit("ratio", 0.5f);
+        annotation.visit("initial", 'c');
+        annotation.visit("type", Type.getType("Ljava/util/List;"));
+        annotation.visitEnum("policy", "Ljava/lang/annotation/RetentionPolicy;", "CLASS");
+        AnnotationVisitor names = annotation.visitArray("names");
+        names.visit(null, "a");
+        names.visitAnnotation(null, "Lpkg/Name;").visit("value", "b");
+        names.visitEnd();
+        AnnotationVisitor nested = annotation.visitAnnotation("nested", "Lpkg/Nested;");
+        nested.visitArray("empty").visitEnd();
+        nested.visitEnd();
+        annotation.visitEnd();
+
+        FieldVisitor service = classWriter.visitField(Opcodes.ACC_PRIVATE, "service", "Ljava/lang/Runnable;", null, null);
+        service.visitAnnotation("Lpkg/Inject;", true).visitEnd();
+        service.visitEnd();
+        FieldVisitor cache = classWriter.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_TRANSIENT, "cache", "J", null, null);
+        cache.visitAnnotation("Lpkg/Internal;", false).visitEnd();
+        cache.visitEnd();
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "plain", "I", null, null).visitEnd();
+
+        MethodVisitor method = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        method.visitAnnotation("Lpkg/Timed;", true).visit("value", 100L);
+        method.visitCode();
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 1);
+        method.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link ClassNodeEx#fork()}.
+ */
+public class ClassForkTest {
+
+    private static final int METHOD_COUNT = 50;
+
+    private static final byte[] VARIANTS = generateVariants();
+
+    @Test
+    public void testForkKeepsBodiesUnloaded() {
+        ClassNodeEx original = new ClassNodeEx();
+        original.readLazily(new ClassReader(VARIANTS), 0);
+
+        ClassNodeEx fork = original.fork();
+
+        assertEquals(new ArrayList<>(original.methods.keySet()), new ArrayList<>(fork.methods.keySet()));
+        for (MethodNodeEx method : fork.methods.values()) {
+            assertFalse(method.isBodyLoaded());
+            assertFalse(method.isDirty());
+        }
+        assertEquals(original.getContentHash(), fork.getContentHash());
+        // The unchanged methods of the fork are copied as is.
+        assertArrayEquals(VARIANTS, write(fork));
+    }
+
+    @Test
+    public void testForksAreIndependent() {
+        ClassNodeEx original = new ClassNodeEx();
+        original.readLazily(new ClassReader(VARIANTS), 0);
+        ContentHash hash = original.getContentHash();
+        ClassNodeEx first = original.fork();
+        ClassNodeEx second = original.fork();
+
+        MethodNodeEx variant = first.getMethod("variant7", "()I");
+        variant.loadBody();
+        variant.instructions.insert(new InsnNode(Opcodes.NOP));
+        first.getField("best").getAnnotation("Lpkg/Tuned;").values.put("value", 42);
+        first.getField("best").markDirty();
+        second.removeMethod(second.getMethod("variant3", "()I"));
+
+        assertTrue(variant.isDirty());
+        assertEquals(hash, original.getContentHash());
+        assertFalse(original.getMethod("variant7", "()I").isBodyLoaded());
+        assertFalse(second.getMethod("variant7", "()I").isBodyLoaded());
+        assertEquals(0, original.getField("best").getAnnotation("Lpkg/Tuned;").values.get("value"));
+        assertEquals(0, second.getField("best").getAnnotation("Lpkg/Tuned;").values.get("value"));
+        assertNotNull(original.getMethod("variant3", "()I"));
+        assertEquals(METHOD_COUNT, original.methods.size());
+        assertArrayEquals(VARIANTS, write(original));
+    }
+
+    @Test
+    public void testLoadedBodiesAreCopied() {
+        ClassNodeEx original = new ClassNodeEx();
+        original.readLazily(new ClassReader(VARIANTS), 0);
+        MethodNodeEx variant = original.getMethod("variant1", "()I");
+        variant.loadBody();
+
+        MethodNodeEx forked = original.fork().getMethod("variant1", "()I");
+        forked.instructions.insert(new InsnNode(Opcodes.NOP));
+
+        assertNotSame(variant.instructions, forked.instructions);
+        assertEquals(variant.instructions.size() + 1, forked.instructions.size());
+        assertFalse(variant.isDirty());
+        assertTrue(forked.isDirty());
+    }
+
+    @Test
+    public void testForkKeepsModifications() {
+        ClassNodeEx original = new ClassNodeEx();
+        original.read(new ClassReader(VARIANTS), 0);
+        MethodNodeEx variant = original.getMethod("variant2", "()I");
+        variant.instructions.insert(new InsnNode(Opcodes.NOP));
+        ContentHash hash = variant.getContentHash();
+
+        ClassNodeEx fork = original.fork();
+        MethodNodeEx forked = fork.getMethod("variant2", "()I");
+
+        assertTrue(forked.isDirty());
+        assertEquals(hash, forked.getContentHash());
+        assertFalse(fork.getMethod("variant3", "()I").isDirty());
+        assertArrayEquals(write(original), write(fork.fork()));
+    }
+
+    private static byte[] write(final ClassNodeEx classNode) {
+        ClassWriter classWriter = new ClassWriter(classNode.getSourceClassReader(), 0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Generates a class with an annotated field and many methods that return distinct constants.
+     */
+    private static byte[] generateVariants() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "pkg/Variants", null,
+                "java/lang/Object", null);
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "best", "I", null, null)
+                .visitAnnotation("Lpkg/Tuned;", true).visit("value", 0);
+        for (int i = 0; i < METHOD_COUNT; i++) {
+            MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "variant" + i, "()I", null, null);
+            methodVisitor.visitCode();
+            methodVisitor.visitLdcInsn(i * 1000);
+            methodVisitor.visitInsn(Opcodes.IRETURN);
+            methodVisitor.visitMaxs(0, 0);
+            methodVisitor.visitEnd();
+        }
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,205 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the queries, the file format and the validation of {@link ClassIndex}.
+ */
+public class ClassIndexTest {
+
+    private static final String COMPONENT = "Lpkg/Component;";
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("class-index");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testQueries() {
+        ClassIndex index = ClassIndex.build(readAll(generateBase(), generateService("pkg/Service")));
+
+        assertQueries(index);
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        ClassIndex index = ClassIndex.build(readAll(generateBase(), generateService("pkg/Service")));
+        Path file = directory.resolve("classes.index");
+
+        index.write(file, 42L);
+
+        assertQueries(ClassIndex.read(file, 42L));
+        assertNull(ClassIndex.read(file, 43L));
+    }
+
+    @Test
+    public void testCorruptedFiles() throws IOException {
+        Path file = directory.resolve("classes.index");
+        ClassIndex.build(readAll(generateBase(), generateService("pkg/Service"))).write(file, 42L);
+        byte[] content = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(content, content.length - 1));
+        assertNull(ClassIndex.read(file, 42L));
+        Files.write(file, Arrays.copyOf(content, content.length + 1));
+        assertNull(ClassIndex.read(file, 42L));
+        byte[] otherVersion = content.clone();
+        otherVersion[7]++;
+        Files.write(file, otherVersion);
+        assertNull(ClassIndex.read(file, 42L));
+    }
+
+    @Test
+    public void testChecksum() throws IOException {
+        Path file = directory.resolve("data.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4});
+        long checksum = ClassIndex.checksum(file);
+
+        assertEquals(4L, checksum >>> 32);
+        assertEquals(checksum, ClassIndex.checksum(file));
+        Files.write(file, new byte[]{1, 2, 3, 5});
+        assertNotEquals(checksum, ClassIndex.checksum(file));
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        Path jar = directory.resolve("classes.jar");
+        writeJar(jar, generateBase(), generateService("pkg/Service"));
+
+        assertQueries(ClassIndex.load(jar));
+
+        Path indexFile = directory.resolve("classes.jar" + ClassIndex.FILE_SUFFIX);
+        assertNotNull(ClassIndex.read(indexFile, ClassIndex.checksum(jar)));
+        assertEquals(Arrays.asList("classes.jar", "classes.jar.index"), listDirectory());
+        assertQueries(ClassIndex.load(jar));
+
+        // The index file of the previous jar file content is replaced.
+        writeJar(jar, generateBase(), generateService("pkg/OtherService"));
+        ClassIndex index = ClassIndex.load(jar);
+
+        assertEquals(Collections.singletonList("pkg/OtherService"), index.getAnnotatedClasses(COMPONENT));
+        assertNotNull(ClassIndex.read(indexFile, ClassIndex.checksum(jar)));
+        assertEquals(Arrays.asList("classes.jar", "classes.jar.index"), listDirectory());
+    }
+
+    private static void assertQueries(final ClassIndex index) {
+        assertEquals(Arrays.asList("pkg/Base", "pkg/Service"), index.getClassNames());
+        assertTrue(index.contains("pkg/Service"));
+        assertFalse(index.contains("pkg/Missing"));
+        assertEquals(Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, index.getAccess("pkg/Service"));
+        assertEquals(-1, index.getAccess("pkg/Missing"));
+        assertEquals("java/lang/Object", index.getSuperName("pkg/Service"));
+        assertEquals(Collections.singletonList("pkg/Base"), index.getInterfaces("pkg/Service"));
+        assertEquals(Arrays.asList("pkg/Service.name:Ljava/lang/String;", "pkg/Service.run:()V",
+                "pkg/Service.stop:()V"), describe(index.getMembers("pkg/Service")));
+        assertEquals(Arrays.asList("pkg/Service", "pkg/Service.run:()V"), describe(index.getAnnotated(COMPONENT)));
+        assertEquals(Collections.singletonList("pkg/Service.name:Ljava/lang/String;"),
+                describe(index.getAnnotated("Lpkg/Inject;")));
+        assertEquals(Collections.singletonList("pkg/Service"), index.getAnnotatedClasses(COMPONENT));
+        assertTrue(index.getAnnotated("Lpkg/Missing;").isEmpty());
+
+        ClassHierarchy classHierarchy = new ClassHierarchy();
+        index.addTo(classHierarchy);
+        assertTrue(classHierarchy.isInterface("pkg/Base"));
+        assertTrue(classHierarchy.isAssignableFrom("pkg/Base", "pkg/Service"));
+    }
+
+    private static List<String> describe(final List<ClassIndex.Element> elements) {
+        return elements.stream()
+                .map(element -> element.kind == ClassIndex.Kind.CLASS
+                        ? element.className
+                        : element.className + "." + element.name + ":" + element.desc)
+                .collect(Collectors.toList());
+    }
+
+    private List<String> listDirectory() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<ClassNodeEx> readAll(final byte[]... classFiles) {
+        List<ClassNodeEx> classNodes = new ArrayList<>();
+        for (byte[] classFile : classFiles) {
+            ClassNodeEx classNode = new ClassNodeEx();
+            classNode.read(new ClassReader(classFile), ClassReader.SKIP_CODE);
+            classNodes.add(classNode);
+        }
+        return classNodes;
+    }
+
+    private static void writeJar(final Path jar, final byte[]... classFiles) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(jar);
+             JarOutputStream jarOutputStream = new JarOutputStream(outputStream)) {
+            for (byte[] classFile : classFiles) {
+                jarOutputStream.putNextEntry(new JarEntry(new ClassReader(classFile).getClassName() + ".class"));
+                jarOutputStream.write(classFile);
+                jarOutputStream.closeEntry();
+            }
+        }
+    }
+
+    private static byte[] generateBase() {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+                "pkg/Base", null, "java/lang/Object", null);
+        classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "run", "()V", null, null).visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Generates an annotated implementation of pkg/Base, with an injected field and an annotated and
+     * a plain method.
+     */
+    private static byte[] generateService(final String name) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object",
+                new String[]{"pkg/Base"});
+        classWriter.visitAnnotation(COMPONENT, true).visitEnd();
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "name", "Ljava/lang/String;", null, null)
+                .visitAnnotation("Lpkg/Inject;", false).visitEnd();
+        for (String methodName : new String[]{"run", "stop"}) {
+            MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, methodName, "()V", null, null);
+            if (methodName.equals("run")) {
+                methodVisitor.visitAnnotation(COMPONENT, true).visitEnd();
+            }
+            methodVisitor.visitCode();
+            methodVisitor.visitInsn(Opcodes.RETURN);
+            methodVisitor.visitMaxs(0, 1);
+            methodVisitor.visitEnd();
+        }
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the jar file and class directory parsers of {@link ClassInput}.
+ */
+public class ClassInputTest {
+
+    private Path directory;
+
+    private Map<String, byte[]> contents;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("class-input");
+        contents = new LinkedHashMap<>();
+        contents.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8));
+        contents.put("pkg/", new byte[0]);
+        contents.put("pkg/A.class", randomBytes(1, 100));
+        // Larger than the input buffer of the inflaters.
+        contents.put("pkg/B.class", repeatedBytes(50000));
+        contents.put("pkg/empty.txt", new byte[0]);
+        contents.put("META-INF/versions/9/pkg/A.class", randomBytes(2, 300));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testMappedJar() throws IOException {
+        Path jar = writeJar("test.jar", "A jar file comment");
+
+        try (ClassInput input = ClassInput.open(jar)) {
+            assertTrue(input instanceof ClassInput.MappedJarInput);
+            assertEquals(jar, input.getPath());
+            assertEntries(new ArrayList<>(contents.keySet()), input);
+        }
+    }
+
+    @Test
+    public void testZipFile() throws IOException {
+        Path jar = writeJar("test.jar", null);
+
+        try (ClassInput input = new ClassInput.ZipFileInput(jar)) {
+            assertEntries(new ArrayList<>(contents.keySet()), input);
+        }
+    }
+
+    @Test
+    public void testEmptyJar() throws IOException {
+        contents.clear();
+        Path jar = writeJar("empty.jar", null);
+
+        try (ClassInput input = ClassInput.open(jar)) {
+            assertTrue(input.getEntries().isEmpty());
+        }
+    }
+
+    /**
+     * The zip output streams write a ZIP64 end record for more than 65535 entries.
+     */
+    @Test
+    public void testMappedZip64Jar() throws IOException {
+        for (int i = 0; i < 0x10000; ++i) {
+            contents.put(String.format("many/%04x", i), new byte[]{(byte) i, (byte) (i >> 8)});
+        }
+        Path jar = writeJar("zip64.jar", null);
+
+        try (ClassInput input = ClassInput.open(jar)) {
+            assertTrue(input instanceof ClassInput.MappedJarInput);
+            assertEntries(new ArrayList<>(contents.keySet()), input);
+        }
+    }
+
+    @Test
+    public void testDirectory() throws IOException {
+        Path classes = directory.resolve("classes");
+        for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+            Path file = classes.resolve(entry.getKey());
+            if (entry.getKey().endsWith("/")) {
+                Files.createDirectories(file);
+            } else {
+                Files.createDirectories(file.getParent());
+                Files.write(file, entry.getValue());
+            }
+        }
+        Files.createDirectories(classes.resolve("empty/directory"));
+        for (String name : new String[]{"META-INF/", "META-INF/versions/", "META-INF/versions/9/",
+                "META-INF/versions/9/pkg/", "empty/", "empty/directory/"}) {
+            contents.put(name, new byte[0]);
+        }
+
+        try (ClassInput input = ClassInput.open(classes)) {
+            assertTrue(input instanceof ClassInput.DirectoryInput);
+            List<String> names = new ArrayList<>(contents.keySet());
+            names.sort(null);
+            assertEntries(names, input);
+        }
+    }
+
+    private void assertEntries(final List<String> expectedNames, final ClassInput input) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (ClassInput.Entry entry : input.getEntries()) {
+            names.add(entry.getName());
+            assertArrayEquals(contents.get(entry.getName()), entry.read(), entry.getName());
+            boolean classFile = entry.getName().startsWith("pkg/") && entry.getName().endsWith(".class");
+            assertEquals(classFile, entry.isClassFile(), entry.getName());
+            assertEquals(entry.getName().endsWith("/"), entry.isDirectory(), entry.getName());
+        }
+        assertEquals(expectedNames, names);
+    }
+
+    /**
+     * Writes the test contents to a jar file, alternating stored and deflated entries.
+     */
+    private Path writeJar(final String name, final String comment) throws IOException {
+        Path jar = directory.resolve(name);
+        try (OutputStream outputStream = Files.newOutputStream(jar);
+             ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            boolean stored = false;
+            for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                byte[] content = entry.getValue();
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(content.length);
+                    zipEntry.setCompressedSize(content.length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                zipOutputStream.putNextEntry(zipEntry);
+                zipOutputStream.write(content);
+                zipOutputStream.closeEntry();
+                stored = !stored;
+            }
+            if (comment != null) {
+                zipOutputStream.setComment(comment);
+            }
+        }
+        return jar;
+    }
+
+    private static byte[] randomBytes(final long seed, final int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] repeatedBytes(final int length) {
+        byte[] pattern = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = pattern[(i * 7 + i / 100) % pattern.length];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trip tests of {@link ClassSnapshotWriter} and {@link ClassSnapshotReader}.
+ */
+public class ClassSnapshotTest {
+
+    private static final Handle BOOTSTRAP = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "pkg/Sample",
+            "bootstrap",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Object;)Ljava/lang/Object;",
+            false);
+
+    @Test
+    public void testCodeRoundTrip() {
+        ClassNodeEx classNode = read(generateClass());
+        MethodNodeEx method = classNode.getMethod("run", "(I)Ljava/lang/Object;");
+        assertTrue(countFrames(method) > 0);
+
+        ClassNodeEx copy = roundTrip(classNode);
+
+        assertEquals(countFrames(method), countFrames(copy.getMethod("run", "(I)Ljava/lang/Object;")));
+        assertArrayEquals(write(classNode), write(copy));
+        assertEquals(classNode.getContentHash(), copy.getContentHash());
+    }
+
+    @Test
+    public void testModuleRoundTrip() {
+        ClassNodeEx classNode = read(generateModule());
+
+        ClassNodeEx copy = roundTrip(classNode);
+
+        assertNotNull(copy.module);
+        assertEquals("sample", copy.module.name);
+        assertArrayEquals(write(classNode), write(copy));
+    }
+
+    @Test
+    public void testSeveralClasses() {
+        ClassSnapshotWriter writer = new ClassSnapshotWriter();
+        writer.add(read(generateClass()));
+        writer.add(read(generateModule()));
+
+        ClassSnapshotReader reader = new ClassSnapshotReader(writer.toByteArray());
+
+        assertEquals(2, reader.getClassCount());
+        assertEquals(0, reader.indexOf("pkg/Sample"));
+        assertEquals(1, reader.indexOf("module-info"));
+        assertEquals(-1, reader.indexOf("pkg/Missing"));
+        ClassWriter classWriter = new ClassWriter(0);
+        reader.accept(0, classWriter);
+        assertArrayEquals(write(read(generateClass())), write(read(classWriter.toByteArray())));
+    }
+
+    private static ClassNodeEx roundTrip(final ClassNodeEx classNode) {
+        ClassSnapshotWriter writer = new ClassSnapshotWriter();
+        writer.add(classNode);
+        ClassSnapshotReader reader = new ClassSnapshotReader(writer.toByteArray());
+        assertEquals(1, reader.getClassCount());
+        assertEquals(classNode.name, reader.getClassName(0));
+        return reader.read(0);
+    }
+
+    private static ClassNodeEx read(final byte[] classFile) {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(classFile), 0);
+        return classNode;
+    }
+
+    /**
+     * Writes a class without copying anything from its source class reader.
+     */
+    private static byte[] write(final ClassNodeEx classNode) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classNode.accept(new ClassVisitor(Opcodes.ASM8, classWriter) {
+        });
+        return classWriter.toByteArray();
+    }
+
+    private static int countFrames(final MethodNodeEx method) {
+        int count = 0;
+        for (AbstractInsnNode insn : method.getInstructions()) {
+            if (insn instanceof FrameNode) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] generateClass() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        classWriter.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "pkg/Sample", null, "java/lang/Object", null);
+        classWriter.visitSource("Sample.java", null);
+        AnnotationVisitor annotationVisitor = classWriter.visitAnnotation("Lpkg/Marker;", true);
+        annotationVisitor.visit("count", 3);
+        annotationVisitor.visit("type", Type.getType("Ljava/lang/String;"));
+        annotationVisitor.visitEnum("policy", "Ljava/lang/annotation/RetentionPolicy;", "RUNTIME");
+        AnnotationVisitor arrayVisitor = annotationVisitor.visitArray("names");
+        arrayVisitor.visit(null, "a");
+        arrayVisitor.visit(null, "b");
+        arrayVisitor.visitEnd();
+        annotationVisitor.visitAnnotation("nested", "Lpkg/Nested;").visitEnd();
+        annotationVisitor.visitEnd();
+        classWriter.visitInnerClass("pkg/Sample$Inner", "pkg/Sample", "Inner", Opcodes.ACC_STATIC);
+
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "INT", "I", null, 42).visitEnd();
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "LONG", "J", null, 42L).visitEnd();
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "FLOAT", "F", null, 4.2f).visitEnd();
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "DOUBLE", "D", null, 4.2).visitEnd();
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "STRING", "Ljava/lang/String;", null, "s")
+                .visitEnd();
+
+        MethodVisitor methodVisitor = classWriter.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "(I)Ljava/lang/Object;", null,
+                new String[]{"java/lang/Exception"});
+        methodVisitor.visitParameter("index", Opcodes.ACC_FINAL);
+        methodVisitor.visitCode();
+        Label start = new Label();
+        Label case0 = new Label();
+        Label case1 = new Label();
+        Label case2 = new Label();
+        Label defaultCase = new Label();
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label handler = new Label();
+        Label end = new Label();
+        methodVisitor.visitTryCatchBlock(tryStart, tryEnd, handler, "java/lang/Exception");
+        methodVisitor.visitLabel(start);
+        methodVisitor.visitLineNumber(10, start);
+        methodVisitor.visitVarInsn(Opcodes.ILOAD, 0);
+        methodVisitor.visitTableSwitchInsn(0, 2, defaultCase, case0, case1, case2);
+        methodVisitor.visitLabel(case0);
+        methodVisitor.visitLdcInsn(1L);
+        methodVisitor.visitInsn(Opcodes.POP2);
+        methodVisitor.visitLdcInsn(2.5);
+        methodVisitor.visitInsn(Opcodes.POP2);
+        methodVisitor.visitLdcInsn("a");
+        methodVisitor.visitVarInsn(Opcodes.ASTORE, 1);
+        methodVisitor.visitJumpInsn(Opcodes.GOTO, tryStart);
+        methodVisitor.visitLabel(case1);
+        methodVisitor.visitLdcInsn(Type.getType("Ljava/lang/String;"));
+        methodVisitor.visitVarInsn(Opcodes.ASTORE, 1);
+        methodVisitor.visitJumpInsn(Opcodes.GOTO, tryStart);
+        methodVisitor.visitLabel(case2);
+        methodVisitor.visitLdcInsn(new ConstantDynamic("constant", "Ljava/lang/Object;", BOOTSTRAP));
+        methodVisitor.visitVarInsn(Opcodes.ASTORE, 1);
+        methodVisitor.visitJumpInsn(Opcodes.GOTO, tryStart);
+        methodVisitor.visitLabel(defaultCase);
+        methodVisitor.visitInsn(Opcodes.ACONST_NULL);
+        methodVisitor.visitVarInsn(Opcodes.ASTORE, 1);
+        methodVisitor.visitLabel(tryStart);
+        methodVisitor.visitLineNumber(20, tryStart);
+        methodVisitor.visitInvokeDynamicInsn("value", "()Ljava/lang/Object;", BOOTSTRAP, 1.5f, "x");
+        methodVisitor.visitInsn(Opcodes.POP);
+        methodVisitor.visitLabel(tryEnd);
+        methodVisitor.visitJumpInsn(Opcodes.GOTO, end);
+        methodVisitor.visitLabel(handler);
+        methodVisitor.visitVarInsn(Opcodes.ASTORE, 2);
+        methodVisitor.visitInsn(Opcodes.ACONST_NULL);
+        methodVisitor.visitVarInsn(Opcodes.ASTORE, 1);
+        methodVisitor.visitLabel(end);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+        methodVisitor.visitInsn(Opcodes.ARETURN);
+        methodVisitor.visitLocalVariable("index", "I", null, start, end, 0);
+        methodVisitor.visitLocalVariable("result", "Ljava/lang/Object;", null, tryStart, end, 1);
+        methodVisitor.visitMaxs(0, 0);
+        methodVisitor.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private static byte[] generateModule() {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V9, Opcodes.ACC_MODULE, "module-info", null, null, null);
+        ModuleVisitor moduleVisitor = classWriter.visitModule("sample", Opcodes.ACC_OPEN, "1.0");
+        moduleVisitor.visitMainClass("pkg/Sample");
+        moduleVisitor.visitPackage("pkg");
+        moduleVisitor.visitPackage("pkg/internal");
+        moduleVisitor.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+        moduleVisitor.visitRequire("java.logging", Opcodes.ACC_STATIC_PHASE, "11");
+        moduleVisitor.visitExport("pkg", 0);
+        moduleVisitor.visitExport("pkg/internal", 0, "other.module");
+        moduleVisitor.visitUse("pkg/Service");
+        moduleVisitor.visitProvide("pkg/Service", "pkg/Sample");
+        moduleVisitor.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the content hashes of {@link ClassNodeEx}, {@link FieldNodeEx} and {@link MethodNodeEx}.
+ */
+public class ContentHashTest {
+
+    private static final byte[] COUNTER = generateCounter(1);
+
+    @Test
+    public void testReadModes() {
+        ClassNodeEx eager = new ClassNodeEx();
+        eager.read(new ClassReader(COUNTER), 0);
+        ClassNodeEx lazy = new ClassNodeEx();
+        lazy.readLazily(new ClassReader(COUNTER), 0);
+        ClassNodeEx hashedOnRead = new ClassNodeEx();
+        hashedOnRead.setHashingOnRead(true);
+        hashedOnRead.readLazily(new ClassReader(COUNTER), 0);
+
+        assertEquals(eager.getContentHash(), lazy.getContentHash());
+        assertEquals(eager.getContentHash(), hashedOnRead.getContentHash());
+        // Hashing streams the bodies that are not loaded, without loading them.
+        for (MethodNodeEx method : lazy.methods.values()) {
+            assertFalse(method.isBodyLoaded());
+        }
+        for (MethodNodeEx method : hashedOnRead.methods.values()) {
+            assertFalse(method.isBodyLoaded());
+        }
+    }
+
+    @Test
+    public void testContentChanges() {
+        ClassNodeEx counter = new ClassNodeEx();
+        counter.read(new ClassReader(COUNTER), 0);
+        ClassNodeEx otherCounter = new ClassNodeEx();
+        otherCounter.read(new ClassReader(generateCounter(2)), 0);
+
+        assertNotEquals(counter.getContentHash(), otherCounter.getContentHash());
+        assertEquals(counter.getField("count").getContentHash(), otherCounter.getField("count").getContentHash());
+        assertNotEquals(
+                counter.getMethod("increment", "()V").getContentHash(),
+                otherCounter.getMethod("increment", "()V").getContentHash());
+    }
+
+    @Test
+    public void testMethodHashIsCachedUntilModified() {
+        ClassNodeEx counter = new ClassNodeEx();
+        counter.readLazily(new ClassReader(COUNTER), 0);
+        MethodNodeEx increment = counter.getMethod("increment", "()V");
+        ContentHash hash = increment.getContentHash();
+
+        assertSame(hash, increment.getContentHash());
+        increment.loadBody();
+        assertSame(hash, increment.getContentHash());
+
+        AbstractInsnNode nop = new InsnNode(Opcodes.NOP);
+        increment.instructions.insert(nop);
+        ContentHash modifiedHash = increment.getContentHash();
+        assertNotEquals(hash, modifiedHash);
+        assertSame(modifiedHash, increment.getContentHash());
+
+        increment.instructions.remove(nop);
+        assertEquals(hash, increment.getContentHash());
+    }
+
+    @Test
+    public void testInPlaceEditsNeedMarkDirty() {
+        ClassNodeEx counter = new ClassNodeEx();
+        counter.read(new ClassReader(COUNTER), 0);
+        MethodNodeEx increment = counter.getMethod("increment", "()V");
+        ContentHash hash = increment.getContentHash();
+
+        for (AbstractInsnNode insn : increment.instructions) {
+            if (insn instanceof IntInsnNode) {
+                ((IntInsnNode) insn).operand = 2;
+            }
+        }
+        assertSame(hash, increment.getContentHash());
+
+        increment.markDirty();
+
+        assertEquals(otherIncrementHash(), increment.getContentHash());
+    }
+
+    @Test
+    public void testFieldHashIsCachedUntilModified() {
+        ClassNodeEx counter = new ClassNodeEx();
+        counter.read(new ClassReader(COUNTER), 0);
+        FieldNodeEx limit = counter.getField("LIMIT");
+        ContentHash hash = limit.getContentHash();
+        ContentHash classHash = counter.getContentHash();
+
+        assertSame(hash, limit.getContentHash());
+
+        limit.value = 200;
+        limit.markDirty();
+
+        assertNotEquals(hash, limit.getContentHash());
+        assertNotEquals(classHash, counter.getContentHash());
+    }
+
+    @Test
+    public void testHeaderChanges() {
+        ClassNodeEx counter = new ClassNodeEx();
+        counter.read(new ClassReader(COUNTER), 0);
+        ContentHash hash = counter.getContentHash();
+
+        counter.access |= Opcodes.ACC_FINAL;
+
+        assertNotEquals(hash, counter.getContentHash());
+    }
+
+    private static ContentHash otherIncrementHash() {
+        ClassNodeEx otherCounter = new ClassNodeEx();
+        otherCounter.read(new ClassReader(generateCounter(2)), 0);
+        return otherCounter.getMethod("increment", "()V").getContentHash();
+    }
+
+    /**
+     * Generates a counter class whose increment method adds the given step to the count.
+     */
+    private static byte[] generateCounter(final int step) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "pkg/Counter", null, "java/lang/Object", null);
+        FieldVisitor limit = classWriter.visitField(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "LIMIT", "I", null, 100);
+        limit.visitAnnotation("Ljava/lang/Deprecated;", true).visitEnd();
+        limit.visitEnd();
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "count", "I", null, null).visitEnd();
+
+        MethodVisitor increment = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "increment", "()V", null, null);
+        increment.visitCode();
+        increment.visitVarInsn(Opcodes.ALOAD, 0);
+        increment.visitInsn(Opcodes.DUP);
+        increment.visitFieldInsn(Opcodes.GETFIELD, "pkg/Counter", "count", "I");
+        increment.visitIntInsn(Opcodes.BIPUSH, step);
+        increment.visitInsn(Opcodes.IADD);
+        increment.visitFieldInsn(Opcodes.PUTFIELD, "pkg/Counter", "count", "I");
+        increment.visitInsn(Opcodes.RETURN);
+        increment.visitMaxs(0, 0);
+        increment.visitEnd();
+
+        MethodVisitor get = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "get", "()I", null, null);
+        get.visitCode();
+        get.visitVarInsn(Opcodes.ALOAD, 0);
+        get.visitFieldInsn(Opcodes.GETFIELD, "pkg/Counter", "count", "I");
+        get.visitInsn(Opcodes.IRETURN);
+        get.visitMaxs(0, 0);
+        get.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+
+import java.util.ArrayList;
+import java.util.ListIterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the modification tracking of {@link MethodNodeEx} and of {@link
+ * ClassNodeEx#computeDirtyFrames(ClassHierarchy)}.
+ */
+public class DirtyFramesTest {
+
+    private static final String SUM = "sum";
+    private static final String SUM_DESC = "([I)J";
+    private static final String NAME = "name";
+    private static final String NAME_DESC = "()Ljava/lang/String;";
+
+    @Test
+    public void testReadMethodsAreClean() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(generateClass()), 0);
+
+        for (MethodNodeEx method : classNode.methods.values()) {
+            assertFalse(method.isDirty());
+        }
+        assertEquals(0, classNode.computeDirtyFrames(new ClassHierarchy()));
+    }
+
+    @Test
+    public void testLoadedBodiesAreClean() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.readLazily(new ClassReader(generateClass()), 0);
+
+        MethodNodeEx method = classNode.getMethod(SUM, SUM_DESC);
+        method.loadBody();
+
+        assertTrue(method.isBodyLoaded());
+        assertFalse(method.isDirty());
+        assertEquals(0, classNode.computeDirtyFrames(new ClassHierarchy()));
+    }
+
+    @Test
+    public void testInstructionListEdits() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(generateClass()), 0);
+        MethodNodeEx sum = classNode.getMethod(SUM, SUM_DESC);
+        int maxStack = sum.maxStack;
+
+        // Push two longs before the code, which needs two more stack slots each.
+        InsnList prefix = new InsnList();
+        prefix.add(new InsnNode(Opcodes.LCONST_0));
+        prefix.add(new InsnNode(Opcodes.LCONST_1));
+        prefix.add(new InsnNode(Opcodes.POP2));
+        prefix.add(new InsnNode(Opcodes.POP2));
+        sum.instructions.insert(prefix);
+
+        assertTrue(sum.isDirty());
+        assertFalse(classNode.getMethod(NAME, NAME_DESC).isDirty());
+        assertEquals(1, classNode.computeDirtyFrames(new ClassHierarchy()));
+        assertEquals(Math.max(maxStack, 4), sum.maxStack);
+        assertTrue(countFrames(sum) > 0);
+        // The recomputed class is valid, and its other method is still copied as is.
+        ClassWriter classWriter = new ClassWriter(new ClassReader(generateClass()), 0);
+        classNode.accept(classWriter);
+        ClassNodeEx copy = new ClassNodeEx();
+        copy.read(new ClassReader(classWriter.toByteArray()), 0);
+        assertEquals(sum.instructions.size(), copy.getMethod(SUM, SUM_DESC).instructions.size());
+    }
+
+    @Test
+    public void testIteratorEdits() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(generateClass()), 0);
+        MethodNodeEx sum = classNode.getMethod(SUM, SUM_DESC);
+
+        for (ListIterator<AbstractInsnNode> it = sum.instructions.iterator(); it.hasNext(); ) {
+            if (it.next().getOpcode() == Opcodes.LCONST_0) {
+                it.set(new IntInsnNode(Opcodes.BIPUSH, 0));
+                it.add(new InsnNode(Opcodes.I2L));
+            }
+        }
+
+        assertTrue(sum.isDirty());
+    }
+
+    @Test
+    public void testInPlaceEditsNeedMarkDirty() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(generateClass()), 0);
+        MethodNodeEx name = classNode.getMethod(NAME, NAME_DESC);
+
+        for (AbstractInsnNode insn : name.instructions) {
+            if (insn instanceof LdcInsnNode) {
+                ((LdcInsnNode) insn).cst = "renamed";
+            }
+        }
+        assertFalse(name.isDirty());
+
+        name.markDirty();
+
+        assertTrue(name.isDirty());
+        assertEquals(1, classNode.computeDirtyFrames(new ClassHierarchy()));
+    }
+
+    @Test
+    public void testReplacedListsAreDirty() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.read(new ClassReader(generateClass()), 0);
+        MethodNodeEx sum = classNode.getMethod(SUM, SUM_DESC);
+
+        sum.localVariables = new ArrayList<>(sum.localVariables);
+
+        assertTrue(sum.isDirty());
+    }
+
+    @Test
+    public void testNewMethodsAreDirty() {
+        ClassNodeEx classNode = new ClassNodeEx();
+        new ClassReader(generateClass()).accept(classNode, 0);
+
+        assertTrue(classNode.getMethod(SUM, SUM_DESC).isDirty());
+        assertEquals(3, classNode.computeDirtyFrames(new ClassHierarchy()));
+    }
+
+    private static int countFrames(final MethodNodeEx method) {
+        int count = 0;
+        for (AbstractInsnNode insn : method.instructions) {
+            if (insn instanceof FrameNode) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Generates a class with a constructor, a method with a loop, which needs frames, and a method
+     * without branches.
+     */
+    private static byte[] generateClass() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "pkg/Dirty", null, "java/lang/Object", null);
+
+        MethodVisitor constructor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor sum = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, SUM, SUM_DESC, null, null);
+        sum.visitCode();
+        Label start = new Label();
+        Label loop = new Label();
+        Label end = new Label();
+        sum.visitLabel(start);
+        sum.visitInsn(Opcodes.LCONST_0);
+        sum.visitVarInsn(Opcodes.LSTORE, 1);
+        sum.visitInsn(Opcodes.ICONST_0);
+        sum.visitVarInsn(Opcodes.ISTORE, 3);
+        sum.visitLabel(loop);
+        sum.visitVarInsn(Opcodes.ILOAD, 3);
+        sum.visitVarInsn(Opcodes.ALOAD, 0);
+        sum.visitInsn(Opcodes.ARRAYLENGTH);
+        sum.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+        sum.visitVarInsn(Opcodes.LLOAD, 1);
+        sum.visitVarInsn(Opcodes.ALOAD, 0);
+        sum.visitVarInsn(Opcodes.ILOAD, 3);
+        sum.visitInsn(Opcodes.IALOAD);
+        sum.visitInsn(Opcodes.I2L);
+        sum.visitInsn(Opcodes.LADD);
+        sum.visitVarInsn(Opcodes.LSTORE, 1);
+        sum.visitIincInsn(3, 1);
+        sum.visitJumpInsn(Opcodes.GOTO, loop);
+        sum.visitLabel(end);
+        sum.visitVarInsn(Opcodes.LLOAD, 1);
+        sum.visitInsn(Opcodes.LRETURN);
+        sum.visitLocalVariable("values", "[I", null, start, end, 0);
+        sum.visitMaxs(0, 0);
+        sum.visitEnd();
+
+        MethodVisitor name = classWriter.visitMethod(Opcodes.ACC_PUBLIC, NAME, NAME_DESC, null, null);
+        name.visitCode();
+        name.visitLdcInsn("dirty");
+        name.visitInsn(Opcodes.ARETURN);
+        name.visitMaxs(0, 0);
+        name.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,203 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link FrozenClassNode}, the immutable views returned by {@link ClassNodeEx#freeze()}.
+ */
+public class FrozenClassNodeTest {
+
+    private static final byte[] SHAPE = generateShape();
+
+    @Test
+    public void testHeaders() {
+        FrozenClassNode frozen = readShape(false).freeze();
+
+        assertEquals(Opcodes.V1_8, frozen.version);
+        assertEquals("pkg/Shape", frozen.name);
+        assertEquals("java/lang/Object", frozen.superName);
+        assertEquals(Collections.singletonList("java/lang/Comparable"), frozen.interfaces);
+        assertEquals(Collections.singletonList("Lpkg/Immutable;"), frozen.annotationDescriptors);
+        assertEquals(Arrays.asList("UNIT", "label"), names(frozen.fields));
+        assertEquals(Arrays.asList("area", "area", "describe"), names(frozen.methods));
+        assertEquals(1.0, frozen.getField("UNIT").value);
+        assertEquals(Collections.singletonList("Lpkg/Label;"), frozen.getField("label").annotationDescriptors);
+        assertEquals(Collections.singletonList("java/io/IOException"),
+                frozen.getMethod("describe", "()Ljava/lang/String;").exceptions);
+        assertEquals(2, frozen.getMethods("area").size());
+        assertEquals("(D)D", frozen.getMethod("area", "(D)D").desc);
+        assertNull(frozen.getMethod("area", "(I)D"));
+        assertNull(frozen.getField("missing"));
+        assertTrue(frozen.getMethods("missing").isEmpty());
+    }
+
+    @Test
+    public void testCollectionsAreUnmodifiable() {
+        FrozenClassNode frozen = readShape(false).freeze();
+
+        assertThrows(UnsupportedOperationException.class, () -> frozen.interfaces.add("pkg/Other"));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.fields.remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.methods.clear());
+        assertThrows(UnsupportedOperationException.class, () -> frozen.getMethods("area").set(0, null));
+        assertThrows(UnsupportedOperationException.class,
+                () -> frozen.getMethod("describe", "()Ljava/lang/String;").exceptions.clear());
+    }
+
+    @Test
+    public void testAcceptAndThaw() {
+        for (boolean lazily : new boolean[]{false, true}) {
+            ClassNodeEx shape = readShape(lazily);
+            FrozenClassNode frozen = shape.freeze();
+
+            assertArrayEquals(write(shape), write(frozen));
+            assertEquals(shape.getContentHash(), frozen.thaw().getContentHash());
+            if (lazily) {
+                // The bodies are visited from the class file, and stay unloaded.
+                for (MethodNodeEx method : shape.methods.values()) {
+                    assertFalse(method.isBodyLoaded());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAcceptMember() {
+        FrozenClassNode frozen = readShape(false).freeze();
+        ClassNodeEx members = new ClassNodeEx();
+
+        frozen.getField("label").accept(members);
+        frozen.getMethod("area", "(D)D").accept(members);
+
+        assertEquals(Collections.singletonList("label"), new ArrayList<>(members.fields.keySet()));
+        assertNotNull(members.getField("label").getAnnotation("Lpkg/Label;"));
+        MethodNodeEx area = members.getMethod("area", "(D)D");
+        assertEquals(readShape(false).getMethod("area", "(D)D").getContentHash(), area.getContentHash());
+        assertEquals(1, members.methods.size());
+    }
+
+    @Test
+    public void testLaterModificationsAreNotReflected() {
+        ClassNodeEx shape = readShape(false);
+        FrozenClassNode frozen = shape.freeze();
+        byte[] frozenClassFile = write(frozen);
+
+        shape.access |= Opcodes.ACC_FINAL;
+        shape.getMethod("area", "()D").instructions.insert(new InsnNode(Opcodes.NOP));
+        ClassNodeEx thawed = frozen.thaw();
+        thawed.removeMethod(thawed.getMethod("describe", "()Ljava/lang/String;"));
+
+        assertEquals(Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, frozen.access);
+        assertEquals(3, frozen.methods.size());
+        assertArrayEquals(frozenClassFile, write(frozen));
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        FrozenClassNode frozen = readShape(true).freeze();
+        byte[] expected = write(frozen);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> write(frozen)));
+            }
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<String> names(final List<FrozenClassNode.FrozenMember> members) {
+        List<String> names = new ArrayList<>();
+        for (FrozenClassNode.FrozenMember member : members) {
+            names.add(member.name);
+        }
+        return names;
+    }
+
+    private static byte[] write(final ClassNodeEx classNode) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    private static byte[] write(final FrozenClassNode frozen) {
+        ClassWriter classWriter = new ClassWriter(0);
+        frozen.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    private static ClassNodeEx readShape(final boolean lazily) {
+        ClassNodeEx classNode = new ClassNodeEx();
+        if (lazily) {
+            classNode.readLazily(new ClassReader(SHAPE), 0);
+        } else {
+            classNode.read(new ClassReader(SHAPE), 0);
+        }
+        return classNode;
+    }
+
+    /**
+     * Generates an annotated class with a constant and an annotated field, two overloads of a
+     * method and a method that declares an exception.
+     */
+    private static byte[] generateShape() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "pkg/Shape", null, "java/lang/Object",
+                new String[]{"java/lang/Comparable"});
+        classWriter.visitAnnotation("Lpkg/Immutable;", false).visitEnd();
+        classWriter.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "UNIT", "D", null, 1.0)
+                .visitEnd();
+        FieldVisitor label = classWriter.visitField(Opcodes.ACC_PRIVATE, "label", "Ljava/lang/String;", null, null);
+        label.visitAnnotation("Lpkg/Label;", true).visit("value", "shape");
+        label.visitEnd();
+
+        MethodVisitor area = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "area", "()D", null, null);
+        area.visitCode();
+        area.visitInsn(Opcodes.DCONST_1);
+        area.visitInsn(Opcodes.DRETURN);
+        area.visitMaxs(0, 0);
+        area.visitEnd();
+
+        MethodVisitor scaledArea = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "area", "(D)D", null, null);
+        scaledArea.visitParameter("scale", 0);
+        scaledArea.visitCode();
+        scaledArea.visitVarInsn(Opcodes.ALOAD, 0);
+        scaledArea.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "pkg/Shape", "area", "()D", false);
+        scaledArea.visitVarInsn(Opcodes.DLOAD, 1);
+        scaledArea.visitInsn(Opcodes.DMUL);
+        scaledArea.visitInsn(Opcodes.DRETURN);
+        scaledArea.visitMaxs(0, 0);
+        scaledArea.visitEnd();
+
+        MethodVisitor describe = classWriter.visitMethod(
+                Opcodes.ACC_PUBLIC, "describe", "()Ljava/lang/String;", null, new String[]{"java/io/IOException"});
+        describe.visitCode();
+        describe.visitVarInsn(Opcodes.ALOAD, 0);
+        describe.visitFieldInsn(Opcodes.GETFIELD, "pkg/Shape", "label", "Ljava/lang/String;");
+        describe.visitInsn(Opcodes.ARETURN);
+        describe.visitMaxs(0, 0);
+        describe.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the invalidation of the cached classes of {@link IncrementalProcessor}. The processed jar
+ * file has a base class, a tracked subclass of it, a class that queries the hierarchy of a fourth
+ * class when it is transformed, and this fourth class.
+ */
+public class IncrementalProcessorTest {
+
+    private static final String TRACKED = "Lapp/Tracked;";
+
+    private Path directory;
+
+    private Path input;
+
+    private Path output;
+
+    /**
+     * The class files of the processed jar file, by entry name.
+     */
+    private Map<String, byte[]> classFiles;
+
+    /**
+     * The names of the classes transformed by the last run, in any order.
+     */
+    private List<String> transformed;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("incremental-processor");
+        input = directory.resolve("input.jar");
+        output = directory.resolve("output.jar");
+        classFiles = new LinkedHashMap<>();
+        classFiles.put("app/Base.class", generateClass("app/Base", "java/lang/Object", false, 1));
+        classFiles.put("app/Impl.class", generateClass("app/Impl", "app/Base", true, 1));
+        classFiles.put("app/Client.class", generateClass("app/Client", "java/lang/Object", false, 1));
+        classFiles.put("app/Service.class", generateClass("app/Service", "java/lang/Object", false, 1));
+        transformed = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testUnchangedClassesAreCached() throws IOException {
+        IncrementalProcessor processor = newProcessor("v1", 0);
+
+        assertEquals(4, process(processor));
+        assertTransformed("app/Base", "app/Client", "app/Impl", "app/Service");
+        byte[] firstOutput = Files.readAllBytes(output);
+        assertTrue(Files.isRegularFile(processor.getCacheFile(input)));
+
+        assertEquals(4, process(processor));
+        assertTransformed();
+        assertArrayEquals(firstOutput, Files.readAllBytes(output));
+    }
+
+    @Test
+    public void testChangedSuperClass() throws IOException {
+        IncrementalProcessor processor = newProcessor("v1", 0);
+        process(processor);
+
+        classFiles.put("app/Base.class", generateClass("app/Base", "java/lang/Object", false, 2));
+        process(processor);
+
+        assertTransformed("app/Base", "app/Impl");
+    }
+
+    @Test
+    public void testQueriedClasses() throws IOException {
+        IncrementalProcessor processor = newProcessor("v1", 0);
+        process(processor);
+
+        classFiles.put("app/Service.class", generateClass("app/Service", "java/lang/Object", false, 2));
+        process(processor);
+        assertTransformed("app/Client", "app/Service");
+
+        // A removed dependency invalidates the classes that queried it.
+        classFiles.remove("app/Service.class");
+        process(processor);
+        assertTransformed("app/Client");
+
+        process(processor);
+        assertTransformed();
+    }
+
+    @Test
+    public void testConfigurationAndWriterFlags() throws IOException {
+        process(newProcessor("v1", 0));
+
+        process(newProcessor("v2", 0));
+        assertTransformed("app/Base", "app/Client", "app/Impl", "app/Service");
+
+        process(newProcessor("v2", ClassWriter.COMPUTE_MAXS));
+        assertTransformed("app/Base", "app/Client", "app/Impl", "app/Service");
+
+        process(newProcessor("v2", ClassWriter.COMPUTE_MAXS));
+        assertTransformed();
+    }
+
+    @Test
+    public void testMatchedClassCount() throws IOException {
+        IncrementalProcessor processor = newProcessor("v1", 0);
+        TransformerPipeline pipeline = new TransformerPipeline(Collections.singletonList(new TreeTransformer() {
+            @Override
+            public Interest getInterest() {
+                return Interest.annotations(TRACKED);
+            }
+        }));
+
+        writeInput();
+        assertEquals(1, processor.process(input, output, pipeline));
+        // The cached class is still counted.
+        assertEquals(1, processor.process(input, output, pipeline));
+    }
+
+    @Test
+    public void testCorruptedCache() throws IOException {
+        IncrementalProcessor processor = newProcessor("v1", 0);
+        process(processor);
+        byte[] firstOutput = Files.readAllBytes(output);
+        Path cacheFile = processor.getCacheFile(input);
+        byte[] cache = Files.readAllBytes(cacheFile);
+        Files.write(cacheFile, Arrays.copyOf(cache, cache.length / 2));
+
+        assertEquals(4, process(processor));
+
+        assertTransformed("app/Base", "app/Client", "app/Impl", "app/Service");
+        assertArrayEquals(firstOutput, Files.readAllBytes(output));
+    }
+
+    @Test
+    public void testDuplicateClasses() {
+        classFiles.put("copy/Impl.class", classFiles.get("app/Impl.class"));
+
+        assertThrows(ZipException.class, () -> process(newProcessor("v1", 0)));
+    }
+
+    private IncrementalProcessor newProcessor(final String configuration, final int writerFlags) {
+        return new IncrementalProcessor(directory.resolve("cache"), configuration, writerFlags,
+                ClassLoader.getSystemClassLoader(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Writes the class files to the input jar file, and processes it with a transformer that records
+     * the transformed classes, and that queries the super class of app/Service for app/Client.
+     */
+    private int process(final IncrementalProcessor processor) throws IOException {
+        writeInput();
+        transformed.clear();
+        TreeTransformer recorder = new TreeTransformer() {
+            @Override
+            public Interest getInterest() {
+                return Interest.ALL;
+            }
+
+            @Override
+            public void transformClass(final ClassNodeEx classNode) {
+                transformed.add(classNode.name);
+                if (classNode.name.equals("app/Client")) {
+                    processor.getClassHierarchy().contains("app/Service");
+                }
+            }
+        };
+        return processor.process(input, output, new TransformerPipeline(Collections.singletonList(recorder)));
+    }
+
+    private void writeInput() throws IOException {
+        try (JarOutput jarOutput = new JarOutput(input)) {
+            for (Map.Entry<String, byte[]> entry : classFiles.entrySet()) {
+                jarOutput.addEntry(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void assertTransformed(final String... classNames) {
+        List<String> sortedNames = new ArrayList<>(transformed);
+        sortedNames.sort(null);
+        assertEquals(Arrays.asList(classNames), sortedNames);
+    }
+
+    /**
+     * Generates a class with a method that returns the given revision number.
+     */
+    private static byte[] generateClass(
+            final String name, final String superName, final boolean tracked, final int revision) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        if (tracked) {
+            classWriter.visitAnnotation(TRACKED, false).visitEnd();
+        }
+        MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "revision", "()I", null, null);
+        methodVisitor.visitCode();
+        methodVisitor.visitLdcInsn(revision);
+        methodVisitor.visitInsn(Opcodes.IRETURN);
+        methodVisitor.visitMaxs(0, 0);
+        methodVisitor.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,294 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the jar files written by {@link JarOutput}, read back with {@link ZipFile}, {@link
+ * ZipInputStream} and {@link ClassInput}.
+ */
+public class JarOutputTest {
+
+    private static final byte[] MANIFEST = "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8);
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("jar-output");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testEntryOrder() throws IOException {
+        Path jar = directory.resolve("order.jar");
+        try (JarOutput output = new JarOutput(jar)) {
+            output.addEntry("z.txt", new byte[]{1});
+            output.addEntry("META-INF/", new byte[0]);
+            output.addEntry("a/b.txt", new byte[]{2});
+            output.addEntry("META-INF/MANIFEST.MF", MANIFEST);
+            output.addEntry("a/", new byte[0]);
+        }
+
+        assertEquals(Arrays.asList("META-INF/MANIFEST.MF", "META-INF/", "a/", "a/b.txt", "z.txt"), listZipFile(jar));
+        // The local headers are in the same order, and are read by a jar input stream.
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream inputStream = new ZipInputStream(Files.newInputStream(jar))) {
+            for (ZipEntry entry; (entry = inputStream.getNextEntry()) != null; ) {
+                names.add(entry.getName());
+            }
+        }
+        assertEquals(listZipFile(jar), names);
+    }
+
+    @Test
+    public void testStoredAndDeflatedEntries() throws IOException {
+        byte[] random = new byte[5000];
+        new Random(23).nextBytes(random);
+        byte[] text = String.join("\n", Collections.nCopies(500, "compressible line")).getBytes(StandardCharsets.UTF_8);
+        Path jar = directory.resolve("methods.jar");
+        try (JarOutput output = new JarOutput(jar)) {
+            output.addEntry("random.bin", random);
+            output.addEntry("text.txt", text);
+            output.addEntry("empty.txt", new byte[0]);
+        }
+
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("random.bin").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("text.txt").getMethod());
+            assertTrue(zipFile.getEntry("text.txt").getCompressedSize() < text.length);
+            assertArrayEquals(random, read(zipFile, "random.bin"));
+            assertArrayEquals(text, read(zipFile, "text.txt"));
+            assertArrayEquals(new byte[0], read(zipFile, "empty.txt"));
+        }
+        try (ZipInputStream inputStream = new ZipInputStream(Files.newInputStream(jar))) {
+            for (ZipEntry entry; (entry = inputStream.getNextEntry()) != null; ) {
+                byte[] content = Util.readAllBytes(inputStream, -1);
+                assertArrayEquals(entry.getName().equals("text.txt") ? text : entry.getName().equals("random.bin")
+                        ? random : new byte[0], content, entry.getName());
+            }
+        }
+    }
+
+    @Test
+    public void testDeterministicOutput() throws IOException {
+        Path first = directory.resolve("first.jar");
+        Path second = directory.resolve("second.jar");
+        ForkJoinPool singleThreadPool = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            writeClasses(new JarOutput(first, 0, null, singleThreadPool), 1, 40);
+            JarOutput output = new JarOutput(second, 0, null, pool);
+            output.setWindow(3);
+            writeClasses(output, 40, 1);
+        } finally {
+            singleThreadPool.shutdown();
+            pool.shutdown();
+        }
+
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    }
+
+    @Test
+    public void testTime() throws IOException {
+        LocalDateTime dateTime = LocalDateTime.of(2020, 5, 17, 13, 45, 10);
+        Path jar = directory.resolve("time.jar");
+        try (JarOutput output = new JarOutput(jar)) {
+            output.setTime(dateTime.toInstant(ZoneOffset.UTC).toEpochMilli());
+            output.addEntry("time.txt", new byte[]{1});
+        }
+        Path defaultJar = directory.resolve("default.jar");
+        try (JarOutput output = new JarOutput(defaultJar)) {
+            output.addEntry("default.txt", new byte[]{1});
+        }
+
+        // The MS-DOS times are read as local times.
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            assertEquals(dateTime, localTime(zipFile.getEntry("time.txt")));
+        }
+        try (ZipFile zipFile = new ZipFile(defaultJar.toFile())) {
+            assertEquals(LocalDateTime.of(1980, 2, 1, 0, 0), localTime(zipFile.getEntry("default.txt")));
+        }
+    }
+
+    @Test
+    public void testClassesAndCopiedEntries() throws IOException {
+        byte[] classFile = generateClass("pkg/Copied", 7);
+        Path source = directory.resolve("source.jar");
+        try (JarOutput output = new JarOutput(source)) {
+            output.addEntry("META-INF/MANIFEST.MF", MANIFEST);
+            output.addEntry("pkg/", new byte[0]);
+            output.addEntry("pkg/Copied.class", classFile);
+            output.addEntry("pkg/data.txt", "data".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path target = directory.resolve("target.jar");
+        try (ClassInput input = ClassInput.open(source);
+             JarOutput output = new JarOutput(target)) {
+            output.addResources(input);
+            ClassNodeEx classNode = new ClassNodeEx();
+            classNode.readLazily(new ClassReader(classFile), 0);
+            classNode.name = "pkg/Renamed";
+            output.addClass(classNode);
+            assertThrows(ZipException.class, () -> output.addEntry("pkg/data.txt", new byte[0]));
+        }
+
+        assertEquals(Arrays.asList("META-INF/MANIFEST.MF", "pkg/", "pkg/Renamed.class", "pkg/data.txt"),
+                listZipFile(target));
+        try (ClassInput input = ClassInput.open(target)) {
+            for (ClassInput.Entry entry : input.getEntries()) {
+                assertEquals(entry.getName().endsWith("/"), entry.isDirectory());
+            }
+            ClassInput.Entry renamed = input.getEntries().get(2);
+            assertEquals("pkg/Renamed", new ClassReader(renamed.read()).getClassName());
+            assertArrayEquals("data".getBytes(StandardCharsets.UTF_8), input.getEntries().get(3).read());
+        }
+        assertEquals(Arrays.asList("source.jar", "target.jar"), listDirectory());
+    }
+
+    @Test
+    public void testUnchangedClassesAreCopied() throws IOException {
+        byte[] classFile = generateClass("pkg/Unchanged", 3);
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.readLazily(new ClassReader(classFile), 0);
+        Path jar = directory.resolve("unchanged.jar");
+        Files.write(jar, new byte[]{1, 2, 3});
+
+        try (JarOutput output = new JarOutput(jar)) {
+            output.addClass(classNode);
+        }
+
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            assertArrayEquals(classFile, read(zipFile, "pkg/Unchanged.class"));
+        }
+        assertFalse(classNode.getMethod("value", "()I").isBodyLoaded());
+        assertEquals(Arrays.asList("unchanged.jar"), listDirectory());
+    }
+
+    /**
+     * More entries than the end of central directory record can count need a ZIP64 end record.
+     */
+    @Test
+    public void testZip64EntryCount() throws IOException {
+        int entryCount = 0x10000 + 10;
+        Path jar = directory.resolve("zip64.jar");
+        try (JarOutput output = new JarOutput(jar)) {
+            for (int i = 0; i < entryCount; i++) {
+                output.addEntry(String.format("res/%05x.txt", i), new byte[]{(byte) i});
+            }
+        }
+
+        byte[] content = Files.readAllBytes(jar);
+        ByteBuffer end = ByteBuffer.wrap(content, content.length - 22, 22).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0x06054b50, end.getInt());
+        assertEquals((short) 0xFFFF, end.getShort(end.position() + 6));
+        ByteBuffer locator = ByteBuffer.wrap(content, content.length - 42, 20).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0x07064b50, locator.getInt());
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            assertEquals(entryCount, zipFile.size());
+            assertArrayEquals(new byte[]{(byte) (entryCount - 1)},
+                    read(zipFile, String.format("res/%05x.txt", entryCount - 1)));
+        }
+        try (ClassInput input = ClassInput.open(jar)) {
+            assertTrue(input instanceof ClassInput.MappedJarInput);
+            assertEquals(entryCount, input.getEntries().size());
+            assertArrayEquals(new byte[]{(byte) 0x1234}, input.getEntries().get(0x1234).read());
+        }
+    }
+
+    /**
+     * Adds the classes with the given numbers to the given output, in the given order, and closes it.
+     */
+    private static void writeClasses(final JarOutput output, final int from, final int to) throws IOException {
+        try (JarOutput closedOutput = output) {
+            int step = from <= to ? 1 : -1;
+            for (int i = from; i != to + step; i += step) {
+                ClassNodeEx classNode = new ClassNodeEx();
+                classNode.read(new ClassReader(generateClass("pkg/C" + i, i)), 0);
+                closedOutput.addClass(classNode);
+            }
+            closedOutput.addEntry("META-INF/MANIFEST.MF", MANIFEST);
+        }
+    }
+
+    private static LocalDateTime localTime(final ZipEntry entry) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getTime()), ZoneId.systemDefault());
+    }
+
+    private static byte[] read(final ZipFile zipFile, final String name) throws IOException {
+        try (InputStream inputStream = zipFile.getInputStream(zipFile.getEntry(name))) {
+            return Util.readAllBytes(inputStream, -1);
+        }
+    }
+
+    private static List<String> listZipFile(final Path jar) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                names.add(entries.nextElement().getName());
+            }
+        }
+        return names;
+    }
+
+    private List<String> listDirectory() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Generates a class with a method that returns the given value.
+     */
+    private static byte[] generateClass(final String name, final int value) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "value", "()I", null, null);
+        methodVisitor.visitCode();
+        methodVisitor.visitLdcInsn(value);
+        methodVisitor.visitInsn(Opcodes.IRETURN);
+        methodVisitor.visitMaxs(0, 0);
+        methodVisitor.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.Method;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link MethodMap}.
+ */
+public class MethodMapTest {
+
+    private static final int COUNT = 100;
+
+    @Test
+    public void testPutAndGet() {
+        MethodMap map = new MethodMap();
+        List<MethodNodeEx> methods = fill(map);
+
+        assertEquals(COUNT, map.size());
+        for (MethodNodeEx method : methods) {
+            assertSame(method, map.get(method.name, method.desc));
+            assertSame(method, map.get(new Method(method.name, method.desc)));
+            assertTrue(map.containsKey(new Method(method.name, method.desc)));
+        }
+        assertNull(map.get("m0", "(Z)V"));
+        assertNull(map.get("missing", "()V"));
+        assertNull(map.get("m0"));
+    }
+
+    @Test
+    public void testReplace() {
+        MethodMap map = new MethodMap();
+        List<MethodNodeEx> methods = fill(map);
+        MethodNodeEx method = newMethod("m3", "()V");
+
+        assertSame(methods.get(3), map.put(new Method("m3", "()V"), method));
+
+        assertEquals(COUNT, map.size());
+        assertSame(method, map.get("m3", "()V"));
+        assertSame(method, new ArrayList<>(map.values()).get(3));
+    }
+
+    @Test
+    public void testGetAll() {
+        MethodMap map = new MethodMap();
+        List<MethodNodeEx> methods = fill(map);
+
+        List<MethodNodeEx> expected = new ArrayList<>();
+        for (MethodNodeEx method : methods) {
+            if (method.name.equals("m7")) {
+                expected.add(method);
+            }
+        }
+        assertEquals(COUNT / 10, expected.size());
+        assertEquals(expected, map.getAll("m7"));
+        assertTrue(map.getAll("missing").isEmpty());
+    }
+
+    @Test
+    public void testRemove() {
+        MethodMap map = new MethodMap();
+        List<MethodNodeEx> methods = fill(map);
+        MethodNodeEx removed = methods.remove(15);
+
+        assertNull(map.remove(removed.name, removed.desc, newMethod(removed.name, removed.desc)));
+        assertSame(removed, map.remove(new Method(removed.name, removed.desc)));
+        assertNull(map.remove(new Method(removed.name, removed.desc)));
+
+        assertEquals(COUNT - 1, map.size());
+        assertNull(map.get(removed.name, removed.desc));
+        assertFalse(map.getAll(removed.name).contains(removed));
+        assertEquals(methods, new ArrayList<>(map.values()));
+    }
+
+    @Test
+    public void testIterationOrder() {
+        MethodMap map = new MethodMap();
+        List<MethodNodeEx> methods = fill(map);
+
+        int index = 0;
+        for (Map.Entry<Method, MethodNodeEx> entry : map.entrySet()) {
+            MethodNodeEx method = methods.get(index++);
+            assertSame(method, entry.getValue());
+            assertEquals(new Method(method.name, method.desc), entry.getKey());
+        }
+        assertEquals(COUNT, index);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        MethodMap map = new MethodMap();
+        List<MethodNodeEx> methods = fill(map);
+
+        Iterator<MethodNodeEx> iterator = map.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().name.equals("m2")) {
+                iterator.remove();
+            }
+        }
+        methods.removeIf(method -> method.name.equals("m2"));
+
+        assertEquals(methods, new ArrayList<>(map.values()));
+        assertTrue(map.getAll("m2").isEmpty());
+    }
+
+    @Test
+    public void testClear() {
+        MethodMap map = new MethodMap();
+        fill(map);
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get("m0", "()V"));
+        MethodNodeEx method = newMethod("m0", "()V");
+        map.put(new Method("m0", "()V"), method);
+        assertEquals(Arrays.asList(method), new ArrayList<>(map.values()));
+    }
+
+    /**
+     * Fills the given map with methods that have ten distinct names, and several descriptors per
+     * name, so that the map grows several times.
+     */
+    private static List<MethodNodeEx> fill(final MethodMap map) {
+        List<MethodNodeEx> methods = new ArrayList<>();
+        for (int i = 0; i < COUNT; ++i) {
+            StringBuilder descriptor = new StringBuilder("(");
+            for (int j = 0; j < i / 10; ++j) {
+                descriptor.append('I');
+            }
+            MethodNodeEx method = newMethod("m" + i % 10, descriptor.append(")V").toString());
+            assertNull(map.put(new Method(method.name, method.desc), method));
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    private static MethodNodeEx newMethod(final String name, final String descriptor) {
+        return new MethodNodeEx(Opcodes.ACC_PUBLIC, name, descriptor, null, null);
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link StreamingProcessor}, on a jar file of numbered classes, one in three of which is
+ * annotated as a plugin.
+ */
+public class StreamingProcessorTest {
+
+    private static final int CLASS_COUNT = 30;
+
+    private static final String PLUGIN = "Lapp/Plugin;";
+
+    private Path directory;
+
+    private Path input;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("streaming-processor");
+        input = directory.resolve("input.jar");
+        try (JarOutput output = new JarOutput(input)) {
+            output.addEntry("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8));
+            output.addEntry("app/", new byte[0]);
+            output.addEntry("app/plugins.txt", "plugins".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < CLASS_COUNT; i++) {
+                output.addEntry(className(i) + ".class", generateClass(i));
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testProcess() throws IOException {
+        Path output = directory.resolve("output.jar");
+
+        int count = new StreamingProcessor(4).process(input, output, registerPlugins());
+
+        assertEquals(CLASS_COUNT / 3, count);
+        try (ClassInput inputEntries = ClassInput.open(input);
+             ClassInput outputEntries = ClassInput.open(output)) {
+            assertEquals(names(inputEntries), names(outputEntries));
+            for (int i = 0; i < inputEntries.getEntries().size(); i++) {
+                ClassInput.Entry inputEntry = inputEntries.getEntries().get(i);
+                ClassInput.Entry outputEntry = outputEntries.getEntries().get(i);
+                if (outputEntry.isClassFile() && isPlugin(outputEntry.getName())) {
+                    ClassNodeEx classNode = new ClassNodeEx();
+                    classNode.read(new ClassReader(outputEntry.read()), 0);
+                    assertNotNull(classNode.getField("REGISTERED"), outputEntry.getName());
+                } else {
+                    // The other classes and the resources are copied as is.
+                    assertArrayEquals(inputEntry.read(), outputEntry.read(), outputEntry.getName());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOutputDoesNotDependOnWindow() throws IOException {
+        Path first = directory.resolve("first.jar");
+        Path second = directory.resolve("second.jar");
+        ForkJoinPool singleThreadPool = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new StreamingProcessor(1, 0, null, singleThreadPool).process(input, first, registerPlugins());
+            new StreamingProcessor(16, 0, null, pool).process(input, second, registerPlugins());
+        } finally {
+            singleThreadPool.shutdown();
+            pool.shutdown();
+        }
+
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    }
+
+    /**
+     * A class is read only once the class a window before it has been transformed and taken by the
+     * writer, so at most a window of classes are in memory.
+     */
+    @Test
+    public void testBackpressure() throws IOException {
+        int window = 3;
+        AtomicIntegerArray transformed = new AtomicIntegerArray(CLASS_COUNT);
+        List<String> violations = Collections.synchronizedList(new ArrayList<>());
+        TreeTransformer recorder = new TreeTransformer() {
+            @Override
+            public Interest getInterest() {
+                return Interest.ALL;
+            }
+
+            @Override
+            public void transformClass(final ClassNodeEx classNode) {
+                int index = Integer.parseInt(classNode.name.substring("app/C".length()));
+                for (int i = 0; i <= index - window; i++) {
+                    if (transformed.get(i) == 0) {
+                        violations.add(classNode.name + " before " + className(i));
+                    }
+                }
+                transformed.set(index, 1);
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            new StreamingProcessor(window, 0, null, pool).process(
+                    input, directory.resolve("output.jar"), new TransformerPipeline(Collections.singletonList(recorder)));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(Collections.emptyList(), violations);
+    }
+
+    @Test
+    public void testBuildIndex() throws IOException {
+        ClassIndex index;
+        try (ClassInput classInput = ClassInput.open(input)) {
+            index = new StreamingProcessor(7).buildIndex(classInput);
+        }
+
+        assertEquals(CLASS_COUNT, index.getClassNames().size());
+        assertEquals(className(0), index.getClassNames().get(0));
+        List<String> plugins = new ArrayList<>();
+        for (int i = 0; i < CLASS_COUNT; i += 3) {
+            plugins.add(className(i));
+        }
+        assertEquals(plugins, index.getAnnotatedClasses(PLUGIN));
+        assertEquals(1, index.getMembers(className(1)).size());
+    }
+
+    @Test
+    public void testInvalidWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new StreamingProcessor(0));
+    }
+
+    /**
+     * Returns a pipeline that adds a REGISTERED field to the plugins.
+     */
+    private static TransformerPipeline registerPlugins() {
+        TreeTransformer transformer = new TreeTransformer() {
+            @Override
+            public Interest getInterest() {
+                return Interest.annotations(PLUGIN);
+            }
+
+            @Override
+            public void transformClass(final ClassNodeEx classNode) {
+                classNode.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+                        "REGISTERED", "Z", null, 1).visitEnd();
+            }
+        };
+        return new TransformerPipeline(Collections.singletonList(transformer));
+    }
+
+    private static List<String> names(final ClassInput input) {
+        List<String> names = new ArrayList<>();
+        for (ClassInput.Entry entry : input.getEntries()) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private static boolean isPlugin(final String entryName) {
+        return Integer.parseInt(entryName.substring("app/C".length(), entryName.length() - ".class".length())) % 3 == 0;
+    }
+
+    private static String className(final int index) {
+        return String.format("app/C%03d", index);
+    }
+
+    /**
+     * Generates the class with the given number, with a method that returns it. The multiples of
+     * three are annotated as plugins.
+     */
+    private static byte[] generateClass(final int index) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, className(index), null,
+                "java/lang/Object", null);
+        if (index % 3 == 0) {
+            classWriter.visitAnnotation(PLUGIN, true).visitEnd();
+        }
+        MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "index", "()I", null, null);
+        methodVisitor.visitCode();
+        methodVisitor.visitLdcInsn(index);
+        methodVisitor.visitInsn(Opcodes.IRETURN);
+        methodVisitor.visitMaxs(0, 0);
+        methodVisitor.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the matching and dispatch of {@link TransformerPipeline}.
+ */
+public class TransformerPipelineTest {
+
+    private static final String COMPONENT = "Lpkg/Component;";
+
+    @Test
+    public void testAnnotationMatching() {
+        ClassNodeEx service = read("pkg/Service", true);
+        ClassNodeEx plain = read("pkg/Plain", false);
+        RecordingTransformer transformer = new RecordingTransformer(TreeTransformer.Interest.annotations(COMPONENT));
+
+        int count = new TransformerPipeline(Collections.singletonList(transformer))
+                .transform(Arrays.asList(service, plain));
+
+        assertEquals(1, count);
+        assertEquals(Arrays.asList("class pkg/Service", "field pkg/Service.name", "method pkg/Service.run"),
+                transformer.calls);
+        assertTrue(service.getField("name").isDirty());
+        assertTrue(service.getMethod("run", "()V").isDirty());
+        assertFalse(service.getMethod("log", "()V").isDirty());
+    }
+
+    @Test
+    public void testUnmatchedClass() {
+        ClassNodeEx plain = read("pkg/Plain", false);
+        RecordingTransformer transformer = new RecordingTransformer(TreeTransformer.Interest.annotations(COMPONENT));
+
+        assertFalse(new TransformerPipeline(Collections.singletonList(transformer)).transform(plain));
+
+        assertTrue(transformer.calls.isEmpty());
+        for (MethodNodeEx method : plain.methods.values()) {
+            assertFalse(method.isDirty());
+            assertFalse(method.isBodyLoaded());
+        }
+    }
+
+    @Test
+    public void testInsnMatchingLoadsMatchingBodiesOnly() {
+        ClassNodeEx plain = read("pkg/Plain", false);
+        RecordingTransformer transformer =
+                new RecordingTransformer(TreeTransformer.Interest.owners("java/io/PrintStream"));
+
+        assertTrue(new TransformerPipeline(Collections.singletonList(transformer)).transform(plain));
+
+        assertEquals(Arrays.asList("class pkg/Plain", "method pkg/Plain.log", "insn pkg/Plain.log println"),
+                transformer.calls);
+        assertTrue(plain.getMethod("log", "()V").isBodyLoaded());
+        assertFalse(plain.getMethod("run", "()V").isBodyLoaded());
+        assertFalse(plain.getMethod("run", "()V").isDirty());
+    }
+
+    @Test
+    public void testOpcodeAndOwnerMatchOnce() {
+        ClassNodeEx plain = read("pkg/Plain", false);
+        RecordingTransformer transformer = new RecordingTransformer(
+                TreeTransformer.Interest.opcodes(Opcodes.INVOKEVIRTUAL).or(TreeTransformer.Interest.owners("java/io/PrintStream")));
+
+        new TransformerPipeline(Collections.singletonList(transformer)).transform(plain);
+
+        assertEquals(Arrays.asList("class pkg/Plain", "method pkg/Plain.log", "insn pkg/Plain.log println"),
+                transformer.calls);
+    }
+
+    @Test
+    public void testTransformersRunInOrderOnTheMatchesFoundFirst() {
+        ClassNodeEx service = read("pkg/Service", true);
+        List<String> calls = new ArrayList<>();
+        // The first transformer removes a method that the second one is still called back for.
+        RecordingTransformer remover = new RecordingTransformer(TreeTransformer.Interest.ALL, calls) {
+            @Override
+            public void transformClass(final ClassNodeEx classNode) {
+                super.transformClass(classNode);
+                classNode.removeMethod(classNode.getMethod("log", "()V"));
+            }
+        };
+        RecordingTransformer recorder = new RecordingTransformer(TreeTransformer.Interest.annotations(COMPONENT)
+                .or(TreeTransformer.Interest.opcodes(Opcodes.INVOKEVIRTUAL)), calls);
+
+        new TransformerPipeline(Arrays.asList(remover, recorder)).transform(service);
+
+        assertEquals(Arrays.asList(
+                "class pkg/Service", "field pkg/Service.name", "method pkg/Service.run", "method pkg/Service.log",
+                "class pkg/Service", "field pkg/Service.name", "method pkg/Service.run",
+                "method pkg/Service.log", "insn pkg/Service.log println"), calls);
+        assertNull(service.getMethod("log", "()V"));
+    }
+
+    /**
+     * A transformer that records its calls.
+     */
+    private static class RecordingTransformer implements TreeTransformer {
+        private final Interest interest;
+        final List<String> calls;
+
+        RecordingTransformer(final Interest interest) {
+            this(interest, new ArrayList<>());
+        }
+
+        RecordingTransformer(final Interest interest, final List<String> calls) {
+            this.interest = interest;
+            this.calls = calls;
+        }
+
+        @Override
+        public Interest getInterest() {
+            return interest;
+        }
+
+        @Override
+        public void transformClass(final ClassNodeEx classNode) {
+            calls.add("class " + classNode.name);
+        }
+
+        @Override
+        public void transformField(final ClassNodeEx classNode, final FieldNodeEx field) {
+            calls.add("field " + classNode.name + "." + field.name);
+        }
+
+        @Override
+        public void transformMethod(final ClassNodeEx classNode, final MethodNodeEx method) {
+            calls.add("method " + classNode.name + "." + method.name);
+        }
+
+        @Override
+        public void transformInsn(final ClassNodeEx classNode, final MethodNodeEx method, final AbstractInsnNode insn) {
+            calls.add("insn " + classNode.name + "." + method.name + " " + ((MethodInsnNode) insn).name);
+        }
+    }
+
+    /**
+     * Reads lazily a class with a name field, a run method that returns, and a log method that
+     * prints its name. The class and its name field and run method are annotated if requested.
+     */
+    private static ClassNodeEx read(final String name, final boolean annotated) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        if (annotated) {
+            classWriter.visitAnnotation(COMPONENT, true).visitEnd();
+        }
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "name", "Ljava/lang/String;", null, null)
+                .visitAnnotation(annotated ? COMPONENT : "Lpkg/Other;", true).visitEnd();
+
+        MethodVisitor run = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        if (annotated) {
+            run.visitAnnotation(COMPONENT, true).visitEnd();
+        }
+        run.visitCode();
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+
+        MethodVisitor log = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "log", "()V", null, null);
+        log.visitCode();
+        log.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        log.visitVarInsn(Opcodes.ALOAD, 0);
+        log.visitFieldInsn(Opcodes.GETFIELD, name, "name", "Ljava/lang/String;");
+        log.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        log.visitInsn(Opcodes.RETURN);
+        log.visitMaxs(0, 0);
+        log.visitEnd();
+
+        classWriter.visitEnd();
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.readLazily(new ClassReader(classWriter.toByteArray()), 0);
+        return classNode;
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.mouse0w0.asm.extree;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link TreeRemapper}, against the same classes remapped with a {@link ClassRemapper}.
+ */
+public class TreeRemapperTest {
+
+    private static final byte[] WIDGET = generateWidget();
+
+    @Test
+    public void testSameResultAsClassRemapper() {
+        ContentHash expected = remapWithClassRemapper(0);
+        for (boolean lazily : new boolean[]{false, true}) {
+            ClassNodeEx widget = read(lazily, 0);
+
+            assertTrue(new TreeRemapper(createRemapper()).remap(widget));
+
+            assertEquals(expected, widget.getContentHash());
+            assertEquals(expected, reread(widget));
+        }
+    }
+
+    @Test
+    public void testMapsAreRekeyed() {
+        ClassNodeEx widget = read(false, 0);
+
+        new TreeRemapper(createRemapper()).remap(widget);
+
+        assertEquals("lib/Widget", widget.name);
+        assertNull(widget.getField("part"));
+        assertEquals("Llib/Part;", widget.getField("component").desc);
+        assertEquals("Ljava/util/List<Llib/Part;>;", widget.getField("parts").signature);
+        assertNotNull(widget.getMethod("use", "(Llib/Part;)V"));
+        assertNull(widget.getMethod("use", "(Lold/Part;)V"));
+        AnnotationNodeEx marker = widget.getAnnotation("Llib/Marker;");
+        assertEquals("Llib/Kind;", ((Enum) marker.getValue("kind")).getDescriptor());
+        assertEquals(Type.getObjectType("lib/Part"), marker.getValue("type"));
+    }
+
+    @Test
+    public void testUnchangedMethodsStayClean() {
+        ClassNodeEx widget = read(true, 0);
+
+        new TreeRemapper(createRemapper()).remap(widget);
+
+        MethodNodeEx plain = widget.getMethod("plain", "()V");
+        assertFalse(plain.isDirty());
+        assertFalse(plain.isBodyLoaded());
+        assertTrue(widget.getMethod("use", "(Llib/Part;)V").isDirty());
+        assertFalse(widget.getMethod("use", "(Llib/Part;)V").isBodyLoaded());
+    }
+
+    /**
+     * The debug information and the frames of unchanged methods are copied as is, even if the class
+     * was read without them, so a method whose debug information or frames only are remapped must
+     * be dirty.
+     */
+    @Test
+    public void testDebugInfoAndFramesOnlyChanges() {
+        for (int parsingOptions : new int[]{0, ClassReader.SKIP_DEBUG, ClassReader.SKIP_FRAMES}) {
+            ClassNodeEx widget = read(true, parsingOptions);
+
+            new TreeRemapper(createRemapper()).remap(widget);
+
+            assertTrue(widget.getMethod("localVariableOnly", "()V").isDirty());
+            assertTrue(widget.getMethod("frameOnly", "()V").isDirty());
+            assertFalse(widget.getMethod("plain", "()V").isDirty());
+            assertEquals(remapWithClassRemapper(parsingOptions), reread(widget));
+        }
+    }
+
+    @Test
+    public void testRemapSeveralClasses() {
+        List<ClassNodeEx> classNodes = Arrays.asList(read(true, 0), read(false, 0), readUnrelated());
+
+        assertEquals(2, new TreeRemapper(createRemapper()).remap(classNodes));
+
+        assertEquals("lib/Widget", classNodes.get(0).name);
+        assertEquals("lib/Widget", classNodes.get(1).name);
+        assertEquals("pkg/Unrelated", classNodes.get(2).name);
+        assertFalse(classNodes.get(2).getMethod("run", "()V").isDirty());
+    }
+
+    private static Remapper createRemapper() {
+        Map<String, String> mapping = new HashMap<>();
+        mapping.put("old/Widget", "lib/Widget");
+        mapping.put("old/Part", "lib/Part");
+        mapping.put("old/Marker", "lib/Marker");
+        mapping.put("old/Kind", "lib/Kind");
+        mapping.put("old/Widget.part", "component");
+        mapping.put("old/Part.run()V", "execute");
+        return new SimpleRemapper(mapping);
+    }
+
+    private static ContentHash remapWithClassRemapper(final int parsingOptions) {
+        ClassNodeEx classNode = new ClassNodeEx();
+        new ClassReader(WIDGET).accept(new ClassRemapper(classNode, createRemapper()), parsingOptions);
+        return classNode.getContentHash();
+    }
+
+    /**
+     * Writes the given class with a class writer that copies its unchanged methods as is, and
+     * returns the content hash of the written class, with its debug information and frames.
+     */
+    private static ContentHash reread(final ClassNodeEx classNode) {
+        ClassWriter classWriter = new ClassWriter(new ClassReader(WIDGET), 0);
+        classNode.accept(classWriter);
+        ClassNodeEx written = new ClassNodeEx();
+        written.read(new ClassReader(classWriter.toByteArray()), 0);
+        return written.getContentHash();
+    }
+
+    private static ClassNodeEx read(final boolean lazily, final int parsingOptions) {
+        ClassNodeEx classNode = new ClassNodeEx();
+        if (lazily) {
+            classNode.readLazily(new ClassReader(WIDGET), parsingOptions);
+        } else {
+            classNode.read(new ClassReader(WIDGET), parsingOptions);
+        }
+        return classNode;
+    }
+
+    private static ClassNodeEx readUnrelated() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "pkg/Unrelated", null,
+                "java/lang/Object", null);
+        MethodVisitor run = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        run.visitCode();
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+        classWriter.visitEnd();
+        ClassNodeEx classNode = new ClassNodeEx();
+        classNode.readLazily(new ClassReader(classWriter.toByteArray()), 0);
+        return classNode;
+    }
+
+    /**
+     * Generates a class that refers to the classes of the old package from its annotation, its
+     * fields, the code of a method, and only the local variable table or only the frames of two
+     * other methods. A last method does not refer to them at all.
+     */
+    private static byte[] generateWidget() {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "old/Widget", null,
+                "java/lang/Object", null);
+        AnnotationVisitor marker = classWriter.visitAnnotation("Lold/Marker;", true);
+        marker.visitEnum("kind", "Lold/Kind;", "SMALL");
+        marker.visit("type", Type.getObjectType("old/Part"));
+        marker.visitEnd();
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "part", "Lold/Part;", null, null).visitEnd();
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "parts", "Ljava/util/List;",
+                "Ljava/util/List<Lold/Part;>;", null).visitEnd();
+
+        MethodVisitor use = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "use", "(Lold/Part;)V", null, null);
+        use.visitCode();
+        use.visitVarInsn(Opcodes.ALOAD, 1);
+        use.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "old/Part", "run", "()V", false);
+        use.visitInsn(Opcodes.RETURN);
+        use.visitMaxs(1, 2);
+        use.visitEnd();
+
+        MethodVisitor localVariableOnly = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "localVariableOnly", "()V", null, null);
+        localVariableOnly.visitCode();
+        Label start = new Label();
+        Label end = new Label();
+        localVariableOnly.visitInsn(Opcodes.ACONST_NULL);
+        localVariableOnly.visitVarInsn(Opcodes.ASTORE, 1);
+        localVariableOnly.visitLabel(start);
+        localVariableOnly.visitInsn(Opcodes.RETURN);
+        localVariableOnly.visitLabel(end);
+        localVariableOnly.visitLocalVariable("part", "Lold/Part;", null, start, end, 1);
+        localVariableOnly.visitMaxs(1, 2);
+        localVariableOnly.visitEnd();
+
+        MethodVisitor frameOnly = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "frameOnly", "()V", null, null);
+        frameOnly.visitCode();
+        Label target = new Label();
+        frameOnly.visitInsn(Opcodes.ACONST_NULL);
+        frameOnly.visitVarInsn(Opcodes.ASTORE, 0);
+        frameOnly.visitJumpInsn(Opcodes.GOTO, target);
+        frameOnly.visitLabel(target);
+        frameOnly.visitFrame(Opcodes.F_FULL, 1, new Object[]{"old/Part"}, 0, new Object[0]);
+        frameOnly.visitInsn(Opcodes.RETURN);
+        frameOnly.visitMaxs(1, 1);
+        frameOnly.visitEnd();
+
+        MethodVisitor plain = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "plain", "()V", null, null);
+        plain.visitCode();
+        plain.visitInsn(Opcodes.RETURN);
+        plain.visitMaxs(0, 1);
+        plain.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}